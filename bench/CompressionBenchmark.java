@@ -0,0 +1,81 @@
+import enums.Compression;
+import enums.SnapshotFormat;
+import enums.Status;
+import storage.SnapshotCodec;
+import storage.StorageSettings;
+import tasks.Task;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Размен байтов ввода-вывода на процессорное время при сжатии снимка блоками. Для каждого формата сравниваются
+ * снимок без сжатия и Deflate с уровнями 1, 6 и 9: размер файла, время сохранения (кодирование и запись
+ * в файл) и время загрузки последовательно и параллельно. Запуск: java CompressionBenchmark [количество] [потоков]
+ */
+public class CompressionBenchmark {
+    private static final int DEFAULT_TASK_COUNT = 500_000;
+    private static final int ROUNDS = 3;
+    private static final int[] LEVELS = {1, 6, 9};
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TASK_COUNT;
+        int parallelism = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        List<Task> records = prepareTasks(count);
+        File file = File.createTempFile("compression-benchmark", ".snapshot");
+        file.deleteOnExit();
+
+        for (SnapshotFormat format : SnapshotFormat.values()) {
+            List<StorageSettings> variants = new ArrayList<>();
+            variants.add(StorageSettings.defaults().withSnapshotFormat(format));
+            for (int level : LEVELS) {
+                variants.add(StorageSettings.defaults().withSnapshotFormat(format)
+                        .withCompression(Compression.DEFLATE).withCompressionLevel(level));
+            }
+            for (StorageSettings settings : variants) {
+                SnapshotCodec codec = SnapshotCodec.of(settings);
+                long saveNanos = Long.MAX_VALUE;
+                long loadNanos = Long.MAX_VALUE;
+                long parallelLoadNanos = Long.MAX_VALUE;
+                for (int round = 0; round < ROUNDS; round++) {
+                    long start = System.nanoTime();
+                    Files.write(file.toPath(), codec.encode(records));
+                    saveNanos = Math.min(saveNanos, System.nanoTime() - start);
+
+                    SnapshotCodec reader = SnapshotCodec.detect(file.toPath());
+                    long[] decoded = new long[1];
+                    start = System.nanoTime();
+                    reader.decode(file.toPath(), 1, task -> decoded[0]++, id -> { });
+                    loadNanos = Math.min(loadNanos, System.nanoTime() - start);
+
+                    start = System.nanoTime();
+                    reader.decode(file.toPath(), parallelism, task -> decoded[0]++, id -> { });
+                    parallelLoadNanos = Math.min(parallelLoadNanos, System.nanoTime() - start);
+                }
+                String name = settings.getCompression() == Compression.NONE
+                        ? "NONE"
+                        : "DEFLATE-" + settings.getCompressionLevel();
+                System.out.printf("%-6s %-9s %,d tasks: file %,9d KB, save %,5d ms, load %,5d ms," +
+                                " load on %d threads %,5d ms%n", format, name, count, file.length() / 1024,
+                        saveNanos / 1_000_000, loadNanos / 1_000_000, parallelism, parallelLoadNanos / 1_000_000);
+            }
+        }
+    }
+
+    private static List<Task> prepareTasks(int count) {
+        List<Task> tasks = new ArrayList<>(count);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        for (int i = 0; i < count; i++) {
+            Task task = new Task("Title " + (i % 100), "Description of task " + i, Status.values()[i % 3],
+                    start.plusMinutes(i * 30L), Duration.ofMinutes(15));
+            task.setId(i + 1);
+            tasks.add(task);
+        }
+        return tasks;
+    }
+}
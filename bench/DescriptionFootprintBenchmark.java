@@ -0,0 +1,73 @@
+import enums.DescriptionStorage;
+import enums.PersistenceMode;
+import enums.Status;
+import managers.FileBackedTaskManager;
+import storage.SnapshotCodec;
+import storage.StorageSettings;
+import tasks.Task;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Сравнение занимаемой памяти после loadFromFile с описаниями в памяти и на диске (DescriptionStorage).
+ * У каждой задачи свое описание заданной длины. Запуск: java DescriptionFootprintBenchmark [количество] [длина]
+ */
+public class DescriptionFootprintBenchmark {
+    private static final int DEFAULT_TASK_COUNT = 100_000;
+    private static final int DEFAULT_DESCRIPTION_LENGTH = 2_000;
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TASK_COUNT;
+        int length = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_DESCRIPTION_LENGTH;
+        File file = File.createTempFile("description-benchmark", ".csv");
+        file.deleteOnExit();
+        Files.write(file.toPath(), SnapshotCodec.of(StorageSettings.defaults().getSnapshotFormat())
+                .encode(prepareTasks(count, length)));
+
+        for (DescriptionStorage storage : DescriptionStorage.values()) {
+            StorageSettings settings = StorageSettings.defaults()
+                    .withPersistenceMode(PersistenceMode.JOURNAL)
+                    .withDescriptionStorage(storage);
+            long before = usedMemory();
+            FileBackedTaskManager manager = FileBackedTaskManager.loadFromFile(file, settings);
+            long after = usedMemory();
+            System.out.printf("%-9s %,d tasks, %,d chars per description: heap %,d KB, %.1f bytes per task%n",
+                    storage, manager.getAllTasks().size(), length, (after - before) / 1024,
+                    (after - before) / (double) count);
+            manager.close();
+        }
+    }
+
+    private static List<Task> prepareTasks(int count, int length) {
+        List<Task> tasks = new ArrayList<>(count);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        StringBuilder description = new StringBuilder(length);
+        for (int i = 0; i < count; i++) {
+            description.setLength(0);
+            description.append(i).append(' ');
+            while (description.length() < length) {
+                description.append("Описание задачи ");
+            }
+            description.setLength(length);
+            Task task = new Task("Title " + i, description.toString(), Status.NEW, start.plusMinutes(i * 30L),
+                    Duration.ofMinutes(15));
+            task.setId(i + 1);
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,125 @@
+import enums.ExecutorMode;
+import enums.Status;
+import http.HttpTaskServer;
+import http.ServerSettings;
+import managers.FileBackedTaskManager;
+import managers.Managers;
+import managers.TaskManager;
+import storage.SnapshotCodec;
+import storage.StorageSettings;
+import tasks.Task;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Пропускная способность и p99 HttpTaskServer в разных ExecutorMode при параллельных клиентах.
+ * Клиенты 9 раз из 10 читают задачу по id и 1 раз создают новую. Менеджер - ConcurrentTaskManager
+ * или FileBackedTaskManager, который при каждом изменении переписывает снимок на диск. Доска заполняется
+ * заранее: ConcurrentTaskManager через createTask, FileBackedTaskManager загрузкой готового снимка.
+ * Запуск: java HttpServerBenchmark [клиентов] [секунд на режим] [задач]
+ */
+public class HttpServerBenchmark {
+    private static final int DEFAULT_CLIENTS = 16;
+    private static final int DEFAULT_SECONDS = 3;
+    private static final int DEFAULT_TASK_COUNT = 5_000;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_CLIENTS;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_SECONDS;
+        int count = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_TASK_COUNT;
+
+        List<Task> tasks = prepareTasks(count);
+        List<String> names = List.of("ConcurrentTaskManager", "FileBackedTaskManager");
+        List<Supplier<TaskManager>> managers = List.of(() -> {
+            TaskManager manager = Managers.getConcurrent();
+            tasks.forEach(manager::createTask);
+            return manager;
+        }, () -> {
+            try {
+                File file = File.createTempFile("http-benchmark", ".csv");
+                file.deleteOnExit();
+                Files.write(file.toPath(), SnapshotCodec.of(StorageSettings.defaults()).encode(tasks));
+                return FileBackedTaskManager.loadFromFile(file);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        for (int m = 0; m < managers.size(); m++) {
+            for (ExecutorMode mode : ExecutorMode.values()) {
+                HttpTaskServer server = new HttpTaskServer(managers.get(m).get(), ServerSettings.defaults()
+                        .withPort(0)
+                        .withExecutorMode(mode)
+                        .withBacklog(clients * 2));
+                server.start();
+                try {
+                    run(names.get(m), mode, server.getPort(), clients, seconds, count);
+                } finally {
+                    server.stop();
+                }
+            }
+        }
+    }
+
+    private static List<Task> prepareTasks(int count) {
+        List<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Task task = new Task("Task " + i, "Description " + i, Status.NEW, null, null);
+            task.setId(i + 1);
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    private static void run(String manager, ExecutorMode mode, int port, int clients, int seconds, int count)
+            throws Exception {
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(4);
+        HttpClient client = HttpClient.newBuilder().executor(clientExecutor).build();
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Future<List<Long>>> results = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            results.add(pool.submit(() -> {
+                List<Long> latencies = new ArrayList<>();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < deadline) {
+                    HttpRequest request = random.nextInt(10) == 0
+                            ? HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/tasks"))
+                                    .POST(HttpRequest.BodyPublishers.ofString(
+                                            "{\"title\":\"New\",\"description\":\"Desc\",\"status\":\"NEW\"}"))
+                                    .build()
+                            : HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/tasks?id="
+                                    + (1 + random.nextInt(count)))).GET().build();
+                    long start = System.nanoTime();
+                    client.send(request, HttpResponse.BodyHandlers.discarding());
+                    latencies.add(System.nanoTime() - start);
+                }
+                return latencies;
+            }));
+        }
+        List<Long> latencies = new ArrayList<>();
+        for (Future<List<Long>> result : results) {
+            latencies.addAll(result.get());
+        }
+        pool.shutdown();
+        clientExecutor.shutdown();
+        Collections.sort(latencies);
+        long p50 = latencies.get(latencies.size() / 2);
+        long p99 = latencies.get((int) (latencies.size() * 0.99));
+        System.out.printf("%-21s %-15s %d clients: %,7.0f req/s, p50 %6.2f ms, p99 %7.2f ms%n", manager, mode,
+                clients, latencies.size() / (double) seconds, p50 / 1e6, p99 / 1e6);
+    }
+}
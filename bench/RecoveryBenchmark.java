@@ -0,0 +1,71 @@
+import enums.SnapshotFormat;
+import enums.Status;
+import managers.FileBackedTaskManager;
+import storage.AtomicFiles;
+import storage.SnapshotCodec;
+import storage.StorageSettings;
+import tasks.Task;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Время восстановления после сбоя посреди записи снимка. Снимок записывается дважды через AtomicFiles, затем
+ * текущий файл обрезается посередине, как при записи прямо в живой файл. Замеряется обычная загрузка и загрузка
+ * с проверкой, отказом от обрезанного снимка и откатом к предыдущей контрольной точке.
+ * Запуск: java RecoveryBenchmark [количество]
+ */
+public class RecoveryBenchmark {
+    private static final int DEFAULT_TASK_COUNT = 500_000;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TASK_COUNT;
+        List<Task> records = prepareTasks(count);
+        File file = File.createTempFile("recovery-benchmark", ".snapshot");
+        file.deleteOnExit();
+        AtomicFiles.previous(file.toPath()).toFile().deleteOnExit();
+
+        for (SnapshotFormat format : SnapshotFormat.values()) {
+            byte[] content = SnapshotCodec.of(format).encode(records);
+            long cleanNanos = Long.MAX_VALUE;
+            long recoveryNanos = Long.MAX_VALUE;
+            int recovered = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                AtomicFiles.replaceKeepingPrevious(file.toPath(), content, true);
+                AtomicFiles.replaceKeepingPrevious(file.toPath(), content, true);
+                long start = System.nanoTime();
+                FileBackedTaskManager.loadFromFile(file, StorageSettings.defaults()).close();
+                cleanNanos = Math.min(cleanNanos, System.nanoTime() - start);
+
+                Files.write(file.toPath(), Arrays.copyOf(content, content.length / 2));
+                start = System.nanoTime();
+                FileBackedTaskManager manager = FileBackedTaskManager.loadFromFile(file, StorageSettings.defaults());
+                recoveryNanos = Math.min(recoveryNanos, System.nanoTime() - start);
+                recovered = manager.getAllTasks().size();
+                manager.close();
+            }
+            System.out.printf("%-6s %,d tasks, %,d KB: clean load %,d ms, recovery from truncated snapshot" +
+                            " %,d ms (%,d tasks restored from .prev)%n", format, count, content.length / 1024,
+                    cleanNanos / 1_000_000, recoveryNanos / 1_000_000, recovered);
+        }
+    }
+
+    private static List<Task> prepareTasks(int count) {
+        List<Task> tasks = new ArrayList<>(count);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        for (int i = 0; i < count; i++) {
+            Task task = new Task("Title " + (i % 100), "Description " + i, Status.values()[i % 3],
+                    start.plusMinutes(i * 30L), Duration.ofMinutes(15));
+            task.setId(i + 1);
+            tasks.add(task);
+        }
+        return tasks;
+    }
+}
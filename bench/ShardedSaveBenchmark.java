@@ -0,0 +1,76 @@
+import enums.PersistenceMode;
+import enums.Status;
+import managers.FileBackedTaskManager;
+import storage.ShardedSnapshotStore;
+import storage.SnapshotCodec;
+import storage.StorageSettings;
+import tasks.Task;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Задержка сохранения одного изменения на большой доске: один файл снимка против шардов.
+ * В режиме SNAPSHOT каждое изменение переписывает весь файл, в режиме SHARDED - только шард измененной задачи.
+ * Запуск: java ShardedSaveBenchmark [количество] [изменений]
+ */
+public class ShardedSaveBenchmark {
+    private static final int DEFAULT_TASK_COUNT = 200_000;
+    private static final int DEFAULT_UPDATES = 50;
+    private static final int[] SHARD_COUNTS = {8, 32};
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TASK_COUNT;
+        int updates = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_UPDATES;
+        File file = File.createTempFile("sharded-benchmark", ".csv");
+        file.deleteOnExit();
+
+        List<StorageSettings> variants = new ArrayList<>();
+        variants.add(StorageSettings.defaults());
+        for (int shards : SHARD_COUNTS) {
+            variants.add(StorageSettings.defaults().withPersistenceMode(PersistenceMode.SHARDED).withShardCount(shards));
+        }
+        for (StorageSettings settings : variants) {
+            Files.write(file.toPath(), SnapshotCodec.of(settings).encode(prepareTasks(count)));
+            long start = System.nanoTime();
+            FileBackedTaskManager manager = FileBackedTaskManager.loadFromFile(file, settings);
+            long loadNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < updates; i++) {
+                Task task = manager.getTaskById(1 + (i * 7919) % count);
+                task.setStatus(i % 2 == 0 ? Status.DONE : Status.IN_PROGRESS);
+                manager.updateTask(task);
+            }
+            long updateNanos = System.nanoTime() - start;
+            manager.close();
+
+            String name = settings.getPersistenceMode() == PersistenceMode.SHARDED
+                    ? "SHARDED-" + settings.getShardCount()
+                    : "SNAPSHOT";
+            System.out.printf("%-10s %,d tasks: load %,d ms, %.1f ms per saved update%n", name, count,
+                    loadNanos / 1_000_000, updateNanos / 1_000_000.0 / updates);
+            for (Path shard : ShardedSnapshotStore.shards(file.toPath())) {
+                Files.deleteIfExists(shard);
+            }
+        }
+    }
+
+    private static List<Task> prepareTasks(int count) {
+        List<Task> tasks = new ArrayList<>(count);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        for (int i = 0; i < count; i++) {
+            Task task = new Task("Title " + (i % 100), "Description " + i, Status.NEW, start.plusMinutes(i * 30L),
+                    Duration.ofMinutes(15));
+            task.setId(i + 1);
+            tasks.add(task);
+        }
+        return tasks;
+    }
+}
@@ -0,0 +1,72 @@
+import enums.SnapshotFormat;
+import enums.Status;
+import managers.FileBackedTaskManager;
+import storage.SnapshotCodec;
+import storage.StorageSettings;
+import tasks.Task;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Сравнение времени загрузки снимка в CSV и двоичном формате на 1 000 000 задач.
+ * Отдельно замеряется только разбор файла кодеком и полная загрузка через FileBackedTaskManager.loadFromFile,
+ * последовательно и с параллельным разбором. Запуск: java SnapshotLoadBenchmark [количество] [потоков]
+ */
+public class SnapshotLoadBenchmark {
+    private static final int DEFAULT_TASK_COUNT = 1_000_000;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TASK_COUNT;
+        int parallelism = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        List<Task> records = prepareTasks(count);
+
+        for (SnapshotFormat format : SnapshotFormat.values()) {
+            File file = File.createTempFile("snapshot-benchmark", "." + format.name().toLowerCase());
+            file.deleteOnExit();
+            SnapshotCodec codec = SnapshotCodec.of(format);
+            Files.write(file.toPath(), codec.encode(records));
+
+            for (int threads : new int[]{1, parallelism}) {
+                StorageSettings settings = StorageSettings.defaults().withLoadParallelism(threads);
+                long decodeNanos = Long.MAX_VALUE;
+                long loadNanos = Long.MAX_VALUE;
+                for (int round = 0; round < ROUNDS; round++) {
+                    long[] decoded = new long[1];
+                    long start = System.nanoTime();
+                    codec.decode(file.toPath(), threads, task -> decoded[0]++, id -> { });
+                    decodeNanos = Math.min(decodeNanos, System.nanoTime() - start);
+
+                    start = System.nanoTime();
+                    FileBackedTaskManager manager = FileBackedTaskManager.loadFromFile(file, settings);
+                    loadNanos = Math.min(loadNanos, System.nanoTime() - start);
+                    manager.close();
+                }
+                System.out.printf("%-6s %,d tasks, file %,d KB, %d threads: decode %,d ms, loadFromFile %,d ms%n",
+                        format, count, file.length() / 1024, threads, decodeNanos / 1_000_000,
+                        loadNanos / 1_000_000);
+                if (parallelism == 1) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private static List<Task> prepareTasks(int count) {
+        List<Task> tasks = new ArrayList<>(count);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        for (int i = 0; i < count; i++) {
+            Task task = new Task("Title " + (i % 100), "Description", Status.values()[i % 3],
+                    start.plusMinutes(i * 30L), Duration.ofMinutes(15));
+            task.setId(i + 1);
+            tasks.add(task);
+        }
+        return tasks;
+    }
+}
@@ -0,0 +1,48 @@
+import enums.Status;
+import enums.StorageType;
+import managers.InMemoryTaskManager;
+import tasks.Task;
+
+/**
+ * Сравнение занимаемой памяти хранилищ InMemoryTaskManager на 1 000 000 задач.
+ * Задачи создаются без времени, чтобы в замер не попадали индексы приоритетов и пересечений,
+ * а строки title/description общие для всех задач. Запуск: java StorageFootprintBenchmark [количество]
+ */
+public class StorageFootprintBenchmark {
+    private static final int DEFAULT_TASK_COUNT = 1_000_000;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_TASK_COUNT;
+        Task[] prepared = prepareTasks(count);
+        long tasksOnly = usedMemory();
+
+        for (StorageType type : StorageType.values()) {
+            InMemoryTaskManager manager = new InMemoryTaskManager(type);
+            long before = usedMemory();
+            for (Task task : prepared) {
+                manager.createTask(task);
+            }
+            long after = usedMemory();
+            System.out.printf("%-16s %,d tasks: storage %,d KB, %.1f bytes per entry%n",
+                    type, manager.getAllTasks().size(), (after - before) / 1024, (after - before) / (double) count);
+            manager.deleteTasks();
+        }
+        System.out.printf("Heap with prepared tasks: %,d KB%n", tasksOnly / 1024);
+    }
+
+    private static Task[] prepareTasks(int count) {
+        Task[] tasks = new Task[count];
+        for (int i = 0; i < count; i++) {
+            tasks[i] = new Task("Title", "Description", Status.NEW, null, null);
+        }
+        return tasks;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,6 @@
+package enums;
+
+public enum DescriptionStorage {
+    IN_MEMORY,
+    ON_DISK
+}
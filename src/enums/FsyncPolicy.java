@@ -0,0 +1,7 @@
+package enums;
+
+public enum FsyncPolicy {
+    EVERY_WRITE,
+    INTERVAL,
+    OS_MANAGED
+}
@@ -0,0 +1,8 @@
+package enums;
+
+public enum PersistenceMode {
+    SNAPSHOT,
+    JOURNAL,
+    INCREMENTAL,
+    SHARDED
+}
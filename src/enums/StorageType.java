@@ -0,0 +1,6 @@
+package enums;
+
+public enum StorageType {
+    HASH_MAP,
+    OPEN_ADDRESSING
+}
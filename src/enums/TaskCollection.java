@@ -0,0 +1,8 @@
+package enums;
+
+public enum TaskCollection {
+    TASKS,
+    EPICS,
+    SUBTASKS,
+    HISTORY
+}
@@ -1,30 +1,183 @@
 package http;
 
+import annotations.ClassInformation;
+import annotations.MethodInformation;
 import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonWriter;
 import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import enums.TaskCollection;
 import managers.TaskManager;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Общая часть обработчиков: отправка текстовых ответов и потоковая отправка JSON.
+ * JSON пишется через JsonWriter прямо в тело ответа с chunked кодированием, поэтому память
+ * на запрос не зависит от размера доски - строка со всем ответом не собирается.
+ * Тело идет через ResponseStream: ответы не меньше порога из ServerSettings сжимаются,
+ * если клиент принимает gzip или deflate.
+ * Списки отдаются с ETag из версий коллекций менеджера; повторный запрос с тем же If-None-Match
+ * получает 304 без обращения к хранилищу и сериализации. Сериализованный список хранится в ResponseCache
+ * под тем же ETag, и другие клиенты получают его одной записью массива байт, пока коллекции не изменятся.
+ */
+@ClassInformation("Базовый обработчик HTTP запросов")
+public abstract class BaseHandler implements HttpHandler {
+    private static final String JSON_CONTENT_TYPE = "application/json;charset=utf-8";
+    private static final int WRITE_BUFFER_SIZE = 8 * 1024;
 
-public abstract class BaseHandler {
     protected final TaskManager taskManager;
     protected final Gson gson;
+    private final ServerSettings settings;
+    /* Версии начинаются заново при каждом запуске, метка экземпляра не дает принять старый ETag за новый */
+    private final String instanceTag = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    private final ResponseCache responseCache = new ResponseCache();
 
-    public BaseHandler(TaskManager taskManager, Gson gson) {
+    public BaseHandler(TaskManager taskManager, Gson gson, ServerSettings settings) {
         this.taskManager = taskManager;
         this.gson = gson;
+        this.settings = settings;
+    }
+
+    @MethodInformation("GET списка, построенного из коллекций collections. Ответ 304, если If-None-Match совпадает" +
+            " с текущим ETag; иначе тело из кэша, а при промахе - value.get() и сериализация. Версии читаются" +
+            " до данных, поэтому ETag и запись кэша не новее ответа")
+    protected void sendCollection(HttpExchange exchange, Supplier<?> value, TaskCollection... collections)
+            throws IOException {
+        String etag = etagOf(collections);
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), etag)) {
+            exchange.sendResponseHeaders(304, -1);
+            exchange.close();
+            return;
+        }
+        if (!settings.isResponseCache()) {
+            sendJson(exchange, 200, value.get());
+            return;
+        }
+        ResponseCache.Entry cached = responseCache.get(etag);
+        if (cached == null) {
+            exchange.getResponseHeaders().set("Content-Type", JSON_CONTENT_TYPE);
+            ResponseCache.Capture capture = new ResponseCache.Capture(settings.getResponseCacheLimit(),
+                    () -> openBody(exchange, 200));
+            writeJson(capture, value.get());
+            if (capture.spilled()) {
+                return;
+            }
+            cached = responseCache.put(etag, capture.toByteArray());
+        }
+        sendCached(exchange, cached);
+    }
+
+    @MethodInformation("Отдает готовое тело из кэша одной записью. Сжатый вариант строится один раз на запись кэша")
+    private void sendCached(HttpExchange exchange, ResponseCache.Entry cached) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", JSON_CONTENT_TYPE);
+        byte[] body = cached.body();
+        String encoding = negotiateEncoding(exchange);
+        if (encoding != null && body.length > settings.getCompressionThreshold()) {
+            body = cached.encoded(encoding, settings.getCompressionLevel());
+            exchange.getResponseHeaders().set("Content-Encoding", encoding);
+        }
+        exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(body);
+        }
+        exchange.close();
+    }
+
+    ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    @MethodInformation("Слабый ETag: одно и то же содержимое может уходить сжатым и несжатым")
+    private String etagOf(TaskCollection... collections) {
+        StringBuilder etag = new StringBuilder("W/\"").append(instanceTag);
+        for (TaskCollection collection : collections) {
+            etag.append('-').append(taskManager.getVersion(collection));
+        }
+        return etag.append('"').toString();
+    }
+
+    @MethodInformation("Слабое сравнение ETag из If-None-Match: список через запятую или *")
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaque = etag.substring(2);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String value = candidate.trim();
+            String tag = value.startsWith("W/") ? value.substring(2) : value;
+            if (value.equals("*") || tag.equals(opaque)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @MethodInformation("Сериализует значение прямо в тело ответа. Длина заранее неизвестна: ответ меньше порога" +
+            " уходит целиком, больший - частями (chunked) по мере заполнения буфера записи")
+    protected void sendJson(HttpExchange exchange, int statusCode, Object value) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", JSON_CONTENT_TYPE);
+        writeJson(openBody(exchange, statusCode), value);
+    }
+
+    private void writeJson(OutputStream out, Object value) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
+        JsonWriter json = gson.newJsonWriter(writer);
+        try {
+            gson.toJson(value, value.getClass(), json);
+        } catch (JsonIOException e) {
+            /* Поток не закрывается: иначе клиент получил бы обрезанный JSON как завершенный ответ.
+               Если ответ еще в буфере ResponseStream, заголовки не ушли и обработчик может ответить 500 */
+            throw new IOException("Ошибка записи JSON в ответ", e);
+        }
+        json.close();
+    }
+
+    @MethodInformation("Отправляет текстовый ответ")
+    protected void sendResponse(HttpExchange exchange, int statusCode, String response) throws IOException {
+        sendText(exchange, response, statusCode);
     }
 
     protected void sendText(HttpExchange exchange, String text, int statusCode) throws IOException {
+        if (exchange.getResponseCode() != -1) {
+            /* Заголовки уже ушли (ошибка посреди потокового ответа): сменить статус нельзя,
+               исключение оборвет соединение, и клиент не примет часть тела за весь ответ */
+            throw new IOException("Ответ уже начат со статусом " + exchange.getResponseCode()
+                    + ", статус " + statusCode + " не отправлен");
+        }
+        if (statusCode >= 400) {
+            exchange.getResponseHeaders().remove("ETag"); /*ETag относится к списку, а не к ошибке*/
+        }
         byte[] response = text.getBytes(StandardCharsets.UTF_8);
-        exchange.getResponseHeaders().add("Content-Type", "application/json;charset=utf-8");
-        exchange.sendResponseHeaders(statusCode, response.length);
-        try (OutputStream os = exchange.getResponseBody()) {
+        exchange.getResponseHeaders().set("Content-Type", JSON_CONTENT_TYPE);
+        try (OutputStream os = openBody(exchange, statusCode)) {
             os.write(response);
         }
-        exchange.close();
+    }
+
+    @MethodInformation("Открывает тело ответа: сжатие выбирается по Accept-Encoding запроса, заголовки" +
+            " отправятся при первой записи сверх порога или при закрытии")
+    private OutputStream openBody(HttpExchange exchange, int statusCode) {
+        return new ResponseStream(exchange, statusCode, negotiateEncoding(exchange),
+                settings.getCompressionThreshold(), settings.getCompressionLevel());
+    }
+
+    @MethodInformation("Сжатие для ответа по Accept-Encoding или null, если оно выключено или не принимается")
+    private String negotiateEncoding(HttpExchange exchange) {
+        if (!settings.isResponseCompression()) {
+            return null;
+        }
+        exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+        return ResponseStream.negotiate(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
     }
 
     protected void sendError(HttpExchange exchange, String error, int statusCode) throws IOException {
@@ -35,4 +188,4 @@ public abstract class BaseHandler {
         }
         exchange.close();
     }
-}
\ No newline at end of file
+}
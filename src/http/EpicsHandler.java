@@ -5,23 +5,19 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpHandler;
 import enums.Status;
 import managers.TaskManager;
 import tasks.Epic;
+import tasks.EpicProgress;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.Optional;
 
-class EpicsHandler implements HttpHandler {
-    private final TaskManager taskManager;
-    private final Gson gson;
-
-    public EpicsHandler(TaskManager taskManager, Gson gson) {
-        this.taskManager = taskManager;
-        this.gson = gson;
+class EpicsHandler extends BaseHandler {
+    public EpicsHandler(TaskManager taskManager, Gson gson, ServerSettings settings) {
+        super(taskManager, gson, settings);
     }
 
     @Override
@@ -32,6 +28,8 @@ class EpicsHandler implements HttpHandler {
 
             if ("POST".equals(method)) {
                 handlePost(exchange);
+            } else if ("GET".equals(method) && path.endsWith("/progress")) {
+                handleProgress(exchange, exchange.getRequestURI().getQuery());
             } else {
                 sendResponse(exchange, 405, "Method Not Allowed");
             }
@@ -61,18 +59,39 @@ class EpicsHandler implements HttpHandler {
             Epic epic = new Epic(title, description, status, null, null);
             Epic createdEpic = taskManager.createEpic(epic);
 
-            String response = gson.toJson(createdEpic);
-            sendResponse(exchange, 201, response);
+            sendJson(exchange, 201, createdEpic);
         } catch (Exception e) {
             sendResponse(exchange, 400, "Invalid request body");
         }
     }
 
-    private void sendResponse(HttpExchange exchange, int statusCode, String response) throws IOException {
-        exchange.getResponseHeaders().set("Content-Type", "application/json");
-        exchange.sendResponseHeaders(statusCode, response.getBytes().length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(response.getBytes());
+    private void handleProgress(HttpExchange exchange, String query) throws IOException {
+        Optional<Integer> epicId = parseIdFromQuery(query);
+        if (epicId.isEmpty()) {
+            sendResponse(exchange, 400, "Invalid epic id");
+            return;
+        }
+
+        EpicProgress progress = taskManager.getEpicProgress(epicId.get());
+        if (progress == null) {
+            sendResponse(exchange, 404, "Epic not found");
+        } else {
+            sendJson(exchange, 200, progress);
+        }
+    }
+
+    private Optional<Integer> parseIdFromQuery(String query) {
+        if (query == null) {
+            return Optional.empty();
+        }
+        try {
+            String[] parts = query.split("=");
+            if (parts.length != 2 || !parts[0].equals("id")) {
+                return Optional.empty();
+            }
+            return Optional.of(Integer.parseInt(parts[1]));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
         }
     }
 }
\ No newline at end of file
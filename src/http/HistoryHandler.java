@@ -2,19 +2,14 @@ package http;
 
 import com.google.gson.Gson;
 import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpHandler;
+import enums.TaskCollection;
 import managers.TaskManager;
 
 import java.io.IOException;
-import java.io.OutputStream;
 
-class HistoryHandler implements HttpHandler {
-    private final TaskManager taskManager;
-    private final Gson gson;
-
-    public HistoryHandler(TaskManager taskManager, Gson gson) {
-        this.taskManager = taskManager;
-        this.gson = gson;
+class HistoryHandler extends BaseHandler {
+    public HistoryHandler(TaskManager taskManager, Gson gson, ServerSettings settings) {
+        super(taskManager, gson, settings);
     }
 
     @Override
@@ -25,18 +20,11 @@ class HistoryHandler implements HttpHandler {
         }
 
         try {
-            String historyJson = gson.toJson(taskManager.getHistory());
-            sendResponse(exchange, 200, historyJson);
+            /* В истории те же объекты, что и в коллекциях: эпик меняется вместе с подзадачами */
+            sendCollection(exchange, taskManager::getHistory, TaskCollection.HISTORY, TaskCollection.TASKS,
+                    TaskCollection.EPICS, TaskCollection.SUBTASKS);
         } catch (Exception e) {
             sendResponse(exchange, 500, "Internal Server Error");
         }
     }
-
-    private void sendResponse(HttpExchange exchange, int statusCode, String response) throws IOException {
-        exchange.getResponseHeaders().set("Content-Type", "application/json");
-        exchange.sendResponseHeaders(statusCode, response.getBytes().length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(response.getBytes());
-        }
-    }
 }
\ No newline at end of file
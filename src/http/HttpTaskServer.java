@@ -1,61 +1,146 @@
 package http;
 
+import annotations.ClassInformation;
+import annotations.MethodInformation;
 import com.google.gson.*;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
 import com.sun.net.httpserver.HttpServer;
+import enums.ExecutorMode;
 import managers.Managers;
 import managers.TaskManager;
 import enums.Status;
 import tasks.*;
+import util.IntSortedSet;
 
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.net.InetSocketAddress;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * HTTP API менеджера задач. Запросы выполняются в потоках, выбранных ExecutorMode: в потоке-диспетчере
+ * HttpServer (как раньше), в виртуальном потоке на запрос или в ограниченном пуле платформенных потоков.
+ * Когда запросы идут из нескольких потоков, непотокобезопасный менеджер оборачивается в SynchronizedTaskManager.
+ */
+@ClassInformation("HTTP сервер менеджера задач")
 public class HttpTaskServer {
-    private static final int PORT = 8080;
     private final HttpServer server;
     private final TaskManager taskManager;
+    private final ServerSettings settings;
+    private final ExecutorService executor;
     private final Gson gson;
+    private final Map<String, BaseHandler> handlers = new LinkedHashMap<>();
 
     public HttpTaskServer(TaskManager taskManager) throws IOException {
-        this.taskManager = taskManager;
-        this.gson = createCustomGson();
-        this.server = HttpServer.create(new InetSocketAddress(PORT), 0);
+        this(taskManager, ServerSettings.defaults());
+    }
+
+    public HttpTaskServer(TaskManager taskManager, ServerSettings settings) throws IOException {
+        this.settings = settings;
+        this.taskManager = settings.getExecutorMode() == ExecutorMode.DISPATCHER
+                ? taskManager
+                : Managers.threadSafe(taskManager);
+        this.gson = createCustomGson(settings);
+        this.server = HttpServer.create(new InetSocketAddress(settings.getPort()), settings.getBacklog());
+        this.executor = createExecutor(settings);
+        server.setExecutor(executor);
         configureEndpoints();
     }
 
-    private Gson createCustomGson() {
-        return new GsonBuilder()
+    @MethodInformation("Создает исполнителя запросов. Переполненный ограниченный пул выполняет запрос в потоке" +
+            " диспетчера: тот перестает принимать соединения, и они ждут в очереди TCP (backlog)")
+    private static ExecutorService createExecutor(ServerSettings settings) {
+        return switch (settings.getExecutorMode()) {
+            case DISPATCHER -> null;
+            case VIRTUAL_THREADS -> Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("http-task-", 0).factory());
+            case BOUNDED_POOL -> {
+                AtomicInteger threads = new AtomicInteger();
+                yield new ThreadPoolExecutor(settings.getPoolSize(), settings.getPoolSize(), 0L, TimeUnit.MILLISECONDS,
+                        new ArrayBlockingQueue<>(settings.getQueueCapacity()), runnable -> {
+                            Thread thread = new Thread(runnable, "http-task-" + threads.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }, new ThreadPoolExecutor.CallerRunsPolicy());
+            }
+        };
+    }
+
+    @MethodInformation("Gson для запросов и ответов. Отступы в JSON только с ServerSettings.withPrettyPrinting:" +
+            " на больших списках они занимают заметную часть ответа")
+    private static Gson createCustomGson(ServerSettings settings) {
+        GsonBuilder builder = new GsonBuilder()
+                .registerTypeAdapterFactory(new DeferredDescriptionAdapterFactory())
                 .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter())
                 .registerTypeAdapter(Duration.class, new DurationAdapter())
                 .registerTypeAdapter(Status.class, new StatusAdapter())
                 .registerTypeAdapter(Task.class, new TaskInterfaceAdapter())
                 .registerTypeAdapter(Epic.class, new EpicInterfaceAdapter())
                 .registerTypeAdapter(Subtask.class, new SubtaskInterfaceAdapter())
-                .setPrettyPrinting()
-                .create();
+                .registerTypeAdapter(IntSortedSet.class, new IntSortedSetAdapter());
+        if (settings.isPrettyPrinting()) {
+            builder.setPrettyPrinting();
+        }
+        return builder.create();
     }
 
     private void configureEndpoints() {
-        server.createContext("/tasks", new TaskHandler(taskManager, gson));
-        server.createContext("/subtasks", new SubtaskHandler(taskManager, gson));
-        server.createContext("/epics", new EpicsHandler(taskManager, gson));
-        server.createContext("/history", new HistoryHandler(taskManager, gson));
-        server.createContext("/prioritized", new PrioritizedHandler(taskManager, gson));
+        handlers.put("/tasks", new TaskHandler(taskManager, gson, settings));
+        handlers.put("/subtasks", new SubtaskHandler(taskManager, gson, settings));
+        handlers.put("/epics", new EpicsHandler(taskManager, gson, settings));
+        handlers.put("/history", new HistoryHandler(taskManager, gson, settings));
+        handlers.put("/prioritized", new PrioritizedHandler(taskManager, gson, settings));
+        handlers.forEach(server::createContext);
     }
 
     public void start() {
         server.start();
-        System.out.println("HTTP Task Server started on port " + PORT);
+        System.out.println("HTTP Task Server started on port " + settings.getPort());
     }
 
     public void stop() {
         server.stop(0);
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
         System.out.println("HTTP Task Server stopped");
     }
 
+    @MethodInformation("Порт, на котором слушает сервер. При порте 0 в настройках его выбирает система")
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @MethodInformation("Сколько запросов списков обслужено из кэша сериализованных ответов")
+    public long getResponseCacheHits() {
+        return handlers.values().stream().mapToLong(handler -> handler.getResponseCache().getHits()).sum();
+    }
+
+    @MethodInformation("Сколько запросов списков потребовали чтения менеджера и сериализации")
+    public long getResponseCacheMisses() {
+        return handlers.values().stream().mapToLong(handler -> handler.getResponseCache().getMisses()).sum();
+    }
+
+    public TaskManager getTaskManager() {
+        return taskManager;
+    }
+
     public Gson getGson() {
         return gson;
     }
@@ -109,6 +194,60 @@ public class HttpTaskServer {
         }
     }
 
+    private static class IntSortedSetAdapter implements JsonSerializer<IntSortedSet>,
+            JsonDeserializer<IntSortedSet> {
+        @Override
+        public JsonElement serialize(IntSortedSet src, Type typeOfSrc,
+                                     JsonSerializationContext context) {
+            JsonArray array = new JsonArray(src.size());
+            src.forEach(array::add);
+            return array;
+        }
+
+        @Override
+        public IntSortedSet deserialize(JsonElement json, Type typeOfT,
+                                        JsonDeserializationContext context) throws JsonParseException {
+            IntSortedSet set = new IntSortedSet();
+            for (JsonElement element : json.getAsJsonArray()) {
+                set.add(element.getAsInt());
+            }
+            return set;
+        }
+    }
+
+    /**
+     * Описание, вынесенное на диск (DescriptionStorage.ON_DISK), не лежит в поле задачи, и рефлексивная
+     * сериализация его бы пропустила. Для таких задач описание подставляется через getDescription().
+     * Фабрика регистрируется первой, чтобы стоять перед адаптерами Task, Epic и Subtask.
+     */
+    private static class DeferredDescriptionAdapterFactory implements TypeAdapterFactory {
+        @Override
+        public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+            if (!Task.class.isAssignableFrom(type.getRawType())) {
+                return null;
+            }
+            TypeAdapter<T> delegate = gson.getDelegateAdapter(this, type);
+            TypeAdapter<JsonElement> elements = gson.getAdapter(JsonElement.class);
+            return new TypeAdapter<>() {
+                @Override
+                public void write(JsonWriter out, T value) throws IOException {
+                    if (!(value instanceof Task task) || !task.isDescriptionDeferred()) {
+                        delegate.write(out, value);
+                        return;
+                    }
+                    JsonObject tree = delegate.toJsonTree(value).getAsJsonObject();
+                    tree.addProperty("description", task.getDescription());
+                    elements.write(out, tree);
+                }
+
+                @Override
+                public T read(JsonReader in) throws IOException {
+                    return delegate.read(in);
+                }
+            };
+        }
+    }
+
     private static class TaskInterfaceAdapter implements JsonDeserializer<Task> {
         @Override
         public Task deserialize(JsonElement json, Type typeOfT,
@@ -166,7 +305,7 @@ public class HttpTaskServer {
     }
 
     public static void main(String[] args) throws IOException {
-        TaskManager manager = Managers.getDefault();
+        TaskManager manager = Managers.getConcurrent();
         HttpTaskServer server = new HttpTaskServer(manager);
         server.start();
 
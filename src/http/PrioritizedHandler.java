@@ -2,19 +2,14 @@ package http;
 
 import com.google.gson.Gson;
 import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpHandler;
+import enums.TaskCollection;
 import managers.TaskManager;
 
 import java.io.IOException;
-import java.io.OutputStream;
 
-class PrioritizedHandler implements HttpHandler {
-    private final TaskManager taskManager;
-    private final Gson gson;
-
-    public PrioritizedHandler(TaskManager taskManager, Gson gson) {
-        this.taskManager = taskManager;
-        this.gson = gson;
+class PrioritizedHandler extends BaseHandler {
+    public PrioritizedHandler(TaskManager taskManager, Gson gson, ServerSettings settings) {
+        super(taskManager, gson, settings);
     }
 
     @Override
@@ -25,18 +20,9 @@ class PrioritizedHandler implements HttpHandler {
         }
 
         try {
-            String prioritizedTasks = gson.toJson(taskManager.getPrioritizedTasks(taskManager.getAllTasks()));
-            sendResponse(exchange, 200, prioritizedTasks);
+            sendCollection(exchange, taskManager::getPrioritizedTasks, TaskCollection.TASKS);
         } catch (Exception e) {
             sendResponse(exchange, 500, "Internal Server Error");
         }
     }
-
-    private void sendResponse(HttpExchange exchange, int statusCode, String response) throws IOException {
-        exchange.getResponseHeaders().set("Content-Type", "application/json");
-        exchange.sendResponseHeaders(statusCode, response.getBytes().length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(response.getBytes());
-        }
-    }
 }
\ No newline at end of file
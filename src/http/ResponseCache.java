@@ -0,0 +1,162 @@
+package http;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Кэш последнего сериализованного ответа одной точки доступа. Запись привязана к ETag, который строится
+ * из версий коллекций менеджера: любое изменение коллекции меняет ETag, и запись перестает совпадать,
+ * поэтому отдельной инвалидации не нужно. Сжатые варианты тела строятся при первом запросе с нужным
+ * Accept-Encoding и хранятся в той же записи.
+ * Конкурентные промахи сериализуют ответ независимо; запись заменяется последним из них - это безопасно,
+ * так как попаданием считается только точное совпадение ETag.
+ */
+@ClassInformation("Кэш сериализованного ответа точки доступа")
+class ResponseCache {
+    private volatile Entry entry;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @MethodInformation("Запись для ETag или null. Считает попадания и промахи")
+    Entry get(String etag) {
+        Entry current = entry;
+        if (current != null && current.etag.equals(etag)) {
+            hits.incrementAndGet();
+            return current;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    Entry put(String etag, byte[] body) {
+        Entry created = new Entry(etag, body);
+        entry = created;
+        return created;
+    }
+
+    long getHits() {
+        return hits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Тело ответа для одного ETag: несжатое и лениво построенные gzip и deflate варианты.
+     */
+    static final class Entry {
+        private final String etag;
+        private final byte[] body;
+        private volatile byte[] gzip;
+        private volatile byte[] deflate;
+
+        private Entry(String etag, byte[] body) {
+            this.etag = etag;
+            this.body = body;
+        }
+
+        byte[] body() {
+            return body;
+        }
+
+        @MethodInformation("Тело в кодировке ResponseStream.GZIP или DEFLATE. Гонка при первом построении" +
+                " безопасна: оба потока получат одинаковые байты")
+        byte[] encoded(String encoding, int level) throws IOException {
+            if (ResponseStream.GZIP.equals(encoding)) {
+                byte[] result = gzip;
+                if (result == null) {
+                    result = compress(encoding, level);
+                    gzip = result;
+                }
+                return result;
+            }
+            byte[] result = deflate;
+            if (result == null) {
+                result = compress(encoding, level);
+                deflate = result;
+            }
+            return result;
+        }
+
+        private byte[] compress(String encoding, int level) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, body.length / 4));
+            try (OutputStream compressed = ResponseStream.compressing(out, encoding, level)) {
+                compressed.write(body);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Приемник сериализации при промахе. Копит тело в памяти до limit байт; если ответ больше,
+     * открывает настоящее тело ответа через opener, переписывает в него накопленное и дальше пишет
+     * напрямую - такой ответ не кэшируется, а память на запрос остается ограниченной.
+     */
+    static final class Capture extends OutputStream {
+        private final int limit;
+        private final Supplier<OutputStream> opener;
+        private byte[] buffer = new byte[1024];
+        private int count;
+        private OutputStream spill;
+
+        Capture(int limit, Supplier<OutputStream> opener) {
+            this.limit = limit;
+            this.opener = opener;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (spill == null && count + length > limit) {
+                spill = opener.get();
+                spill.write(buffer, 0, count);
+                buffer = null;
+            }
+            if (spill != null) {
+                spill.write(bytes, offset, length);
+                return;
+            }
+            if (count + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.min(limit,
+                        Math.max(count + length, buffer.length * 2)));
+            }
+            System.arraycopy(bytes, offset, buffer, count, length);
+            count += length;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (spill != null) {
+                spill.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (spill != null) {
+                spill.close();
+            }
+        }
+
+        @MethodInformation("Ответ уже ушел клиенту напрямую и в кэш не попадет")
+        boolean spilled() {
+            return spill != null;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, count);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package http;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Тело ответа со сжатием по Accept-Encoding. Первые threshold байт копятся в буфере: если ответ в них
+ * уместился, он уходит несжатым и с известной длиной. Иначе отправляются заголовки с Content-Encoding,
+ * а накопленное начало и весь остаток идут через gzip или deflate частями (chunked).
+ * Заголовки отправляются только при переполнении буфера или в close(), поэтому до этого момента
+ * обработчик еще может ответить другим статусом.
+ */
+@ClassInformation("Тело HTTP ответа со сжатием больших ответов")
+class ResponseStream extends OutputStream {
+    static final String GZIP = "gzip";
+    static final String DEFLATE = "deflate";
+
+    private static final int WRITE_BUFFER_SIZE = 8 * 1024;
+
+    private final HttpExchange exchange;
+    private final int statusCode;
+    private final String encoding;
+    private final int threshold;
+    private final int level;
+    private byte[] buffer;
+    private int count;
+    private OutputStream body;
+    private boolean closed;
+
+    /**
+     * encoding - сжатие, выбранное negotiate(), или null: тогда ответ больше порога уходит частями без сжатия.
+     */
+    ResponseStream(HttpExchange exchange, int statusCode, String encoding, int threshold, int level) {
+        this.exchange = exchange;
+        this.statusCode = statusCode;
+        this.encoding = encoding;
+        this.threshold = threshold;
+        this.level = level;
+        this.buffer = new byte[Math.min(threshold, WRITE_BUFFER_SIZE)];
+    }
+
+    @MethodInformation("Выбирает сжатие по заголовку Accept-Encoding: gzip, затем deflate. Кодировки с q=0" +
+            " не принимаются. null - клиент не принимает ни одну из них")
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        boolean gzip = false;
+        boolean deflate = false;
+        for (String entry : acceptEncoding.split(",")) {
+            String[] parts = entry.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            if (!accepted(parts)) {
+                continue;
+            }
+            gzip |= coding.equals(GZIP) || coding.equals("*");
+            deflate |= coding.equals(DEFLATE);
+        }
+        return gzip ? GZIP : deflate ? DEFLATE : null;
+    }
+
+    private static boolean accepted(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2)) > 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @MethodInformation("Сжимающий поток поверх out для кодировки GZIP или DEFLATE с заданным уровнем")
+    static OutputStream compressing(OutputStream out, String encoding, int level) throws IOException {
+        if (GZIP.equals(encoding)) {
+            return new GZIPOutputStream(out, WRITE_BUFFER_SIZE) {
+                {
+                    def.setLevel(level);
+                }
+            };
+        }
+        return new DeflaterOutputStream(out, new Deflater(level), WRITE_BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    def.end();
+                }
+            }
+        };
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Тело ответа уже закрыто");
+        }
+        if (body == null && count + length <= threshold) {
+            if (count + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.min(threshold, Math.max(count + length, buffer.length * 2)));
+            }
+            System.arraycopy(bytes, offset, buffer, count, length);
+            count += length;
+            return;
+        }
+        if (body == null) {
+            startChunked();
+        }
+        body.write(bytes, offset, length);
+    }
+
+    @MethodInformation("Пока ответ помещается в буфер, заголовки не отправлены и flush ничего не делает")
+    @Override
+    public void flush() throws IOException {
+        if (body != null) {
+            body.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (body == null) {
+            exchange.sendResponseHeaders(statusCode, count == 0 ? -1 : count);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(buffer, 0, count);
+            }
+        } else {
+            body.close();
+        }
+        exchange.close();
+    }
+
+    private void startChunked() throws IOException {
+        if (encoding != null) {
+            exchange.getResponseHeaders().set("Content-Encoding", encoding);
+        }
+        exchange.sendResponseHeaders(statusCode, 0);
+        body = encoding == null
+                ? exchange.getResponseBody()
+                : compressing(exchange.getResponseBody(), encoding, level);
+        body.write(buffer, 0, count);
+        buffer = null;
+    }
+}
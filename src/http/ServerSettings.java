@@ -0,0 +1,151 @@
+package http;
+
+import annotations.ClassInformation;
+import enums.ExecutorMode;
+
+import java.util.zip.Deflater;
+
+/**
+ * Настройки HttpTaskServer: порт, в каких потоках выполняются запросы и длина очереди соединений TCP.
+ * По умолчанию каждый запрос выполняется в своем виртуальном потоке, JSON пишется без отступов,
+ * а ответы от compressionThreshold байт сжимаются gzip или deflate, если клиент их принимает.
+ * Сериализованные списки до responseCacheLimit байт кэшируются до изменения коллекций менеджера.
+ */
+@ClassInformation("Настройки HTTP сервера задач")
+public class ServerSettings {
+    private int port = 8080;
+    private ExecutorMode executorMode = ExecutorMode.VIRTUAL_THREADS;
+    private int poolSize = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private int queueCapacity = 1_024;
+    private int backlog = 0;
+    private boolean prettyPrinting = false;
+    private boolean responseCompression = true;
+    private int compressionThreshold = 1_024;
+    private int compressionLevel = Deflater.BEST_SPEED;
+    private boolean responseCache = true;
+    private int responseCacheLimit = 4 * 1024 * 1024;
+
+    public static ServerSettings defaults() {
+        return new ServerSettings();
+    }
+
+    public ServerSettings withPort(int port) {
+        if (port < 0 || port > 65_535) {
+            throw new IllegalArgumentException("Port must be between 0 and 65535.");
+        }
+        this.port = port;
+        return this;
+    }
+
+    public ServerSettings withExecutorMode(ExecutorMode executorMode) {
+        this.executorMode = executorMode;
+        return this;
+    }
+
+    public ServerSettings withPoolSize(int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("Pool size must be positive.");
+        }
+        this.poolSize = poolSize;
+        return this;
+    }
+
+    public ServerSettings withQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Queue capacity must be positive.");
+        }
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    public ServerSettings withBacklog(int backlog) {
+        if (backlog < 0) {
+            throw new IllegalArgumentException("Backlog must not be negative.");
+        }
+        this.backlog = backlog;
+        return this;
+    }
+
+    public ServerSettings withPrettyPrinting(boolean prettyPrinting) {
+        this.prettyPrinting = prettyPrinting;
+        return this;
+    }
+
+    public ServerSettings withResponseCompression(boolean responseCompression) {
+        this.responseCompression = responseCompression;
+        return this;
+    }
+
+    public ServerSettings withCompressionThreshold(int compressionThreshold) {
+        if (compressionThreshold < 0) {
+            throw new IllegalArgumentException("Compression threshold must not be negative.");
+        }
+        this.compressionThreshold = compressionThreshold;
+        return this;
+    }
+
+    public ServerSettings withCompressionLevel(int compressionLevel) {
+        if (compressionLevel < Deflater.BEST_SPEED || compressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be between 1 and 9.");
+        }
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    public ServerSettings withResponseCache(boolean responseCache) {
+        this.responseCache = responseCache;
+        return this;
+    }
+
+    public ServerSettings withResponseCacheLimit(int responseCacheLimit) {
+        if (responseCacheLimit < 0) {
+            throw new IllegalArgumentException("Response cache limit must not be negative.");
+        }
+        this.responseCacheLimit = responseCacheLimit;
+        return this;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public ExecutorMode getExecutorMode() {
+        return executorMode;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    public boolean isPrettyPrinting() {
+        return prettyPrinting;
+    }
+
+    public boolean isResponseCompression() {
+        return responseCompression;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public boolean isResponseCache() {
+        return responseCache;
+    }
+
+    public int getResponseCacheLimit() {
+        return responseCacheLimit;
+    }
+}
@@ -2,23 +2,18 @@ package http;
 
 import com.google.gson.Gson;
 import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpHandler;
+import enums.TaskCollection;
 import managers.TaskManager;
 import tasks.Subtask;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 
-class SubtaskHandler implements HttpHandler {
-    private final TaskManager taskManager;
-    private final Gson gson;
-
-    public SubtaskHandler(TaskManager taskManager, Gson gson) {
-        this.taskManager = taskManager;
-        this.gson = gson;
+class SubtaskHandler extends BaseHandler {
+    public SubtaskHandler(TaskManager taskManager, Gson gson, ServerSettings settings) {
+        super(taskManager, gson, settings);
     }
 
     @Override
@@ -47,7 +42,7 @@ class SubtaskHandler implements HttpHandler {
 
     private void handleGet(HttpExchange exchange, String query) throws IOException {
         if (query == null) {
-            sendResponse(exchange, 200, gson.toJson(taskManager.getAllSubtasks()));
+            sendCollection(exchange, taskManager::getAllSubtasks, TaskCollection.SUBTASKS);
         } else {
             Optional<Integer> subtaskId = parseIdFromQuery(query);
             if (subtaskId.isEmpty()) {
@@ -59,7 +54,7 @@ class SubtaskHandler implements HttpHandler {
             if (subtask == null) {
                 sendResponse(exchange, 404, "Subtask not found");
             } else {
-                sendResponse(exchange, 200, gson.toJson(subtask));
+                sendJson(exchange, 200, subtask);
             }
         }
     }
@@ -110,12 +105,4 @@ class SubtaskHandler implements HttpHandler {
             return Optional.empty();
         }
     }
-
-    private void sendResponse(HttpExchange exchange, int statusCode, String response) throws IOException {
-        exchange.getResponseHeaders().set("Content-Type", "application/json");
-        exchange.sendResponseHeaders(statusCode, response.getBytes().length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(response.getBytes());
-        }
-    }
 }
\ No newline at end of file
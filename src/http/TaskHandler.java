@@ -2,23 +2,18 @@ package http;
 
 import com.google.gson.Gson;
 import com.sun.net.httpserver.HttpExchange;
-import com.sun.net.httpserver.HttpHandler;
+import enums.TaskCollection;
 import managers.TaskManager;
 import tasks.Task;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 
-class TaskHandler implements HttpHandler {
-    private final TaskManager taskManager;
-    private final Gson gson;
-
-    public TaskHandler(TaskManager taskManager, Gson gson) {
-        this.taskManager = taskManager;
-        this.gson = gson;
+class TaskHandler extends BaseHandler {
+    public TaskHandler(TaskManager taskManager, Gson gson, ServerSettings settings) {
+        super(taskManager, gson, settings);
     }
 
     @Override
@@ -47,9 +42,7 @@ class TaskHandler implements HttpHandler {
 
     private void handleGet(HttpExchange exchange, String query) throws IOException {
         if (query == null) {
-
-            String response = gson.toJson(taskManager.getAllTasks());
-            sendResponse(exchange, 200, response);
+            sendCollection(exchange, taskManager::getAllTasks, TaskCollection.TASKS);
         } else {
 
             Optional<Integer> taskId = parseIdFromQuery(query);
@@ -62,7 +55,7 @@ class TaskHandler implements HttpHandler {
             if (task == null) {
                 sendResponse(exchange, 404, "Task not found");
             } else {
-                sendResponse(exchange, 200, gson.toJson(task));
+                sendJson(exchange, 200, task);
             }
         }
     }
@@ -113,12 +106,4 @@ class TaskHandler implements HttpHandler {
             return Optional.empty();
         }
     }
-
-    private void sendResponse(HttpExchange exchange, int statusCode, String response) throws IOException {
-        exchange.getResponseHeaders().set("Content-Type", "application/json");
-        exchange.sendResponseHeaders(statusCode, response.getBytes().length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(response.getBytes());
-        }
-    }
 }
\ No newline at end of file
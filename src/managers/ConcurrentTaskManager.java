@@ -0,0 +1,554 @@
+package managers;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+import enums.TaskCollection;
+import tasks.Epic;
+import tasks.EpicProgress;
+import tasks.Subtask;
+import tasks.Task;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Потокобезопасная реализация TaskManager. Хранилища - ConcurrentHashMap, id выдаются через AtomicInteger.
+ * Все изменения эпика и его подзадач выполняются под блокировкой полосы (stripe), выбираемой по id эпика,
+ * поэтому запись подзадач разных эпиков не конкурирует, а статус и границы времени эпика остаются согласованными.
+ * Индекс пересечений подзадач разбит по тем же полосам, индекс Task защищен отдельной блокировкой.
+ * Эпик меняется при каждом изменении его подзадач, поэтому чтения (get*, getAllEpics, getHistory) отдают
+ * копии эпиков, снятые под блокировкой их полосы, а не сами эпики.
+ */
+@ClassInformation("Потокобезопасный менеджер задач с полосатыми блокировками")
+public class ConcurrentTaskManager implements TaskManager {
+    private static final int DEFAULT_STRIPES = 64;
+
+    private final Map<Integer, Task> tasks = new ConcurrentHashMap<>();
+    private final Map<Integer, Epic> epics = new ConcurrentHashMap<>();
+    private final Map<Integer, Subtask> subtasks = new ConcurrentHashMap<>();
+    private final HistoryManager historyManager = Managers.getDefaultHistory();
+    private final AtomicInteger idCounter = new AtomicInteger(1);
+    private final ModificationVersions versions = new ModificationVersions();
+
+    private final ReentrantLock taskLock = new ReentrantLock();
+    private final TaskIntervalTree taskIntervals = new TaskIntervalTree();
+    private final NavigableSet<Task> prioritizedTasks =
+            new ConcurrentSkipListSet<>(InMemoryTaskManager.PRIORITY_ORDER);
+    private final NavigableSet<Task> prioritizedTasksView = Collections.unmodifiableNavigableSet(prioritizedTasks);
+
+    private final ReentrantLock[] epicLocks;
+    private final TaskIntervalTree[] subtaskIntervals;
+    private final int stripeMask;
+
+    public ConcurrentTaskManager() {
+        this(DEFAULT_STRIPES);
+    }
+
+    public ConcurrentTaskManager(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.epicLocks = new ReentrantLock[size];
+        this.subtaskIntervals = new TaskIntervalTree[size];
+        for (int i = 0; i < size; i++) {
+            epicLocks[i] = new ReentrantLock();
+            subtaskIntervals[i] = new TaskIntervalTree();
+        }
+        this.stripeMask = size - 1;
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    @Override
+    @MethodInformation("Создание Task")
+    public Task createTask(Task task) {
+        task.setId(idCounter.getAndIncrement());
+        taskLock.lock();
+        try {
+            tasks.put(task.getId(), task);
+            indexTask(task);
+        } finally {
+            taskLock.unlock();
+        }
+        versions.bump(TaskCollection.TASKS);
+        return task;
+    }
+
+    @Override
+    @MethodInformation("Создание Epic")
+    public Epic createEpic(Epic epic) {
+        epic.setId(idCounter.getAndIncrement());
+        epics.put(epic.getId(), epic);
+        versions.bump(TaskCollection.EPICS);
+        return epic;
+    }
+
+    @Override
+    @MethodInformation("Создание SubTask")
+    public Subtask createSubtask(Subtask subtask) {
+        int epicId = subtask.getEpicId();
+        ReentrantLock lock = lockFor(epicId);
+        lock.lock();
+        try {
+            Epic epic = epics.get(epicId);
+            if (epic == null) {
+                throw new IllegalArgumentException("tasks.Epic with the given ID does not exist.");
+            }
+            subtask.setId(idCounter.getAndIncrement());
+            subtasks.put(subtask.getId(), subtask);
+            intervalsFor(epicId).add(subtask);
+            epic.attachSubtask(subtask);
+        } finally {
+            lock.unlock();
+        }
+        bumpSubtasks();
+        return subtask;
+    }
+
+    @Override
+    @MethodInformation("Получение Task по id")
+    public Task getTaskById(int id) {
+        return addToHistory(tasks, id);
+    }
+
+    @Override
+    @MethodInformation("Получение Epic по id")
+    public Epic getEpicById(int id) {
+        Epic epic = addToHistory(epics, id);
+        return epic == null ? null : copyOf(epic);
+    }
+
+    @Override
+    @MethodInformation("Получение SubTask по id")
+    public Subtask getSubtaskById(int id) {
+        return addToHistory(subtasks, id);
+    }
+
+    @Override
+    @MethodInformation("Обновление Task")
+    public void updateTask(Task task) {
+        taskLock.lock();
+        try {
+            unindexTask(tasks.put(task.getId(), task));
+            indexTask(task);
+        } finally {
+            taskLock.unlock();
+        }
+        versions.bump(TaskCollection.TASKS);
+    }
+
+    @Override
+    @MethodInformation("Обновление Epic")
+    public void updateEpic(Epic epic) {
+        ReentrantLock lock = lockFor(epic.getId());
+        lock.lock();
+        try {
+            Epic oldEpic = epics.put(epic.getId(), epic);
+            if (oldEpic != null && oldEpic != epic) {
+                epic.takeSubtasksFrom(oldEpic);
+            }
+            epic.refreshStatus();
+        } finally {
+            lock.unlock();
+        }
+        versions.bump(TaskCollection.EPICS);
+    }
+
+    @Override
+    @MethodInformation("Обновление SubTask")
+    public void updateSubtask(Subtask subtask) {
+        while (true) {
+            Subtask current = subtasks.get(subtask.getId());
+            int oldEpicId = current == null ? subtask.getEpicId() : current.getEpicId();
+            lockPair(oldEpicId, subtask.getEpicId());
+            try {
+                if (subtasks.get(subtask.getId()) != current) {
+                    continue; /*Подзадачу успели перенести в другой эпик - повторяю с актуальными блокировками*/
+                }
+                replaceSubtask(current, subtask);
+                break;
+            } finally {
+                unlockPair(oldEpicId, subtask.getEpicId());
+            }
+        }
+        bumpSubtasks();
+    }
+
+    @Override
+    @MethodInformation("Удаление Task по id")
+    public void removeTask(int id) {
+        taskLock.lock();
+        try {
+            unindexTask(removeWithHistory(tasks, id));
+        } finally {
+            taskLock.unlock();
+        }
+        versions.bump(TaskCollection.TASKS);
+        versions.bump(TaskCollection.HISTORY);
+    }
+
+    @Override
+    @MethodInformation("Удаление Epic по id")
+    public void removeEpic(int id) {
+        ReentrantLock lock = lockFor(id);
+        lock.lock();
+        try {
+            Epic epic = removeWithHistory(epics, id);
+            if (epic != null) {
+                TaskIntervalTree intervals = intervalsFor(id);
+                epic.forEachSubtaskId(subtaskId -> intervals.remove(removeWithHistory(subtasks, subtaskId)));
+            }
+        } finally {
+            lock.unlock();
+        }
+        bumpSubtasks();
+        versions.bump(TaskCollection.HISTORY);
+    }
+
+    @Override
+    @MethodInformation("Удаление SubTask по id")
+    public void removeSubtask(int id) {
+        while (true) {
+            Subtask current = subtasks.get(id);
+            if (current == null) {
+                synchronized (historyManager) { /*Подзадачи нет, но ее id мог остаться в истории*/
+                    historyManager.remove(id);
+                }
+                break;
+            }
+            ReentrantLock lock = lockFor(current.getEpicId());
+            lock.lock();
+            try {
+                if (subtasks.get(id) != current) {
+                    continue;
+                }
+                removeWithHistory(subtasks, id);
+                intervalsFor(current.getEpicId()).remove(current);
+                Epic epic = epics.get(current.getEpicId());
+                if (epic != null) {
+                    epic.detachSubtask(current, subtasks::get);
+                }
+                break;
+            } finally {
+                lock.unlock();
+            }
+        }
+        bumpSubtasks();
+        versions.bump(TaskCollection.HISTORY);
+    }
+
+    @Override
+    @MethodInformation("Получение листа Task")
+    public List<Task> getAllTasks() {
+        return new ArrayList<>(tasks.values());
+    }
+
+    @Override
+    @MethodInformation("Получение листа Epic")
+    public List<Epic> getAllEpics() {
+        List<Epic> copies = new ArrayList<>(epics.size());
+        for (Epic epic : epics.values()) {
+            copies.add(copyOf(epic));
+        }
+        return copies;
+    }
+
+    @Override
+    @MethodInformation("Получение листа SubTask")
+    public List<Subtask> getAllSubtasks() {
+        return new ArrayList<>(subtasks.values());
+    }
+
+    @Override
+    @MethodInformation("Получение SubTask по id Epic")
+    public List<Subtask> getSubtasksByEpicId(int epicId) {
+        ReentrantLock lock = lockFor(epicId);
+        lock.lock();
+        try {
+            Epic epic = epics.get(epicId);
+            if (epic == null) {
+                return new ArrayList<>();
+            }
+            List<Subtask> epicSubtasks = new ArrayList<>(epic.getSubtaskCount());
+            epic.forEachSubtaskId(subtaskId -> epicSubtasks.add(subtasks.get(subtaskId)));
+            return epicSubtasks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    @MethodInformation("Получение прогресса Epic по счетчикам статусов подзадач")
+    public EpicProgress getEpicProgress(int epicId) {
+        ReentrantLock lock = lockFor(epicId);
+        lock.lock();
+        try {
+            Epic epic = epics.get(epicId);
+            return epic == null ? null : epic.getProgress();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    @MethodInformation("Версия коллекции. Увеличивается после снятия блокировки изменения, поэтому не опережает данные")
+    public long getVersion(TaskCollection collection) {
+        return versions.get(collection);
+    }
+
+    @Override
+    @MethodInformation("Получение истории просмотров Object<? extends Task>")
+    public List<Task> getHistory() {
+        List<Task> history;
+        synchronized (historyManager) {
+            history = historyManager.getHistory();
+        }
+        List<Task> copies = new ArrayList<>(history.size());
+        for (Task task : history) {
+            copies.add(task instanceof Epic epic ? copyOf(epic) : task);
+        }
+        return copies;
+    }
+
+    @Override
+    @MethodInformation("Вычисление приоритетных Задач")
+    public Set<? extends Task> getPrioritizedTasks(List<? extends Task> list) {
+        TreeSet<Task> prioritized = new TreeSet<>(InMemoryTaskManager.PRIORITY_ORDER);
+        if (list != null) {
+            list.stream()
+                    .filter(task -> task.getStartTime() != null)
+                    .forEach(prioritized::add);
+        }
+        return prioritized;
+    }
+
+    @Override
+    @MethodInformation("Получение приоритетных Task из поддерживаемого индекса без пересортировки")
+    public NavigableSet<Task> getPrioritizedTasks() {
+        return prioritizedTasksView;
+    }
+
+    @Override
+    @MethodInformation("Проверка задач (Task) на пересечение")
+    public boolean lookingForTemporaryIntersectionsInTasks() {
+        taskLock.lock();
+        try {
+            return taskIntervals.hasIntersections();
+        } finally {
+            taskLock.unlock();
+        }
+    }
+
+    @Override
+    @MethodInformation("Поиск Task и SubTask, пересекающихся с интервалом [from, to)")
+    public List<Task> findOverlapping(LocalDateTime from, LocalDateTime to) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("Interval bounds must not be null.");
+        }
+
+        List<Task> overlapping = new ArrayList<>();
+        if (!from.isBefore(to)) {
+            return overlapping;
+        }
+        taskLock.lock();
+        try {
+            taskIntervals.forEachOverlapping(from, to, overlapping::add);
+        } finally {
+            taskLock.unlock();
+        }
+        for (int stripe = 0; stripe < epicLocks.length; stripe++) {
+            epicLocks[stripe].lock();
+            try {
+                subtaskIntervals[stripe].forEachOverlapping(from, to, overlapping::add);
+            } finally {
+                epicLocks[stripe].unlock();
+            }
+        }
+        overlapping.sort(InMemoryTaskManager.PRIORITY_ORDER);
+        return overlapping;
+    }
+
+    @Override
+    @MethodInformation("Удаление всех Task")
+    public void deleteTasks() {
+        taskLock.lock();
+        try {
+            tasks.clear();
+            taskIntervals.clear();
+            prioritizedTasks.clear();
+        } finally {
+            taskLock.unlock();
+        }
+        versions.bump(TaskCollection.TASKS);
+    }
+
+    @Override
+    @MethodInformation("Удаление всех SubTask")
+    public void deleteSubtasks() {
+        lockAll();
+        try {
+            subtasks.clear();
+            for (TaskIntervalTree intervals : subtaskIntervals) {
+                intervals.clear();
+            }
+            for (Epic epic : epics.values()) {
+                epic.clearSubtasks();
+                epic.refreshStatus();
+            }
+        } finally {
+            unlockAll();
+        }
+        bumpSubtasks();
+    }
+
+    @Override
+    @MethodInformation("Удаление всех Epic")
+    public void deleteEpics() {
+        lockAll();
+        try {
+            subtasks.clear();
+            for (TaskIntervalTree intervals : subtaskIntervals) {
+                intervals.clear();
+            }
+            epics.clear();
+        } finally {
+            unlockAll();
+        }
+        bumpSubtasks();
+    }
+
+    @MethodInformation("Вспомогательный метод по замене SubTask. Вызывается под блокировками старого и нового эпика")
+    private void replaceSubtask(Subtask oldSubtask, Subtask subtask) {
+        subtasks.put(subtask.getId(), subtask);
+        if (oldSubtask != null) {
+            intervalsFor(oldSubtask.getEpicId()).remove(oldSubtask);
+        }
+        intervalsFor(subtask.getEpicId()).add(subtask);
+
+        if (oldSubtask == subtask) {
+            Epic epic = epics.get(subtask.getEpicId());
+            if (epic != null) {
+                epic.recalculate(subtasks::get);
+            }
+            return;
+        }
+        if (oldSubtask != null) {
+            Epic oldEpic = epics.get(oldSubtask.getEpicId());
+            if (oldEpic != null) {
+                oldEpic.detachSubtask(oldSubtask, subtasks::get);
+            }
+        }
+        Epic epic = epics.get(subtask.getEpicId());
+        if (epic != null) {
+            epic.attachSubtask(subtask);
+        }
+    }
+
+    private void indexTask(Task task) {
+        taskIntervals.add(task);
+        if (task.getStartTime() != null) {
+            prioritizedTasks.add(task);
+        }
+    }
+
+    private void unindexTask(Task task) {
+        if (task != null) {
+            taskIntervals.remove(task);
+            if (task.getStartTime() != null) {
+                prioritizedTasks.remove(task);
+            }
+        }
+    }
+
+    @MethodInformation("Добавляет просмотр в историю. Под монитором истории задача перечитывается из хранилища:" +
+            " удаление убирает ее из хранилища и из истории под тем же монитором, поэтому просмотр, совпавший" +
+            " с удалением, не вернет удаленную задачу в историю")
+    private <T extends Task> T addToHistory(Map<Integer, T> storage, int id) {
+        T task = storage.get(id);
+        if (task == null) {
+            return null;
+        }
+        synchronized (historyManager) {
+            T current = storage.get(id);
+            if (current == null) {
+                return task;
+            }
+            historyManager.add(current);
+        }
+        versions.bump(TaskCollection.HISTORY);
+        return task;
+    }
+
+    @MethodInformation("Удаляет задачу из хранилища и из истории под монитором истории, см. addToHistory")
+    private <T extends Task> T removeWithHistory(Map<Integer, T> storage, int id) {
+        synchronized (historyManager) {
+            T removed = storage.remove(id);
+            historyManager.remove(id);
+            return removed;
+        }
+    }
+
+    @MethodInformation("Копия эпика под блокировкой его полосы: все изменения эпика идут под ней же")
+    private Epic copyOf(Epic epic) {
+        ReentrantLock lock = lockFor(epic.getId());
+        lock.lock();
+        try {
+            return epic.copy();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @MethodInformation("Изменение подзадач меняет и эпики: их статус, границы времени и списки подзадач")
+    private void bumpSubtasks() {
+        versions.bump(TaskCollection.SUBTASKS);
+        versions.bump(TaskCollection.EPICS);
+    }
+
+    private int stripeOf(int epicId) {
+        return epicId & stripeMask;
+    }
+
+    private ReentrantLock lockFor(int epicId) {
+        return epicLocks[stripeOf(epicId)];
+    }
+
+    private TaskIntervalTree intervalsFor(int epicId) {
+        return subtaskIntervals[stripeOf(epicId)];
+    }
+
+    private void lockPair(int firstEpicId, int secondEpicId) { /*Беру блокировки в порядке номера полосы, чтобы избежать взаимоблокировки*/
+        int first = Math.min(stripeOf(firstEpicId), stripeOf(secondEpicId));
+        int second = Math.max(stripeOf(firstEpicId), stripeOf(secondEpicId));
+        epicLocks[first].lock();
+        if (second != first) {
+            epicLocks[second].lock();
+        }
+    }
+
+    private void unlockPair(int firstEpicId, int secondEpicId) {
+        int first = stripeOf(firstEpicId);
+        int second = stripeOf(secondEpicId);
+        epicLocks[first].unlock();
+        if (second != first) {
+            epicLocks[second].unlock();
+        }
+    }
+
+    private void lockAll() {
+        for (ReentrantLock lock : epicLocks) {
+            lock.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = epicLocks.length - 1; i >= 0; i--) {
+            epicLocks[i].unlock();
+        }
+    }
+}
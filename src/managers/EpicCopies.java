@@ -0,0 +1,41 @@
+package managers;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+import tasks.Epic;
+import tasks.Task;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Копии эпиков для чтений менеджеров, защищенных одной блокировкой. Эпик меняется при каждом изменении
+ * его подзадач, а вызывающий (например, обработчик HTTP) сериализует результат уже после снятия блокировки.
+ * Вызывать под той же блокировкой, под которой менеджер меняет эпики.
+ */
+@ClassInformation("Копии эпиков, которые можно отдавать за пределы блокировки менеджера")
+final class EpicCopies {
+    private EpicCopies() {
+    }
+
+    static Epic of(Epic epic) {
+        return epic == null ? null : epic.copy();
+    }
+
+    static List<Epic> ofAll(List<Epic> epics) {
+        List<Epic> copies = new ArrayList<>(epics.size());
+        for (Epic epic : epics) {
+            copies.add(epic.copy());
+        }
+        return copies;
+    }
+
+    @MethodInformation("История, в которой эпики заменены копиями, остальные задачи - как есть")
+    static List<Task> inHistory(List<Task> history) {
+        List<Task> copies = new ArrayList<>(history.size());
+        for (Task task : history) {
+            copies.add(task instanceof Epic epic ? epic.copy() : task);
+        }
+        return copies;
+    }
+}
@@ -2,169 +2,799 @@ package managers;
 
 import annotations.ClassInformation;
 import annotations.MethodInformation;
-import annotations.MethodInformation;
 import exception.ManagerSaveException;
-import enums.Status;
+import enums.DescriptionStorage;
+import enums.FsyncPolicy;
+import enums.PersistenceMode;
+import enums.SnapshotFormat;
 import enums.TaskType;
+import storage.AtomicFiles;
+import storage.BackgroundFlusher;
+import storage.ChangeRecord;
+import storage.CheckpointStore;
+import storage.CsvSnapshotCodec;
+import storage.DescriptionStore;
+import storage.ShardedSnapshotStore;
+import storage.SnapshotCodec;
+import storage.StorageSettings;
+import storage.TaskJournal;
 import tasks.Epic;
+import tasks.EpicProgress;
 import tasks.Subtask;
 import tasks.Task;
+import util.IntSortedSet;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
-import java.time.Duration;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 @ClassInformation("Расширяет InMemoryTaskManager для добавления возможности сохранять состояние задач в файл")
-public class FileBackedTaskManager extends InMemoryTaskManager {
+public class FileBackedTaskManager extends InMemoryTaskManager implements AutoCloseable {
     private final File file;
+    private final StorageSettings settings;
+    private final SnapshotCodec codec;
+    private final TaskJournal journal;
+    private final TaskJournal historyLog;
+    private final CheckpointStore checkpoints;
+    private final ShardedSnapshotStore shards;
+    private final boolean backgroundFlush;
+    private BackgroundFlusher flusher; /*Создается при первом изменении, см. flusher()*/
+    private final DescriptionStore descriptions;
+    private final IntSortedSet[] shardMembers; /*id задач каждого шарда, чтобы не обходить всю доску ради одного шарда*/
+    private final List<String> pendingRecords = new ArrayList<>();
+    private final List<String> pendingViews = new ArrayList<>();
+    private final Map<Integer, TaskType> dirtyRecords = new LinkedHashMap<>();
+    private final Map<Integer, TaskType> deletedRecords = new LinkedHashMap<>();
+    private boolean snapshotDirty;
+    private boolean compactionRequested;
 
     public FileBackedTaskManager(File file) {
+        this(file, StorageSettings.defaults());
+    }
+
+    public FileBackedTaskManager(File file, StorageSettings settings) {
+        this(file, settings, false);
+    }
+
+    private FileBackedTaskManager(File file, StorageSettings settings, boolean resume) {
         this.file = file;
+        this.settings = settings;
+        this.codec = SnapshotCodec.of(settings);
+        this.journal = settings.getPersistenceMode() == PersistenceMode.JOURNAL
+                ? new TaskJournal(journalPath(file))
+                : null;
+        this.checkpoints = settings.getPersistenceMode() == PersistenceMode.INCREMENTAL
+                ? new CheckpointStore(file.toPath(), codec, settings.getSegmentMergeThreshold(),
+                        settings.getCompression(), settings.getCompressionLevel())
+                : null;
+        this.shards = settings.getPersistenceMode() == PersistenceMode.SHARDED
+                ? new ShardedSnapshotStore(file.toPath(), codec, settings.getShardCount())
+                : null;
+        this.shardMembers = shards != null ? new IntSortedSet[shards.getShardCount()] : null;
+        if (shardMembers != null) {
+            Arrays.setAll(shardMembers, shard -> new IntSortedSet());
+        }
+        this.historyLog = new TaskJournal(historyLogPath(file));
+        this.descriptions = settings.getDescriptionStorage() == DescriptionStorage.ON_DISK
+                ? new DescriptionStore(descriptionsPath(file), settings.getDescriptionCacheSize())
+                : null;
+        if (!resume) { /*Новый менеджер начинает с чистого листа, старые журналы относятся к прежнему снимку*/
+            historyLog.truncate();
+            if (journal != null) {
+                journal.truncate();
+            }
+            if (checkpoints != null) {
+                checkpoints.clear();
+            }
+            if (shards != null) {
+                shards.clear();
+            }
+            resetSnapshot();
+        }
+        this.backgroundFlush = settings.getFsyncPolicy() == FsyncPolicy.INTERVAL;
+    }
+
+    @MethodInformation("Фоновый поток сохранения режима FsyncPolicy.INTERVAL. Запускается при первом обращении," +
+            " а не в конструкторе: поток вызывает flushPending() и не должен видеть менеджер недостроенным")
+    private synchronized BackgroundFlusher flusher() {
+        if (flusher == null) {
+            flusher = new BackgroundFlusher("task-flusher-" + file.getName(), settings.getFlushInterval(),
+                    settings.getFlushBatchSize(), this::flushPending);
+        }
+        return flusher;
+    }
+
+    @MethodInformation("Сбрасывает базовый снимок прежней доски, его предыдущую версию и покрывающий ее журнал." +
+            " Иначе загрузка применила бы" +
+            " журнал нового менеджера поверх старых задач: удаленные задачи вернулись бы, а новые id совпали бы" +
+            " со старыми. Вызывается после очистки журналов, поэтому сбой посередине оставляет прежнюю доску целиком")
+    private void resetSnapshot() {
+        try {
+            Files.deleteIfExists(AtomicFiles.previous(file.toPath()));
+            Files.deleteIfExists(previousJournalPath(file));
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка удаления предыдущей версии снимка " + file);
+        }
+        if (file.length() > 0) { /*Пустой файл читается как пустой снимок в любом формате*/
+            AtomicFiles.replace(file.toPath(), new byte[0], settings.getFsyncPolicy() != FsyncPolicy.OS_MANAGED);
+        }
     }
 
     @MethodInformation("Восстанавливает данные из файла")
     public static FileBackedTaskManager loadFromFile(File file) {
-        FileBackedTaskManager manager = new FileBackedTaskManager(file);
+        return loadFromFile(file, StorageSettings.defaults());
+    }
+
+    @MethodInformation("Восстанавливает данные из снимка, дочитывает сегменты контрольных точек, журнал изменений" +
+            " и журнал просмотров, если они есть. В режиме SHARDED читает шарды, а если их еще нет - обычный" +
+            " снимок, который сразу раскладывается по шардам")
+    public static FileBackedTaskManager loadFromFile(File file, StorageSettings settings) {
+        Path journalPath = journalPath(file);
+        if (settings.getPersistenceMode() == PersistenceMode.SHARDED
+                && !ShardedSnapshotStore.shards(file.toPath()).isEmpty()) {
+            FileBackedTaskManager manager = new FileBackedTaskManager(file, settings, true);
+            ShardedSnapshotStore.load(file.toPath(), manager::restore);
+            for (Epic epic : manager.epics.values()) {
+                manager.recalculateEpic(epic);
+            }
+            manager.replayHistoryLog();
+            if (manager.shards.needsFullRewrite()) { /*Число шардов изменилось - перераскладываю все задачи*/
+                manager.writeAllShards();
+            }
+            return manager;
+        }
+        if (!file.exists() && (Files.exists(journalPath) || !CheckpointStore.segments(file.toPath()).isEmpty())) {
+            FileBackedTaskManager manager = new FileBackedTaskManager(file, settings, true);
+            manager.replayAll(journalPath, false);
+            return manager;
+        }
 
+        List<Task> records = new ArrayList<>();
+        List<Integer> legacyHistory = new ArrayList<>(); /*История в снимке - только у CSV файлов старого формата*/
+        boolean fallback = false;
         try {
-            String content = Files.readString(file.toPath(), StandardCharsets.UTF_8);
-            String[] parts = content.split("\n\n", 2);
+            decodeSnapshot(file.toPath(), settings, records, legacyHistory);
+        } catch (ManagerSaveException e) {
+            Path previous = AtomicFiles.previous(file.toPath());
+            if (!Files.exists(previous)) {
+                throw e;
+            }
+            if (!coversPrevious(file, settings)) {
+                throw new ManagerSaveException("Снимок " + file + " не прошел проверку (" + e.getMessage()
+                        + "), а изменения после предыдущей контрольной точки " + previous + " не сохранились");
+            }
+            System.err.println("Снимок " + file + " не прошел проверку (" + e.getMessage()
+                    + "), загружается предыдущая контрольная точка " + previous);
+            records.clear();
+            legacyHistory.clear();
+            decodeSnapshot(previous, settings, records, legacyHistory);
+            fallback = true;
+        }
 
-            if (parts.length == 0) {
-                return manager;
+        FileBackedTaskManager manager = new FileBackedTaskManager(file, settings, true);
+        records.forEach(manager::restore);
+        for (Epic epic : manager.epics.values()) {
+            manager.recalculateEpic(epic);
+        }
+        for (int id : legacyHistory) {
+            manager.restoreView(id);
+        }
+
+        manager.replayAll(journalPath, fallback);
+        if (manager.shards != null) {
+            manager.writeAllShards();
+        }
+        return manager;
+    }
+
+    @MethodInformation("Читает и проверяет снимок целиком, прежде чем менеджер получит хоть одну задачу:" +
+            " поврежденный снимок не должен оставлять менеджер наполовину загруженным")
+    private static void decodeSnapshot(Path path, StorageSettings settings, List<Task> records,
+                                       List<Integer> legacyHistory) {
+        SnapshotCodec codec = SnapshotCodec.detect(path); /*Формат определяю по файлу: CSV читается всегда*/
+        codec.decode(path, settings.getLoadParallelism(), records::add, legacyHistory::add);
+    }
+
+    @MethodInformation("Дочитывает изменения и просмотры поверх загруженного снимка. Если записи повреждены," +
+            " закрывает файлы менеджера, который так и не попадет к вызывающему")
+    private void replayAll(Path journalPath, boolean fallback) {
+        try {
+            if (fallback) {
+                replayPreviousChanges();
             }
+            replayChanges(journalPath);
+            replayHistoryLog();
+        } catch (RuntimeException e) {
+            closeFiles();
+            throw e;
+        }
+    }
 
-            String[] lines = parts[0].split("\n");
-            for (int i = 1; i < lines.length; i++) {
-                Task task;
-                try {
-                    task = fromString(lines[i]);
-                } catch (IllegalArgumentException e) {
-                    continue;
-                }
+    @MethodInformation("Откат к предыдущему снимку допустим, только если сохранились изменения после него: журнал" +
+            " или сегменты, влитые при записи текущего снимка. Без них откат молча потерял бы все, что записано" +
+            " между снимками. В режиме SNAPSHOT каждое изменение пишет снимок целиком, и предыдущий снимок" +
+            " сам по себе прошлая контрольная точка")
+    private static boolean coversPrevious(File file, StorageSettings settings) {
+        return switch (settings.getPersistenceMode()) {
+            case JOURNAL -> Files.exists(previousJournalPath(file));
+            case INCREMENTAL -> !CheckpointStore.previousSegments(file.toPath()).isEmpty();
+            case SNAPSHOT, SHARDED -> true;
+        };
+    }
+
+    @MethodInformation("После отката к предыдущему снимку применяет изменения, записанные между ним и текущим снимком")
+    private void replayPreviousChanges() {
+        for (Path segment : CheckpointStore.previousSegments(file.toPath())) {
+            CheckpointStore.replaySegment(segment, this::applyJournalRecord);
+        }
+        ChangeRecord.replay(previousJournalPath(file), this::applyJournalRecord, false);
+    }
 
-                if (task instanceof Epic epic) {
-                    manager.epics.put(task.getId(), epic);
-                } else if (task instanceof Subtask subtask) {
-                    manager.subtasks.put(task.getId(), subtask);
-                    Epic epic = manager.epics.get(subtask.getEpicId());
-                    if (epic != null) {
-                        epic.addSubtask(subtask.getId());
+    @MethodInformation("Восстанавливает историю из журнала просмотров и сразу уплотняет его до текущей истории")
+    private void replayHistoryLog() {
+        TaskJournal.replay(historyLogPath(file), record -> {
+            for (int id : historyFromString(record)) {
+                restoreView(id);
+            }
+        });
+        historyLog.truncate();
+        historyLog.append(historyToString(historyManager));
+    }
+
+    @MethodInformation("Применяет сегменты контрольных точек и записи журнала поверх загруженного снимка" +
+            " и пересчитывает эпики. Недописанную последнюю запись журнала отбрасывает и из файла")
+    private void replayChanges(Path journalPath) {
+        for (Path segment : CheckpointStore.segments(file.toPath())) {
+            CheckpointStore.replaySegment(segment, this::applyJournalRecord);
+        }
+        int replayed = ChangeRecord.replay(journalPath, this::applyJournalRecord, true);
+        if (journal != null && replayed < journal.getRecordCount()) {
+            journal.truncateAfter(replayed);
+        }
+        for (Epic epic : epics.values()) {
+            recalculateEpic(epic);
+        }
+    }
+
+    @MethodInformation("Применяет одну запись журнала. Записи идемпотентны, поэтому повторное применение журнала" +
+            " к более новому снимку дает тот же результат. Недописанный хвост журнала отбрасывается еще при проверке" +
+            " контрольных сумм, поэтому запись, которую не удалось применить, - повреждение, как и в снимке")
+    private void applyJournalRecord(String record) {
+        String[] fields = record.split(",", 3);
+        try {
+            switch (fields[0]) {
+                case ChangeRecord.UPSERT -> {
+                    Task task = fromString(ChangeRecord.payloadOf(record));
+                    if (task == null) {
+                        throw new ManagerSaveException("Нечитаемая запись журнала: " + record);
                     }
-                } else {
-                    manager.tasks.put(task.getId(), task);
+                    upsert(task);
                 }
-                manager.idCounter = Math.max(manager.idCounter, task.getId() + 1);
+                case ChangeRecord.REMOVE -> {
+                    int id = Integer.parseInt(fields[2]);
+                    switch (TaskType.valueOf(fields[1])) {
+                        case TASK -> super.removeTask(id);
+                        case EPIC -> super.removeEpic(id);
+                        case SUBTASK -> super.removeSubtask(id);
+                    }
+                }
+                case ChangeRecord.DELETE_ALL -> {
+                    switch (TaskType.valueOf(fields[1])) {
+                        case TASK -> super.deleteTasks();
+                        case EPIC -> super.deleteEpics();
+                        case SUBTASK -> super.deleteSubtasks();
+                    }
+                }
+                default -> throw new ManagerSaveException("Неизвестная запись журнала: " + record);
             }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new ManagerSaveException("Ошибка при применении записи журнала " + record + ": " + e.getMessage());
+        }
+    }
 
-            if (parts.length > 1) {
-                List<Integer> history = historyFromString(parts[1]);
-                for (int id : history) {
-                    Task task = manager.tasks.get(id);
-                    if (task != null) {
-                        manager.historyManager.add(task);
-                        continue;
-                    }
+    private void upsert(Task task) {
+        if (task instanceof Epic epic) {
+            if (epics.containsKey(epic.getId())) {
+                super.updateEpic(epic);
+            } else {
+                restore(epic);
+            }
+        } else if (task instanceof Subtask subtask) {
+            if (subtasks.containsKey(subtask.getId())) {
+                super.updateSubtask(subtask);
+            } else {
+                restore(subtask);
+            }
+        } else if (tasks.containsKey(task.getId())) {
+            super.updateTask(task);
+        } else {
+            restore(task);
+        }
+        deferDescription(task);
+    }
 
-                    Epic epic = manager.epics.get(id);
-                    if (epic != null) {
-                        manager.historyManager.add(epic);
-                        continue;
-                    }
+    @Override
+    protected void restore(Task task) {
+        super.restore(task);
+        addShardMember(task.getId());
+        deferDescription(task);
+    }
 
-                    Subtask subtask = manager.subtasks.get(id);
-                    if (subtask != null) {
-                        manager.historyManager.add(subtask);
-                    }
+    @MethodInformation("В режиме DescriptionStorage.ON_DISK переносит описание задачи в файл описаний." +
+            " Когда файл вырастает вдвое, уплотняет его до описаний текущих задач")
+    private void deferDescription(Task task) {
+        if (descriptions == null || task.isDescriptionDeferred()) {
+            return;
+        }
+        descriptions.defer(task);
+        if (descriptions.needsCompaction()) {
+            descriptions.compact(allRecords());
+        }
+    }
+
+    @MethodInformation("Восстанавливает просмотр задачи в истории по id")
+    private void restoreView(int id) {
+        Task task = tasks.get(id);
+        if (task == null) {
+            task = epics.get(id);
+        }
+        if (task == null) {
+            task = subtasks.get(id);
+        }
+        if (task != null) {
+            historyManager.add(task);
+        }
+    }
+
+    @MethodInformation("Фиксирует создание или изменение задачи")
+    private void persistUpsert(Task task) {
+        if (tracksDirtyRecords()) {
+            addShardMember(task.getId());
+            dirtyRecords.put(task.getId(), task.getType());
+            requestCheckpoint();
+        } else if (journal == null) {
+            persistSnapshot();
+        } else {
+            appendToJournal(ChangeRecord.upsert(task));
+        }
+    }
+
+    @MethodInformation("Фиксирует удаление задачи")
+    private void persistRemove(TaskType type, int id) {
+        if (tracksDirtyRecords()) {
+            markDeleted(type, id);
+            requestCheckpoint();
+        } else if (journal == null) {
+            persistSnapshot();
+        } else {
+            appendToJournal(ChangeRecord.remove(type, id));
+        }
+    }
+
+    @MethodInformation("Фиксирует удаление всех задач одного типа")
+    private void persistDeleteAll(TaskType type) {
+        if (tracksDirtyRecords()) {
+            requestCheckpoint(); /*Удаленные id отмечены до удаления, см. markDeleted(TaskType, Iterable)*/
+        } else if (journal == null) {
+            persistSnapshot();
+        } else {
+            appendToJournal(ChangeRecord.deleteAll(type));
+        }
+    }
+
+    @MethodInformation("Фиксирует просмотр задачи: дописывает его id в журнал просмотров, снимок не трогает")
+    private void persistView(Task task) {
+        if (task == null) {
+            return;
+        }
+        String record = String.valueOf(task.getId());
+        if (backgroundFlush) {
+            pendingViews.add(record);
+            flusher().markDirty();
+            return;
+        }
+        historyLog.append(record);
+        if (historyLog.getRecordCount() >= settings.getHistoryCompactionThreshold()) {
+            compactHistoryLog(historyToString(historyManager));
+        }
+        if (settings.getFsyncPolicy() == FsyncPolicy.EVERY_WRITE) {
+            historyLog.force();
+        }
+    }
+
+    @MethodInformation("Заменяет журнал просмотров одной строкой с текущей историей")
+    private void compactHistoryLog(String history) {
+        historyLog.truncate();
+        historyLog.append(history);
+    }
+
+    private void markDeleted(TaskType type, int id) {
+        dirtyRecords.remove(id);
+        deletedRecords.put(id, type);
+    }
+
+    @MethodInformation("Отмечает удаленными все переданные задачи. Вызывается до удаления, пока задачи еще в памяти")
+    private void markDeleted(TaskType type, Iterable<? extends Task> records) {
+        if (!tracksDirtyRecords()) {
+            return;
+        }
+        for (Task record : records) {
+            markDeleted(type, record.getId());
+        }
+    }
+
+    @MethodInformation("Инкрементальный и шардированный режимы копят id измененных и удаленных задач")
+    private boolean tracksDirtyRecords() {
+        return checkpoints != null || shards != null;
+    }
+
+    @MethodInformation("Записывает контрольную точку или измененные шарды сразу или оставляет их фоновому потоку")
+    private void requestCheckpoint() {
+        if (backgroundFlush) {
+            flusher().markDirty();
+        } else if (shards != null) {
+            Map<Integer, List<Task>> dirty = collectDirtyShards();
+            if (!dirty.isEmpty()) {
+                shards.write(shards.encode(dirty), settings.getFsyncPolicy() == FsyncPolicy.EVERY_WRITE);
+            }
+        } else {
+            checkpoints.writeSegment(collectCheckpoint(), settings.getFsyncPolicy() == FsyncPolicy.EVERY_WRITE);
+        }
+    }
+
+    @MethodInformation("Собирает записи контрольной точки: только измененные и удаленные с прошлой точки задачи." +
+            " Стоимость зависит от числа изменений, а не от размера доски")
+    private List<String> collectCheckpoint() {
+        List<String> records = new ArrayList<>(dirtyRecords.size() + deletedRecords.size());
+        for (TaskType type : TaskType.values()) { /*Эпики раньше подзадач, чтобы подзадача нашла свой эпик*/
+            for (Map.Entry<Integer, TaskType> dirty : dirtyRecords.entrySet()) {
+                if (dirty.getValue() != type) {
+                    continue;
+                }
+                Task task = switch (type) {
+                    case TASK -> tasks.get(dirty.getKey());
+                    case EPIC -> epics.get(dirty.getKey());
+                    case SUBTASK -> subtasks.get(dirty.getKey());
+                };
+                if (task != null) {
+                    records.add(ChangeRecord.upsert(task));
                 }
             }
+        }
+        for (Map.Entry<Integer, TaskType> deleted : deletedRecords.entrySet()) {
+            records.add(ChangeRecord.remove(deleted.getValue(), deleted.getKey()));
+        }
+        dirtyRecords.clear();
+        deletedRecords.clear();
+        return records;
+    }
 
-        } catch (IOException e) {
-            throw new ManagerSaveException("Ошибка загрузки из файла");
+    private void addShardMember(int id) {
+        if (shardMembers != null) {
+            shardMembers[shards.shardOf(id)].add(id);
         }
+    }
 
-        return manager;
+    @MethodInformation("Собирает задачи шардов, в которых с прошлой записи менялись или удалялись задачи." +
+            " Обходит только члены этих шардов, а не всю доску; кодировать их можно уже без блокировки менеджера")
+    private Map<Integer, List<Task>> collectDirtyShards() {
+        Set<Integer> dirty = new TreeSet<>();
+        for (int id : dirtyRecords.keySet()) {
+            dirty.add(shards.shardOf(id));
+        }
+        for (int id : deletedRecords.keySet()) {
+            dirty.add(shards.shardOf(id));
+        }
+        dirtyRecords.clear();
+        deletedRecords.clear();
+        Map<Integer, List<Task>> records = new TreeMap<>();
+        for (int shard : dirty) {
+            records.put(shard, shardRecords(shard));
+        }
+        return records;
     }
 
-    @MethodInformation("Записывает данные в файл")
-    private void save() {
-        try {
-            StringBuilder builder = new StringBuilder();
-            builder.append("id,type,name,status,description,startTime,duration,epic\n");
+    @MethodInformation("Текущие задачи шарда: задачи, эпики, подзадачи. Удаленные задачи вычищает из членов шарда")
+    private List<Task> shardRecords(int shard) {
+        IntSortedSet members = shardMembers[shard];
+        List<Task> tasksOfShard = new ArrayList<>();
+        List<Task> epicsOfShard = new ArrayList<>();
+        List<Task> subtasksOfShard = new ArrayList<>();
+        IntSortedSet alive = new IntSortedSet();
+        members.forEach(id -> {
+            Task task = tasks.get(id);
+            Epic epic = task == null ? epics.get(id) : null;
+            Subtask subtask = task == null && epic == null ? subtasks.get(id) : null;
+            if (task != null) {
+                tasksOfShard.add(task);
+            } else if (epic != null) {
+                epicsOfShard.add(epic);
+            } else if (subtask != null) {
+                subtasksOfShard.add(subtask);
+            } else {
+                return;
+            }
+            alive.add(id); /*Обход по возрастанию - добавление в конец*/
+        });
+        if (alive.size() != members.size()) {
+            shardMembers[shard] = alive;
+        }
+        List<Task> records = new ArrayList<>(alive.size());
+        records.addAll(tasksOfShard);
+        records.addAll(epicsOfShard);
+        records.addAll(subtasksOfShard);
+        return records;
+    }
 
-            for (Task task : getAllTasks()) {
-                builder.append(toString(task)).append("\n");
+    @MethodInformation("Переписывает все шарды: при переходе с одного файла и при смене числа шардов")
+    private void writeAllShards() {
+        dirtyRecords.clear();
+        deletedRecords.clear();
+        shards.write(shards.encode(shards.partition(allRecords(), null)),
+                settings.getFsyncPolicy() != FsyncPolicy.OS_MANAGED);
+    }
+
+    @MethodInformation("Записывает снимок сразу или отмечает его для фоновой записи")
+    private void persistSnapshot() {
+        if (!backgroundFlush) {
+            save();
+        } else {
+            snapshotDirty = true;
+            flusher().markDirty();
+        }
+    }
+
+    @MethodInformation("Дописывает запись в журнал и уплотняет его в снимок при достижении порога")
+    private void appendToJournal(String record) {
+        if (backgroundFlush) {
+            pendingRecords.add(record);
+            flusher().markDirty();
+            return;
+        }
+        journal.append(record);
+        if (settings.getFsyncPolicy() == FsyncPolicy.EVERY_WRITE) {
+            journal.force();
+        }
+        if (journal.getRecordCount() >= settings.getJournalCompactionThreshold()) {
+            compact();
+        }
+    }
+
+    @MethodInformation("Выполняется в фоновом потоке: под блокировкой забирает накопленные изменения," +
+            " а пишет на диск уже без нее, чтобы не задерживать вызывающих")
+    private void flushPending() {
+        byte[] snapshot = null;
+        List<String> records = List.of();
+        List<String> checkpoint = List.of();
+        Map<Integer, List<Task>> shardRecords = Map.of();
+        List<String> views;
+        String history = null;
+        synchronized (this) {
+            if (checkpoints != null) {
+                checkpoint = collectCheckpoint();
+            }
+            if (shards != null) {
+                shardRecords = collectDirtyShards(); /*Кодирование шардов - уже после выхода из блокировки*/
+            }
+            views = new ArrayList<>(pendingViews);
+            pendingViews.clear();
+            if (historyLog.getRecordCount() + views.size() >= settings.getHistoryCompactionThreshold()) {
+                history = historyToString(historyManager); /*Текущая история уже включает накопленные просмотры*/
+                views.clear();
             }
-            for (Epic epic : getAllEpics()) {
-                builder.append(toString(epic)).append("\n");
+            if (tracksDirtyRecords()) {
+                snapshotDirty = false; /*Снимок пишет только слияние сегментов или запись шардов*/
+            } else if (journal == null) {
+                if (snapshotDirty) {
+                    snapshot = snapshotContent();
+                    snapshotDirty = false;
+                }
+            } else {
+                if (compactionRequested || journal.getRecordCount() + pendingRecords.size()
+                        >= settings.getJournalCompactionThreshold()) {
+                    snapshot = snapshotContent();
+                    compactionRequested = false;
+                }
+                records = new ArrayList<>(pendingRecords); /*Нужны и при уплотнении: покрывают прежний снимок*/
+                pendingRecords.clear();
             }
-            for (Subtask subtask : getAllSubtasks()) {
-                builder.append(toString(subtask)).append("\n");
+        }
+
+        if (checkpoints != null) {
+            checkpoints.writeSegment(checkpoint, true);
+        }
+        if (!shardRecords.isEmpty()) { /*Запись одна у фонового потока, поэтому шарды не обгонят друг друга*/
+            shards.write(shards.encode(shardRecords), true);
+        }
+        if (!records.isEmpty()) {
+            journal.append(records);
+            journal.force();
+        }
+        if (snapshot != null) {
+            writeSnapshot(snapshot, true);
+            if (journal != null) {
+                journal.rotate(previousJournalPath(file), true);
             }
+        }
 
-            builder.append("\n").append(historyToString(historyManager));
+        if (history != null) {
+            compactHistoryLog(history);
+            historyLog.force();
+        } else if (!views.isEmpty()) {
+            historyLog.append(views);
+            historyLog.force();
+        }
+    }
 
-            Files.writeString(file.toPath(), builder.toString(), StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            throw new ManagerSaveException("Ошибка записи в файл");
+    @MethodInformation("Возвращает future, которая завершится, когда все сделанные до вызова изменения" +
+            " будут надежно записаны на диск. Если фоновая запись не удалась, future завершается ее ошибкой")
+    public CompletableFuture<Void> flush() {
+        if (backgroundFlush) {
+            return flusher().requestFlush();
+        }
+        if (settings.getFsyncPolicy() == FsyncPolicy.OS_MANAGED) {
+            synchronized (this) {
+                forceToDisk();
+            }
         }
+        return CompletableFuture.completedFuture(null);
     }
 
-    @MethodInformation("Десиарилизует объекты в строку")
-    private String toString(Task task) {
-        String[] fields = {String.valueOf(task.getId()), task.getType().name(), task.getTitle(),
-                task.getStatus().name(), task.getDescription(),
-                task.getStartTime() != null ? task.getStartTime().toString() : "",
-                task.getDuration() != null ? String.valueOf(task.getDuration()) : "",
-                task instanceof Subtask ? String.valueOf(((Subtask) task).getEpicId()) : ""};
-        return String.join(",", fields);
+    @MethodInformation("Сколько раз фоновый поток записал накопленные изменения на диск")
+    public synchronized long getBackgroundFlushCount() {
+        return flusher != null ? flusher.getFlushCount() : 0;
     }
 
-    @MethodInformation("Сериализует объекты из строки")
-    private static Task fromString(String value) {
-        if (value == null || value.trim().isEmpty()) {
-            return null;
+    @MethodInformation("Записывает полный снимок и переносит журнал в <file>.journal.prev: он покрывает" +
+            " прежний снимок, к которому откатывается загрузка. В инкрементальном режиме вливает сегменты в снимок")
+    public void compact() {
+        if (checkpoints != null) {
+            flush().join();
+            checkpoints.merge();
+            return;
         }
+        if (shards != null) { /*Шарды и так содержат только текущие задачи*/
+            flush().join();
+            return;
+        }
+        if (backgroundFlush) {
+            synchronized (this) {
+                if (journal != null) {
+                    compactionRequested = true;
+                } else {
+                    snapshotDirty = true;
+                }
+            }
+            flush().join();
+            return;
+        }
+        synchronized (this) {
+            save();
+            if (journal != null) {
+                journal.rotate(previousJournalPath(file), settings.getFsyncPolicy() == FsyncPolicy.EVERY_WRITE);
+            }
+        }
+    }
 
-        String[] fields = value.split(",", -1);
-        if (fields.length < 7) {
-            return null;
+    @MethodInformation("Сохраняет накопленные изменения и закрывает журнал. Если последняя фоновая запись" +
+            " не удалась, файлы все равно закрываются, а ошибка пробрасывается вызывающему")
+    @Override
+    public void close() {
+        BackgroundFlusher started;
+        synchronized (this) {
+            started = flusher;
+        }
+        try {
+            if (started != null) { /*Закрываю без блокировки: последняя запись фонового потока берет ее сама*/
+                started.close();
+            }
+        } finally {
+            closeFiles();
         }
+    }
 
+    private void closeFiles() {
         try {
-            int id = Integer.parseInt(fields[0]);
-            TaskType type = TaskType.valueOf(fields[1]);
-            String title = fields[2];
-            Status status = Status.valueOf(fields[3]);
-            String description = fields[4];
-            LocalDateTime startTime = fields[5].isEmpty() ? null : LocalDateTime.parse(fields[5]);
-            Duration duration = fields[6].isEmpty() ? null : Duration.ofMinutes(Long.parseLong(fields[6]));
-
-            switch (type) {
-                case TASK:
-                    Task task = new Task(title, description, status, startTime, duration);
-                    task.setId(id);
-                    return task;
-                case EPIC:
-                    Epic epic = new Epic(title, description, status, startTime, duration);
-                    epic.setId(id);
-                    return epic;
-                case SUBTASK:
-                    if (fields.length < 8 || fields[7].isEmpty()) return null;
-                    int epicId = Integer.parseInt(fields[7]);
-                    Subtask subtask = new Subtask(title, description, status, epicId, startTime, duration);
-                    subtask.setId(id);
-                    return subtask;
-                default:
-                    return null;
+            if (checkpoints != null) { /*Пробрасывает ошибку фонового слияния*/
+                checkpoints.close();
             }
-        } catch (Exception e) {
-            return null;
+        } finally {
+            closeJournals();
+        }
+    }
+
+    private void closeJournals() {
+        if (shards != null) {
+            shards.close();
         }
+        if (journal != null) {
+            journal.close();
+        }
+        historyLog.close();
+        if (descriptions != null) {
+            descriptions.close();
+        }
+    }
+
+    private static Path journalPath(File file) {
+        return file.toPath().resolveSibling(file.getName() + ".journal");
+    }
+
+    private static Path previousJournalPath(File file) {
+        return AtomicFiles.previous(journalPath(file));
+    }
+
+    private static Path historyLogPath(File file) {
+        return file.toPath().resolveSibling(file.getName() + ".history");
+    }
+
+    private static Path descriptionsPath(File file) {
+        return file.toPath().resolveSibling(file.getName() + ".descriptions");
+    }
+
+    @MethodInformation("Записывает данные в файл")
+    private void save() {
+        writeSnapshot(snapshotContent(), settings.getFsyncPolicy() == FsyncPolicy.EVERY_WRITE);
+    }
+
+    @MethodInformation("Кодирует все задачи в снимок выбранного формата. Эпики идут раньше подзадач")
+    private byte[] snapshotContent() {
+        return codec.encode(allRecords());
+    }
+
+    @MethodInformation("Экспортирует текущие задачи в отдельный файл указанного формата")
+    public synchronized void exportSnapshot(File target, SnapshotFormat format) {
+        try {
+            Files.write(target.toPath(), SnapshotCodec.of(format).encode(allRecords()));
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка экспорта в файл " + target);
+        }
+    }
+
+    private List<Task> allRecords() {
+        List<Task> records = new ArrayList<>(tasks.size() + epics.size() + subtasks.size());
+        records.addAll(tasks.values());
+        records.addAll(epics.values()); /*Сами эпики, а не копии getAllEpics: уплотнение описаний двигает их ссылки*/
+        records.addAll(subtasks.values());
+        return records;
+    }
+
+    @MethodInformation("Атомарно подменяет снимок, оставляя прежний как контрольную точку для отката")
+    private void writeSnapshot(byte[] content, boolean force) {
+        AtomicFiles.replaceKeepingPrevious(file.toPath(), content, force);
+    }
+
+    private void forceToDisk() {
+        if (journal != null) {
+            journal.force();
+        }
+        if (checkpoints != null) {
+            checkpoints.force();
+        }
+        if (shards != null) {
+            shards.force();
+        }
+        historyLog.force();
+        if (!file.exists()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка сброса файла на диск");
+        }
+    }
+
+    @MethodInformation("Сериализует объекты из строки")
+    private static Task fromString(String value) {
+        return CsvSnapshotCodec.parse(value);
     }
 
     @MethodInformation("Десиарилизует объекты в строку")
@@ -178,97 +808,170 @@ public class FileBackedTaskManager extends InMemoryTaskManager {
 
     @MethodInformation("Сериализует объекты из строки")
     private static List<Integer> historyFromString(String value) {
-        List<Integer> history = new ArrayList<>();
-        if (value == null || value.isBlank()) {
-            return history;
-        }
-
-        for (String id : value.split(",")) {
-            try {
-                history.add(Integer.parseInt(id.trim()));
-            } catch (NumberFormatException e) {
-                System.err.println("Ошибка при преобразовании истории: " + e.getMessage());
-            }
-        }
-        return history;
+        return CsvSnapshotCodec.parseHistory(value);
     }
 
 
     @Override
-    public Task createTask(Task task) {
+    public synchronized Task createTask(Task task) {
         Task newTask = super.createTask(task);
-        save();
+        persistUpsert(newTask);
+        deferDescription(newTask);
         return newTask;
     }
 
     @Override
-    public Epic createEpic(Epic epic) {
+    public synchronized Epic createEpic(Epic epic) {
         Epic newEpic = super.createEpic(epic);
-        save();
-        return newEpic;
+        persistUpsert(newEpic);
+        deferDescription(newEpic);
+        return EpicCopies.of(newEpic);
     }
 
     @Override
-    public Subtask createSubtask(Subtask subtask) {
+    public synchronized Subtask createSubtask(Subtask subtask) {
         Subtask newSubtask = super.createSubtask(subtask);
-        save();
+        persistUpsert(newSubtask);
+        deferDescription(newSubtask);
         return newSubtask;
     }
 
     @Override
-    public void updateTask(Task task) {
+    public synchronized void updateTask(Task task) {
         super.updateTask(task);
-        save();
+        persistUpsert(task);
+        deferDescription(task);
     }
 
     @Override
-    public void updateEpic(Epic epic) {
+    public synchronized void updateEpic(Epic epic) {
         super.updateEpic(epic);
-        save();
+        persistUpsert(epic);
+        deferDescription(epic);
     }
 
     @Override
-    public void updateSubtask(Subtask subtask) {
+    public synchronized void updateSubtask(Subtask subtask) {
         super.updateSubtask(subtask);
-        save();
+        persistUpsert(subtask);
+        deferDescription(subtask);
     }
 
     @Override
-    public void removeTask(int id) {
+    public synchronized void removeTask(int id) {
         super.removeTask(id);
-        save();
+        persistRemove(TaskType.TASK, id);
     }
 
     @Override
-    public void removeEpic(int id) {
+    public synchronized void removeEpic(int id) {
+        Epic epic = epics.get(id);
+        if (tracksDirtyRecords() && epic != null) {
+            epic.forEachSubtaskId(subtaskId -> markDeleted(TaskType.SUBTASK, subtaskId));
+        }
         super.removeEpic(id);
-        save();
+        persistRemove(TaskType.EPIC, id);
     }
 
     @Override
-    public void removeSubtask(int id) {
+    public synchronized void removeSubtask(int id) {
         super.removeSubtask(id);
-        save();
+        persistRemove(TaskType.SUBTASK, id);
+    }
+
+    @Override
+    public synchronized void deleteTasks() {
+        markDeleted(TaskType.TASK, tasks.values());
+        super.deleteTasks();
+        persistDeleteAll(TaskType.TASK);
+    }
+
+    @Override
+    public synchronized void deleteEpics() {
+        markDeleted(TaskType.SUBTASK, subtasks.values());
+        markDeleted(TaskType.EPIC, epics.values());
+        super.deleteEpics();
+        persistDeleteAll(TaskType.EPIC);
+    }
+
+    @Override
+    public synchronized void deleteSubtasks() {
+        markDeleted(TaskType.SUBTASK, subtasks.values());
+        super.deleteSubtasks();
+        persistDeleteAll(TaskType.SUBTASK);
     }
 
     @Override
-    public Task getTaskById(int id) {
+    public synchronized Task getTaskById(int id) {
         Task task = super.getTaskById(id);
-        save();
+        persistView(task);
         return task;
     }
 
     @Override
-    public Epic getEpicById(int id) {
+    public synchronized Epic getEpicById(int id) {
         Epic epic = super.getEpicById(id);
-        save();
-        return epic;
+        persistView(epic);
+        return EpicCopies.of(epic);
     }
 
     @Override
-    public Subtask getSubtaskById(int id) {
+    public synchronized Subtask getSubtaskById(int id) {
         Subtask subtask = super.getSubtaskById(id);
-        save();
+        persistView(subtask);
         return subtask;
     }
+
+    @Override
+    public synchronized List<Task> getHistory() {
+        return EpicCopies.inHistory(super.getHistory());
+    }
+
+    @Override
+    public synchronized List<Task> getAllTasks() {
+        return super.getAllTasks();
+    }
+
+    @Override
+    public synchronized List<Epic> getAllEpics() {
+        return EpicCopies.ofAll(super.getAllEpics());
+    }
+
+    @Override
+    public synchronized List<Subtask> getAllSubtasks() {
+        return super.getAllSubtasks();
+    }
+
+    @Override
+    public synchronized List<Subtask> getSubtasksByEpicId(int epicId) {
+        return super.getSubtasksByEpicId(epicId);
+    }
+
+    @Override
+    public synchronized EpicProgress getEpicProgress(int epicId) {
+        return super.getEpicProgress(epicId);
+    }
+
+    @Override
+    @MethodInformation("Копия индекса приоритетов: живое представление нельзя обходить без блокировки менеджера")
+    public synchronized NavigableSet<Task> getPrioritizedTasks() {
+        return Collections.unmodifiableNavigableSet(new TreeSet<>(super.getPrioritizedTasks()));
+    }
+
+    @Override
+    public synchronized boolean lookingForTemporaryIntersectionsInTasks() {
+        return super.lookingForTemporaryIntersectionsInTasks();
+    }
+
+    @Override
+    public synchronized List<Task> findOverlapping(LocalDateTime from, LocalDateTime to) {
+        return super.findOverlapping(from, to);
+    }
+
+    @Override
+    @MethodInformation("Все изменяющие и читающие методы синхронизированы на менеджере, эпики отдаются копиями," +
+            " getVersion() потокобезопасен в InMemoryTaskManager")
+    public boolean isThreadSafe() {
+        return true;
+    }
 }
\ No newline at end of file
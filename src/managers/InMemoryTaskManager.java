@@ -2,27 +2,51 @@ package managers;
 
 import annotations.ClassInformation;
 import annotations.MethodInformation;
-import enums.Status;
+import enums.StorageType;
+import enums.TaskCollection;
 import tasks.Epic;
+import tasks.EpicProgress;
 import tasks.Subtask;
 import tasks.Task;
+import util.IntObjectMap;
 
+import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.*;
 
 @ClassInformation("Реализует методы интерфейса TaskManager")
 public class InMemoryTaskManager implements TaskManager {
-    protected Map<Integer, Task> tasks = new HashMap<>();
-    protected Map<Integer, Epic> epics = new HashMap<>();
-    protected Map<Integer, Subtask> subtasks = new HashMap<>();
+    protected static final Comparator<Task> PRIORITY_ORDER =
+            Comparator.comparing(Task::getStartTime).thenComparingInt(Task::getId);
+
+    protected final IntObjectMap<Task> tasks;
+    protected final IntObjectMap<Epic> epics;
+    protected final IntObjectMap<Subtask> subtasks;
     protected HistoryManager historyManager = Managers.getDefaultHistory();
     protected int idCounter = 1;
+    protected final TaskIntervalTree taskIntervals = new TaskIntervalTree();
+    protected final TaskIntervalTree subtaskIntervals = new TaskIntervalTree();
+    protected final NavigableSet<Task> prioritizedTasks = new TreeSet<>(PRIORITY_ORDER);
+    private final NavigableSet<Task> prioritizedTasksView = Collections.unmodifiableNavigableSet(prioritizedTasks);
+    private final ModificationVersions versions = new ModificationVersions();
+
+    public InMemoryTaskManager() {
+        this(StorageType.HASH_MAP);
+    }
+
+    public InMemoryTaskManager(StorageType storageType) {
+        this.tasks = IntObjectMap.create(storageType);
+        this.epics = IntObjectMap.create(storageType);
+        this.subtasks = IntObjectMap.create(storageType);
+    }
 
     @Override
     @MethodInformation("Создание Task")
     public Task createTask(Task task) {
         task.setId(idCounter++);
         tasks.put(task.getId(), task);
+        taskIntervals.add(task);
+        addPrioritized(task);
+        versions.bump(TaskCollection.TASKS);
         return task;
     }
 
@@ -31,6 +55,7 @@ public class InMemoryTaskManager implements TaskManager {
     public Epic createEpic(Epic epic) {
         epic.setId(idCounter++);
         epics.put(epic.getId(), epic);
+        versions.bump(TaskCollection.EPICS);
         return epic;
     }
 
@@ -43,8 +68,9 @@ public class InMemoryTaskManager implements TaskManager {
         }
         subtask.setId(idCounter++);
         subtasks.put(subtask.getId(), subtask);
-        epics.get(epicId).addSubtask(subtask.getId());
-        updateEpicStatus(epicId);
+        subtaskIntervals.add(subtask);
+        epics.get(epicId).attachSubtask(subtask);
+        bumpSubtasks();
         return subtask;
     }
 
@@ -54,6 +80,7 @@ public class InMemoryTaskManager implements TaskManager {
         Task task = tasks.get(id);
         if (task != null) {
             historyManager.add(task);
+            versions.bump(TaskCollection.HISTORY);
         }
         return task;
     }
@@ -64,6 +91,7 @@ public class InMemoryTaskManager implements TaskManager {
         Epic epic = epics.get(id);
         if (epic != null) {
             historyManager.add(epic);
+            versions.bump(TaskCollection.HISTORY);
         }
         return epic;
     }
@@ -74,6 +102,7 @@ public class InMemoryTaskManager implements TaskManager {
         Subtask subtask = subtasks.get(id);
         if (subtask != null) {
             historyManager.add(subtask);
+            versions.bump(TaskCollection.HISTORY);
         }
         return subtask;
     }
@@ -81,28 +110,62 @@ public class InMemoryTaskManager implements TaskManager {
     @Override
     @MethodInformation("Обновление Task")
     public void updateTask(Task task) {
-        tasks.put(task.getId(), task);
+        Task oldTask = tasks.put(task.getId(), task);
+        taskIntervals.remove(oldTask);
+        removePrioritized(oldTask);
+        taskIntervals.add(task);
+        addPrioritized(task);
+        versions.bump(TaskCollection.TASKS);
     }
 
     @Override
     @MethodInformation("Обновление Epic")
     public void updateEpic(Epic epic) {
-        epics.put(epic.getId(), epic);
-        updateEpicStatus(epic.getId());
+        Epic oldEpic = epics.put(epic.getId(), epic);
+        if (oldEpic != null && oldEpic != epic) {
+            epic.takeSubtasksFrom(oldEpic);
+        }
+        epic.refreshStatus();
+        versions.bump(TaskCollection.EPICS);
     }
 
     @Override
     @MethodInformation("Обновление SubTask")
     public void updateSubtask(Subtask subtask) {
-        subtasks.put(subtask.getId(), subtask);
-        updateEpicStatus(subtask.getEpicId());
+        Subtask oldSubtask = subtasks.put(subtask.getId(), subtask);
+        subtaskIntervals.remove(oldSubtask);
+        subtaskIntervals.add(subtask);
+
+        if (oldSubtask == subtask) { /*Объект изменен на месте, прежний статус неизвестен - пересчитываю эпик целиком*/
+            Epic epic = epics.get(subtask.getEpicId());
+            if (epic != null) {
+                recalculateEpic(epic);
+            }
+            bumpSubtasks();
+            return;
+        }
+        if (oldSubtask != null) {
+            Epic oldEpic = epics.get(oldSubtask.getEpicId());
+            if (oldEpic != null) {
+                oldEpic.detachSubtask(oldSubtask, subtasks::get);
+            }
+        }
+        Epic epic = epics.get(subtask.getEpicId());
+        if (epic != null) {
+            epic.attachSubtask(subtask);
+        }
+        bumpSubtasks();
     }
 
     @Override
     @MethodInformation("Удаление Task по id")
     public void removeTask(int id) {
-        tasks.remove(id);
+        Task task = tasks.remove(id);
+        taskIntervals.remove(task);
+        removePrioritized(task);
         historyManager.remove(id);
+        versions.bump(TaskCollection.TASKS);
+        versions.bump(TaskCollection.HISTORY);
     }
 
     @Override
@@ -110,12 +173,14 @@ public class InMemoryTaskManager implements TaskManager {
     public void removeEpic(int id) {
         Epic epic = epics.remove(id);
         if (epic != null) {
-            for (int subtaskId : epic.getSubtaskId()) {
-                subtasks.remove(subtaskId);
+            epic.forEachSubtaskId(subtaskId -> {
+                subtaskIntervals.remove(subtasks.remove(subtaskId));
                 historyManager.remove(subtaskId);
-            }
+            });
         }
         historyManager.remove(id);
+        bumpSubtasks();
+        versions.bump(TaskCollection.HISTORY);
     }
 
     @Override
@@ -123,37 +188,57 @@ public class InMemoryTaskManager implements TaskManager {
     public void removeSubtask(int id) {
         Subtask subtask = subtasks.remove(id);
         if (subtask != null) {
+            subtaskIntervals.remove(subtask);
             Epic epic = epics.get(subtask.getEpicId());
             if (epic != null) {
-                epic.getSubtaskId().remove((Integer) id);
-                updateEpicStatus(subtask.getEpicId());
+                epic.detachSubtask(subtask, subtasks::get);
             }
         }
         historyManager.remove(id);
+        bumpSubtasks();
+        versions.bump(TaskCollection.HISTORY);
     }
 
     @Override
     @MethodInformation("Удаление всех Task")
     public void deleteTasks() {
         tasks.clear();
+        taskIntervals.clear();
+        prioritizedTasks.clear();
+        versions.bump(TaskCollection.TASKS);
     }
 
     @Override
     @MethodInformation("Удаление всех SubTask")
     public void deleteSubtasks() {
         subtasks.clear();
+        subtaskIntervals.clear();
 
         for (Epic epic : epics.values()) {
-            epic.getSubtaskId().clear();
-            updateEpicStatus(epic.getId());
+            epic.clearSubtasks();
+            epic.refreshStatus();
         }
+        bumpSubtasks();
     }
 
     @Override
     @MethodInformation("Удаление всех Epic")
     public void deleteEpics() {
         subtasks.clear();
+        subtaskIntervals.clear();
         epics.clear();
+        bumpSubtasks();
+    }
+
+    @Override
+    public long getVersion(TaskCollection collection) {
+        return versions.get(collection);
+    }
+
+    @MethodInformation("Изменение подзадач меняет и эпики: их статус, границы времени и списки подзадач")
+    private void bumpSubtasks() {
+        versions.bump(TaskCollection.SUBTASKS);
+        versions.bump(TaskCollection.EPICS);
     }
 
     @Override
@@ -188,108 +273,99 @@ public class InMemoryTaskManager implements TaskManager {
             return new ArrayList<>();
         }
 
-        List<Subtask> epicSubtasks = new ArrayList<>();
-        for (int subtaskId : epic.getSubtaskId()) {
-            epicSubtasks.add(subtasks.get(subtaskId));
-        }
+        List<Subtask> epicSubtasks = new ArrayList<>(epic.getSubtaskCount());
+        epic.forEachSubtaskId(subtaskId -> epicSubtasks.add(subtasks.get(subtaskId)));
         return epicSubtasks;
     }
 
-    @MethodInformation("Вспомогательный метод по обновлению статуса Epic")
-    private void updateEpicStatus(int epicId) {
+    @Override
+    @MethodInformation("Получение прогресса Epic по счетчикам статусов подзадач")
+    public EpicProgress getEpicProgress(int epicId) {
         Epic epic = epics.get(epicId);
-        if (epic == null) {
-            return;
-        }
-
-        List<Subtask> subtasksList = getSubtasksByEpicId(epicId);
-
-        if (subtasksList.isEmpty()) {
-            epic.setStatus(Status.NEW);
-            return;
-        }
-
-        boolean allNew = true;
-        boolean allDone = true;
-
-        for (Subtask subtask : subtasksList) {
-            Status status = subtask.getStatus();
-            if (status != Status.NEW) {
-                allNew = false;
-            }
-            if (status != Status.DONE) {
-                allDone = false;
-            }
-        }
+        return epic == null ? null : epic.getProgress();
+    }
 
-        if (allNew) {
-            epic.setStatus(Status.NEW);
-        } else if (allDone) {
-            epic.setStatus(Status.DONE);
-        } else {
-            epic.setStatus(Status.IN_PROGRESS);
-        }
+    @MethodInformation("Полный пересчет счетчиков статусов и границ времени Epic по его подзадачам. Вызывается" +
+            " при загрузке, при удалении подзадачи, задававшей начало или окончание эпика, и при изменении" +
+            " подзадачи на месте")
+    protected void recalculateEpic(Epic epic) {
+        epic.recalculate(subtasks::get);
     }
 
     @Override
     @MethodInformation("Вычисление приоритетных Задач")
     public Set<Task> getPrioritizedTasks(List<? extends Task> tasksList) {
+        TreeSet<Task> prioritizedTasks = new TreeSet<>(PRIORITY_ORDER);
         if (tasksList == null || tasksList.isEmpty()) {
-            return new TreeSet<>(Comparator.comparing(Task::getStartTime));
+            return prioritizedTasks;
         }
 
-        TreeSet<Task> prioritizedTasks = new TreeSet<>(Comparator.comparing(Task::getStartTime));
         tasksList.stream()
                 .filter(task -> task.getStartTime() != null)
                 .forEach(prioritizedTasks::add);
         return prioritizedTasks;
     }
 
+    @Override
+    @MethodInformation("Получение приоритетных Task из поддерживаемого индекса без пересортировки")
+    public NavigableSet<Task> getPrioritizedTasks() {
+        return prioritizedTasksView;
+    }
+
+    @MethodInformation("Вспомогательный метод для добавления Task в индекс приоритетов")
+    private void addPrioritized(Task task) {
+        if (task != null && task.getStartTime() != null) {
+            prioritizedTasks.add(task);
+        }
+    }
+
+    @MethodInformation("Вспомогательный метод для удаления Task из индекса приоритетов")
+    private void removePrioritized(Task task) {
+        if (task != null && task.getStartTime() != null) {
+            prioritizedTasks.remove(task);
+        }
+    }
+
     @Override
     @MethodInformation("Проверка задач (Task) на пересечение")
     public boolean lookingForTemporaryIntersectionsInTasks() {
-        List<Task> tasksWithTime = getAllTasks().stream()
-                .filter(t -> t.getStartTime() != null && t.getEndTime() != null)
-                .toList();
-
-        return IntStream.range(0, tasksWithTime.size())
-                .anyMatch(i -> IntStream.range(i + 1, tasksWithTime.size())
-                        .anyMatch(j -> isOverlapping(
-                                tasksWithTime.get(i),
-                                tasksWithTime.get(j)
-                        )));
-    }
-
-    @MethodInformation("Вспомогательный метод для метода проверки задач на пересечение. Проверяет, что" +
-            " пересечение нет.")
-    private boolean isOverlapping(Task a, Task b) {
-        return a.getStartTime().isBefore(b.getEndTime()) &&
-                b.getStartTime().isBefore(a.getEndTime());
-    }
-
-    @MethodInformation("Проверка задач (Epic) на пересечение")
-    private boolean lookingForTemporaryIntersectionsInEpics() {
-        Set<? extends Task> listOfSomeKindOfClass = getPrioritizedTasks(getAllEpics());
-
-        return listOfSomeKindOfClass.stream()
-                .anyMatch(epic1 ->
-                        listOfSomeKindOfClass.stream()
-                                .filter(epic2 -> !epic1.equals(epic2))
-                                .anyMatch(epic2 ->
-                                        epic1.getStartTime().isBefore(epic2.getEndTime()) &&
-                                                epic2.getStartTime().isBefore(epic1.getEndTime())));
-    }
-
-    @MethodInformation("Проверка задач (SubTask) на пересечение")
-    private boolean lookingForTemporaryIntersectionsInSubTasks() {
-        Set<? extends Task> listOfSomeKindOfClass = getPrioritizedTasks(getAllSubtasks());
-
-        return listOfSomeKindOfClass.stream()
-                .anyMatch(subTask1 ->
-                        listOfSomeKindOfClass.stream()
-                                .filter(subTask2 -> !subTask1.equals(subTask2))
-                                .anyMatch(subTask2 ->
-                                        subTask1.getStartTime().isBefore(subTask2.getEndTime()) &&
-                                                subTask2.getStartTime().isBefore(subTask1.getEndTime())));
+        return taskIntervals.hasIntersections();
+    }
+
+    @Override
+    @MethodInformation("Поиск Task и SubTask, пересекающихся с интервалом [from, to)")
+    public List<Task> findOverlapping(LocalDateTime from, LocalDateTime to) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("Interval bounds must not be null.");
+        }
+
+        List<Task> overlapping = new ArrayList<>();
+        if (!from.isBefore(to)) {
+            return overlapping;
+        }
+        taskIntervals.forEachOverlapping(from, to, overlapping::add);
+        subtaskIntervals.forEachOverlapping(from, to, overlapping::add);
+        overlapping.sort(PRIORITY_ORDER);
+        return overlapping;
+    }
+
+    @MethodInformation("Восстановление задачи с уже назначенным id без повторной генерации id. Подзадача только" +
+            " привязывается к эпику, после загрузки всех записей эпики пересчитываются через recalculateEpic")
+    protected void restore(Task task) {
+        if (task instanceof Epic epic) {
+            epics.put(epic.getId(), epic);
+        } else if (task instanceof Subtask subtask) {
+            subtasks.put(subtask.getId(), subtask);
+            subtaskIntervals.add(subtask);
+            Epic epic = epics.get(subtask.getEpicId());
+            if (epic != null) {
+                epic.addSubtask(subtask.getId());
+            }
+        } else {
+            tasks.put(task.getId(), task);
+            taskIntervals.add(task);
+            addPrioritized(task);
+        }
+        idCounter = Math.max(idCounter, task.getId() + 1);
     }
 }
\ No newline at end of file
@@ -2,6 +2,7 @@ package managers;
 
 import annotations.ClassInformation;
 import annotations.MethodInformation;
+import enums.StorageType;
 
 @ClassInformation("Утилитарный класс")
 public class Managers {
@@ -11,6 +12,27 @@ public class Managers {
         return new InMemoryTaskManager();
     }
 
+    @MethodInformation("Создает объект класса InMemoryTaskManager с указанным типом хранилища задач")
+    public static TaskManager getInMemory(StorageType storageType) {
+        return new InMemoryTaskManager(storageType);
+    }
+
+    @MethodInformation("Создает потокобезопасный объект класса ConcurrentTaskManager")
+    public static TaskManager getConcurrent() {
+        return new ConcurrentTaskManager();
+    }
+
+    @MethodInformation("Создает объект класса SingleWriterTaskManager с одним потоком-писателем")
+    public static TaskManager getSingleWriter() {
+        return new SingleWriterTaskManager();
+    }
+
+    @MethodInformation("Возвращает менеджер как есть, если он потокобезопасен, иначе оборачивает его" +
+            " в SynchronizedTaskManager")
+    public static TaskManager threadSafe(TaskManager manager) {
+        return manager.isThreadSafe() ? manager : new SynchronizedTaskManager(manager);
+    }
+
     @MethodInformation("Создает объект класса InMemoryHistoryManager")
     public static HistoryManager getDefaultHistory() {
         return new InMemoryHistoryManager();
@@ -0,0 +1,26 @@
+package managers;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+import enums.TaskCollection;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Версии коллекций менеджера задач: счетчик на коллекцию, увеличивается при каждом ее изменении.
+ * Версия увеличивается после того, как изменение стало видно читателям, поэтому читатель, прочитавший
+ * версию до данных, получает данные не старее этой версии. Чтение версии не требует блокировок менеджера.
+ */
+@ClassInformation("Счетчики версий коллекций менеджера задач")
+final class ModificationVersions {
+    private final AtomicLongArray versions = new AtomicLongArray(TaskCollection.values().length);
+
+    @MethodInformation("Отмечает изменение коллекции")
+    void bump(TaskCollection collection) {
+        versions.incrementAndGet(collection.ordinal());
+    }
+
+    long get(TaskCollection collection) {
+        return versions.get(collection.ordinal());
+    }
+}
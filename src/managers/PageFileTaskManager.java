@@ -0,0 +1,459 @@
+package managers;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+import enums.TaskCollection;
+import enums.TaskType;
+import storage.BPlusTree;
+import storage.BufferPool;
+import storage.TaskPageStore;
+import tasks.Epic;
+import tasks.EpicProgress;
+import tasks.Subtask;
+import tasks.Task;
+
+import java.io.File;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Менеджер задач, который не держит доску в памяти: записи и индексы лежат в файле страниц TaskPageStore,
+ * в памяти - только ограниченный пул страниц. Поиск по id, приоритеты и поиск пересечений идут через
+ * B+-деревья индексов. Статус, счетчики и границы времени эпика вычисляются по его подзадачам при чтении.
+ * Выданные вызывающему объекты запоминаются по слабым ссылкам: пока объект кому-то нужен, повторное чтение
+ * возвращает его же, а эпик пересчитывается при изменении подзадач, как в InMemoryTaskManager.
+ */
+@ClassInformation("Менеджер задач поверх файла страниц с B+-деревьями и пулом страниц")
+public class PageFileTaskManager implements TaskManager, AutoCloseable {
+    public static final int DEFAULT_POOL_PAGES = 1024;
+    private static final Comparator<Task> PRIORITY_ORDER =
+            Comparator.comparing(Task::getStartTime).thenComparingInt(Task::getId);
+
+    private final TaskPageStore store;
+    private final HistoryManager historyManager = Managers.getDefaultHistory();
+    private final Map<Integer, LiveReference> live = new HashMap<>();
+    private final ReferenceQueue<Task> released = new ReferenceQueue<>();
+    private final ModificationVersions versions = new ModificationVersions();
+
+    public PageFileTaskManager(File file) {
+        this(file, DEFAULT_POOL_PAGES);
+    }
+
+    /**
+     * Открывает файл страниц или создает новый. poolPages - сколько страниц держать в памяти.
+     */
+    public PageFileTaskManager(File file, int poolPages) {
+        this.store = new TaskPageStore(file.toPath(), poolPages);
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    @Override
+    @MethodInformation("Создание Task")
+    public synchronized Task createTask(Task task) {
+        task.setId(store.nextId());
+        store.put(task);
+        remember(task);
+        versions.bump(TaskCollection.TASKS);
+        return task;
+    }
+
+    @Override
+    @MethodInformation("Создание Epic")
+    public synchronized Epic createEpic(Epic epic) {
+        epic.setId(store.nextId());
+        store.put(epic);
+        aggregate(epic);
+        remember(epic);
+        versions.bump(TaskCollection.EPICS);
+        return epic;
+    }
+
+    @Override
+    @MethodInformation("Создание SubTask")
+    public synchronized Subtask createSubtask(Subtask subtask) {
+        if (!store.contains(TaskType.EPIC, subtask.getEpicId())) {
+            throw new IllegalArgumentException("tasks.Epic with the given ID does not exist.");
+        }
+        subtask.setId(store.nextId());
+        store.put(subtask);
+        remember(subtask);
+        refreshLiveEpic(subtask.getEpicId());
+        bumpSubtasks();
+        return subtask;
+    }
+
+    @Override
+    @MethodInformation("Получение Task по id")
+    public synchronized Task getTaskById(int id) {
+        return viewed(find(TaskType.TASK, id));
+    }
+
+    @Override
+    @MethodInformation("Получение Epic по id")
+    public synchronized Epic getEpicById(int id) {
+        return viewed((Epic) find(TaskType.EPIC, id));
+    }
+
+    @Override
+    @MethodInformation("Получение SubTask по id")
+    public synchronized Subtask getSubtaskById(int id) {
+        return viewed((Subtask) find(TaskType.SUBTASK, id));
+    }
+
+    @Override
+    @MethodInformation("Обновление Task")
+    public synchronized void updateTask(Task task) {
+        store.put(task);
+        remember(task);
+        versions.bump(TaskCollection.TASKS);
+    }
+
+    @Override
+    @MethodInformation("Обновление Epic")
+    public synchronized void updateEpic(Epic epic) {
+        store.put(epic);
+        aggregate(epic);
+        remember(epic);
+        versions.bump(TaskCollection.EPICS);
+    }
+
+    @Override
+    @MethodInformation("Обновление SubTask")
+    public synchronized void updateSubtask(Subtask subtask) {
+        Task previous = store.put(subtask);
+        remember(subtask);
+        if (previous instanceof Subtask oldSubtask && oldSubtask.getEpicId() != subtask.getEpicId()) {
+            refreshLiveEpic(oldSubtask.getEpicId());
+        }
+        refreshLiveEpic(subtask.getEpicId());
+        bumpSubtasks();
+    }
+
+    @Override
+    @MethodInformation("Удаление Task по id")
+    public synchronized void removeTask(int id) {
+        store.remove(TaskType.TASK, id);
+        forget(id);
+        historyManager.remove(id);
+        versions.bump(TaskCollection.TASKS);
+        versions.bump(TaskCollection.HISTORY);
+    }
+
+    @Override
+    @MethodInformation("Удаление Epic по id")
+    public synchronized void removeEpic(int id) {
+        if (store.remove(TaskType.EPIC, id) != null) {
+            List<Integer> subtaskIds = new ArrayList<>();
+            store.forEachSubtaskOf(id, (subtaskId, address) -> subtaskIds.add(subtaskId));
+            for (int subtaskId : subtaskIds) {
+                store.remove(TaskType.SUBTASK, subtaskId);
+                forget(subtaskId);
+                historyManager.remove(subtaskId);
+            }
+        }
+        forget(id);
+        historyManager.remove(id);
+        bumpSubtasks();
+        versions.bump(TaskCollection.HISTORY);
+    }
+
+    @Override
+    @MethodInformation("Удаление SubTask по id")
+    public synchronized void removeSubtask(int id) {
+        Task previous = store.remove(TaskType.SUBTASK, id);
+        forget(id);
+        if (previous instanceof Subtask subtask) {
+            refreshLiveEpic(subtask.getEpicId());
+        }
+        historyManager.remove(id);
+        bumpSubtasks();
+        versions.bump(TaskCollection.HISTORY);
+    }
+
+    @Override
+    @MethodInformation("Удаление всех Task")
+    public synchronized void deleteTasks() {
+        store.clear(TaskType.TASK);
+        versions.bump(TaskCollection.TASKS);
+    }
+
+    @Override
+    @MethodInformation("Удаление всех SubTask")
+    public synchronized void deleteSubtasks() {
+        store.clear(TaskType.SUBTASK);
+        List<Epic> liveEpics = new ArrayList<>();
+        for (LiveReference reference : live.values()) {
+            if (reference.get() instanceof Epic epic) {
+                liveEpics.add(epic);
+            }
+        }
+        liveEpics.forEach(this::aggregate);
+        bumpSubtasks();
+    }
+
+    @Override
+    @MethodInformation("Удаление всех Epic")
+    public synchronized void deleteEpics() {
+        store.clear(TaskType.SUBTASK);
+        store.clear(TaskType.EPIC);
+        bumpSubtasks();
+    }
+
+    @Override
+    @MethodInformation("Версия коллекции. Читается без блокировки менеджера")
+    public long getVersion(TaskCollection collection) {
+        return versions.get(collection);
+    }
+
+    @Override
+    @MethodInformation("Получение истории просмотров Object<? extends Task>")
+    public synchronized List<Task> getHistory() {
+        return historyManager.getHistory();
+    }
+
+    @Override
+    @MethodInformation("Получение листа Task")
+    public synchronized List<Task> getAllTasks() {
+        return collect(TaskType.TASK);
+    }
+
+    @Override
+    @MethodInformation("Получение листа Epic")
+    public synchronized List<Epic> getAllEpics() {
+        return collect(TaskType.EPIC);
+    }
+
+    @Override
+    @MethodInformation("Получение листа SubTask")
+    public synchronized List<Subtask> getAllSubtasks() {
+        return collect(TaskType.SUBTASK);
+    }
+
+    @Override
+    @MethodInformation("Получение SubTask по id Epic")
+    public synchronized List<Subtask> getSubtasksByEpicId(int epicId) {
+        List<Subtask> epicSubtasks = new ArrayList<>();
+        if (store.contains(TaskType.EPIC, epicId)) {
+            store.forEachSubtaskOf(epicId, (id, address) -> epicSubtasks.add((Subtask) materialize(id, address)));
+        }
+        return epicSubtasks;
+    }
+
+    @Override
+    @MethodInformation("Получение прогресса Epic по статусам подзадач")
+    public synchronized EpicProgress getEpicProgress(int epicId) {
+        Epic epic = (Epic) find(TaskType.EPIC, epicId);
+        return epic == null ? null : epic.getProgress();
+    }
+
+    @Override
+    @MethodInformation("Вычисление приоритетных Задач")
+    public Set<Task> getPrioritizedTasks(List<? extends Task> tasksList) {
+        TreeSet<Task> prioritizedTasks = new TreeSet<>(PRIORITY_ORDER);
+        if (tasksList == null || tasksList.isEmpty()) {
+            return prioritizedTasks;
+        }
+
+        tasksList.stream()
+                .filter(task -> task.getStartTime() != null)
+                .forEach(prioritizedTasks::add);
+        return prioritizedTasks;
+    }
+
+    @Override
+    @MethodInformation("Получение приоритетных Task обходом индекса по времени начала. Набор собирается в памяти" +
+            " при каждом вызове, для больших досок лучше findOverlapping по нужному интервалу")
+    public synchronized NavigableSet<Task> getPrioritizedTasks() {
+        NavigableSet<Task> prioritizedTasks = new TreeSet<>(PRIORITY_ORDER);
+        store.forEachByStart(TaskType.TASK, null, (id, address) -> prioritizedTasks.add(materialize(id, address)));
+        return Collections.unmodifiableNavigableSet(prioritizedTasks);
+    }
+
+    @Override
+    @MethodInformation("Проверка задач (Task) на пересечение одним проходом по индексу времени начала")
+    public synchronized boolean lookingForTemporaryIntersectionsInTasks() {
+        IntersectionSweep sweep = new IntersectionSweep();
+        store.forEachByStart(TaskType.TASK, null, (id, address) -> !sweep.add(store.read(address)));
+        return sweep.found;
+    }
+
+    @Override
+    @MethodInformation("Поиск Task и SubTask, пересекающихся с интервалом [from, to). Индекс по времени начала" +
+            " обходится с from минус наибольшая продолжительность до to")
+    public synchronized List<Task> findOverlapping(LocalDateTime from, LocalDateTime to) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("Interval bounds must not be null.");
+        }
+
+        List<Task> overlapping = new ArrayList<>();
+        if (!from.isBefore(to)) {
+            return overlapping;
+        }
+        for (TaskType type : new TaskType[]{TaskType.TASK, TaskType.SUBTASK}) {
+            store.forEachByStart(type, from.minusMinutes(store.getMaxSpan(type)), (id, address) -> {
+                Task task = materialize(id, address);
+                if (!task.getStartTime().isBefore(to)) {
+                    return false;
+                }
+                if (task.getEndTime() != null && from.isBefore(task.getEndTime())) {
+                    overlapping.add(task);
+                }
+                return true;
+            });
+        }
+        overlapping.sort(PRIORITY_ORDER);
+        return overlapping;
+    }
+
+    @MethodInformation("Записывает измененные страницы на диск")
+    public synchronized void flush() {
+        store.flush();
+    }
+
+    @MethodInformation("Пул страниц хранилища. Нужен для наблюдения за попаданиями и вытеснениями")
+    public BufferPool getBufferPool() {
+        return store.getBufferPool();
+    }
+
+    @MethodInformation("Записывает измененные страницы и закрывает файл")
+    @Override
+    public synchronized void close() {
+        store.close();
+    }
+
+    private Task find(TaskType type, int id) {
+        long address = store.address(type, id);
+        return address == BPlusTree.NOT_FOUND ? null : materialize(id, address);
+    }
+
+    private <T extends Task> T viewed(T task) {
+        if (task != null) {
+            historyManager.add(task);
+            versions.bump(TaskCollection.HISTORY);
+        }
+        return task;
+    }
+
+    @MethodInformation("Изменение подзадач меняет и эпики: их статус, границы времени и списки подзадач")
+    private void bumpSubtasks() {
+        versions.bump(TaskCollection.SUBTASKS);
+        versions.bump(TaskCollection.EPICS);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Task> List<T> collect(TaskType type) {
+        List<T> records = new ArrayList<>();
+        store.forEach(type, (id, address) -> records.add((T) materialize(id, address)));
+        return records;
+    }
+
+    @MethodInformation("Возвращает уже выданный объект с этим id или читает запись. Эпик дополняется подзадачами")
+    private Task materialize(int id, long address) {
+        Task task = liveTask(id);
+        if (task == null) {
+            task = store.read(address);
+            if (task instanceof Epic epic) {
+                aggregate(epic);
+            }
+            remember(task);
+        }
+        return task;
+    }
+
+    @MethodInformation("Заполняет подзадачи, счетчики статусов, границы времени и статус эпика по его подзадачам")
+    private void aggregate(Epic epic) {
+        epic.clearSubtasks();
+        store.forEachSubtaskOf(epic.getId(), (id, address) -> {
+            Subtask subtask = (Subtask) Objects.requireNonNullElseGet(liveTask(id), () -> store.read(address));
+            epic.addSubtask(id);
+            epic.countSubtaskStatus(subtask.getStatus(), 1);
+            epic.includeSubtaskTime(subtask);
+            return true;
+        });
+        epic.refreshStatus();
+    }
+
+    private void refreshLiveEpic(int epicId) {
+        if (liveTask(epicId) instanceof Epic epic) {
+            aggregate(epic);
+        }
+    }
+
+    private Task liveTask(int id) {
+        expungeReleased();
+        LiveReference reference = live.get(id);
+        return reference == null ? null : reference.get();
+    }
+
+    private void remember(Task task) {
+        expungeReleased();
+        live.put(task.getId(), new LiveReference(task, released));
+    }
+
+    private void forget(int id) {
+        live.remove(id);
+    }
+
+    private void expungeReleased() {
+        for (Object reference = released.poll(); reference != null; reference = released.poll()) {
+            LiveReference collected = (LiveReference) reference;
+            live.remove(collected.id, collected);
+        }
+    }
+
+    /**
+     * Слабая ссылка на выданный объект. Помнит id, чтобы убрать запись из карты после сборки объекта.
+     */
+    private static class LiveReference extends WeakReference<Task> {
+        private final int id;
+
+        LiveReference(Task task, ReferenceQueue<Task> queue) {
+            super(task, queue);
+            this.id = task.getId();
+        }
+    }
+
+    /**
+     * Проход по задачам в порядке времени начала. Задача пересекается с более ранней, если начинается до
+     * наибольшего окончания предыдущих; задачи с одинаковым началом пересекаются, если обе не нулевой длины.
+     */
+    private static class IntersectionSweep {
+        private LocalDateTime maxEndBefore;
+        private LocalDateTime groupStart;
+        private LocalDateTime groupMaxEnd;
+        private boolean groupHasInterval;
+        private boolean found;
+
+        boolean add(Task task) {
+            LocalDateTime start = task.getStartTime();
+            LocalDateTime end = task.getEndTime();
+            if (end == null) {
+                return false;
+            }
+            if (!start.equals(groupStart)) {
+                maxEndBefore = latest(maxEndBefore, groupMaxEnd);
+                groupStart = start;
+                groupMaxEnd = null;
+                groupHasInterval = false;
+            }
+            boolean interval = start.isBefore(end);
+            found = (maxEndBefore != null && start.isBefore(maxEndBefore)) || (interval && groupHasInterval);
+            groupHasInterval |= interval;
+            groupMaxEnd = latest(groupMaxEnd, end);
+            return found;
+        }
+
+        private static LocalDateTime latest(LocalDateTime first, LocalDateTime second) {
+            if (first == null) {
+                return second;
+            }
+            return second == null || first.isAfter(second) ? first : second;
+        }
+    }
+}
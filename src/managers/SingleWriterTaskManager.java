@@ -0,0 +1,716 @@
+package managers;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+import enums.TaskCollection;
+import tasks.Epic;
+import tasks.EpicProgress;
+import tasks.Subtask;
+import tasks.Task;
+import util.IntSortedSet;
+import util.PersistentIntMap;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Менеджер задач с единственным потоком-писателем. Все изменения (create*, update*, remove*, delete*) попадают
+ * в ограниченный кольцевой буфер и применяются одним потоком к внутреннему InMemoryTaskManager пачками.
+ * После каждой пачки писатель публикует неизменяемый снимок через volatile-ссылку, и чтения
+ * (getAll*, get*ById, getPrioritizedTasks, getHistory) обслуживаются из текущего снимка без блокировок.
+ * Снимок построен на PersistentIntMap: пачка копирует только пути к задачам, которые она изменила,
+ * поэтому стоимость записи зависит от числа изменений, а не от размера доски. Списки getAll* и индекс
+ * приоритетов строятся по снимку при первом чтении и дальше переиспользуются, пока коллекция не изменится.
+ * Эпики писатель меняет при каждом изменении их подзадач, поэтому в снимок попадают их копии,
+ * снятые писателем при публикации: читатель не увидит эпик посреди изменения.
+ * Просмотр (get*ById) записывается в историю асинхронно: getHistory может не увидеть его сразу после
+ * возврата get*ById. Просмотры и изменения из одного потока применяются по порядку, поэтому просмотр
+ * гарантированно есть в истории после возврата следующего изменения из того же потока.
+ */
+@ClassInformation("Менеджер задач с одним потоком-писателем и чтением из снимков")
+public class SingleWriterTaskManager implements TaskManager, AutoCloseable {
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final int DEFAULT_MAX_BATCH = 256;
+
+    private static final int TASKS = 1;
+    private static final int EPICS = 1 << 1;
+    private static final int SUBTASKS = 1 << 2;
+    private static final int HISTORY = 1 << 3;
+
+    private final TrackedState state = new TrackedState();
+    private final BlockingQueue<Command> ringBuffer;
+    private final Queue<Command> overflowViews = new ConcurrentLinkedQueue<>();
+    private final int maxBatch;
+    private final Thread writer;
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+    private volatile boolean running = true;
+    private volatile Throwable writerFailure;
+
+    public SingleWriterTaskManager() {
+        this(DEFAULT_CAPACITY, DEFAULT_MAX_BATCH);
+    }
+
+    public SingleWriterTaskManager(int capacity, int maxBatch) {
+        this.ringBuffer = new ArrayBlockingQueue<>(capacity);
+        this.maxBatch = maxBatch;
+        this.writer = new Thread(this::writeLoop, "task-manager-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    @Override
+    @MethodInformation("Создание Task")
+    public Task createTask(Task task) {
+        return execute(TASKS, manager -> manager.createTask(task));
+    }
+
+    @Override
+    @MethodInformation("Создание Epic")
+    public Epic createEpic(Epic epic) {
+        return execute(EPICS, manager -> manager.createEpic(epic));
+    }
+
+    @Override
+    @MethodInformation("Создание SubTask")
+    public Subtask createSubtask(Subtask subtask) {
+        return execute(SUBTASKS | EPICS, manager -> manager.createSubtask(subtask));
+    }
+
+    @Override
+    @MethodInformation("Получение Task по id")
+    public Task getTaskById(int id) {
+        return recordView(snapshot.tasks.get(id));
+    }
+
+    @Override
+    @MethodInformation("Получение Epic по id")
+    public Epic getEpicById(int id) {
+        return recordView(snapshot.epics.get(id));
+    }
+
+    @Override
+    @MethodInformation("Получение SubTask по id")
+    public Subtask getSubtaskById(int id) {
+        return recordView(snapshot.subtasks.get(id));
+    }
+
+    @Override
+    @MethodInformation("Обновление Task")
+    public void updateTask(Task task) {
+        execute(TASKS, manager -> {
+            manager.updateTask(task);
+            return null;
+        });
+    }
+
+    @Override
+    @MethodInformation("Обновление Epic")
+    public void updateEpic(Epic epic) {
+        execute(EPICS, manager -> {
+            manager.updateEpic(epic);
+            return null;
+        });
+    }
+
+    @Override
+    @MethodInformation("Обновление SubTask")
+    public void updateSubtask(Subtask subtask) {
+        execute(SUBTASKS | EPICS, manager -> {
+            manager.updateSubtask(subtask);
+            return null;
+        });
+    }
+
+    @Override
+    @MethodInformation("Удаление Task по id")
+    public void removeTask(int id) {
+        execute(TASKS | HISTORY, manager -> {
+            manager.removeTask(id);
+            return null;
+        });
+    }
+
+    @Override
+    @MethodInformation("Удаление Epic по id")
+    public void removeEpic(int id) {
+        execute(EPICS | SUBTASKS | HISTORY, manager -> {
+            manager.removeEpic(id);
+            return null;
+        });
+    }
+
+    @Override
+    @MethodInformation("Удаление SubTask по id")
+    public void removeSubtask(int id) {
+        execute(SUBTASKS | EPICS | HISTORY, manager -> {
+            manager.removeSubtask(id);
+            return null;
+        });
+    }
+
+    @Override
+    @MethodInformation("Получение листа Task")
+    public List<Task> getAllTasks() {
+        return snapshot.taskList();
+    }
+
+    @Override
+    @MethodInformation("Получение листа Epic")
+    public List<Epic> getAllEpics() {
+        return snapshot.epicList();
+    }
+
+    @Override
+    @MethodInformation("Получение листа SubTask")
+    public List<Subtask> getAllSubtasks() {
+        return snapshot.subtaskList();
+    }
+
+    @Override
+    @MethodInformation("Получение SubTask по id Epic")
+    public List<Subtask> getSubtasksByEpicId(int epicId) {
+        List<Subtask> epicSubtasks = snapshot.epicSubtasks.get(epicId);
+        return epicSubtasks == null ? List.of() : epicSubtasks;
+    }
+
+    @Override
+    @MethodInformation("Получение прогресса Epic по счетчикам статусов подзадач")
+    public EpicProgress getEpicProgress(int epicId) {
+        return snapshot.epicProgress.get(epicId);
+    }
+
+    @Override
+    @MethodInformation("Версия коллекции в текущем снимке: растет, когда пачка изменила коллекцию")
+    public long getVersion(TaskCollection collection) {
+        return snapshot.versions[collection.ordinal()];
+    }
+
+    @Override
+    @MethodInformation("Получение истории просмотров Object<? extends Task>")
+    public List<Task> getHistory() {
+        return snapshot.history;
+    }
+
+    @Override
+    @MethodInformation("Вычисление приоритетных Задач")
+    public Set<? extends Task> getPrioritizedTasks(List<? extends Task> list) {
+        return state.getPrioritizedTasks(list);
+    }
+
+    @Override
+    @MethodInformation("Получение приоритетных Task из текущего снимка")
+    public NavigableSet<Task> getPrioritizedTasks() {
+        return snapshot.prioritized();
+    }
+
+    @Override
+    @MethodInformation("Проверка задач (Task) на пересечение по текущему снимку")
+    public boolean lookingForTemporaryIntersectionsInTasks() {
+        return snapshot.intersections;
+    }
+
+    @Override
+    @MethodInformation("Поиск пересечений. Индекс интервалов принадлежит писателю, поэтому запрос идет через буфер")
+    public List<Task> findOverlapping(LocalDateTime from, LocalDateTime to) {
+        return execute(0, manager -> manager.findOverlapping(from, to));
+    }
+
+    @Override
+    @MethodInformation("Удаление всех Task")
+    public void deleteTasks() {
+        execute(TASKS, manager -> {
+            manager.deleteTasks();
+            return null;
+        });
+    }
+
+    @Override
+    @MethodInformation("Удаление всех SubTask")
+    public void deleteSubtasks() {
+        execute(SUBTASKS | EPICS, manager -> {
+            manager.deleteSubtasks();
+            return null;
+        });
+    }
+
+    @Override
+    @MethodInformation("Удаление всех Epic")
+    public void deleteEpics() {
+        execute(EPICS | SUBTASKS, manager -> {
+            manager.deleteEpics();
+            return null;
+        });
+    }
+
+    @Override
+    @MethodInformation("Останавливает поток-писатель после применения уже принятых команд")
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        enqueue(new Command(0, manager -> null, null));
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @MethodInformation("Ставит изменение в буфер и ждет, пока писатель применит его и опубликует снимок")
+    private <T> T execute(int dirty, Function<InMemoryTaskManager, T> action) {
+        if (writerFailure != null) {
+            throw new IllegalStateException("Task manager writer has failed.", writerFailure);
+        }
+        if (!running) {
+            throw new IllegalStateException("Task manager is closed.");
+        }
+        Command command = new Command(dirty, (Function<InMemoryTaskManager, Object>) action,
+                new CompletableFuture<>());
+        enqueue(command);
+        if (writerFailure != null) { /*Писатель остановился после проверки running - команду он уже не заберет*/
+            failPending(writerFailure);
+        }
+        try {
+            return (T) command.completion.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @MethodInformation("Передает писателю просмотр задачи для истории, не блокируя читателя")
+    private <T extends Task> T recordView(T task) {
+        if (task != null) {
+            Command view = new Command(HISTORY, manager -> viewInState(manager, task.getId()), null);
+            if (!ringBuffer.offer(view)) {
+                overflowViews.add(view); /*Буфер полон - писатель заберет просмотр вместе со следующей пачкой*/
+            }
+        }
+        return task;
+    }
+
+    private static Task viewInState(InMemoryTaskManager manager, int id) {
+        Task task = manager.getTaskById(id);
+        if (task == null) {
+            task = manager.getEpicById(id);
+        }
+        if (task == null) {
+            task = manager.getSubtaskById(id);
+        }
+        return task;
+    }
+
+    private void enqueue(Command command) {
+        try {
+            ringBuffer.put(command);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while submitting a command.", e);
+        }
+    }
+
+    @MethodInformation("Цикл писателя. Если он падает с ошибкой (например, Error из команды или сбой" +
+            " публикации снимка), все ждущие команды завершаются этой ошибкой, а новые сразу получают отказ")
+    private void writeLoop() {
+        List<Command> batch = new ArrayList<>(maxBatch);
+        try {
+            while (running || !ringBuffer.isEmpty()) {
+                try {
+                    batch.add(ringBuffer.take());
+                } catch (InterruptedException e) {
+                    break;
+                }
+                ringBuffer.drainTo(batch, maxBatch - 1);
+                Command view;
+                while ((view = overflowViews.poll()) != null) {
+                    batch.add(view);
+                }
+
+                int dirty = 0;
+                for (Command command : batch) {
+                    try {
+                        command.result = command.action.apply(state);
+                        dirty |= command.dirty;
+                    } catch (RuntimeException e) {
+                        command.failure = e;
+                    }
+                }
+                if (dirty != 0) {
+                    snapshot = snapshot.rebuild(state, dirty);
+                }
+                for (Command command : batch) {
+                    command.complete();
+                }
+                batch.clear();
+            }
+        } catch (Throwable e) {
+            writerFailure = e;
+            running = false;
+            for (Command command : batch) {
+                command.fail(e);
+            }
+            failPending(e);
+            throw e;
+        }
+    }
+
+    @MethodInformation("Завершает ошибкой писателя все команды, оставшиеся в буфере")
+    private void failPending(Throwable failure) {
+        Command command;
+        while ((command = ringBuffer.poll()) != null) {
+            command.fail(failure);
+        }
+    }
+
+    private static final class Command {
+        final int dirty;
+        final Function<InMemoryTaskManager, Object> action;
+        final CompletableFuture<Object> completion;
+        Object result;
+        RuntimeException failure;
+
+        Command(int dirty, Function<InMemoryTaskManager, Object> action, CompletableFuture<Object> completion) {
+            this.dirty = dirty;
+            this.action = action;
+            this.completion = completion;
+        }
+
+        void fail(Throwable cause) {
+            if (completion != null) {
+                completion.completeExceptionally(cause);
+            }
+        }
+
+        void complete() {
+            if (completion == null) {
+                return;
+            }
+            if (failure != null) {
+                completion.completeExceptionally(failure);
+            } else {
+                completion.complete(result);
+            }
+        }
+    }
+
+    /**
+     * Состояние писателя. Запоминает id задач, эпиков и подзадач, измененных с прошлой публикации снимка,
+     * чтобы следующий снимок скопировал только их. Эпик считается измененным и тогда, когда у него
+     * появилась, изменилась или пропала подзадача.
+     */
+    private static final class TrackedState extends InMemoryTaskManager {
+        final IntSortedSet touchedTasks = new IntSortedSet();
+        final IntSortedSet touchedEpics = new IntSortedSet();
+        final IntSortedSet touchedSubtasks = new IntSortedSet();
+        boolean tasksCleared;
+        boolean epicsCleared;
+        boolean subtasksCleared;
+
+        @Override
+        public Task createTask(Task task) {
+            Task created = super.createTask(task);
+            touchedTasks.add(created.getId());
+            return created;
+        }
+
+        @Override
+        public Epic createEpic(Epic epic) {
+            Epic created = super.createEpic(epic);
+            touchedEpics.add(created.getId());
+            return created;
+        }
+
+        @Override
+        public Subtask createSubtask(Subtask subtask) {
+            Subtask created = super.createSubtask(subtask);
+            touchedSubtasks.add(created.getId());
+            touchedEpics.add(created.getEpicId());
+            return created;
+        }
+
+        @Override
+        public void updateTask(Task task) {
+            super.updateTask(task);
+            touchedTasks.add(task.getId());
+        }
+
+        @Override
+        public void updateEpic(Epic epic) {
+            super.updateEpic(epic);
+            touchedEpics.add(epic.getId());
+        }
+
+        @Override
+        public void updateSubtask(Subtask subtask) {
+            Subtask previous = subtasks.get(subtask.getId());
+            super.updateSubtask(subtask);
+            touchedSubtasks.add(subtask.getId());
+            touchedEpics.add(subtask.getEpicId());
+            if (previous != null) {
+                touchedEpics.add(previous.getEpicId());
+            }
+        }
+
+        @Override
+        public void removeTask(int id) {
+            super.removeTask(id);
+            touchedTasks.add(id);
+        }
+
+        @Override
+        public void removeEpic(int id) {
+            Epic epic = epics.get(id);
+            if (epic != null) {
+                epic.forEachSubtaskId(touchedSubtasks::add);
+            }
+            super.removeEpic(id);
+            touchedEpics.add(id);
+        }
+
+        @Override
+        public void removeSubtask(int id) {
+            Subtask subtask = subtasks.get(id);
+            super.removeSubtask(id);
+            touchedSubtasks.add(id);
+            if (subtask != null) {
+                touchedEpics.add(subtask.getEpicId());
+            }
+        }
+
+        @Override
+        public void deleteTasks() {
+            super.deleteTasks();
+            tasksCleared = true;
+            touchedTasks.clear();
+        }
+
+        @Override
+        public void deleteSubtasks() {
+            super.deleteSubtasks();
+            subtasksCleared = true;
+            touchedSubtasks.clear();
+            for (Epic epic : epics.values()) { /*У всех эпиков опустели списки подзадач*/
+                touchedEpics.add(epic.getId());
+            }
+        }
+
+        @Override
+        public void deleteEpics() {
+            super.deleteEpics();
+            epicsCleared = true;
+            subtasksCleared = true;
+            touchedEpics.clear();
+            touchedSubtasks.clear();
+        }
+
+        void clearChanges() {
+            touchedTasks.clear();
+            touchedEpics.clear();
+            touchedSubtasks.clear();
+            tasksCleared = false;
+            epicsCleared = false;
+            subtasksCleared = false;
+        }
+    }
+
+    /**
+     * Неизменяемый снимок состояния. Измененные пачкой задачи переносятся в новые версии PersistentIntMap,
+     * остальные узлы общие с предыдущим снимком. Списки и индекс приоритетов строятся при первом чтении
+     * и переходят в следующий снимок, если их коллекция не менялась. Версии измененных коллекций
+     * увеличиваются на единицу.
+     */
+    private static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(PersistentIntMap.empty(), PersistentIntMap.empty(),
+                PersistentIntMap.empty(), PersistentIntMap.empty(), PersistentIntMap.empty(), false, List.of(),
+                new int[0], new long[TaskCollection.values().length]);
+
+        final PersistentIntMap<Task> tasks;
+        final PersistentIntMap<Epic> epics;
+        final PersistentIntMap<Subtask> subtasks;
+        final PersistentIntMap<List<Subtask>> epicSubtasks;
+        final PersistentIntMap<EpicProgress> epicProgress;
+        final boolean intersections;
+        final List<Task> history;
+        final int[] historyEpics; /*Отсортированные id эпиков в истории: их копии надо менять вместе с эпиками*/
+        final long[] versions;
+        /* Строятся читателями по требованию. Гонка безопасна: оба читателя построят одинаковые списки */
+        private volatile List<Task> taskList;
+        private volatile List<Epic> epicList;
+        private volatile List<Subtask> subtaskList;
+        private volatile NavigableSet<Task> prioritized;
+
+        Snapshot(PersistentIntMap<Task> tasks, PersistentIntMap<Epic> epics, PersistentIntMap<Subtask> subtasks,
+                 PersistentIntMap<List<Subtask>> epicSubtasks, PersistentIntMap<EpicProgress> epicProgress,
+                 boolean intersections, List<Task> history, int[] historyEpics, long[] versions) {
+            this.tasks = tasks;
+            this.epics = epics;
+            this.subtasks = subtasks;
+            this.epicSubtasks = epicSubtasks;
+            this.epicProgress = epicProgress;
+            this.intersections = intersections;
+            this.history = history;
+            this.historyEpics = historyEpics;
+            this.versions = versions;
+        }
+
+        List<Task> taskList() {
+            List<Task> list = taskList;
+            if (list == null) {
+                list = tasks.values();
+                taskList = list;
+            }
+            return list;
+        }
+
+        List<Epic> epicList() {
+            List<Epic> list = epicList;
+            if (list == null) {
+                list = epics.values();
+                epicList = list;
+            }
+            return list;
+        }
+
+        List<Subtask> subtaskList() {
+            List<Subtask> list = subtaskList;
+            if (list == null) {
+                list = subtasks.values();
+                subtaskList = list;
+            }
+            return list;
+        }
+
+        NavigableSet<Task> prioritized() {
+            NavigableSet<Task> set = prioritized;
+            if (set == null) {
+                TreeSet<Task> sorted = new TreeSet<>(InMemoryTaskManager.PRIORITY_ORDER);
+                tasks.forEach(task -> {
+                    if (task.getStartTime() != null) {
+                        sorted.add(task);
+                    }
+                });
+                set = Collections.unmodifiableNavigableSet(sorted);
+                prioritized = set;
+            }
+            return set;
+        }
+
+        @MethodInformation("Следующий снимок: переносит из state только задачи, измененные с прошлой публикации")
+        Snapshot rebuild(TrackedState state, int dirty) {
+            PersistentIntMap<Task> newTasks = apply(state.tasksCleared ? PersistentIntMap.empty() : tasks,
+                    state.touchedTasks, state.tasks::get);
+            PersistentIntMap<Subtask> newSubtasks = apply(state.subtasksCleared ? PersistentIntMap.empty() : subtasks,
+                    state.touchedSubtasks, state.subtasks::get);
+            PersistentIntMap<Epic> newEpics = apply(state.epicsCleared ? PersistentIntMap.empty() : epics,
+                    state.touchedEpics, id -> {
+                        Epic epic = state.epics.get(id);
+                        return epic == null ? null : epic.copy();
+                    });
+            PersistentIntMap<List<Subtask>> newEpicSubtasks = epicSubtasks;
+            PersistentIntMap<EpicProgress> newEpicProgress = epicProgress;
+            if (state.epicsCleared) {
+                newEpicSubtasks = PersistentIntMap.empty();
+                newEpicProgress = PersistentIntMap.empty();
+            }
+            int[] touchedEpics = state.touchedEpics.toArray();
+            for (int epicId : touchedEpics) {
+                Epic epic = state.epics.get(epicId);
+                if (epic == null) {
+                    newEpicSubtasks = newEpicSubtasks.without(epicId);
+                    newEpicProgress = newEpicProgress.without(epicId);
+                } else {
+                    newEpicSubtasks = newEpicSubtasks.with(epicId, List.copyOf(state.getSubtasksByEpicId(epicId)));
+                    newEpicProgress = newEpicProgress.with(epicId, epic.getProgress());
+                }
+            }
+            state.clearChanges();
+
+            boolean newIntersections = (dirty & TASKS) != 0 ? state.lookingForTemporaryIntersectionsInTasks()
+                    : intersections;
+            List<Task> newHistory = history;
+            int[] newHistoryEpics = historyEpics;
+            if ((dirty & HISTORY) != 0 || touchesHistory(touchedEpics)) {
+                newHistory = publishedHistory(state.getHistory(), newEpics);
+                newHistoryEpics = epicIds(newHistory);
+            }
+
+            long[] newVersions = versions.clone();
+            for (TaskCollection collection : TaskCollection.values()) {
+                if ((dirty & maskOf(collection)) != 0) {
+                    newVersions[collection.ordinal()]++;
+                }
+            }
+
+            Snapshot next = new Snapshot(newTasks, newEpics, newSubtasks, newEpicSubtasks, newEpicProgress,
+                    newIntersections, newHistory, newHistoryEpics, newVersions);
+            if (newTasks == tasks) {
+                next.taskList = taskList;
+                next.prioritized = prioritized;
+            }
+            if (newEpics == epics) {
+                next.epicList = epicList;
+            }
+            if (newSubtasks == subtasks) {
+                next.subtaskList = subtaskList;
+            }
+            return next;
+        }
+
+        private boolean touchesHistory(int[] touchedEpics) {
+            for (int id : touchedEpics) {
+                if (Arrays.binarySearch(historyEpics, id) >= 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static int[] epicIds(List<Task> history) {
+            return history.stream().filter(task -> task instanceof Epic).mapToInt(Task::getId).sorted().toArray();
+        }
+
+        @MethodInformation("История писателя с опубликованными копиями эпиков вместо живых объектов")
+        private static List<Task> publishedHistory(List<Task> history, PersistentIntMap<Epic> epics) {
+            List<Task> published = new ArrayList<>(history.size());
+            for (Task task : history) {
+                Epic epic = task instanceof Epic ? epics.get(task.getId()) : null;
+                published.add(epic != null ? epic : task);
+            }
+            return Collections.unmodifiableList(published);
+        }
+
+        private static <T> PersistentIntMap<T> apply(PersistentIntMap<T> map, IntSortedSet ids,
+                                                     IntFunction<? extends T> current) {
+            for (int id : ids.toArray()) {
+                T value = current.apply(id);
+                map = value == null ? map.without(id) : map.with(id, value);
+            }
+            return map;
+        }
+
+        private static int maskOf(TaskCollection collection) {
+            return switch (collection) {
+                case TASKS -> TASKS;
+                case EPICS -> EPICS;
+                case SUBTASKS -> SUBTASKS;
+                case HISTORY -> HISTORY;
+            };
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package managers;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+import enums.TaskCollection;
+import tasks.Epic;
+import tasks.EpicProgress;
+import tasks.Subtask;
+import tasks.Task;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Обертка, делающая любой TaskManager потокобезопасным: все вызовы выполняются под одной блокировкой.
+ * Нужна, когда непотокобезопасный менеджер (InMemoryTaskManager, FileBackedTaskManager) обслуживает
+ * запросы из нескольких потоков. Живые представления делегата наружу не отдаются - вместо них копии.
+ * Эпики тоже отдаются копиями: делегат меняет их при изменении подзадач, а результат читают уже без блокировки.
+ */
+@ClassInformation("Потокобезопасная обертка над менеджером задач")
+public class SynchronizedTaskManager implements TaskManager {
+    private final TaskManager delegate;
+
+    public SynchronizedTaskManager(TaskManager delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public synchronized Task createTask(Task task) {
+        return delegate.createTask(task);
+    }
+
+    @Override
+    public synchronized Epic createEpic(Epic epic) {
+        return EpicCopies.of(delegate.createEpic(epic));
+    }
+
+    @Override
+    public synchronized Subtask createSubtask(Subtask subtask) {
+        return delegate.createSubtask(subtask);
+    }
+
+    @Override
+    public synchronized Task getTaskById(int id) {
+        return delegate.getTaskById(id);
+    }
+
+    @Override
+    public synchronized Epic getEpicById(int id) {
+        return EpicCopies.of(delegate.getEpicById(id));
+    }
+
+    @Override
+    public synchronized Subtask getSubtaskById(int id) {
+        return delegate.getSubtaskById(id);
+    }
+
+    @Override
+    public synchronized void updateTask(Task task) {
+        delegate.updateTask(task);
+    }
+
+    @Override
+    public synchronized void updateEpic(Epic epic) {
+        delegate.updateEpic(epic);
+    }
+
+    @Override
+    public synchronized void updateSubtask(Subtask subtask) {
+        delegate.updateSubtask(subtask);
+    }
+
+    @Override
+    public synchronized void removeTask(int id) {
+        delegate.removeTask(id);
+    }
+
+    @Override
+    public synchronized void removeEpic(int id) {
+        delegate.removeEpic(id);
+    }
+
+    @Override
+    public synchronized void removeSubtask(int id) {
+        delegate.removeSubtask(id);
+    }
+
+    @Override
+    public synchronized List<Task> getAllTasks() {
+        return delegate.getAllTasks();
+    }
+
+    @Override
+    public synchronized List<Epic> getAllEpics() {
+        return EpicCopies.ofAll(delegate.getAllEpics());
+    }
+
+    @Override
+    public synchronized List<Subtask> getAllSubtasks() {
+        return delegate.getAllSubtasks();
+    }
+
+    @Override
+    public synchronized List<Subtask> getSubtasksByEpicId(int epicId) {
+        return delegate.getSubtasksByEpicId(epicId);
+    }
+
+    @Override
+    public synchronized EpicProgress getEpicProgress(int epicId) {
+        return delegate.getEpicProgress(epicId);
+    }
+
+    @Override
+    @MethodInformation("Версия читается без общей блокировки: опрос версий не ждет медленных изменений делегата")
+    public long getVersion(TaskCollection collection) {
+        return delegate.getVersion(collection);
+    }
+
+    @Override
+    public synchronized List<Task> getHistory() {
+        return EpicCopies.inHistory(delegate.getHistory());
+    }
+
+    @Override
+    public synchronized Set<? extends Task> getPrioritizedTasks(List<? extends Task> list) {
+        return delegate.getPrioritizedTasks(list);
+    }
+
+    @Override
+    public synchronized NavigableSet<Task> getPrioritizedTasks() {
+        return Collections.unmodifiableNavigableSet(new TreeSet<>(delegate.getPrioritizedTasks()));
+    }
+
+    @Override
+    public synchronized boolean lookingForTemporaryIntersectionsInTasks() {
+        return delegate.lookingForTemporaryIntersectionsInTasks();
+    }
+
+    @Override
+    public synchronized List<Task> findOverlapping(LocalDateTime from, LocalDateTime to) {
+        return delegate.findOverlapping(from, to);
+    }
+
+    @Override
+    public synchronized void deleteTasks() {
+        delegate.deleteTasks();
+    }
+
+    @Override
+    public synchronized void deleteSubtasks() {
+        delegate.deleteSubtasks();
+    }
+
+    @Override
+    public synchronized void deleteEpics() {
+        delegate.deleteEpics();
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+}
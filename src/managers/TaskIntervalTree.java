@@ -0,0 +1,196 @@
+package managers;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+import tasks.Task;
+
+import java.time.LocalDateTime;
+import java.util.function.Consumer;
+
+/**
+ * Дерево интервалов (декартово дерево по ключу startTime + id), каждый узел которого хранит максимальное
+ * время окончания в своем поддереве. Позволяет находить пересечения за O(log n + k) вместо попарного перебора.
+ */
+@ClassInformation("Индекс временных интервалов задач")
+class TaskIntervalTree {
+
+    private static class Node {
+        final Task task;
+        final LocalDateTime start;
+        final LocalDateTime end;
+        final int priority;
+        LocalDateTime maxEnd;
+        Node left;
+        Node right;
+
+        Node(Task task, int priority) {
+            this.task = task;
+            this.start = task.getStartTime();
+            this.end = task.getEndTime();
+            this.priority = priority;
+            this.maxEnd = end;
+        }
+    }
+
+    private Node root;
+    private int size;
+    private long overlappingPairs;
+
+    @MethodInformation("Добавляет задачу в индекс. Задачи без времени начала или окончания не индексируются")
+    void add(Task task) {
+        if (!isIndexable(task)) {
+            return;
+        }
+        overlappingPairs += countOverlapping(task.getStartTime(), task.getEndTime());
+        root = insert(root, new Node(task, priorityOf(task.getId())));
+        size++;
+    }
+
+    @MethodInformation("Удаляет задачу из индекса по ключу startTime + id")
+    void remove(Task task) {
+        if (!isIndexable(task)) {
+            return;
+        }
+        int before = size;
+        root = delete(root, task.getStartTime(), task.getId());
+        if (size < before) {
+            overlappingPairs -= countOverlapping(task.getStartTime(), task.getEndTime());
+        }
+    }
+
+    void clear() {
+        root = null;
+        size = 0;
+        overlappingPairs = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    @MethodInformation("Есть ли в индексе хотя бы одна пара пересекающихся задач. O(1)")
+    boolean hasIntersections() {
+        return overlappingPairs > 0;
+    }
+
+    @MethodInformation("Передает в consumer все задачи, пересекающиеся с интервалом [from, to), по возрастанию startTime")
+    void forEachOverlapping(LocalDateTime from, LocalDateTime to, Consumer<Task> consumer) {
+        collect(root, from, to, consumer);
+    }
+
+    private long countOverlapping(LocalDateTime from, LocalDateTime to) {
+        long[] count = new long[1];
+        collect(root, from, to, task -> count[0]++);
+        return count[0];
+    }
+
+    private void collect(Node node, LocalDateTime from, LocalDateTime to, Consumer<Task> consumer) {
+        if (node == null || !node.maxEnd.isAfter(from)) {
+            return;
+        }
+        collect(node.left, from, to, consumer);
+        if (!node.start.isBefore(to)) {
+            return;
+        }
+        if (from.isBefore(node.end)) {
+            consumer.accept(node.task);
+        }
+        collect(node.right, from, to, consumer);
+    }
+
+    private static boolean isIndexable(Task task) {
+        return task != null && task.getStartTime() != null && task.getEndTime() != null;
+    }
+
+    private static int priorityOf(int id) { /*Перемешиваю биты id, чтобы приоритеты узлов были псевдослучайными*/
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private static int compare(LocalDateTime start, int id, Node node) {
+        int result = start.compareTo(node.start);
+        return result != 0 ? result : Integer.compare(id, node.task.getId());
+    }
+
+    private Node insert(Node node, Node newNode) {
+        if (node == null) {
+            return newNode;
+        }
+        if (compare(newNode.start, newNode.task.getId(), node) < 0) {
+            node.left = insert(node.left, newNode);
+            if (node.left.priority > node.priority) {
+                node = rotateRight(node);
+            }
+        } else {
+            node.right = insert(node.right, newNode);
+            if (node.right.priority > node.priority) {
+                node = rotateLeft(node);
+            }
+        }
+        update(node);
+        return node;
+    }
+
+    private Node delete(Node node, LocalDateTime start, int id) {
+        if (node == null) {
+            return null;
+        }
+        int result = compare(start, id, node);
+        if (result < 0) {
+            node.left = delete(node.left, start, id);
+        } else if (result > 0) {
+            node.right = delete(node.right, start, id);
+        } else {
+            size--;
+            return merge(node.left, node.right);
+        }
+        update(node);
+        return node;
+    }
+
+    private Node merge(Node left, Node right) { /*Склеиваю два поддерева, все ключи left меньше ключей right*/
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            update(left);
+            return left;
+        }
+        right.left = merge(left, right.left);
+        update(right);
+        return right;
+    }
+
+    private Node rotateRight(Node node) {
+        Node pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private Node rotateLeft(Node node) {
+        Node pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private static void update(Node node) {
+        LocalDateTime maxEnd = node.end;
+        if (node.left != null && node.left.maxEnd.isAfter(maxEnd)) {
+            maxEnd = node.left.maxEnd;
+        }
+        if (node.right != null && node.right.maxEnd.isAfter(maxEnd)) {
+            maxEnd = node.right.maxEnd;
+        }
+        node.maxEnd = maxEnd;
+    }
+}
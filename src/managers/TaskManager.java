@@ -1,10 +1,14 @@
 package managers;
 
 import annotations.ClassInformation;
+import annotations.MethodInformation;
+import enums.TaskCollection;
 import tasks.Epic;
+import tasks.EpicProgress;
 import tasks.Subtask;
 import tasks.Task;
 
+import java.time.LocalDateTime;
 import java.util.*;
 
 /**
@@ -44,15 +48,31 @@ public interface TaskManager {
 
     List<Subtask> getSubtasksByEpicId(int epicId);
 
+    EpicProgress getEpicProgress(int epicId);
+
     List<Task> getHistory();
 
     Set<? extends Task> getPrioritizedTasks(List<? extends Task> list);
 
+    NavigableSet<Task> getPrioritizedTasks();
+
     boolean lookingForTemporaryIntersectionsInTasks();
 
+    List<Task> findOverlapping(LocalDateTime from, LocalDateTime to);
+
     void deleteTasks();
 
     void deleteSubtasks();
 
     void deleteEpics();
+
+    @MethodInformation("Версия коллекции: не убывает и растет при каждом изменении коллекции. Пока версия та же," +
+            " содержимое коллекции не менялось. Прочитанная до данных версия не новее этих данных." +
+            " Вызывается из любого потока без внешней синхронизации")
+    long getVersion(TaskCollection collection);
+
+    @MethodInformation("Можно ли вызывать методы менеджера из нескольких потоков без внешней синхронизации")
+    default boolean isThreadSafe() {
+        return false;
+    }
 }
@@ -0,0 +1,84 @@
+package storage;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+import exception.ManagerSaveException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Атомарная подмена файла: содержимое пишется во временный файл рядом с целевым, при необходимости
+ * сбрасывается на диск и переименовывается поверх целевого. После сбоя на месте файла остается либо
+ * прежняя, либо новая версия целиком. Для снимков прежняя версия сохраняется как &lt;file&gt;.prev -
+ * к ней откатывается загрузка, если текущий снимок не проходит проверку.
+ */
+@ClassInformation("Атомарная подмена файлов")
+public final class AtomicFiles {
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String PREVIOUS_SUFFIX = ".prev";
+
+    private AtomicFiles() {
+    }
+
+    @MethodInformation("Подменяет файл новым содержимым. При force сбрасывает на диск данные до переименования" +
+            " и каталог после него")
+    public static void replace(Path target, byte[] content, boolean force) {
+        Path temp = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (force) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка записи в файл " + target);
+        }
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка замены файла " + target);
+        }
+        if (force) {
+            forceDirectory(target.toAbsolutePath().getParent());
+        }
+    }
+
+    @MethodInformation("То же, что replace, но текущая версия файла перед подменой остается как previous(target)")
+    public static void replaceKeepingPrevious(Path target, byte[] content, boolean force) {
+        if (Files.exists(target)) {
+            Path previous = previous(target);
+            try {
+                Files.deleteIfExists(previous);
+                try { /*Жесткая ссылка не копирует данные и не оставляет момента без целевого файла*/
+                    Files.createLink(previous, target);
+                } catch (UnsupportedOperationException | IOException e) {
+                    Files.copy(target, previous, StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (IOException e) {
+                throw new ManagerSaveException("Ошибка сохранения предыдущей версии файла " + target);
+            }
+        }
+        replace(target, content, force);
+    }
+
+    public static Path previous(Path target) {
+        return target.resolveSibling(target.getFileName() + PREVIOUS_SUFFIX);
+    }
+
+    private static void forceDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            /*Не все системы позволяют открыть каталог (Windows) - там переименование сбрасывает сама ОС*/
+        }
+    }
+}
@@ -0,0 +1,387 @@
+package storage;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+
+import java.nio.ByteBuffer;
+
+/**
+ * B+-дерево в страницах BufferPool. Ключ - пара long (старшая и младшая части, сравниваются по порядку),
+ * значение - long. Листья связаны в список по возрастанию ключа для диапазонных обходов.
+ * <pre>
+ * заголовок узла: byte kind, byte reserved, short count, int next (следующий лист, 0 - нет)
+ * лист:       count записей long key1, long key2, long value
+ * внутренний: int child0, затем count записей long key1, long key2, int child
+ * </pre>
+ * В поддереве child[i + 1] ключи не меньше i-го ключа узла. Удаление не сливает узлы: неполные и пустые
+ * листья остаются в списке, их место переиспользуется последующими вставками.
+ */
+@ClassInformation("B+-дерево в страницах файла")
+public class BPlusTree {
+    public static final long NOT_FOUND = -1;
+
+    private static final byte LEAF = 1;
+    private static final byte INNER = 2;
+    private static final int KIND = 0;
+    private static final int COUNT = 2;
+    private static final int NEXT = 4;
+    private static final int HEADER = 8;
+    private static final int LEAF_ENTRY = Long.BYTES * 3;
+    private static final int INNER_ENTRY = Long.BYTES * 2 + Integer.BYTES;
+    private static final int LEAF_CAPACITY = (PageFile.PAGE_SIZE - HEADER) / LEAF_ENTRY;
+    private static final int INNER_CAPACITY = (PageFile.PAGE_SIZE - HEADER - Integer.BYTES) / INNER_ENTRY;
+
+    private final BufferPool pool;
+    private int root;
+
+    /**
+     * Открывает дерево с корнем в странице root или создает пустое, если root равен 0.
+     */
+    public BPlusTree(BufferPool pool, int root) {
+        this.pool = pool;
+        this.root = root != 0 ? root : newLeaf();
+    }
+
+    @MethodInformation("Номер корневой страницы. Меняется при расщеплении корня и clear()")
+    public int getRoot() {
+        return root;
+    }
+
+    public long get(long key1, long key2) {
+        BufferPool.Page page = findLeaf(key1, key2);
+        try {
+            ByteBuffer node = page.buffer();
+            int position = lowerBound(node, key1, key2);
+            return position < count(node) && compareLeaf(node, position, key1, key2) == 0
+                    ? node.getLong(leafOffset(position) + Long.BYTES * 2)
+                    : NOT_FOUND;
+        } finally {
+            pool.unpin(page);
+        }
+    }
+
+    @MethodInformation("Вставляет или заменяет значение. Возвращает прежнее значение или NOT_FOUND")
+    public long put(long key1, long key2, long value) {
+        long[] previous = {NOT_FOUND};
+        Split split = insert(root, key1, key2, value, previous);
+        if (split != null) {
+            BufferPool.Page page = pool.allocate();
+            ByteBuffer node = page.buffer();
+            node.put(KIND, INNER);
+            node.putInt(HEADER, root);
+            writeInner(node, 0, split.key1, split.key2, split.right);
+            setCount(node, 1);
+            root = page.number();
+            pool.unpin(page);
+        }
+        return previous[0];
+    }
+
+    @MethodInformation("Удаляет ключ. Возвращает удаленное значение или NOT_FOUND")
+    public long remove(long key1, long key2) {
+        BufferPool.Page page = findLeaf(key1, key2);
+        try {
+            ByteBuffer node = page.buffer();
+            int count = count(node);
+            int position = lowerBound(node, key1, key2);
+            if (position == count || compareLeaf(node, position, key1, key2) != 0) {
+                return NOT_FOUND;
+            }
+            long value = node.getLong(leafOffset(position) + Long.BYTES * 2);
+            System.arraycopy(page.data(), leafOffset(position + 1), page.data(), leafOffset(position),
+                    (count - position - 1) * LEAF_ENTRY);
+            setCount(node, count - 1);
+            page.markDirty();
+            return value;
+        } finally {
+            pool.unpin(page);
+        }
+    }
+
+    @MethodInformation("Обходит записи по возрастанию, начиная с первого ключа не меньше заданного, пока visitor" +
+            " возвращает true. Записи листа копируются до вызова visitor, поэтому в нем можно читать и удалять," +
+            " но не вставлять в это же дерево")
+    public void scan(long fromKey1, long fromKey2, Visitor visitor) {
+        BufferPool.Page page = findLeaf(fromKey1, fromKey2);
+        int position = lowerBound(page.buffer(), fromKey1, fromKey2);
+        long[] entries = new long[LEAF_CAPACITY * 3];
+        while (true) {
+            ByteBuffer node = page.buffer();
+            int count = count(node);
+            int copied = 0;
+            for (int i = position; i < count; i++) {
+                int offset = leafOffset(i);
+                entries[copied++] = node.getLong(offset);
+                entries[copied++] = node.getLong(offset + Long.BYTES);
+                entries[copied++] = node.getLong(offset + Long.BYTES * 2);
+            }
+            int next = node.getInt(NEXT);
+            pool.unpin(page);
+
+            for (int i = 0; i < copied; i += 3) {
+                if (!visitor.visit(entries[i], entries[i + 1], entries[i + 2])) {
+                    return;
+                }
+            }
+            if (next == 0) {
+                return;
+            }
+            page = pool.pin(next);
+            position = 0;
+        }
+    }
+
+    @MethodInformation("Удаляет все записи и возвращает страницы дерева в список свободных")
+    public void clear() {
+        freeSubtree(root);
+        root = newLeaf();
+    }
+
+    private void freeSubtree(int pageNo) {
+        BufferPool.Page page = pool.pin(pageNo);
+        ByteBuffer node = page.buffer();
+        int[] children = null;
+        if (node.get(KIND) == INNER) {
+            int count = count(node);
+            children = new int[count + 1];
+            for (int i = 0; i <= count; i++) {
+                children[i] = child(node, i);
+            }
+        }
+        pool.unpin(page);
+        if (children != null) {
+            for (int child : children) {
+                freeSubtree(child);
+            }
+        }
+        pool.free(pageNo);
+    }
+
+    private Split insert(int pageNo, long key1, long key2, long value, long[] previous) {
+        BufferPool.Page page = pool.pin(pageNo);
+        ByteBuffer node = page.buffer();
+        if (node.get(KIND) == LEAF) {
+            try {
+                return insertIntoLeaf(page, key1, key2, value, previous);
+            } finally {
+                pool.unpin(page);
+            }
+        }
+
+        int index = childIndex(node, key1, key2);
+        int childNo = child(node, index);
+        pool.unpin(page);
+        Split split = insert(childNo, key1, key2, value, previous);
+        if (split == null) {
+            return null;
+        }
+        page = pool.pin(pageNo);
+        try {
+            return insertIntoInner(page, index, split);
+        } finally {
+            pool.unpin(page);
+        }
+    }
+
+    private Split insertIntoLeaf(BufferPool.Page page, long key1, long key2, long value, long[] previous) {
+        ByteBuffer node = page.buffer();
+        int count = count(node);
+        int position = lowerBound(node, key1, key2);
+        if (position < count && compareLeaf(node, position, key1, key2) == 0) {
+            int offset = leafOffset(position) + Long.BYTES * 2;
+            previous[0] = node.getLong(offset);
+            node.putLong(offset, value);
+            page.markDirty();
+            return null;
+        }
+        page.markDirty();
+        if (count < LEAF_CAPACITY) {
+            shiftLeaf(page, position, count);
+            writeLeaf(node, position, key1, key2, value);
+            setCount(node, count + 1);
+            return null;
+        }
+
+        BufferPool.Page rightPage = pool.allocate();
+        try {
+            ByteBuffer right = rightPage.buffer();
+            right.put(KIND, LEAF);
+            int middle = count / 2;
+            System.arraycopy(page.data(), leafOffset(middle), rightPage.data(), leafOffset(0),
+                    (count - middle) * LEAF_ENTRY);
+            setCount(right, count - middle);
+            setCount(node, middle);
+            right.putInt(NEXT, node.getInt(NEXT));
+            node.putInt(NEXT, rightPage.number());
+
+            BufferPool.Page target = position <= middle ? page : rightPage;
+            int targetPosition = position <= middle ? position : position - middle;
+            int targetCount = count(target.buffer());
+            shiftLeaf(target, targetPosition, targetCount);
+            writeLeaf(target.buffer(), targetPosition, key1, key2, value);
+            setCount(target.buffer(), targetCount + 1);
+            return new Split(right.getLong(leafOffset(0)), right.getLong(leafOffset(0) + Long.BYTES),
+                    rightPage.number());
+        } finally {
+            pool.unpin(rightPage);
+        }
+    }
+
+    private Split insertIntoInner(BufferPool.Page page, int index, Split split) {
+        ByteBuffer node = page.buffer();
+        int count = count(node);
+        page.markDirty();
+        if (count < INNER_CAPACITY) {
+            System.arraycopy(page.data(), innerOffset(index), page.data(), innerOffset(index + 1),
+                    (count - index) * INNER_ENTRY);
+            writeInner(node, index, split.key1, split.key2, split.right);
+            setCount(node, count + 1);
+            return null;
+        }
+
+        /*Узел полон: собираю count + 1 разделителей, средний поднимаю на уровень выше*/
+        long[] keys1 = new long[count + 1];
+        long[] keys2 = new long[count + 1];
+        int[] children = new int[count + 2];
+        children[0] = child(node, 0);
+        for (int i = 0, j = 0; i <= count; i++) {
+            if (i == index) {
+                keys1[i] = split.key1;
+                keys2[i] = split.key2;
+                children[i + 1] = split.right;
+            } else {
+                int offset = innerOffset(j++);
+                keys1[i] = node.getLong(offset);
+                keys2[i] = node.getLong(offset + Long.BYTES);
+                children[i + 1] = node.getInt(offset + Long.BYTES * 2);
+            }
+        }
+        int middle = (count + 1) / 2;
+        setCount(node, middle);
+        for (int i = 0; i < middle; i++) {
+            writeInner(node, i, keys1[i], keys2[i], children[i + 1]);
+        }
+
+        BufferPool.Page rightPage = pool.allocate();
+        try {
+            ByteBuffer right = rightPage.buffer();
+            right.put(KIND, INNER);
+            right.putInt(HEADER, children[middle + 1]);
+            int rightCount = 0;
+            for (int i = middle + 1; i <= count; i++) {
+                writeInner(right, rightCount++, keys1[i], keys2[i], children[i + 1]);
+            }
+            setCount(right, rightCount);
+            return new Split(keys1[middle], keys2[middle], rightPage.number());
+        } finally {
+            pool.unpin(rightPage);
+        }
+    }
+
+    private BufferPool.Page findLeaf(long key1, long key2) {
+        BufferPool.Page page = pool.pin(root);
+        while (page.buffer().get(KIND) == INNER) {
+            int childNo = child(page.buffer(), childIndex(page.buffer(), key1, key2));
+            pool.unpin(page);
+            page = pool.pin(childNo);
+        }
+        return page;
+    }
+
+    private int newLeaf() {
+        BufferPool.Page page = pool.allocate();
+        page.buffer().put(KIND, LEAF);
+        pool.unpin(page);
+        return page.number();
+    }
+
+    @MethodInformation("Позиция первой записи листа с ключом не меньше заданного")
+    private static int lowerBound(ByteBuffer node, long key1, long key2) {
+        int low = 0;
+        int high = count(node);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareLeaf(node, middle, key1, key2) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @MethodInformation("Индекс потомка внутреннего узла: количество разделителей, не больших ключа")
+    private static int childIndex(ByteBuffer node, long key1, long key2) {
+        int low = 0;
+        int high = count(node);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int offset = innerOffset(middle);
+            if (compare(node.getLong(offset), node.getLong(offset + Long.BYTES), key1, key2) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int compareLeaf(ByteBuffer node, int position, long key1, long key2) {
+        int offset = leafOffset(position);
+        return compare(node.getLong(offset), node.getLong(offset + Long.BYTES), key1, key2);
+    }
+
+    private static int compare(long a1, long a2, long b1, long b2) {
+        int result = Long.compare(a1, b1);
+        return result != 0 ? result : Long.compare(a2, b2);
+    }
+
+    private static void shiftLeaf(BufferPool.Page page, int position, int count) {
+        System.arraycopy(page.data(), leafOffset(position), page.data(), leafOffset(position + 1),
+                (count - position) * LEAF_ENTRY);
+    }
+
+    private static void writeLeaf(ByteBuffer node, int position, long key1, long key2, long value) {
+        int offset = leafOffset(position);
+        node.putLong(offset, key1);
+        node.putLong(offset + Long.BYTES, key2);
+        node.putLong(offset + Long.BYTES * 2, value);
+    }
+
+    private static void writeInner(ByteBuffer node, int position, long key1, long key2, int child) {
+        int offset = innerOffset(position);
+        node.putLong(offset, key1);
+        node.putLong(offset + Long.BYTES, key2);
+        node.putInt(offset + Long.BYTES * 2, child);
+    }
+
+    private static int child(ByteBuffer node, int index) {
+        return index == 0 ? node.getInt(HEADER) : node.getInt(innerOffset(index - 1) + Long.BYTES * 2);
+    }
+
+    private static int count(ByteBuffer node) {
+        return node.getShort(COUNT);
+    }
+
+    private static void setCount(ByteBuffer node, int count) {
+        node.putShort(COUNT, (short) count);
+    }
+
+    private static int leafOffset(int position) {
+        return HEADER + position * LEAF_ENTRY;
+    }
+
+    private static int innerOffset(int position) {
+        return HEADER + Integer.BYTES + position * INNER_ENTRY;
+    }
+
+    /**
+     * Получатель записей при диапазонном обходе. Возвращает false, чтобы остановить обход.
+     */
+    public interface Visitor {
+        boolean visit(long key1, long key2, long value);
+    }
+
+    private record Split(long key1, long key2, int right) {
+    }
+}
@@ -0,0 +1,174 @@
+package storage;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Фоновый поток группового сохранения: копит отметки об изменениях и вызывает flushAction один раз
+ * за интервал или как только накопилось batchSize изменений. Вызывающий может дождаться надежной записи
+ * через future из requestFlush().
+ * После неудачной записи поток не повторяет ее по таймеру: ошибка запоминается и отдается всем future,
+ * а следующая попытка делается только по requestFlush() или при закрытии. Удачная попытка сбрасывает ошибку.
+ */
+@ClassInformation("Фоновый поток группового сохранения изменений")
+public class BackgroundFlusher implements Closeable {
+    private final Runnable flushAction;
+    private final long intervalNanos;
+    private final int batchSize;
+    private final Thread thread;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition wakeUp = lock.newCondition();
+    private final List<CompletableFuture<Void>> waiters = new ArrayList<>();
+    private int pendingChanges;
+    private boolean flushRequested;
+    private boolean closed;
+    private RuntimeException failure;
+    private volatile long flushCount;
+
+    public BackgroundFlusher(String name, Duration interval, int batchSize, Runnable flushAction) {
+        this.flushAction = flushAction;
+        this.intervalNanos = interval.toNanos();
+        this.batchSize = batchSize;
+        this.thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @MethodInformation("Отмечает одно изменение. При достижении размера пачки будит поток сохранения")
+    public void markDirty() {
+        lock.lock();
+        try {
+            pendingChanges++;
+            if (pendingChanges >= batchSize && failure == null) {
+                flushRequested = true;
+                wakeUp.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @MethodInformation("Просит сохранить все накопленные изменения. Future завершается после записи на диск" +
+            " или ошибкой записи")
+    public CompletableFuture<Void> requestFlush() {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        lock.lock();
+        try {
+            if (closed) {
+                if (failure != null) {
+                    future.completeExceptionally(failure);
+                } else {
+                    future.complete(null);
+                }
+                return future;
+            }
+            waiters.add(future);
+            flushRequested = true;
+            wakeUp.signal();
+        } finally {
+            lock.unlock();
+        }
+        return future;
+    }
+
+    public long getFlushCount() {
+        return flushCount;
+    }
+
+    @MethodInformation("Останавливает поток, предварительно сохранив все накопленные изменения." +
+            " Если последняя запись не удалась, пробрасывает ее ошибку")
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            wakeUp.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        lock.lock();
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run() {
+        boolean running = true;
+        while (running) {
+            List<CompletableFuture<Void>> batchWaiters;
+            int changes;
+            lock.lock();
+            try {
+                long remaining = intervalNanos;
+                while (!flushRequested && !closed && (failure != null || remaining > 0)) {
+                    if (failure != null) { /*После ошибки жду явной просьбы, а не повторяю запись по таймеру*/
+                        wakeUp.await();
+                    } else {
+                        remaining = wakeUp.awaitNanos(remaining);
+                    }
+                }
+                running = !closed;
+                changes = pendingChanges;
+                pendingChanges = 0;
+                flushRequested = false;
+                batchWaiters = new ArrayList<>(waiters);
+                waiters.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            if (changes == 0 && batchWaiters.isEmpty()) {
+                continue;
+            }
+            flush(changes, batchWaiters);
+        }
+    }
+
+    private void flush(int changes, List<CompletableFuture<Void>> batchWaiters) {
+        try {
+            flushAction.run();
+        } catch (RuntimeException e) {
+            lock.lock();
+            try {
+                pendingChanges += changes; /*Изменения остаются несохраненными до следующей попытки*/
+                failure = e;
+            } finally {
+                lock.unlock();
+            }
+            batchWaiters.forEach(waiter -> waiter.completeExceptionally(e));
+            return;
+        }
+        flushCount++;
+        lock.lock();
+        try {
+            failure = null;
+        } finally {
+            lock.unlock();
+        }
+        batchWaiters.forEach(waiter -> waiter.complete(null));
+    }
+}
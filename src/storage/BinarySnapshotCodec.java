@@ -0,0 +1,304 @@
+package storage;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+import enums.Status;
+import enums.TaskType;
+import exception.ManagerSaveException;
+import tasks.Epic;
+import tasks.Subtask;
+import tasks.Task;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Двоичный формат снимка. Структура файла:
+ * <pre>
+ * int magic, short version, short reserved, int recordCount, int stringCount
+ * таблица строк: int длина + UTF-8 байты (одинаковые title/description хранятся один раз)
+ * записи: byte type, byte status, byte flags, int id, int titleRef, int descriptionRef,
+ *         [int startMinute] [long startNanos] [long durationMinutes] [int epicId]
+ * int CRC32 всего, что перед ним
+ * </pre>
+ * Время начала хранится в минутах от эпохи (UTC), остаток внутри минуты пишется только если он не нулевой.
+ * Файл читается через MappedByteBuffer, строки создаются только для таблицы строк.
+ */
+@ClassInformation("Двоичный формат снимка задач")
+public class BinarySnapshotCodec implements SnapshotCodec {
+    static final int MAGIC = 0x544D5342; /*"TMSB"*/
+    static final short VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int CHECKSUM_SIZE = 4;
+    private static final int NO_STRING = -1;
+    private static final int MIN_CHUNK_RECORDS = 4_096;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private static final int HAS_START = 1;
+    private static final int HAS_START_NANOS = 1 << 1;
+    private static final int HAS_DURATION = 1 << 2;
+
+    private static final TaskType[] TYPES = TaskType.values();
+    private static final Status[] STATUSES = Status.values();
+
+    @Override
+    public byte[] encode(Collection<? extends Task> records) {
+        Map<String, Integer> stringIndex = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        for (Task task : records) {
+            intern(task.getTitle(), stringIndex, strings);
+            intern(task.getDescription(), stringIndex, strings);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_SIZE + records.size() * 24);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(0);
+            out.writeInt(records.size());
+            out.writeInt(strings.size());
+            for (String value : strings) {
+                byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(encoded.length);
+                out.write(encoded);
+            }
+            for (Task task : records) {
+                writeRecord(out, task, stringIndex);
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка кодирования снимка");
+        }
+
+        byte[] body = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return ByteBuffer.allocate(body.length + CHECKSUM_SIZE).put(body).putInt((int) crc.getValue()).array();
+    }
+
+    @Override
+    public void decode(Path path, Consumer<Task> records, IntConsumer history) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + CHECKSUM_SIZE || size > Integer.MAX_VALUE) {
+                throw new ManagerSaveException("Поврежденный снимок " + path);
+            }
+            readAll(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), path.toString(), records);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка загрузки из файла");
+        }
+    }
+
+    @Override
+    public void decode(ByteBuffer content, Consumer<Task> records, IntConsumer history) {
+        if (content.remaining() < HEADER_SIZE + CHECKSUM_SIZE) {
+            throw new ManagerSaveException("Поврежденный снимок в памяти");
+        }
+        readAll(content.slice(), "в памяти", records);
+    }
+
+    @MethodInformation("Быстрым проходом без создания объектов делит записи на куски и разбирает куски параллельно")
+    @Override
+    public void decode(Path path, int parallelism, Consumer<Task> records, IntConsumer history) {
+        if (parallelism <= 1) {
+            decode(path, records, history);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + CHECKSUM_SIZE || size > Integer.MAX_VALUE) {
+                throw new ManagerSaveException("Поврежденный снимок " + path);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            verifyChecksum(buffer, (int) size, path.toString());
+            String[] strings = readHeader(buffer, path.toString());
+            int recordCount = recordCount(buffer);
+            int chunkSize = Math.max(MIN_CHUNK_RECORDS, recordCount / (parallelism * CHUNKS_PER_THREAD) + 1);
+
+            List<Callable<List<Task>>> chunks = new ArrayList<>();
+            for (int first = 0; first < recordCount; first += chunkSize) {
+                int offset = buffer.position();
+                int count = Math.min(chunkSize, recordCount - first);
+                for (int i = 0; i < count; i++) {
+                    skipRecord(buffer);
+                }
+                chunks.add(() -> {
+                    ByteBuffer chunk = buffer.duplicate().position(offset);
+                    List<Task> parsed = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        parsed.add(readRecord(chunk, strings));
+                    }
+                    return parsed;
+                });
+            }
+            ParallelChunks.run(chunks, parallelism, records);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка загрузки из файла");
+        }
+    }
+
+    private static void readAll(ByteBuffer buffer, String source, Consumer<Task> records) {
+        verifyChecksum(buffer, buffer.limit(), source);
+        String[] strings = readHeader(buffer, source);
+        int recordCount = recordCount(buffer);
+        for (int i = 0; i < recordCount; i++) {
+            records.accept(readRecord(buffer, strings));
+        }
+    }
+
+    static boolean hasMagic(byte[] head) {
+        return ByteBuffer.wrap(head).getInt() == MAGIC;
+    }
+
+    private static void intern(String value, Map<String, Integer> stringIndex, List<String> strings) {
+        if (value != null && !stringIndex.containsKey(value)) {
+            stringIndex.put(value, strings.size());
+            strings.add(value);
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, Task task, Map<String, Integer> stringIndex)
+            throws IOException {
+        LocalDateTime start = task.getStartTime();
+        Long duration = task.getDuration();
+        long startSecond = start != null ? start.toEpochSecond(ZoneOffset.UTC) : 0;
+        long startNanos = start != null ? Math.floorMod(startSecond, 60L) * 1_000_000_000L + start.getNano() : 0;
+
+        int flags = 0;
+        if (start != null) {
+            flags |= HAS_START;
+            if (startNanos != 0) {
+                flags |= HAS_START_NANOS;
+            }
+        }
+        if (duration != null) {
+            flags |= HAS_DURATION;
+        }
+
+        out.writeByte(task.getType().ordinal());
+        out.writeByte(task.getStatus().ordinal());
+        out.writeByte(flags);
+        out.writeInt(task.getId());
+        out.writeInt(stringRef(task.getTitle(), stringIndex));
+        out.writeInt(stringRef(task.getDescription(), stringIndex));
+        if (start != null) {
+            out.writeInt(Math.toIntExact(Math.floorDiv(startSecond, 60L)));
+            if (startNanos != 0) {
+                out.writeLong(startNanos);
+            }
+        }
+        if (duration != null) {
+            out.writeLong(duration);
+        }
+        if (task instanceof Subtask subtask) {
+            out.writeInt(subtask.getEpicId());
+        }
+    }
+
+    private static int stringRef(String value, Map<String, Integer> stringIndex) {
+        return value == null ? NO_STRING : stringIndex.get(value);
+    }
+
+    private static void verifyChecksum(ByteBuffer buffer, int size, String source) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().limit(size - CHECKSUM_SIZE));
+        if ((int) crc.getValue() != buffer.getInt(size - CHECKSUM_SIZE)) {
+            throw new ManagerSaveException("Не совпадает контрольная сумма снимка " + source);
+        }
+    }
+
+    @MethodInformation("Читает заголовок и таблицу строк, оставляя позицию буфера на первой записи")
+    private static String[] readHeader(ByteBuffer buffer, String source) {
+        if (buffer.getInt() != MAGIC) {
+            throw new ManagerSaveException("Файл не является двоичным снимком " + source);
+        }
+        short version = buffer.getShort();
+        if (version != VERSION) {
+            throw new ManagerSaveException("Неподдерживаемая версия снимка " + version + ": " + source);
+        }
+        buffer.getShort();
+        buffer.getInt();
+        String[] strings = new String[buffer.getInt()];
+        byte[] scratch = new byte[64];
+        for (int i = 0; i < strings.length; i++) {
+            int length = buffer.getInt();
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            buffer.get(scratch, 0, length);
+            strings[i] = new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    private static int recordCount(ByteBuffer buffer) {
+        return buffer.getInt(8);
+    }
+
+    private static Task readRecord(ByteBuffer buffer, String[] strings) {
+        TaskType type = TYPES[buffer.get()];
+        Status status = STATUSES[buffer.get()];
+        int flags = buffer.get();
+        int id = buffer.getInt();
+        String title = string(strings, buffer.getInt());
+        String description = string(strings, buffer.getInt());
+        LocalDateTime start = null;
+        if ((flags & HAS_START) != 0) {
+            long startSecond = buffer.getInt() * 60L;
+            long nanos = (flags & HAS_START_NANOS) != 0 ? buffer.getLong() : 0;
+            start = LocalDateTime.ofEpochSecond(startSecond + nanos / 1_000_000_000,
+                    (int) (nanos % 1_000_000_000), ZoneOffset.UTC);
+        }
+        Duration duration = (flags & HAS_DURATION) != 0 ? Duration.ofMinutes(buffer.getLong()) : null;
+
+        Task task = switch (type) {
+            case TASK -> new Task(title, description, status, start, duration);
+            case EPIC -> new Epic(title, description, status, start, duration);
+            case SUBTASK -> new Subtask(title, description, status, buffer.getInt(), start, duration);
+        };
+        task.setId(id);
+        return task;
+    }
+
+    @MethodInformation("Пропускает запись, не создавая объектов. Нужен только для разбиения файла на куски")
+    private static void skipRecord(ByteBuffer buffer) {
+        int type = buffer.get(buffer.position());
+        int flags = buffer.get(buffer.position() + 2);
+        int length = 3 + Integer.BYTES * 3;
+        if ((flags & HAS_START) != 0) {
+            length += Integer.BYTES;
+        }
+        if ((flags & HAS_START_NANOS) != 0) {
+            length += Long.BYTES;
+        }
+        if ((flags & HAS_DURATION) != 0) {
+            length += Long.BYTES;
+        }
+        if (TYPES[type] == TaskType.SUBTASK) {
+            length += Integer.BYTES;
+        }
+        buffer.position(buffer.position() + length);
+    }
+
+    private static String string(String[] strings, int ref) {
+        return ref == NO_STRING ? null : strings[ref];
+    }
+}
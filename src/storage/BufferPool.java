@@ -0,0 +1,202 @@
+package storage;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Ограниченный пул страниц в памяти поверх PageFile. Страница закрепляется на время работы с ней (pin)
+ * и освобождается (unpin). Когда свободных кадров нет, вытесняется незакрепленная страница по алгоритму
+ * часов (clock, приближение LRU): стрелка обходит кадры, снимая бит обращения, и забирает первый кадр
+ * без него. Измененная страница записывается в файл только при вытеснении или flush().
+ * Освобожденные страницы связываются в список и выдаются allocate() повторно.
+ */
+@ClassInformation("Пул страниц с вытеснением по алгоритму часов")
+public class BufferPool {
+    public static final int MIN_CAPACITY = 8;
+
+    private final PageFile file;
+    private final Page[] frames;
+    private final Map<Integer, Page> resident = new HashMap<>();
+    private int hand;
+    private int pageCount;
+    private int freeHead;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public BufferPool(PageFile file, int capacity, int pageCount, int freeHead) {
+        if (capacity < MIN_CAPACITY) {
+            throw new IllegalArgumentException("Buffer pool must hold at least " + MIN_CAPACITY + " pages.");
+        }
+        this.file = file;
+        this.frames = new Page[capacity];
+        this.pageCount = pageCount;
+        this.freeHead = freeHead;
+    }
+
+    @MethodInformation("Закрепляет страницу, при необходимости читая ее из файла")
+    public Page pin(int pageNo) {
+        Page page = resident.get(pageNo);
+        if (page != null) {
+            hits++;
+        } else {
+            misses++;
+            page = frameFor(pageNo);
+            file.read(pageNo, page.data);
+        }
+        page.pins++;
+        page.referenced = true;
+        return page;
+    }
+
+    public void unpin(Page page) {
+        if (page.pins == 0) {
+            throw new IllegalStateException("Page " + page.number + " is not pinned.");
+        }
+        page.pins--;
+    }
+
+    @MethodInformation("Выделяет новую страницу (из списка освобожденных или в конце файла) и закрепляет ее" +
+            " обнуленной")
+    public Page allocate() {
+        int pageNo;
+        if (freeHead != 0) {
+            pageNo = freeHead;
+            Page free = pin(pageNo);
+            freeHead = free.buffer.getInt(0);
+            unpin(free);
+        } else {
+            pageNo = pageCount++;
+        }
+        Page page = resident.get(pageNo);
+        if (page == null) {
+            page = frameFor(pageNo);
+        }
+        Arrays.fill(page.data, (byte) 0);
+        page.dirty = true;
+        page.pins++;
+        page.referenced = true;
+        return page;
+    }
+
+    @MethodInformation("Возвращает страницу в список свободных. Страница не должна быть закреплена")
+    public void free(int pageNo) {
+        Page page = pin(pageNo);
+        Arrays.fill(page.data, (byte) 0);
+        page.buffer.putInt(0, freeHead);
+        page.markDirty();
+        unpin(page);
+        freeHead = pageNo;
+    }
+
+    @MethodInformation("Записывает в файл все измененные страницы, оставляя их в пуле")
+    public void flush() {
+        for (Page page : frames) {
+            if (page != null && page.dirty) {
+                file.write(page.number, page.data);
+                page.dirty = false;
+            }
+        }
+    }
+
+    public int getCapacity() {
+        return frames.length;
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    public int getFreeHead() {
+        return freeHead;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public int getResidentPages() {
+        return resident.size();
+    }
+
+    private Page frameFor(int pageNo) {
+        int victim = findVictim();
+        Page page = frames[victim];
+        if (page == null) {
+            page = new Page();
+            frames[victim] = page;
+        } else {
+            if (page.dirty) {
+                file.write(page.number, page.data);
+                page.dirty = false;
+            }
+            resident.remove(page.number);
+            evictions++;
+        }
+        page.number = pageNo;
+        page.pins = 0;
+        resident.put(pageNo, page);
+        return page;
+    }
+
+    private int findVictim() {
+        for (int step = 0; step < frames.length * 2; step++) {
+            int candidate = hand;
+            hand = (hand + 1) % frames.length;
+            Page page = frames[candidate];
+            if (page == null) {
+                return candidate;
+            }
+            if (page.pins > 0) {
+                continue;
+            }
+            if (page.referenced) {
+                page.referenced = false; /*Второй шанс: страница недавно использовалась*/
+                continue;
+            }
+            return candidate;
+        }
+        throw new IllegalStateException("All " + frames.length + " buffer pool pages are pinned.");
+    }
+
+    /**
+     * Кадр пула. Содержимое доступно через buffer() до unpin(), после изменения нужно вызвать markDirty().
+     */
+    public static class Page {
+        private final byte[] data = new byte[PageFile.PAGE_SIZE];
+        private final ByteBuffer buffer = ByteBuffer.wrap(data);
+        private int number;
+        private int pins;
+        private boolean dirty;
+        private boolean referenced;
+
+        public int number() {
+            return number;
+        }
+
+        public ByteBuffer buffer() {
+            return buffer;
+        }
+
+        public byte[] data() {
+            return data;
+        }
+
+        public void markDirty() {
+            dirty = true;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package storage;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+import enums.TaskType;
+import exception.ManagerSaveException;
+import tasks.Task;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Строковые записи об изменениях, общие для журнала и инкрементальных контрольных точек:
+ * U,&lt;CSV строка задачи&gt; - задача создана или изменена, R,&lt;тип&gt;,&lt;id&gt; - задача удалена,
+ * D,&lt;тип&gt; - удалены все задачи типа. Все записи идемпотентны.
+ * В файл запись пишется с CRC32 ее байт в UTF-8 в конце: ",&lt;crc в hex&gt;". При чтении запись с неверным CRC
+ * допускается только последней в журнале - это недописанный хвост после сбоя. В любом другом месте
+ * (и в сегментах, которые появляются на диске целиком) это повреждение, и чтение прерывается.
+ */
+@ClassInformation("Записи об изменениях задач")
+public final class ChangeRecord {
+    public static final String UPSERT = "U";
+    public static final String REMOVE = "R";
+    public static final String DELETE_ALL = "D";
+
+    private ChangeRecord() {
+    }
+
+    public static String upsert(Task task) {
+        return seal(UPSERT + "," + CsvSnapshotCodec.format(task));
+    }
+
+    public static String remove(TaskType type, int id) {
+        return seal(REMOVE + "," + type + "," + id);
+    }
+
+    public static String deleteAll(TaskType type) {
+        return seal(DELETE_ALL + "," + type);
+    }
+
+    public static String typeOf(String record) {
+        int comma = record.indexOf(',');
+        return comma < 0 ? record : record.substring(0, comma);
+    }
+
+    public static String payloadOf(String record) {
+        return record.substring(record.indexOf(',') + 1);
+    }
+
+    @MethodInformation("Передает consumer записи файла без CRC в порядке записи. Запись с неверным CRC допускается" +
+            " только последней и только при tornTailAllowed. Возвращает число переданных записей")
+    public static int replay(Path path, Consumer<String> consumer, boolean tornTailAllowed) {
+        Verifier verifier = new Verifier(path, consumer);
+        TaskJournal.replay(path, verifier);
+        return verifier.finish(tornTailAllowed);
+    }
+
+    @MethodInformation("Дописывает к записи CRC32 ее байт")
+    private static String seal(String record) {
+        return record + "," + Integer.toHexString(checksum(record));
+    }
+
+    @MethodInformation("Запись без CRC или null, если CRC не совпал")
+    private static String unseal(String line) {
+        int comma = line.lastIndexOf(',');
+        if (comma < 0) {
+            return null;
+        }
+        int stored;
+        try {
+            stored = Integer.parseUnsignedInt(line, comma + 1, line.length(), 16);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        String record = line.substring(0, comma);
+        return checksum(record) == stored ? record : null;
+    }
+
+    private static int checksum(String record) {
+        CRC32 crc = new CRC32();
+        crc.update(record.getBytes(StandardCharsets.UTF_8));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Проверяет CRC записей по мере чтения и передает дальше записи без него. Запись с неверным CRC
+     * откладывается до конца файла: если за ней идет еще хоть одна запись, это повреждение.
+     */
+    static final class Verifier implements Consumer<String> {
+        private final Path source;
+        private final Consumer<String> consumer;
+        private String torn;
+        private int count;
+
+        Verifier(Path source, Consumer<String> consumer) {
+            this.source = source;
+            this.consumer = consumer;
+        }
+
+        @Override
+        public void accept(String line) {
+            if (torn != null) {
+                throw new ManagerSaveException("Не совпадает контрольная сумма записи в середине " + source + ": "
+                        + torn);
+            }
+            String record = unseal(line);
+            if (record == null) {
+                torn = line;
+                return;
+            }
+            consumer.accept(record);
+            count++;
+        }
+
+        @MethodInformation("Проверяет отложенную запись с неверным CRC и возвращает число переданных записей")
+        int finish(boolean tornTailAllowed) {
+            if (torn != null && (!tornTailAllowed || hidesRecords(torn))) {
+                throw new ManagerSaveException("Не совпадает контрольная сумма записи " + source + ": " + torn);
+            }
+            return count;
+        }
+
+        @MethodInformation("Недописанная запись не может содержать целых записей. Если они в ней есть, значит" +
+                " поврежденная кавычка склеила с ней остаток файла")
+        private static boolean hidesRecords(String torn) {
+            String[] lines = torn.split("\n");
+            for (int i = 1; i < lines.length; i++) {
+                if (unseal(lines[i]) != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package storage;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+import enums.Compression;
+import exception.ManagerSaveException;
+import tasks.Task;
+
+import java.io.CharArrayReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+
+/**
+ * Инкрементальные контрольные точки: рядом с базовым снимком лежат сегменты &lt;snapshot&gt;.seg.&lt;номер&gt;,
+ * в каждом только записи ChangeRecord об измененных и удаленных с прошлой точки задачах. Когда сегментов
+ * накапливается mergeThreshold, фоновый поток вливает их в базовый снимок, не трогая менеджер задач:
+ * читает снимок и сегменты из файлов и атомарно подменяет снимок. Влитые сегменты переименовываются
+ * в &lt;snapshot&gt;.seg.prev.&lt;номер&gt;: они покрывают прежнюю версию снимка, к которой откатывается загрузка,
+ * и удаляются следующим слиянием.
+ * При включенном сжатии сегмент пишется как CompressedBlocks вида LOG, блоки заканчиваются на границе записи.
+ * Ошибка фонового слияния не теряется: сегменты остаются на диске, а ошибка пробрасывается из следующего
+ * merge() или close().
+ */
+@ClassInformation("Сегменты инкрементальных контрольных точек и их слияние с базовым снимком")
+public class CheckpointStore implements Closeable {
+    private static final String SEGMENT_SUFFIX = ".seg.";
+    private static final String PREVIOUS_SEGMENT_SUFFIX = ".seg.prev.";
+    private static final int SEGMENT_BLOCK_SIZE = 256 * 1024;
+
+    private final Path snapshot;
+    private final SnapshotCodec codec;
+    private final int mergeThreshold;
+    private final Compression compression;
+    private final int compressionLevel;
+    private final ExecutorService merger;
+    private final AtomicBoolean mergeScheduled = new AtomicBoolean();
+    private final AtomicReference<ManagerSaveException> mergeFailure = new AtomicReference<>();
+    private long nextSegment;
+
+    public CheckpointStore(Path snapshot, SnapshotCodec codec, int mergeThreshold) {
+        this(snapshot, codec, mergeThreshold, Compression.NONE, Deflater.BEST_SPEED);
+    }
+
+    public CheckpointStore(Path snapshot, SnapshotCodec codec, int mergeThreshold, Compression compression,
+                           int compressionLevel) {
+        this.snapshot = snapshot;
+        this.codec = codec;
+        this.mergeThreshold = mergeThreshold;
+        this.compression = compression;
+        this.compressionLevel = compressionLevel;
+        this.merger = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpoint-merger-" + snapshot.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<Path> existing = segments(snapshot);
+        this.nextSegment = existing.isEmpty() ? 1 : segmentNumber(existing.get(existing.size() - 1)) + 1;
+    }
+
+    @MethodInformation("Записывает сегмент контрольной точки. Сегмент появляется на диске целиком или не появляется")
+    public synchronized void writeSegment(List<String> records, boolean force) {
+        if (records.isEmpty()) {
+            return;
+        }
+        List<byte[]> blocks = new ArrayList<>();
+        StringBuilder content = new StringBuilder();
+        for (String record : records) {
+            content.append(record).append('\n');
+            if (compression != Compression.NONE && content.length() >= SEGMENT_BLOCK_SIZE) {
+                blocks.add(content.toString().getBytes(StandardCharsets.UTF_8));
+                content.setLength(0);
+            }
+        }
+        if (!content.isEmpty()) {
+            blocks.add(content.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        Path segment = snapshot.resolveSibling(snapshot.getFileName() + SEGMENT_SUFFIX + nextSegment);
+        AtomicFiles.replace(segment, compression == Compression.NONE
+                ? blocks.get(0)
+                : CompressedBlocks.write(CompressedBlocks.LOG, blocks, compressionLevel), force);
+        nextSegment++;
+
+        if (segments(snapshot).size() >= mergeThreshold && mergeScheduled.compareAndSet(false, true)) {
+            merger.submit(() -> {
+                mergeScheduled.set(false);
+                mergeSafely();
+            });
+        }
+    }
+
+    @MethodInformation("Вливает все записанные на момент вызова сегменты в базовый снимок и ждет окончания." +
+            " Если прошлое фоновое слияние не удалось, пробрасывает его ошибку, а следующий вызов повторяет слияние")
+    public void merge() {
+        rethrowMergeFailure();
+        Future<?> result = merger.submit(this::mergeInto);
+        try {
+            result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            throw e.getCause() instanceof ManagerSaveException cause
+                    ? cause
+                    : new ManagerSaveException("Ошибка слияния контрольных точек: " + e.getCause());
+        }
+    }
+
+    @MethodInformation("Сбрасывает на диск уже записанные сегменты")
+    public synchronized void force() {
+        for (Path segment : segments(snapshot)) {
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                channel.force(false);
+            } catch (NoSuchFileException e) {
+                /*Сегмент уже влит в снимок, а снимок слияние записывает с принудительным сбросом*/
+            } catch (IOException e) {
+                throw new ManagerSaveException("Ошибка сброса сегмента на диск " + segment);
+            }
+        }
+    }
+
+    @MethodInformation("Удаляет все сегменты и сбрасывает базовый снимок с его предыдущей версией. Нужен новому" +
+            " менеджеру, который начинает с пустого состояния: иначе следующее слияние влило бы его сегменты" +
+            " в снимок прежней доски")
+    public synchronized void clear() {
+        for (Path segment : segments(snapshot)) {
+            delete(segment);
+        }
+        nextSegment = 1;
+        delete(AtomicFiles.previous(snapshot));
+        for (Path segment : previousSegments(snapshot)) {
+            delete(segment);
+        }
+        if (snapshot.toFile().length() > 0) { /*Пустой файл читается как пустой снимок в любом формате*/
+            AtomicFiles.replace(snapshot, new byte[0], true);
+        }
+    }
+
+    @MethodInformation("Ждет окончания начатого слияния и останавливает фоновый поток." +
+            " Пробрасывает ошибку фонового слияния, если ее еще никто не получил")
+    @Override
+    public void close() {
+        merger.shutdown();
+        try {
+            merger.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        rethrowMergeFailure();
+    }
+
+    private void rethrowMergeFailure() {
+        ManagerSaveException failure = mergeFailure.getAndSet(null);
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @MethodInformation("Сегменты снимка по возрастанию номера")
+    public static List<Path> segments(Path snapshot) {
+        return list(snapshot, SEGMENT_SUFFIX);
+    }
+
+    @MethodInformation("Сегменты, влитые последним слиянием, по возрастанию номера. Вместе с текущими сегментами" +
+            " восстанавливают изменения после прежней версии снимка")
+    public static List<Path> previousSegments(Path snapshot) {
+        return list(snapshot, PREVIOUS_SEGMENT_SUFFIX);
+    }
+
+    private static List<Path> list(Path snapshot, String suffix) {
+        Path directory = snapshot.toAbsolutePath().getParent();
+        String prefix = snapshot.getFileName() + suffix;
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> isSegment(path.getFileName().toString(), prefix))
+                    .sorted(Comparator.comparingLong(CheckpointStore::segmentNumber))
+                    .toList();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка чтения каталога " + directory);
+        }
+    }
+
+    @MethodInformation("Передает записи сегмента без CRC в consumer. Сжатый сегмент распознается по сигнатуре." +
+            " Сегмент появляется на диске целиком, поэтому запись с неверным CRC в нем - всегда повреждение")
+    public static void replaySegment(Path segment, Consumer<String> consumer) {
+        byte[] content;
+        try {
+            content = Files.readAllBytes(segment);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка чтения сегмента " + segment);
+        }
+        if (content.length < Integer.BYTES || !CompressedBlocks.hasMagic(content)) {
+            ChangeRecord.replay(segment, consumer, false);
+            return;
+        }
+        ByteBuffer file = ByteBuffer.wrap(content);
+        CompressedBlocks.Blocks blocks = CompressedBlocks.read(file, segment);
+        if (blocks.kind() != CompressedBlocks.LOG) {
+            throw new ManagerSaveException("Сжатый файл не является сегментом: " + segment);
+        }
+        ChangeRecord.Verifier verifier = new ChangeRecord.Verifier(segment, consumer);
+        try {
+            for (CompressedBlocks.Frame frame : blocks.frames()) {
+                CharBuffer text = StandardCharsets.UTF_8.decode(CompressedBlocks.inflate(file, frame, segment));
+                TaskJournal.replay(new CharArrayReader(text.array(), text.position(), text.remaining()), verifier);
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка чтения сегмента " + segment);
+        }
+        verifier.finish(false);
+    }
+
+    @MethodInformation("Фоновое слияние: ошибку запоминает для следующего merge() или close()")
+    private void mergeSafely() {
+        try {
+            mergeInto();
+        } catch (ManagerSaveException e) {
+            mergeFailure.set(e);
+        } catch (RuntimeException e) {
+            mergeFailure.set(new ManagerSaveException("Ошибка слияния контрольных точек: " + e));
+        }
+    }
+
+    private void mergeInto() {
+        List<Path> merged = segments(snapshot);
+        if (merged.isEmpty()) {
+            return;
+        }
+
+        Map<Integer, Task> records = new LinkedHashMap<>();
+        if (Files.exists(snapshot)) {
+            SnapshotCodec.detect(snapshot).decode(snapshot, task -> records.put(task.getId(), task), id -> {
+            });
+        }
+        for (Path segment : merged) { /*Любая ошибка прерывает слияние до удаления сегментов*/
+            replaySegment(segment, record -> apply(records, record, segment));
+        }
+
+        List<Task> ordered = new ArrayList<>(records.values());
+        ordered.sort(Comparator.comparing(Task::getType)); /*Эпики должны идти раньше подзадач*/
+        AtomicFiles.replaceKeepingPrevious(snapshot, codec.encode(ordered), true);
+        for (Path segment : previousSegments(snapshot)) { /*Покрывали версию снимка, которой больше нет*/
+            delete(segment);
+        }
+        for (Path segment : merged) { /*Повторное применение уже влитого сегмента безопасно - записи идемпотентны*/
+            move(segment, snapshot.resolveSibling(snapshot.getFileName() + PREVIOUS_SEGMENT_SUFFIX
+                    + segmentNumber(segment)));
+        }
+    }
+
+    private static void apply(Map<Integer, Task> records, String record, Path segment) {
+        switch (ChangeRecord.typeOf(record)) {
+            case ChangeRecord.UPSERT -> {
+                Task task = CsvSnapshotCodec.parse(ChangeRecord.payloadOf(record));
+                if (task == null) {
+                    throw new ManagerSaveException("Нечитаемая запись контрольной точки в " + segment + ": " + record);
+                }
+                records.put(task.getId(), task);
+            }
+            case ChangeRecord.REMOVE -> {
+                String payload = ChangeRecord.payloadOf(record);
+                records.remove(Integer.parseInt(payload.substring(payload.indexOf(',') + 1)));
+            }
+            default -> throw new ManagerSaveException("Неизвестная запись контрольной точки в " + segment
+                    + ": " + record);
+        }
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка удаления файла " + path);
+        }
+    }
+
+    private static void move(Path source, Path target) {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка переименования файла " + source);
+        }
+    }
+
+    private static boolean isSegment(String name, String prefix) {
+        if (!name.startsWith(prefix) || name.length() == prefix.length()) {
+            return false;
+        }
+        for (int i = prefix.length(); i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(name.lastIndexOf('.') + 1));
+    }
+}
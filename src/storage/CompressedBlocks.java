@@ -0,0 +1,134 @@
+package storage;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+import exception.ManagerSaveException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Файл из независимо сжатых Deflater блоков. Каждый блок разжимается отдельно, поэтому блоки можно читать
+ * параллельно и переходить к нужному блоку по заголовкам, не разжимая предыдущие.
+ * <pre>
+ * int magic, short version, byte kind, byte reserved, int blockCount
+ * блоки: int rawLength, int compressedLength, int CRC32 сжатых байт, сжатые байты
+ * </pre>
+ * kind - порядковый номер SnapshotFormat содержимого снимка или LOG для сегментов журнала.
+ */
+@ClassInformation("Файл из независимо сжатых блоков")
+final class CompressedBlocks {
+    static final int MAGIC = 0x544D535A; /*"TMSZ"*/
+    static final short VERSION = 1;
+    static final byte LOG = -1;
+    private static final int HEADER_SIZE = 12;
+    private static final int FRAME_HEADER_SIZE = 12;
+
+    private CompressedBlocks() {
+    }
+
+    @MethodInformation("Сжимает блоки и собирает из них файл")
+    static byte[] write(byte kind, List<byte[]> blocks, int level) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putShort(VERSION).put(kind).put((byte) 0)
+                .putInt(blocks.size()).array());
+        Deflater deflater = new Deflater(level);
+        byte[] buffer = new byte[64 * 1024];
+        try {
+            for (byte[] raw : blocks) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 4 + 64);
+                deflater.reset();
+                deflater.setInput(raw);
+                deflater.finish();
+                while (!deflater.finished()) {
+                    compressed.write(buffer, 0, deflater.deflate(buffer));
+                }
+                byte[] block = compressed.toByteArray();
+                CRC32 crc = new CRC32();
+                crc.update(block);
+                out.writeBytes(ByteBuffer.allocate(FRAME_HEADER_SIZE).putInt(raw.length).putInt(block.length)
+                        .putInt((int) crc.getValue()).array());
+                out.writeBytes(block);
+            }
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    static boolean hasMagic(byte[] head) {
+        return ByteBuffer.wrap(head).getInt() == MAGIC;
+    }
+
+    @MethodInformation("Читает заголовок файла и заголовки блоков, не разжимая сами блоки")
+    static Blocks read(ByteBuffer file, Path path) {
+        if (file.limit() < HEADER_SIZE || file.getInt(0) != MAGIC) {
+            throw new ManagerSaveException("Файл не является сжатым файлом " + path);
+        }
+        short version = file.getShort(4);
+        if (version != VERSION) {
+            throw new ManagerSaveException("Неподдерживаемая версия сжатого файла " + version + ": " + path);
+        }
+        byte kind = file.get(6);
+        int count = file.getInt(8);
+        List<Frame> frames = new ArrayList<>(count);
+        int position = HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            if (position + FRAME_HEADER_SIZE > file.limit()) {
+                throw new ManagerSaveException("Сжатый файл обрезан: " + path);
+            }
+            Frame frame = new Frame(position + FRAME_HEADER_SIZE, file.getInt(position + 4), file.getInt(position),
+                    file.getInt(position + 8));
+            if (frame.offset + frame.compressedLength > file.limit()) {
+                throw new ManagerSaveException("Сжатый файл обрезан: " + path);
+            }
+            frames.add(frame);
+            position = frame.offset + frame.compressedLength;
+        }
+        return new Blocks(kind, frames);
+    }
+
+    @MethodInformation("Проверяет контрольную сумму блока и разжимает его")
+    static ByteBuffer inflate(ByteBuffer file, Frame frame, Path path) {
+        ByteBuffer compressed = file.slice(frame.offset, frame.compressedLength);
+        CRC32 crc = new CRC32();
+        crc.update(compressed.duplicate());
+        if ((int) crc.getValue() != frame.crc) {
+            throw new ManagerSaveException("Не совпадает контрольная сумма блока сжатого файла " + path);
+        }
+        byte[] raw = new byte[frame.rawLength];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int inflated = 0;
+            while (inflated < raw.length && !inflater.finished()) {
+                int read = inflater.inflate(raw, inflated, raw.length - inflated);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += read;
+            }
+            if (inflated != raw.length) {
+                throw new ManagerSaveException("Поврежденный блок сжатого файла " + path);
+            }
+        } catch (DataFormatException e) {
+            throw new ManagerSaveException("Поврежденный блок сжатого файла " + path);
+        } finally {
+            inflater.end();
+        }
+        return ByteBuffer.wrap(raw);
+    }
+
+    record Blocks(byte kind, List<Frame> frames) {
+    }
+
+    record Frame(int offset, int compressedLength, int rawLength, int crc) {
+    }
+}
@@ -0,0 +1,116 @@
+package storage;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+import enums.SnapshotFormat;
+import exception.ManagerSaveException;
+import tasks.Task;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.zip.Deflater;
+
+/**
+ * Снимок, сжатый блоками (CompressedBlocks). Записи делятся на группы по BLOCK_RECORDS, каждая группа
+ * кодируется внутренним кодеком как самостоятельный снимок и сжимается отдельно. Поэтому блоки разжимаются
+ * и разбираются параллельно, а формат содержимого берется из заголовка файла, а не из настроек.
+ */
+@ClassInformation("Снимок задач, сжатый независимыми блоками")
+public class CompressedSnapshotCodec implements SnapshotCodec {
+    static final int BLOCK_RECORDS = 4_096;
+    private static final SnapshotFormat[] FORMATS = SnapshotFormat.values();
+
+    private final SnapshotFormat format;
+    private final int level;
+
+    /**
+     * @param format формат содержимого блоков при записи
+     * @param level  уровень сжатия Deflater от 1 до 9
+     */
+    public CompressedSnapshotCodec(SnapshotFormat format, int level) {
+        this.format = format;
+        this.level = level;
+    }
+
+    @MethodInformation("Кодек для чтения существующего файла: формат блоков указан в его заголовке")
+    static CompressedSnapshotCodec forReading() {
+        return new CompressedSnapshotCodec(SnapshotFormat.CSV, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    @Override
+    public byte[] encode(Collection<? extends Task> records) {
+        SnapshotCodec inner = SnapshotCodec.of(format);
+        List<byte[]> blocks = new ArrayList<>(records.size() / BLOCK_RECORDS + 1);
+        List<Task> group = new ArrayList<>(Math.min(records.size(), BLOCK_RECORDS));
+        for (Task task : records) {
+            group.add(task);
+            if (group.size() == BLOCK_RECORDS) {
+                blocks.add(inner.encode(group));
+                group.clear();
+            }
+        }
+        if (!group.isEmpty() || blocks.isEmpty()) {
+            blocks.add(inner.encode(group));
+        }
+        return CompressedBlocks.write((byte) format.ordinal(), blocks, level);
+    }
+
+    @Override
+    public void decode(Path path, Consumer<Task> records, IntConsumer history) {
+        decode(path, 1, records, history);
+    }
+
+    @MethodInformation("Блоки независимы, поэтому при parallelism > 1 каждый блок разжимается и разбирается" +
+            " отдельной задачей")
+    @Override
+    public void decode(Path path, int parallelism, Consumer<Task> records, IntConsumer history) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new ManagerSaveException("Слишком большой сжатый снимок " + path);
+            }
+            decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), path, parallelism, records, history);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка загрузки из файла");
+        }
+    }
+
+    @Override
+    public void decode(ByteBuffer content, Consumer<Task> records, IntConsumer history) {
+        decode(content.slice(), null, 1, records, history);
+    }
+
+    private static void decode(ByteBuffer file, Path path, int parallelism, Consumer<Task> records,
+                               IntConsumer history) {
+        CompressedBlocks.Blocks blocks = CompressedBlocks.read(file, path);
+        if (blocks.kind() < 0 || blocks.kind() >= FORMATS.length) {
+            throw new ManagerSaveException("Сжатый файл не является снимком: " + path);
+        }
+        SnapshotCodec inner = SnapshotCodec.of(FORMATS[blocks.kind()]);
+        if (parallelism <= 1 || blocks.frames().size() <= 1) {
+            for (CompressedBlocks.Frame frame : blocks.frames()) {
+                inner.decode(CompressedBlocks.inflate(file, frame, path), records, history);
+            }
+            return;
+        }
+        List<Callable<List<Task>>> chunks = new ArrayList<>(blocks.frames().size());
+        for (CompressedBlocks.Frame frame : blocks.frames()) {
+            chunks.add(() -> {
+                List<Task> parsed = new ArrayList<>(BLOCK_RECORDS);
+                inner.decode(CompressedBlocks.inflate(file, frame, path), parsed::add, id -> {
+                });
+                return parsed;
+            });
+        }
+        ParallelChunks.run(chunks, parallelism, records);
+    }
+}
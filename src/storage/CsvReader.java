@@ -0,0 +1,185 @@
+package storage;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+/**
+ * Потоковый разбор CSV без String.split: символы читаются блоками, поля текущей записи хранятся
+ * как границы в одном переиспользуемом буфере, а строки создаются только по запросу getString().
+ * Поддерживает поля в кавычках с запятыми, переводами строк и удвоенными кавычками внутри.
+ */
+@ClassInformation("Потоковый разбор CSV")
+public class CsvReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Reader reader;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private char[] record = new char[256];
+    private int recordLength;
+    private int[] fieldStart = new int[8];
+    private int[] fieldEnd = new int[8];
+    private int fieldCount;
+
+    public CsvReader(Reader reader) {
+        this.reader = reader;
+    }
+
+    @MethodInformation("Читает следующую запись. Возвращает false, когда данные закончились")
+    public boolean next() throws IOException {
+        recordLength = 0;
+        fieldCount = 0;
+        int c = read();
+        if (c == -1) {
+            return false;
+        }
+
+        int start = 0;
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    break;
+                }
+                if (c == '"') {
+                    c = read();
+                    if (c == '"') {
+                        append('"');
+                        c = read();
+                    } else {
+                        quoted = false;
+                    }
+                    continue;
+                }
+                append((char) c);
+            } else if (c == -1 || c == '\n') {
+                break;
+            } else if (c == '"' && recordLength == start) {
+                quoted = true;
+            } else if (c == ',') {
+                addField(start);
+                start = recordLength;
+            } else if (c == '\r') {
+                c = read();
+                if (c == '\n' || c == -1) {
+                    break;
+                }
+                append('\r');
+                continue;
+            } else {
+                append((char) c);
+            }
+            c = read();
+        }
+        addField(start);
+        return true;
+    }
+
+    public int size() {
+        return fieldCount;
+    }
+
+    @MethodInformation("Пустая строка: одно пустое поле")
+    public boolean isBlankRecord() {
+        return fieldCount == 1 && fieldEnd[0] == fieldStart[0];
+    }
+
+    public boolean isEmpty(int index) {
+        return fieldEnd[index] == fieldStart[index];
+    }
+
+    public String getString(int index) {
+        return new String(record, fieldStart[index], fieldEnd[index] - fieldStart[index]);
+    }
+
+    @MethodInformation("Возвращает поле без копирования. Действительно только до следующего next()")
+    public CharSequence getChars(int index) {
+        return CharBuffer.wrap(record, fieldStart[index], fieldEnd[index] - fieldStart[index]);
+    }
+
+    public int getInt(int index) {
+        long value = getLong(index);
+        if (value != (int) value) {
+            throw new NumberFormatException("Число не помещается в int: " + getString(index));
+        }
+        return (int) value;
+    }
+
+    public long getLong(int index) {
+        int from = fieldStart[index];
+        int to = fieldEnd[index];
+        boolean negative = from < to && record[from] == '-';
+        if (negative) {
+            from++;
+        }
+        if (from == to) {
+            throw new NumberFormatException("Пустое число");
+        }
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = record[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Не число: " + getString(index));
+            }
+            value = Math.addExact(Math.multiplyExact(value, 10), digit);
+        }
+        return negative ? -value : value;
+    }
+
+    @MethodInformation("Находит значение перечисления по имени без создания строки")
+    public <E extends Enum<E>> E getEnum(int index, E[] values) {
+        CharSequence chars = getChars(index);
+        for (E value : values) {
+            if (value.name().contentEquals(chars)) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Неизвестное значение: " + chars);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    private void append(char c) {
+        if (recordLength == record.length) {
+            char[] grown = new char[record.length * 2];
+            System.arraycopy(record, 0, grown, 0, recordLength);
+            record = grown;
+        }
+        record[recordLength++] = c;
+    }
+
+    private void addField(int start) {
+        if (fieldCount == fieldStart.length) {
+            int[] grownStart = new int[fieldCount * 2];
+            int[] grownEnd = new int[fieldCount * 2];
+            System.arraycopy(fieldStart, 0, grownStart, 0, fieldCount);
+            System.arraycopy(fieldEnd, 0, grownEnd, 0, fieldCount);
+            fieldStart = grownStart;
+            fieldEnd = grownEnd;
+        }
+        fieldStart[fieldCount] = start;
+        fieldEnd[fieldCount] = recordLength;
+        fieldCount++;
+    }
+}
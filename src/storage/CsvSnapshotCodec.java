@@ -0,0 +1,391 @@
+package storage;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+import enums.Status;
+import enums.TaskType;
+import exception.ManagerSaveException;
+import tasks.Epic;
+import tasks.Subtask;
+import tasks.Task;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * Исходный текстовый формат снимка: заголовок, по строке на задачу, пустая строка и история через запятую.
+ * Остается для импорта и экспорта, а строки этого формата используются как записи журнала изменений.
+ * Читается потоком через CsvReader, поля в кавычках могут содержать запятые и переводы строк.
+ * Снимки пишутся с заголовком CHECKED_HEADER: в конце каждой записи CRC32 ее полей, а пустая строка в конце
+ * обязательна. Такой снимок с поврежденной записью или обрезанный не загружается молча, а отвергается целиком.
+ * Файлы без столбца crc (старые и написанные вручную) читаются как раньше, нечитаемые строки пропускаются.
+ */
+@ClassInformation("CSV формат снимка задач")
+public class CsvSnapshotCodec implements SnapshotCodec {
+    public static final String HEADER = "id,type,name,status,description,startTime,duration,epic";
+    public static final String CHECKED_HEADER = HEADER + ",crc";
+    private static final int FIELD_COUNT = 8;
+    private static final TaskType[] TASK_TYPES = TaskType.values();
+    private static final Status[] STATUSES = Status.values();
+    private static final int MIN_PARALLEL_SIZE = 1 << 20;
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    @Override
+    public byte[] encode(Collection<? extends Task> records) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(CHECKED_HEADER).append("\n");
+        RecordChecksum checksum = new RecordChecksum();
+        for (Task task : records) {
+            String[] fields = fields(task);
+            int crc = checksum.of(fields);
+            builder.append(join(fields)).append(',').append(Integer.toHexString(crc)).append("\n");
+        }
+        builder.append("\n");
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @MethodInformation("Читает файл потоком и отдает задачи по мере разбора, не держа в памяти весь файл")
+    @Override
+    public void decode(Path path, Consumer<Task> records, IntConsumer history) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+             CsvReader reader = new CsvReader(Channels.newReader(channel, StandardCharsets.UTF_8))) {
+            readAll(reader, records, history);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка загрузки из файла");
+        }
+    }
+
+    @Override
+    public void decode(ByteBuffer content, Consumer<Task> records, IntConsumer history) {
+        try (CsvReader reader = readerOf(content, content.position(), content.limit())) {
+            readAll(reader, records, history);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка загрузки из файла");
+        }
+    }
+
+    @MethodInformation("Одним проходом по байтам находит границы записей (с учетом кавычек) и разбирает куски" +
+            " параллельно. История старого формата дочитывается последовательно")
+    @Override
+    public void decode(Path path, int parallelism, Consumer<Task> records, IntConsumer history) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (parallelism <= 1 || size < MIN_PARALLEL_SIZE || size > Integer.MAX_VALUE) {
+                decode(path, records, history);
+                return;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            int limit = (int) size;
+            int targetChunk = Math.max(MIN_PARALLEL_SIZE / 4, limit / (parallelism * CHUNKS_PER_THREAD));
+
+            List<Callable<List<Task>>> chunks = new ArrayList<>();
+            int chunkStart = -1; /*Первая запись - заголовок, куски начинаются после него*/
+            int lineStart = 0;
+            int historyStart = limit;
+            boolean quoted = false;
+            boolean checked = false;
+            boolean terminated = false;
+            for (int i = 0; i < limit; i++) {
+                byte b = buffer.get(i);
+                if (b == '"') {
+                    quoted = !quoted;
+                } else if (b == '\n' && !quoted) {
+                    boolean blank = i == lineStart || (i == lineStart + 1 && buffer.get(lineStart) == '\r');
+                    if (chunkStart < 0) {
+                        String header = StandardCharsets.UTF_8.decode(buffer.slice(0, i)).toString().strip();
+                        checked = header.equals(CHECKED_HEADER);
+                        if (!checked && !header.equals(HEADER)) {
+                            throw new ManagerSaveException("Неизвестный заголовок снимка " + path);
+                        }
+                        chunkStart = i + 1;
+                    } else if (blank) {
+                        addChunk(chunks, buffer, chunkStart, lineStart, checked);
+                        chunkStart = -1;
+                        historyStart = i + 1;
+                        terminated = true;
+                        break;
+                    } else if (i + 1 - chunkStart >= targetChunk) {
+                        addChunk(chunks, buffer, chunkStart, i + 1, checked);
+                        chunkStart = i + 1;
+                    }
+                    lineStart = i + 1;
+                }
+            }
+            if (checked && !terminated) { /*Обрезанный снимок отвергаю до разбора*/
+                throw new ManagerSaveException("Снимок обрезан: нет пустой строки в конце " + path);
+            }
+            if (chunkStart >= 0) {
+                addChunk(chunks, buffer, chunkStart, limit, checked);
+            }
+
+            ParallelChunks.run(chunks, parallelism, records);
+            if (historyStart < limit) {
+                try (CsvReader reader = readerOf(buffer, historyStart, limit)) {
+                    readHistory(reader, history);
+                }
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка загрузки из файла");
+        }
+    }
+
+    private static void readAll(CsvReader reader, Consumer<Task> records, IntConsumer history) throws IOException {
+        if (!reader.next()) {
+            return; /*Первая строка - заголовок*/
+        }
+        RecordChecksum checksum = isCheckedHeader(reader) ? new RecordChecksum() : null;
+        if (checksum == null && !isLegacyHeader(reader)) {
+            throw new ManagerSaveException("Неизвестный заголовок снимка");
+        }
+        boolean terminated = false;
+        while (reader.next()) {
+            if (reader.isBlankRecord()) {
+                terminated = true;
+                break;
+            }
+            if (checksum != null) {
+                checksum.verify(reader);
+            }
+            Task task = parse(reader);
+            if (task != null) {
+                records.accept(task);
+            }
+        }
+        if (checksum != null && !terminated) {
+            throw new ManagerSaveException("Снимок обрезан: нет пустой строки в конце");
+        }
+        readHistory(reader, history); /*После пустой строки - история у файлов старого формата*/
+    }
+
+    private static boolean isLegacyHeader(CsvReader reader) {
+        if (reader.size() != FIELD_COUNT) {
+            return false;
+        }
+        String[] names = HEADER.split(",");
+        for (int i = 0; i < names.length; i++) {
+            if (!names[i].contentEquals(reader.getChars(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isCheckedHeader(CsvReader reader) {
+        return reader.size() == FIELD_COUNT + 1 && "crc".contentEquals(reader.getChars(FIELD_COUNT));
+    }
+
+    private static void addChunk(List<Callable<List<Task>>> chunks, ByteBuffer buffer, int from, int to,
+                                 boolean checked) {
+        if (from >= to) {
+            return;
+        }
+        chunks.add(() -> {
+            List<Task> parsed = new ArrayList<>();
+            RecordChecksum checksum = checked ? new RecordChecksum() : null;
+            try (CsvReader reader = readerOf(buffer, from, to)) {
+                while (reader.next()) {
+                    if (checksum != null) {
+                        checksum.verify(reader);
+                    }
+                    Task task = parse(reader);
+                    if (task != null) {
+                        parsed.add(task);
+                    }
+                }
+            }
+            return parsed;
+        });
+    }
+
+    private static CsvReader readerOf(ByteBuffer buffer, int from, int to) {
+        CharBuffer chars = StandardCharsets.UTF_8.decode(buffer.slice(from, to - from));
+        return new CsvReader(new CharArrayReader(chars.array(), chars.arrayOffset() + chars.position(),
+                chars.remaining()));
+    }
+
+    private static void readHistory(CsvReader reader, IntConsumer history) throws IOException {
+        while (reader.next()) {
+            for (int i = 0; i < reader.size(); i++) {
+                if (reader.isEmpty(i)) {
+                    continue;
+                }
+                try {
+                    history.accept(reader.getInt(i));
+                } catch (NumberFormatException e) {
+                    System.err.println("Ошибка при преобразовании истории: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    @MethodInformation("Десиарилизует объекты в строку. Поля с запятыми, кавычками и переводами строк берутся в кавычки")
+    public static String format(Task task) {
+        return join(fields(task));
+    }
+
+    @MethodInformation("Значения полей записи до взятия в кавычки. По ним же считается CRC записи")
+    private static String[] fields(Task task) {
+        return new String[]{String.valueOf(task.getId()), task.getType().name(), String.valueOf(task.getTitle()),
+                task.getStatus().name(), String.valueOf(task.getDescription()),
+                task.getStartTime() != null ? task.getStartTime().toString() : "",
+                task.getDuration() != null ? String.valueOf(task.getDuration()) : "",
+                task instanceof Subtask ? String.valueOf(((Subtask) task).getEpicId()) : ""};
+    }
+
+    private static String join(String[] fields) {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            line.append(quote(fields[i]));
+        }
+        return line.toString();
+    }
+
+    @MethodInformation("Сериализует объекты из строки")
+    public static Task parse(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        try (CsvReader reader = new CsvReader(new StringReader(value))) {
+            return reader.next() ? parse(reader) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    @MethodInformation("Сериализует объект из текущей записи reader. Строки создаются только для title и description")
+    public static Task parse(CsvReader reader) {
+        if (reader.size() < 7) {
+            return null;
+        }
+
+        try {
+            int id = reader.getInt(0);
+            TaskType type = reader.getEnum(1, TASK_TYPES);
+            String title = reader.getString(2);
+            Status status = reader.getEnum(3, STATUSES);
+            String description = reader.getString(4);
+            LocalDateTime startTime = reader.isEmpty(5) ? null : LocalDateTime.parse(reader.getChars(5));
+            Duration duration = reader.isEmpty(6) ? null : Duration.ofMinutes(reader.getLong(6));
+
+            switch (type) {
+                case TASK:
+                    Task task = new Task(title, description, status, startTime, duration);
+                    task.setId(id);
+                    return task;
+                case EPIC:
+                    Epic epic = new Epic(title, description, status, startTime, duration);
+                    epic.setId(id);
+                    return epic;
+                case SUBTASK:
+                    if (reader.size() < 8 || reader.isEmpty(7)) return null;
+                    int epicId = reader.getInt(7);
+                    Subtask subtask = new Subtask(title, description, status, epicId, startTime, duration);
+                    subtask.setId(id);
+                    return subtask;
+                default:
+                    return null;
+            }
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String quote(String value) {
+        if (value == null || value.chars().noneMatch(c -> c == ',' || c == '"' || c == '\n' || c == '\r')) {
+            return String.valueOf(value);
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    @MethodInformation("Сериализует объекты из строки")
+    public static List<Integer> parseHistory(String value) {
+        List<Integer> history = new ArrayList<>();
+        if (value == null || value.isBlank()) {
+            return history;
+        }
+
+        for (String id : value.split(",")) {
+            try {
+                history.add(Integer.parseInt(id.trim()));
+            } catch (NumberFormatException e) {
+                System.err.println("Ошибка при преобразовании истории: " + e.getMessage());
+            }
+        }
+        return history;
+    }
+
+    /**
+     * CRC32 полей записи без кавычек: длина и символы каждого поля. Одинаково считается при записи по значениям
+     * полей и при чтении по полям CsvReader, поэтому не зависит от того, как поле было взято в кавычки.
+     */
+    private static final class RecordChecksum {
+        private final CRC32 crc = new CRC32();
+        private byte[] scratch = new byte[256];
+
+        int of(String[] fields) {
+            crc.reset();
+            for (String field : fields) {
+                add(field);
+            }
+            return (int) crc.getValue();
+        }
+
+        void verify(CsvReader reader) {
+            if (reader.size() != FIELD_COUNT + 1) {
+                throw new ManagerSaveException("Поврежденная запись снимка: " + reader.getChars(0));
+            }
+            crc.reset();
+            for (int i = 0; i < FIELD_COUNT; i++) {
+                add(reader.getChars(i));
+            }
+            CharSequence stored = reader.getChars(FIELD_COUNT);
+            try {
+                if (Integer.parseUnsignedInt(stored, 0, stored.length(), 16) == (int) crc.getValue()) {
+                    return;
+                }
+            } catch (NumberFormatException e) {
+                /*Нечитаемая контрольная сумма - та же порча записи*/
+            }
+            throw new ManagerSaveException("Не совпадает контрольная сумма записи снимка: " + reader.getChars(0));
+        }
+
+        private void add(CharSequence value) {
+            int length = value.length();
+            if (scratch.length < length * 2 + 4) {
+                scratch = new byte[Math.max(length * 2 + 4, scratch.length * 2)];
+            }
+            scratch[0] = (byte) (length >>> 24);
+            scratch[1] = (byte) (length >>> 16);
+            scratch[2] = (byte) (length >>> 8);
+            scratch[3] = (byte) length;
+            int position = 4;
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                scratch[position++] = (byte) (c >>> 8);
+                scratch[position++] = (byte) c;
+            }
+            crc.update(scratch, 0, position);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package storage;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+import exception.ManagerSaveException;
+import tasks.Task;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Описания задач на диске. Описание дописывается в файл один раз, в задаче остается только Ref - смещение
+ * и длина, а текст читается по требованию через небольшой LRU кэш. Файл не является источником истины:
+ * он строится заново при каждом открытии из снимка и журнала, поэтому пишется без сброса на диск.
+ * Замененные описания остаются в файле, пока он не вырастет вдвое с прошлого уплотнения - тогда compact()
+ * переписывает только описания живых задач. Задача, вытесненная из менеджера, может еще жить в истории
+ * или у вызывающего, поэтому уплотнение переносит ее описание в память самой ссылки, а не теряет его.
+ */
+@ClassInformation("Хранилище описаний задач на диске с LRU кэшем")
+public class DescriptionStore implements Closeable {
+    private static final long MIN_COMPACTION_SIZE = 1 << 20;
+
+    private final Path path;
+    private final Map<Ref, String> cache;
+    private final Map<Ref, Boolean> issued = new WeakHashMap<>(); /*Все еще достижимые ссылки на этот файл*/
+    private FileChannel channel;
+    private long size;
+    private long compactedSize;
+    private long hits;
+    private long misses;
+
+    public DescriptionStore(Path path, int cacheSize) {
+        this.path = path;
+        this.channel = open(path, StandardOpenOption.TRUNCATE_EXISTING);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Ref, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    @MethodInformation("Записывает описание задачи в файл и оставляет в задаче только ссылку на него")
+    public synchronized void defer(Task task) {
+        String description = task.getDescription();
+        if (description == null) {
+            return;
+        }
+        byte[] bytes = description.getBytes(StandardCharsets.UTF_8);
+        write(channel, size, bytes);
+        Ref ref = new Ref(this, size, bytes.length);
+        issued.put(ref, Boolean.TRUE);
+        task.deferDescription(ref);
+        size += bytes.length;
+    }
+
+    @MethodInformation("Файл вырос вдвое с прошлого уплотнения и больше минимального размера")
+    public synchronized boolean needsCompaction() {
+        return size >= MIN_COMPACTION_SIZE && size >= compactedSize * 2;
+    }
+
+    @MethodInformation("Переписывает файл, оставляя только описания переданных задач, и переводит их ссылки" +
+            " на новые смещения. Остальные еще достижимые ссылки получают свое описание в память: их смещения" +
+            " в новом файле указывали бы на чужие байты. Чтения описаний ждут окончания на блокировке хранилища")
+    public synchronized void compact(Collection<? extends Task> tasks) {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Map<Ref, Long> moved = new LinkedHashMap<>();
+        long newSize = 0;
+        try (FileChannel target = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Task task : tasks) {
+                if (task.getDescriptionLoader() instanceof Ref ref && ref.store == this && ref.detached == null) {
+                    write(target, newSize, read(ref));
+                    moved.put(ref, newSize);
+                    newSize += ref.length;
+                }
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка уплотнения файла описаний " + path);
+        }
+        List<Ref> replaced = new ArrayList<>();
+        for (Ref ref : issued.keySet()) {
+            if (!moved.containsKey(ref)) {
+                replaced.add(ref);
+            }
+        }
+        Map<Ref, String> texts = new LinkedHashMap<>();
+        for (Ref ref : replaced) { /*Читаю до закрытия старого файла, но отдаю ссылкам только после подмены*/
+            texts.put(ref, new String(read(ref), StandardCharsets.UTF_8));
+        }
+        try {
+            channel.close();
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка замены файла описаний " + path);
+        }
+        channel = open(path, StandardOpenOption.READ);
+        moved.forEach((ref, offset) -> ref.offset = offset);
+        texts.forEach((ref, text) -> {
+            ref.detached = text;
+            issued.remove(ref);
+        });
+        cache.keySet().removeAll(texts.keySet());
+        size = newSize;
+        compactedSize = newSize;
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized long getCacheHits() {
+        return hits;
+    }
+
+    public synchronized long getCacheMisses() {
+        return misses;
+    }
+
+    @MethodInformation("Закрывает и удаляет файл описаний: при следующем открытии он строится заново")
+    @Override
+    public synchronized void close() {
+        try {
+            channel.close();
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка закрытия файла описаний " + path);
+        }
+        cache.clear();
+    }
+
+    private synchronized String load(Ref ref) {
+        if (ref.detached != null) {
+            return ref.detached;
+        }
+        String description = cache.get(ref);
+        if (description != null) {
+            hits++;
+            return description;
+        }
+        misses++;
+        description = new String(read(ref), StandardCharsets.UTF_8);
+        cache.put(ref, description);
+        return description;
+    }
+
+    private byte[] read(Ref ref) {
+        ByteBuffer buffer = ByteBuffer.allocate(ref.length);
+        try {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, ref.offset + buffer.position()) < 0) {
+                    throw new ManagerSaveException("Файл описаний обрезан: " + path);
+                }
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка чтения описания из " + path);
+        }
+        return buffer.array();
+    }
+
+    private void write(FileChannel target, long position, byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            while (buffer.hasRemaining()) {
+                target.write(buffer, position + buffer.position());
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка записи описания в " + path);
+        }
+    }
+
+    private static FileChannel open(Path path, StandardOpenOption mode) {
+        try {
+            return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, mode);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка открытия файла описаний " + path);
+        }
+    }
+
+    /**
+     * Ссылка на описание в файле: смещение и длина в байтах. Смещение меняется только при уплотнении.
+     * Если уплотнение не перенесло описание в новый файл, оно хранится в detached.
+     */
+    public static class Ref implements Supplier<String> {
+        private final DescriptionStore store;
+        private long offset;
+        private final int length;
+        private String detached;
+
+        private Ref(DescriptionStore store, long offset, int length) {
+            this.store = store;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public String get() {
+            return store.load(this);
+        }
+    }
+}
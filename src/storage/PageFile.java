@@ -0,0 +1,94 @@
+package storage;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+import exception.ManagerSaveException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Файл из страниц фиксированного размера. Читает и пишет страницы целиком по номеру, сам ничего не кэширует:
+ * все обращения идут через BufferPool.
+ */
+@ClassInformation("Файл из страниц фиксированного размера")
+public class PageFile implements Closeable {
+    public static final int PAGE_SIZE = 4096;
+
+    private final Path path;
+    private final FileChannel channel;
+
+    public PageFile(Path path) {
+        this.path = path;
+        try {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка открытия файла страниц " + path);
+        }
+    }
+
+    @MethodInformation("Количество страниц, уже записанных в файл")
+    public int pageCount() {
+        try {
+            return (int) (channel.size() / PAGE_SIZE);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка чтения файла страниц " + path);
+        }
+    }
+
+    @MethodInformation("Читает страницу. Страница за концом файла читается как нулевая")
+    public void read(int pageNo, byte[] page) {
+        ByteBuffer buffer = ByteBuffer.wrap(page);
+        long position = (long) pageNo * PAGE_SIZE;
+        try {
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position + buffer.position());
+                if (read < 0) {
+                    Arrays.fill(page, buffer.position(), PAGE_SIZE, (byte) 0);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка чтения страницы " + pageNo + " из " + path);
+        }
+    }
+
+    public void write(int pageNo, byte[] page) {
+        ByteBuffer buffer = ByteBuffer.wrap(page);
+        long position = (long) pageNo * PAGE_SIZE;
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, position + buffer.position());
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка записи страницы " + pageNo + " в " + path);
+        }
+    }
+
+    public void force() {
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка сброса файла страниц на диск " + path);
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка закрытия файла страниц " + path);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package storage;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+import exception.ManagerSaveException;
+import tasks.Task;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Разбор кусков снимка на ForkJoinPool. Результаты передаются в consumer в потоке вызывающего и в порядке
+ * кусков, поэтому менеджер заполняет свои (не потокобезопасные) структуры так же, как при обычной загрузке.
+ */
+@ClassInformation("Параллельный разбор кусков снимка")
+final class ParallelChunks {
+
+    private ParallelChunks() {
+    }
+
+    @MethodInformation("Разбирает куски параллельно и по порядку отдает задачи в records")
+    static void run(List<Callable<List<Task>>> chunks, int parallelism, Consumer<Task> records) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        int window = parallelism * 2; /*Ограничиваю число разобранных, но еще не принятых кусков в памяти*/
+        try {
+            List<Future<List<Task>>> parsed = new ArrayList<>(chunks.size());
+            for (int i = 0; i < chunks.size() && i < window; i++) {
+                parsed.add(pool.submit(chunks.get(i)));
+            }
+            for (int i = 0; i < chunks.size(); i++) {
+                List<Task> chunk = parsed.get(i).get();
+                parsed.set(i, null);
+                if (i + window < chunks.size()) {
+                    parsed.add(pool.submit(chunks.get(i + window)));
+                }
+                chunk.forEach(records);
+            }
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof ManagerSaveException cause
+                    ? cause
+                    : new ManagerSaveException("Ошибка параллельной загрузки снимка: " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ManagerSaveException("Загрузка снимка прервана");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package storage;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Куча записей переменной длины в страницах BufferPool. Записи дописываются в хвостовую страницу,
+ * длинная запись продолжается на следующей странице цепочки. Адрес записи - номер страницы в старших
+ * 32 битах и смещение в младших.
+ * <pre>
+ * заголовок страницы: int used (занято байт вместе с заголовком), int next (следующая страница кучи)
+ * запись: int capacity, int length, байты записи
+ * </pre>
+ * Запись, которая не длиннее прежней, переписывается на месте, более длинная дописывается заново,
+ * а старое место остается неиспользованным.
+ */
+@ClassInformation("Куча записей переменной длины в страницах файла")
+public class RecordHeap {
+    private static final int USED = 0;
+    private static final int NEXT = 4;
+    private static final int HEADER = 8;
+    private static final int RECORD_HEADER = Integer.BYTES * 2;
+
+    private final BufferPool pool;
+    private int tail;
+
+    /**
+     * Открывает кучу с хвостом в странице tail или создает новую, если tail равен 0.
+     */
+    public RecordHeap(BufferPool pool, int tail) {
+        this.pool = pool;
+        this.tail = tail != 0 ? tail : newPage();
+    }
+
+    public int getTail() {
+        return tail;
+    }
+
+    @MethodInformation("Дописывает запись в конец кучи и возвращает ее адрес")
+    public long append(byte[] record) {
+        BufferPool.Page page = pool.pin(tail);
+        if (PageFile.PAGE_SIZE - page.buffer().getInt(USED) < RECORD_HEADER) {
+            page = nextPage(page);
+        }
+        ByteBuffer buffer = page.buffer();
+        int offset = buffer.getInt(USED);
+        long address = ((long) page.number() << 32) | offset;
+        buffer.putInt(offset, record.length);
+        buffer.putInt(offset + Integer.BYTES, record.length);
+        buffer.putInt(USED, offset + RECORD_HEADER);
+        page.markDirty();
+
+        int written = 0;
+        while (true) {
+            int used = page.buffer().getInt(USED);
+            int chunk = Math.min(record.length - written, PageFile.PAGE_SIZE - used);
+            System.arraycopy(record, written, page.data(), used, chunk);
+            page.buffer().putInt(USED, used + chunk);
+            page.markDirty();
+            written += chunk;
+            if (written == record.length) {
+                break;
+            }
+            page = nextPage(page);
+        }
+        pool.unpin(page);
+        return address;
+    }
+
+    @MethodInformation("Переписывает запись на месте, если она помещается в прежнее место. Иначе возвращает false")
+    public boolean overwrite(long address, byte[] record) {
+        BufferPool.Page page = pool.pin(pageOf(address));
+        int offset = offsetOf(address);
+        if (page.buffer().getInt(offset) < record.length) {
+            pool.unpin(page);
+            return false;
+        }
+        page.buffer().putInt(offset + Integer.BYTES, record.length);
+        copy(page, offset + RECORD_HEADER, record, record.length, true);
+        return true;
+    }
+
+    public byte[] read(long address) {
+        BufferPool.Page page = pool.pin(pageOf(address));
+        int offset = offsetOf(address);
+        byte[] record = new byte[page.buffer().getInt(offset + Integer.BYTES)];
+        copy(page, offset + RECORD_HEADER, record, record.length, false);
+        return record;
+    }
+
+    @MethodInformation("Копирует байты записи между массивом и цепочкой страниц, начиная с offset в page." +
+            " Освобождает последнюю закрепленную страницу")
+    private void copy(BufferPool.Page page, int offset, byte[] record, int length, boolean write) {
+        int done = 0;
+        while (true) {
+            int chunk = Math.min(length - done, PageFile.PAGE_SIZE - offset);
+            if (write) {
+                System.arraycopy(record, done, page.data(), offset, chunk);
+                page.markDirty();
+            } else {
+                System.arraycopy(page.data(), offset, record, done, chunk);
+            }
+            done += chunk;
+            if (done == length) {
+                pool.unpin(page);
+                return;
+            }
+            int next = page.buffer().getInt(NEXT);
+            pool.unpin(page);
+            page = pool.pin(next);
+            offset = HEADER;
+        }
+    }
+
+    private BufferPool.Page nextPage(BufferPool.Page page) {
+        BufferPool.Page next = pool.allocate();
+        next.buffer().putInt(USED, HEADER);
+        page.buffer().putInt(NEXT, next.number());
+        page.markDirty();
+        pool.unpin(page);
+        tail = next.number();
+        return next;
+    }
+
+    private int newPage() {
+        BufferPool.Page page = pool.allocate();
+        page.buffer().putInt(USED, HEADER);
+        pool.unpin(page);
+        return page.number();
+    }
+
+    private static int pageOf(long address) {
+        return (int) (address >>> 32);
+    }
+
+    private static int offsetOf(long address) {
+        return (int) address;
+    }
+}
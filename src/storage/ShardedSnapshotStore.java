@@ -0,0 +1,239 @@
+package storage;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+import exception.ManagerSaveException;
+import tasks.Subtask;
+import tasks.Task;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Снимок, разбитый на шарды по id: задача с id попадает в &lt;snapshot&gt;.shard.&lt;id mod shardCount&gt;.
+ * Каждый шард - самостоятельный снимок выбранного кодека, шарды кодируются и записываются параллельно
+ * и независимо друг от друга, поэтому изменение одной задачи переписывает только ее шард.
+ * Шард подменяется атомарно, но шарды между собой не согласованы: после сбоя посреди записи часть шардов
+ * может остаться в прежнем состоянии. Эпики пересчитываются при загрузке, поэтому это не ломает их агрегаты.
+ */
+@ClassInformation("Снимок задач, разбитый на независимо записываемые шарды")
+public class ShardedSnapshotStore implements Closeable {
+    private static final String SHARD_SUFFIX = ".shard.";
+
+    private final Path snapshot;
+    private final SnapshotCodec codec;
+    private final int shardCount;
+    private final ExecutorService writers;
+
+    public ShardedSnapshotStore(Path snapshot, SnapshotCodec codec, int shardCount) {
+        this.snapshot = snapshot;
+        this.codec = codec;
+        this.shardCount = shardCount;
+        int threads = Math.min(shardCount, Runtime.getRuntime().availableProcessors());
+        this.writers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "shard-writer-" + snapshot.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int shardOf(int id) {
+        return Math.floorMod(id, shardCount);
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    @MethodInformation("Раскладывает записи по шардам. Если shards не null, берет только записи этих шардов")
+    public Map<Integer, List<Task>> partition(Collection<? extends Task> records, Set<Integer> shards) {
+        Map<Integer, List<Task>> partitioned = new TreeMap<>();
+        if (shards != null) {
+            for (int shard : shards) {
+                partitioned.put(shard, new ArrayList<>());
+            }
+        } else {
+            for (int shard = 0; shard < shardCount; shard++) {
+                partitioned.put(shard, new ArrayList<>());
+            }
+        }
+        for (Task record : records) {
+            List<Task> shard = partitioned.get(shardOf(record.getId()));
+            if (shard != null) {
+                shard.add(record);
+            }
+        }
+        return partitioned;
+    }
+
+    @MethodInformation("Кодирует шарды параллельно. Пустой шард тоже кодируется: так из него пропадают удаленные задачи")
+    public Map<Integer, byte[]> encode(Map<Integer, List<Task>> shards) {
+        List<Integer> numbers = new ArrayList<>(shards.keySet());
+        List<byte[]> encoded = runAll(numbers.stream()
+                .<Callable<byte[]>>map(shard -> () -> codec.encode(shards.get(shard)))
+                .toList());
+        Map<Integer, byte[]> contents = new LinkedHashMap<>();
+        for (int i = 0; i < numbers.size(); i++) {
+            contents.put(numbers.get(i), encoded.get(i));
+        }
+        return contents;
+    }
+
+    @MethodInformation("Параллельно и атомарно подменяет файлы переданных шардов. Когда записаны все шарды," +
+            " удаляет шарды, оставшиеся от прежнего числа шардов")
+    public void write(Map<Integer, byte[]> contents, boolean force) {
+        runAll(contents.entrySet().stream()
+                .<Callable<Void>>map(shard -> () -> {
+                    AtomicFiles.replace(shardPath(shard.getKey()), shard.getValue(), force);
+                    return null;
+                })
+                .toList());
+        if (contents.size() == shardCount) {
+            for (Path stale : shards(snapshot)) {
+                if (shardNumber(stale) >= shardCount) {
+                    delete(stale);
+                }
+            }
+        }
+    }
+
+    @MethodInformation("Шарды на диске разбиты иначе, чем задано: нужна полная перезапись")
+    public boolean needsFullRewrite() {
+        return shards(snapshot).stream().anyMatch(shard -> shardNumber(shard) >= shardCount);
+    }
+
+    @MethodInformation("Сбрасывает на диск файлы шардов")
+    public void force() {
+        for (Path shard : shards(snapshot)) {
+            try (FileChannel channel = FileChannel.open(shard, StandardOpenOption.WRITE)) {
+                channel.force(false);
+            } catch (NoSuchFileException e) {
+                /*Шард прежнего разбиения уже удален*/
+            } catch (IOException e) {
+                throw new ManagerSaveException("Ошибка сброса шарда на диск " + shard);
+            }
+        }
+    }
+
+    @MethodInformation("Удаляет все шарды. Нужен новому менеджеру, который начинает с пустого состояния")
+    public void clear() {
+        for (Path shard : shards(snapshot)) {
+            delete(shard);
+        }
+    }
+
+    @Override
+    public void close() {
+        writers.shutdown();
+        try {
+            writers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @MethodInformation("Шарды снимка по возрастанию номера")
+    public static List<Path> shards(Path snapshot) {
+        Path directory = snapshot.toAbsolutePath().getParent();
+        String prefix = snapshot.getFileName() + SHARD_SUFFIX;
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> isShard(path.getFileName().toString(), prefix))
+                    .sorted(Comparator.comparingInt(ShardedSnapshotStore::shardNumber))
+                    .toList();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка чтения каталога " + directory);
+        }
+    }
+
+    @MethodInformation("Читает шарды параллельно, по потоку на шард в пределах числа процессоров. Формат каждого" +
+            " шарда определяется по его файлу. Задачи и эпики передаются в records раньше подзадач")
+    public static void load(Path snapshot, Consumer<Task> records) {
+        List<Callable<List<Task>>> chunks = new ArrayList<>();
+        for (Path shard : shards(snapshot)) {
+            chunks.add(() -> {
+                List<Task> parsed = new ArrayList<>();
+                SnapshotCodec.detect(shard).decode(shard, parsed::add, id -> {
+                });
+                return parsed;
+            });
+        }
+        List<Task> subtasks = new ArrayList<>();
+        int parallelism = Math.max(1, Math.min(chunks.size(), Runtime.getRuntime().availableProcessors()));
+        ParallelChunks.run(chunks, parallelism, task -> {
+            if (task instanceof Subtask) {
+                subtasks.add(task);
+            } else {
+                records.accept(task);
+            }
+        });
+        subtasks.forEach(records);
+    }
+
+    private Path shardPath(int shard) {
+        return snapshot.resolveSibling(snapshot.getFileName() + SHARD_SUFFIX + shard);
+    }
+
+    private <T> List<T> runAll(List<Callable<T>> jobs) {
+        try {
+            List<Future<T>> futures = writers.invokeAll(jobs);
+            List<T> results = new ArrayList<>(futures.size());
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof ManagerSaveException cause
+                    ? cause
+                    : new ManagerSaveException("Ошибка записи шардов: " + e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ManagerSaveException("Запись шардов прервана");
+        }
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка удаления файла " + path);
+        }
+    }
+
+    private static boolean isShard(String name, String prefix) {
+        if (!name.startsWith(prefix) || name.length() == prefix.length()) {
+            return false;
+        }
+        for (int i = prefix.length(); i < name.length(); i++) {
+            if (!Character.isDigit(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int shardNumber(Path shard) {
+        String name = shard.getFileName().toString();
+        return Integer.parseInt(name.substring(name.lastIndexOf('.') + 1));
+    }
+}
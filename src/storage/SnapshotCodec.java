@@ -0,0 +1,71 @@
+package storage;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+import enums.SnapshotFormat;
+import exception.ManagerSaveException;
+import tasks.Task;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Формат файла снимка задач. Кодек только превращает записи в байты и обратно,
+ * восстановлением состояния менеджера занимается FileBackedTaskManager.
+ */
+@ClassInformation("Формат файла снимка задач")
+public interface SnapshotCodec {
+
+    @MethodInformation("Кодирует записи в содержимое файла снимка")
+    byte[] encode(Collection<? extends Task> records);
+
+    @MethodInformation("Читает снимок и передает задачи в records, а id истории (если формат ее хранит) в history")
+    void decode(Path path, Consumer<Task> records, IntConsumer history);
+
+    @MethodInformation("Разбирает снимок, уже прочитанный в память, от позиции до предела буфера")
+    void decode(ByteBuffer content, Consumer<Task> records, IntConsumer history);
+
+    @MethodInformation("То же, что decode, но разбор файла может идти на parallelism потоках. Задачи по-прежнему" +
+            " передаются в records в порядке файла и в потоке вызывающего")
+    default void decode(Path path, int parallelism, Consumer<Task> records, IntConsumer history) {
+        decode(path, records, history);
+    }
+
+    static SnapshotCodec of(SnapshotFormat format) {
+        return switch (format) {
+            case CSV -> new CsvSnapshotCodec();
+            case BINARY -> new BinarySnapshotCodec();
+        };
+    }
+
+    @MethodInformation("Кодек снимка по настройкам: формат и, если включено, сжатие блоками")
+    static SnapshotCodec of(StorageSettings settings) {
+        return switch (settings.getCompression()) {
+            case NONE -> of(settings.getSnapshotFormat());
+            case DEFLATE -> new CompressedSnapshotCodec(settings.getSnapshotFormat(), settings.getCompressionLevel());
+        };
+    }
+
+    @MethodInformation("Определяет формат существующего файла по сигнатуре в начале файла")
+    static SnapshotCodec detect(Path path) {
+        byte[] head = new byte[4];
+        try (InputStream in = Files.newInputStream(path)) {
+            int read = in.readNBytes(head, 0, head.length);
+            if (read == head.length && BinarySnapshotCodec.hasMagic(head)) {
+                return new BinarySnapshotCodec();
+            }
+            if (read == head.length && CompressedBlocks.hasMagic(head)) {
+                return CompressedSnapshotCodec.forReading();
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка загрузки из файла");
+        }
+        return new CsvSnapshotCodec();
+    }
+}
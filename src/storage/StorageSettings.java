@@ -0,0 +1,190 @@
+package storage;
+
+import annotations.ClassInformation;
+import enums.Compression;
+import enums.DescriptionStorage;
+import enums.FsyncPolicy;
+import enums.PersistenceMode;
+import enums.SnapshotFormat;
+
+import java.time.Duration;
+import java.util.zip.Deflater;
+
+/**
+ * Настройки сохранения FileBackedTaskManager. По умолчанию - полный снимок в файл при каждом изменении
+ * без принудительного сброса на диск, как было изначально.
+ */
+@ClassInformation("Настройки сохранения FileBackedTaskManager")
+public class StorageSettings {
+    private PersistenceMode persistenceMode = PersistenceMode.SNAPSHOT;
+    private SnapshotFormat snapshotFormat = SnapshotFormat.CSV;
+    private int journalCompactionThreshold = 1_000;
+    private int historyCompactionThreshold = 1_000;
+    private int segmentMergeThreshold = 32;
+    private int shardCount = 8;
+    private FsyncPolicy fsyncPolicy = FsyncPolicy.OS_MANAGED;
+    private Duration flushInterval = Duration.ofMillis(50);
+    private int flushBatchSize = 512;
+    private int loadParallelism = 1;
+    private DescriptionStorage descriptionStorage = DescriptionStorage.IN_MEMORY;
+    private int descriptionCacheSize = 256;
+    private Compression compression = Compression.NONE;
+    private int compressionLevel = Deflater.BEST_SPEED;
+
+    public static StorageSettings defaults() {
+        return new StorageSettings();
+    }
+
+    public StorageSettings withPersistenceMode(PersistenceMode persistenceMode) {
+        this.persistenceMode = persistenceMode;
+        return this;
+    }
+
+    public StorageSettings withSnapshotFormat(SnapshotFormat snapshotFormat) {
+        this.snapshotFormat = snapshotFormat;
+        return this;
+    }
+
+    public StorageSettings withJournalCompactionThreshold(int journalCompactionThreshold) {
+        if (journalCompactionThreshold < 1) {
+            throw new IllegalArgumentException("Journal compaction threshold must be positive.");
+        }
+        this.journalCompactionThreshold = journalCompactionThreshold;
+        return this;
+    }
+
+    public StorageSettings withHistoryCompactionThreshold(int historyCompactionThreshold) {
+        if (historyCompactionThreshold < 1) {
+            throw new IllegalArgumentException("History compaction threshold must be positive.");
+        }
+        this.historyCompactionThreshold = historyCompactionThreshold;
+        return this;
+    }
+
+    public StorageSettings withSegmentMergeThreshold(int segmentMergeThreshold) {
+        if (segmentMergeThreshold < 1) {
+            throw new IllegalArgumentException("Segment merge threshold must be positive.");
+        }
+        this.segmentMergeThreshold = segmentMergeThreshold;
+        return this;
+    }
+
+    public StorageSettings withShardCount(int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be positive.");
+        }
+        this.shardCount = shardCount;
+        return this;
+    }
+
+    public StorageSettings withFsyncPolicy(FsyncPolicy fsyncPolicy) {
+        this.fsyncPolicy = fsyncPolicy;
+        return this;
+    }
+
+    public StorageSettings withFlushInterval(Duration flushInterval) {
+        if (flushInterval == null || flushInterval.isNegative() || flushInterval.isZero()) {
+            throw new IllegalArgumentException("Flush interval must be positive.");
+        }
+        this.flushInterval = flushInterval;
+        return this;
+    }
+
+    public StorageSettings withFlushBatchSize(int flushBatchSize) {
+        if (flushBatchSize < 1) {
+            throw new IllegalArgumentException("Flush batch size must be positive.");
+        }
+        this.flushBatchSize = flushBatchSize;
+        return this;
+    }
+
+    public StorageSettings withLoadParallelism(int loadParallelism) {
+        if (loadParallelism < 1) {
+            throw new IllegalArgumentException("Load parallelism must be positive.");
+        }
+        this.loadParallelism = loadParallelism;
+        return this;
+    }
+
+    public StorageSettings withDescriptionStorage(DescriptionStorage descriptionStorage) {
+        this.descriptionStorage = descriptionStorage;
+        return this;
+    }
+
+    public StorageSettings withDescriptionCacheSize(int descriptionCacheSize) {
+        if (descriptionCacheSize < 1) {
+            throw new IllegalArgumentException("Description cache size must be positive.");
+        }
+        this.descriptionCacheSize = descriptionCacheSize;
+        return this;
+    }
+
+    public StorageSettings withCompression(Compression compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    public StorageSettings withCompressionLevel(int compressionLevel) {
+        if (compressionLevel < Deflater.BEST_SPEED || compressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Compression level must be between 1 and 9.");
+        }
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    public PersistenceMode getPersistenceMode() {
+        return persistenceMode;
+    }
+
+    public SnapshotFormat getSnapshotFormat() {
+        return snapshotFormat;
+    }
+
+    public int getJournalCompactionThreshold() {
+        return journalCompactionThreshold;
+    }
+
+    public int getHistoryCompactionThreshold() {
+        return historyCompactionThreshold;
+    }
+
+    public int getSegmentMergeThreshold() {
+        return segmentMergeThreshold;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    public Duration getFlushInterval() {
+        return flushInterval;
+    }
+
+    public int getFlushBatchSize() {
+        return flushBatchSize;
+    }
+
+    public int getLoadParallelism() {
+        return loadParallelism;
+    }
+
+    public DescriptionStorage getDescriptionStorage() {
+        return descriptionStorage;
+    }
+
+    public int getDescriptionCacheSize() {
+        return descriptionCacheSize;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+}
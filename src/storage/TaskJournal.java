@@ -0,0 +1,197 @@
+package storage;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+import exception.ManagerSaveException;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Журнал изменений: файл, в конец которого дописывается по одной строке на каждое изменение.
+ * Перевод строки внутри поля в кавычках запись не завершает, так что записи могут быть CSV строками.
+ * Недописанная последняя запись (например, после сбоя) отбрасывается при открытии.
+ */
+@ClassInformation("Журнал изменений с дозаписью в конец файла")
+public class TaskJournal implements Closeable {
+    private final Path path;
+    private final FileChannel channel;
+    private int recordCount;
+
+    public TaskJournal(Path path) {
+        this.path = path;
+        try {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            truncateToRecords(Integer.MAX_VALUE);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка открытия журнала " + path);
+        }
+    }
+
+    @MethodInformation("Дописывает запись в конец журнала")
+    public void append(String record) {
+        ByteBuffer buffer = ByteBuffer.wrap((record + "\n").getBytes(StandardCharsets.UTF_8));
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка записи в журнал " + path);
+        }
+        recordCount++;
+    }
+
+    @MethodInformation("Дописывает пачку записей одной операцией записи")
+    public void append(List<String> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        StringBuilder builder = new StringBuilder();
+        for (String record : records) {
+            builder.append(record).append('\n');
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(builder.toString().getBytes(StandardCharsets.UTF_8));
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка записи в журнал " + path);
+        }
+        recordCount += records.size();
+    }
+
+    @MethodInformation("Сбрасывает записанные данные журнала на диск")
+    public void force() {
+        try {
+            channel.force(false);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка сброса журнала на диск " + path);
+        }
+    }
+
+    @MethodInformation("Очищает журнал после записи полного снимка")
+    public void truncate() {
+        try {
+            channel.truncate(0);
+            channel.position(0);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка очистки журнала " + path);
+        }
+        recordCount = 0;
+    }
+
+    @MethodInformation("Переносит записи журнала в файл previous, заменяя его прежнее содержимое, и очищает журнал")
+    public void rotate(Path previous, boolean force) {
+        byte[] content;
+        try {
+            content = Files.readAllBytes(path);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка чтения журнала " + path);
+        }
+        AtomicFiles.replace(previous, content, force);
+        truncate();
+    }
+
+    @MethodInformation("Оставляет в журнале только первые count записей, например без недописанной записи" +
+            " с неверной контрольной суммой: иначе новые записи легли бы после нее")
+    public void truncateAfter(int count) {
+        try {
+            truncateToRecords(count);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка очистки журнала " + path);
+        }
+    }
+
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка закрытия журнала " + path);
+        }
+    }
+
+    @MethodInformation("Передает записи журнала в consumer в порядке записи")
+    public static void replay(Path path, Consumer<String> consumer) {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            replay(reader, consumer);
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка чтения журнала " + path);
+        }
+    }
+
+    @MethodInformation("Делит текст на записи по переводам строк вне кавычек")
+    static void replay(Reader reader, Consumer<String> consumer) throws IOException {
+        StringBuilder record = new StringBuilder();
+        boolean quoted = false;
+        int c;
+        while ((c = reader.read()) != -1) {
+            if (c == '\n' && !quoted) {
+                if (!record.isEmpty()) {
+                    consumer.accept(record.toString());
+                }
+                record.setLength(0);
+                continue;
+            }
+            if (c == '"') {
+                quoted = !quoted;
+            }
+            record.append((char) c);
+        }
+    }
+
+    @MethodInformation("Обрезает файл после последней целой записи, но не дальше limit-й, и считает записи")
+    private void truncateToRecords(int limit) throws IOException {
+        long size = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long lastNewline = -1;
+        int lines = 0;
+        long position = 0;
+        boolean quoted = false; /*Кавычка в UTF-8 всегда один байт, поэтому считать можно прямо по байтам*/
+        while (position < size && lines < limit) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read && lines < limit; i++) {
+                byte b = buffer.get(i);
+                if (b == '"') {
+                    quoted = !quoted;
+                } else if (b == '\n' && !quoted) {
+                    lastNewline = position + i;
+                    lines++;
+                }
+            }
+            position += read;
+        }
+        if (lastNewline + 1 < size) {
+            channel.truncate(lastNewline + 1);
+        }
+        channel.position(lastNewline + 1);
+        recordCount = lines;
+    }
+}
@@ -0,0 +1,403 @@
+package storage;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+import enums.Status;
+import enums.TaskType;
+import exception.ManagerSaveException;
+import tasks.Epic;
+import tasks.Subtask;
+import tasks.Task;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Хранилище задач в файле страниц: записи лежат в RecordHeap, индексы - B+-деревья в том же файле.
+ * <pre>
+ * id задач, эпиков и подзадач:        (id, 0) -> адрес записи
+ * время начала задач и подзадач:      (секунда эпохи UTC, наносекунды << 32 | id) -> адрес записи
+ * подзадачи эпика:                    (id эпика, id подзадачи) -> 0
+ * </pre>
+ * Страница 0 - метаданные: корни деревьев, хвост кучи, счетчик id и признак открытого на запись файла.
+ * Признак ставится с принудительным сбросом перед первым изменением и снимается в flush(), поэтому файл,
+ * который не был закрыт после изменений, при открытии отвергается, а не читается частично записанным.
+ */
+@ClassInformation("Хранилище задач в файле страниц с B+-деревьями индексов")
+public class TaskPageStore implements Closeable {
+    static final int MAGIC = 0x544D5046; /*"TMPF"*/
+    static final short VERSION = 1;
+    private static final int TREE_COUNT = 6;
+    private static final int TASK_IDS = 0;
+    private static final int EPIC_IDS = 1;
+    private static final int SUBTASK_IDS = 2;
+    private static final int TASK_STARTS = 3;
+    private static final int SUBTASK_STARTS = 4;
+    private static final int EPIC_SUBTASKS = 5;
+
+    private static final int META_STATE = 6;
+    private static final int META_PAGE_COUNT = 8;
+    private static final int META_FREE_HEAD = 12;
+    private static final int META_NEXT_ID = 16;
+    private static final int META_HEAP_TAIL = 20;
+    private static final int META_MAX_TASK_SPAN = 24;
+    private static final int META_MAX_SUBTASK_SPAN = 32;
+    private static final int META_ROOTS = 40;
+    private static final byte CLEAN = 0;
+    private static final byte OPEN = 1;
+
+    private static final int HAS_START = 1;
+    private static final int HAS_DURATION = 1 << 1;
+    private static final TaskType[] TYPES = TaskType.values();
+    private static final Status[] STATUSES = Status.values();
+
+    private final PageFile file;
+    private final BufferPool pool;
+    private final BPlusTree[] trees = new BPlusTree[TREE_COUNT];
+    private final RecordHeap heap;
+    private int nextId;
+    private long maxTaskSpan;
+    private long maxSubtaskSpan;
+    private boolean modified;
+
+    /**
+     * Открывает файл страниц или создает новый. poolPages - размер пула страниц в памяти.
+     */
+    public TaskPageStore(Path path, int poolPages) {
+        this.file = new PageFile(path);
+        try {
+            if (file.pageCount() == 0) {
+                this.pool = new BufferPool(file, poolPages, 1, 0);
+                this.nextId = 1;
+                for (int i = 0; i < TREE_COUNT; i++) {
+                    trees[i] = new BPlusTree(pool, 0);
+                }
+                this.heap = new RecordHeap(pool, 0);
+                writeMeta(CLEAN);
+                pool.flush();
+                file.force();
+            } else {
+                byte[] meta = new byte[PageFile.PAGE_SIZE];
+                file.read(0, meta);
+                ByteBuffer buffer = ByteBuffer.wrap(meta);
+                if (buffer.getInt(0) != MAGIC) {
+                    throw new ManagerSaveException("Файл не является файлом страниц задач " + path);
+                }
+                if (buffer.getShort(4) != VERSION) {
+                    throw new ManagerSaveException("Неподдерживаемая версия файла страниц " + buffer.getShort(4)
+                            + ": " + path);
+                }
+                if (buffer.get(META_STATE) != CLEAN) {
+                    throw new ManagerSaveException("Файл страниц не был закрыт после изменений: " + path);
+                }
+                this.pool = new BufferPool(file, poolPages, buffer.getInt(META_PAGE_COUNT),
+                        buffer.getInt(META_FREE_HEAD));
+                this.nextId = buffer.getInt(META_NEXT_ID);
+                this.maxTaskSpan = buffer.getLong(META_MAX_TASK_SPAN);
+                this.maxSubtaskSpan = buffer.getLong(META_MAX_SUBTASK_SPAN);
+                for (int i = 0; i < TREE_COUNT; i++) {
+                    trees[i] = new BPlusTree(pool, buffer.getInt(META_ROOTS + i * Integer.BYTES));
+                }
+                this.heap = new RecordHeap(pool, buffer.getInt(META_HEAP_TAIL));
+            }
+        } catch (RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    @MethodInformation("Выдает следующий id")
+    public int nextId() {
+        beginWrite();
+        return nextId++;
+    }
+
+    @MethodInformation("Адрес записи по типу и id или BPlusTree.NOT_FOUND")
+    public long address(TaskType type, int id) {
+        return trees[idTree(type)].get(id, 0);
+    }
+
+    public boolean contains(TaskType type, int id) {
+        return address(type, id) != BPlusTree.NOT_FOUND;
+    }
+
+    public Task get(TaskType type, int id) {
+        long address = address(type, id);
+        return address == BPlusTree.NOT_FOUND ? null : read(address);
+    }
+
+    @MethodInformation("Читает запись по адресу. Эпик возвращается без подзадач - их считает менеджер")
+    public Task read(long address) {
+        return decode(heap.read(address));
+    }
+
+    @MethodInformation("Сохраняет задачу и обновляет индексы. Возвращает прежнюю версию записи или null")
+    public Task put(Task task) {
+        beginWrite();
+        TaskType type = task.getType();
+        byte[] record = encode(task);
+        long oldAddress = address(type, task.getId());
+        Task previous = null;
+        long address;
+        if (oldAddress != BPlusTree.NOT_FOUND) {
+            previous = read(oldAddress);
+            unlink(previous);
+            address = heap.overwrite(oldAddress, record) ? oldAddress : heap.append(record);
+        } else {
+            address = heap.append(record);
+        }
+        trees[idTree(type)].put(task.getId(), 0, address);
+        link(task, address);
+        nextId = Math.max(nextId, task.getId() + 1);
+        return previous;
+    }
+
+    @MethodInformation("Удаляет запись из индексов. Возвращает удаленную запись или null")
+    public Task remove(TaskType type, int id) {
+        long address = address(type, id);
+        if (address == BPlusTree.NOT_FOUND) {
+            return null;
+        }
+        beginWrite();
+        Task previous = read(address);
+        unlink(previous);
+        trees[idTree(type)].remove(id, 0);
+        return previous;
+    }
+
+    @MethodInformation("Удаляет все записи типа. Для подзадач очищается и связь с эпиками")
+    public void clear(TaskType type) {
+        beginWrite();
+        switch (type) {
+            case TASK -> {
+                trees[TASK_IDS].clear();
+                trees[TASK_STARTS].clear();
+                maxTaskSpan = 0;
+            }
+            case EPIC -> trees[EPIC_IDS].clear();
+            case SUBTASK -> {
+                trees[SUBTASK_IDS].clear();
+                trees[SUBTASK_STARTS].clear();
+                trees[EPIC_SUBTASKS].clear();
+                maxSubtaskSpan = 0;
+            }
+        }
+    }
+
+    @MethodInformation("Обходит записи типа по возрастанию id, пока visitor возвращает true")
+    public void forEach(TaskType type, RecordVisitor visitor) {
+        trees[idTree(type)].scan(Long.MIN_VALUE, Long.MIN_VALUE,
+                (id, unused, address) -> visitor.visit((int) id, address));
+    }
+
+    @MethodInformation("Обходит подзадачи эпика по возрастанию id")
+    public void forEachSubtaskOf(int epicId, RecordVisitor visitor) {
+        BPlusTree subtaskIds = trees[SUBTASK_IDS];
+        trees[EPIC_SUBTASKS].scan(epicId, Long.MIN_VALUE, (epic, id, unused) -> {
+            if (epic != epicId) {
+                return false;
+            }
+            long address = subtaskIds.get(id, 0);
+            return address == BPlusTree.NOT_FOUND || visitor.visit((int) id, address);
+        });
+    }
+
+    @MethodInformation("Обходит задачи или подзадачи со временем начала не раньше from (null - с самой ранней)" +
+            " по возрастанию startTime и id, пока visitor возвращает true")
+    public void forEachByStart(TaskType type, LocalDateTime from, RecordVisitor visitor) {
+        long second = from == null ? Long.MIN_VALUE : from.toEpochSecond(ZoneOffset.UTC);
+        long nanos = from == null ? Long.MIN_VALUE : (long) from.getNano() << 32;
+        trees[startTree(type)].scan(second, nanos, (unused, key, address) -> visitor.visit((int) key, address));
+    }
+
+    @MethodInformation("Наибольшая продолжительность в минутах среди проиндексированных по времени записей типа." +
+            " Не уменьшается при удалении, поэтому годится как граница для поиска пересечений")
+    public long getMaxSpan(TaskType type) {
+        return type == TaskType.SUBTASK ? maxSubtaskSpan : maxTaskSpan;
+    }
+
+    public BufferPool getBufferPool() {
+        return pool;
+    }
+
+    @MethodInformation("Записывает все измененные страницы и метаданные, сбрасывает файл на диск и снимает" +
+            " признак открытого на запись файла")
+    public void flush() {
+        pool.flush();
+        writeMeta(CLEAN);
+        file.force();
+        modified = false;
+    }
+
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            file.close();
+        }
+    }
+
+    private void beginWrite() {
+        if (modified) {
+            return;
+        }
+        writeMeta(OPEN);
+        file.force();
+        modified = true;
+    }
+
+    private void writeMeta(byte state) {
+        byte[] meta = new byte[PageFile.PAGE_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(meta);
+        buffer.putInt(0, MAGIC);
+        buffer.putShort(4, VERSION);
+        buffer.put(META_STATE, state);
+        buffer.putInt(META_PAGE_COUNT, pool.getPageCount());
+        buffer.putInt(META_FREE_HEAD, pool.getFreeHead());
+        buffer.putInt(META_NEXT_ID, nextId);
+        buffer.putInt(META_HEAP_TAIL, heap.getTail());
+        buffer.putLong(META_MAX_TASK_SPAN, maxTaskSpan);
+        buffer.putLong(META_MAX_SUBTASK_SPAN, maxSubtaskSpan);
+        for (int i = 0; i < TREE_COUNT; i++) {
+            buffer.putInt(META_ROOTS + i * Integer.BYTES, trees[i].getRoot());
+        }
+        file.write(0, meta);
+    }
+
+    private void link(Task task, long address) {
+        if (task instanceof Subtask subtask) {
+            trees[EPIC_SUBTASKS].put(subtask.getEpicId(), subtask.getId(), 0);
+        }
+        LocalDateTime start = task.getStartTime();
+        if (task instanceof Epic || start == null) {
+            return;
+        }
+        trees[startTree(task.getType())].put(start.toEpochSecond(ZoneOffset.UTC), startKey(start, task.getId()),
+                address);
+        Long duration = task.getDuration();
+        if (duration != null) {
+            if (task instanceof Subtask) {
+                maxSubtaskSpan = Math.max(maxSubtaskSpan, duration);
+            } else {
+                maxTaskSpan = Math.max(maxTaskSpan, duration);
+            }
+        }
+    }
+
+    private void unlink(Task task) {
+        if (task instanceof Subtask subtask) {
+            trees[EPIC_SUBTASKS].remove(subtask.getEpicId(), subtask.getId());
+        }
+        LocalDateTime start = task.getStartTime();
+        if (!(task instanceof Epic) && start != null) {
+            trees[startTree(task.getType())].remove(start.toEpochSecond(ZoneOffset.UTC),
+                    startKey(start, task.getId()));
+        }
+    }
+
+    private static long startKey(LocalDateTime start, int id) {
+        return (long) start.getNano() << 32 | id;
+    }
+
+    private static int idTree(TaskType type) {
+        return switch (type) {
+            case TASK -> TASK_IDS;
+            case EPIC -> EPIC_IDS;
+            case SUBTASK -> SUBTASK_IDS;
+        };
+    }
+
+    private static int startTree(TaskType type) {
+        return type == TaskType.SUBTASK ? SUBTASK_STARTS : TASK_STARTS;
+    }
+
+    @MethodInformation("Запись: byte type, byte status, byte flags, int id, [int epicId], [long секунда эпохи," +
+            " int наносекунды], [long минуты], title и description как int длина (-1 - null) + UTF-8")
+    private static byte[] encode(Task task) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            LocalDateTime start = task instanceof Epic ? null : task.getStartTime();
+            Long duration = task instanceof Epic ? null : task.getDuration();
+            int flags = (start != null ? HAS_START : 0) | (duration != null ? HAS_DURATION : 0);
+            out.writeByte(task.getType().ordinal());
+            out.writeByte(task.getStatus().ordinal());
+            out.writeByte(flags);
+            out.writeInt(task.getId());
+            if (task instanceof Subtask subtask) {
+                out.writeInt(subtask.getEpicId());
+            }
+            if (start != null) {
+                out.writeLong(start.toEpochSecond(ZoneOffset.UTC));
+                out.writeInt(start.getNano());
+            }
+            if (duration != null) {
+                out.writeLong(duration);
+            }
+            writeString(out, task.getTitle());
+            writeString(out, task.getDescription());
+        } catch (IOException e) {
+            throw new ManagerSaveException("Ошибка кодирования записи " + task.getId());
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(encoded.length);
+        out.write(encoded);
+    }
+
+    private static Task decode(byte[] record) {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        TaskType type = TYPES[buffer.get()];
+        Status status = STATUSES[buffer.get()];
+        int flags = buffer.get();
+        int id = buffer.getInt();
+        int epicId = type == TaskType.SUBTASK ? buffer.getInt() : 0;
+        LocalDateTime start = null;
+        if ((flags & HAS_START) != 0) {
+            start = LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC);
+        }
+        Duration duration = (flags & HAS_DURATION) != 0 ? Duration.ofMinutes(buffer.getLong()) : null;
+        String title = readString(buffer);
+        String description = readString(buffer);
+
+        Task task = switch (type) {
+            case TASK -> new Task(title, description, status, start, duration);
+            case EPIC -> new Epic(title, description, status, null, null);
+            case SUBTASK -> new Subtask(title, description, status, epicId, start, duration);
+        };
+        task.setId(id);
+        return task;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    /**
+     * Получатель записей при обходе: id и адрес записи. Возвращает false, чтобы остановить обход.
+     */
+    public interface RecordVisitor {
+        boolean visit(int id, long address);
+    }
+}
@@ -1,36 +1,196 @@
 package tasks;
 
 import annotations.ClassInformation;
-import managers.Managers;
-import managers.TaskManager;
 import enums.Status;
 import enums.TaskType;
+import util.IntSortedSet;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
 
 /**
  * Класс наследующий Task и являющийся подзадачей главной задачи Task
  */
 @ClassInformation("Подзадача основной задачи")
 public class Epic extends Task {
-    private final List<Integer> subtaskId;
-    private final TaskManager inMemoryTaskManager = Managers.getDefault();
-    List<Subtask> subtaskList = inMemoryTaskManager.getAllSubtasks();
+    private final IntSortedSet subtaskId;
+    private final transient int[] subtaskStatusCounts = new int[Status.values().length];
+    private LocalDateTime earliestStart;
+    private LocalDateTime latestEnd;
+    private long totalDuration;
 
     public Epic(String title, String description, Status status,
                 LocalDateTime startTime, Duration duration) {
         super(title, description, status, startTime, duration);
-        this.subtaskId = new ArrayList<>();
+        this.subtaskId = new IntSortedSet();
+    }
+
+    private Epic(Epic source) {
+        super(source);
+        this.subtaskId = new IntSortedSet();
+        takeSubtasksFrom(source);
+    }
+
+    /**
+     * Независимая копия эпика с подзадачами, счетчиками статусов и границами времени. Менеджеры отдают
+     * читателям копии: сам эпик меняется при каждом изменении его подзадач.
+     */
+    public Epic copy() {
+        return new Epic(this);
     }
 
     public void addSubtask(int subtaskId) {
         this.subtaskId.add(subtaskId);
     }
 
+    public void removeSubtask(int subtaskId) {
+        this.subtaskId.remove(subtaskId);
+    }
+
+    public boolean containsSubtask(int subtaskId) {
+        return this.subtaskId.contains(subtaskId);
+    }
+
+    public int getSubtaskCount() {
+        return subtaskId.size();
+    }
+
+    /**
+     * Обходит id подзадач по возрастанию без копирования и упаковки.
+     */
+    public void forEachSubtaskId(IntConsumer action) {
+        subtaskId.forEach(action);
+    }
+
+    public void clearSubtasks() {
+        subtaskId.clear();
+        Arrays.fill(subtaskStatusCounts, 0);
+        resetTimeBounds();
+    }
+
     public List<Integer> getSubtaskId() {
-        return subtaskId;
+        List<Integer> ids = new ArrayList<>(subtaskId.size());
+        subtaskId.forEach(ids::add);
+        return Collections.unmodifiableList(ids);
+    }
+
+    /**
+     * Изменяет счетчик подзадач с указанным статусом на delta. Вызывается менеджером при добавлении,
+     * удалении подзадачи или смене ее статуса, чтобы статус эпика вычислялся без обхода подзадач.
+     */
+    public void countSubtaskStatus(Status status, int delta) {
+        subtaskStatusCounts[status.ordinal()] += delta;
+    }
+
+    public void resetSubtaskStatusCounts() {
+        Arrays.fill(subtaskStatusCounts, 0);
+    }
+
+    public int getSubtaskStatusCount(Status status) {
+        return subtaskStatusCounts[status.ordinal()];
+    }
+
+    public EpicProgress getProgress() {
+        return new EpicProgress(getSubtaskStatusCount(Status.NEW), getSubtaskStatusCount(Status.IN_PROGRESS),
+                getSubtaskStatusCount(Status.DONE));
+    }
+
+    /**
+     * Переносит подзадачи и счетчики статусов из предыдущей версии эпика при его обновлении.
+     */
+    public void takeSubtasksFrom(Epic previous) {
+        subtaskId.copyFrom(previous.subtaskId);
+        System.arraycopy(previous.subtaskStatusCounts, 0, subtaskStatusCounts, 0, subtaskStatusCounts.length);
+        earliestStart = previous.earliestStart;
+        latestEnd = previous.latestEnd;
+        totalDuration = previous.totalDuration;
+    }
+
+    /**
+     * Расширяет границы эпика временем подзадачи и добавляет ее продолжительность к общей.
+     */
+    public void includeSubtaskTime(Subtask subtask) {
+        LocalDateTime start = subtask.getStartTime();
+        LocalDateTime end = subtask.getEndTime();
+        if (start != null && (earliestStart == null || start.isBefore(earliestStart))) {
+            earliestStart = start;
+        }
+        if (end != null && (latestEnd == null || end.isAfter(latestEnd))) {
+            latestEnd = end;
+        }
+        if (subtask.getDuration() != null) {
+            totalDuration += subtask.getDuration();
+        }
+    }
+
+    /**
+     * Вычитает продолжительность удаленной подзадачи. Возвращает true, если подзадача задавала начало или
+     * окончание эпика и границы нужно пересчитать по оставшимся подзадачам.
+     */
+    public boolean excludeSubtaskTime(Subtask subtask) {
+        if (subtask.getDuration() != null) {
+            totalDuration -= subtask.getDuration();
+        }
+        LocalDateTime start = subtask.getStartTime();
+        LocalDateTime end = subtask.getEndTime();
+        return (start != null && start.equals(earliestStart)) || (end != null && end.equals(latestEnd));
+    }
+
+    public void resetTimeBounds() {
+        earliestStart = null;
+        latestEnd = null;
+        totalDuration = 0;
+    }
+
+    /**
+     * Привязывает подзадачу к эпику: id, счетчик статуса, границы времени и статус эпика.
+     */
+    public void attachSubtask(Subtask subtask) {
+        addSubtask(subtask.getId());
+        countSubtaskStatus(subtask.getStatus(), 1);
+        includeSubtaskTime(subtask);
+        refreshStatus();
+    }
+
+    /**
+     * Отвязывает подзадачу от эпика. Если она задавала начало или окончание эпика, границы пересчитываются
+     * по оставшимся подзадачам, которые ищутся через subtasks.
+     */
+    public void detachSubtask(Subtask subtask, IntFunction<? extends Subtask> subtasks) {
+        removeSubtask(subtask.getId());
+        countSubtaskStatus(subtask.getStatus(), -1);
+        if (excludeSubtaskTime(subtask)) {
+            recalculate(subtasks);
+        }
+        refreshStatus();
+    }
+
+    /**
+     * Полный пересчет счетчиков статусов, границ времени и статуса по подзадачам эпика. Отсутствующие
+     * в subtasks id пропускаются.
+     */
+    public void recalculate(IntFunction<? extends Subtask> subtasks) {
+        resetSubtaskStatusCounts();
+        resetTimeBounds();
+        subtaskId.forEach(id -> {
+            Subtask subtask = subtasks.apply(id);
+            if (subtask != null) {
+                countSubtaskStatus(subtask.getStatus(), 1);
+                includeSubtaskTime(subtask);
+            }
+        });
+        refreshStatus();
+    }
+
+    /**
+     * Выставляет статус эпика по счетчикам статусов подзадач.
+     */
+    public void refreshStatus() {
+        setStatus(EpicProgress.statusOf(getSubtaskStatusCount(Status.NEW), getSubtaskStatusCount(Status.IN_PROGRESS),
+                getSubtaskStatusCount(Status.DONE)));
     }
 
     @Override
@@ -45,50 +205,16 @@ public class Epic extends Task {
 
     @Override
     public LocalDateTime getStartTime() {
-        if (subtaskId.isEmpty()) {
-            return null;
-        }
-        LocalDateTime earliest = null;
-        for (int id : subtaskId) {
-            Subtask subtask = inMemoryTaskManager.getSubtaskById(id);
-            if (subtask != null && subtask.getStartTime() != null) {
-                if (earliest == null || subtask.getStartTime().isBefore(earliest)) {
-                    earliest = subtask.getStartTime();
-                }
-            }
-        }
-        return earliest;
+        return earliestStart;
     }
 
     @Override
     public LocalDateTime getEndTime() {
-        if (subtaskId.isEmpty()) {
-            return null;
-        }
-        LocalDateTime latest = null;
-        for (int id : subtaskId) {
-            Subtask subtask = inMemoryTaskManager.getSubtaskById(id);
-            if (subtask != null && subtask.getEndTime() != null) {
-                if (latest == null || subtask.getEndTime().isAfter(latest)) {
-                    latest = subtask.getEndTime();
-                }
-            }
-        }
-        return latest;
+        return latestEnd;
     }
 
     @Override
     public Long getDuration() {
-        if (subtaskId.isEmpty()) {
-            return 0L;
-        }
-        long total = 0;
-        for (int id : subtaskId) {
-            Subtask subtask = inMemoryTaskManager.getSubtaskById(id);
-            if (subtask != null && subtask.getDuration() != null) {
-                total += subtask.getDuration();
-            }
-        }
-        return total;
+        return totalDuration;
     }
 }
\ No newline at end of file
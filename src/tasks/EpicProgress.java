@@ -0,0 +1,68 @@
+package tasks;
+
+import annotations.ClassInformation;
+import enums.Status;
+
+/**
+ * Неизменяемый срез прогресса эпика: количество подзадач в каждом статусе и процент выполненных.
+ */
+@ClassInformation("Прогресс выполнения Epic")
+public class EpicProgress {
+    private final int newCount;
+    private final int inProgressCount;
+    private final int doneCount;
+    private final int total;
+    private final double percentDone;
+
+    public EpicProgress(int newCount, int inProgressCount, int doneCount) {
+        this.newCount = newCount;
+        this.inProgressCount = inProgressCount;
+        this.doneCount = doneCount;
+        this.total = newCount + inProgressCount + doneCount;
+        this.percentDone = total == 0 ? 0.0 : doneCount * 100.0 / total;
+    }
+
+    public int getNewCount() {
+        return newCount;
+    }
+
+    public int getInProgressCount() {
+        return inProgressCount;
+    }
+
+    public int getDoneCount() {
+        return doneCount;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public double getPercentDone() {
+        return percentDone;
+    }
+
+    public int getCount(Status status) {
+        return switch (status) {
+            case NEW -> newCount;
+            case IN_PROGRESS -> inProgressCount;
+            case DONE -> doneCount;
+        };
+    }
+
+    public Status getStatus() {
+        return statusOf(newCount, inProgressCount, doneCount);
+    }
+
+    /**
+     * Статус эпика по количеству подзадач: NEW, если подзадач нет или все новые, DONE, если все выполнены,
+     * иначе IN_PROGRESS.
+     */
+    public static Status statusOf(int newCount, int inProgressCount, int doneCount) {
+        int total = newCount + inProgressCount + doneCount;
+        if (total == 0 || newCount == total) {
+            return Status.NEW;
+        }
+        return doneCount == total ? Status.DONE : Status.IN_PROGRESS;
+    }
+}
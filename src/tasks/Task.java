@@ -6,6 +6,7 @@ import enums.TaskType;
 
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.function.Supplier;
 
 /**
  * Класс для создания основной задачи
@@ -14,7 +15,8 @@ import java.time.LocalDateTime;
 public class Task implements Comparable<Task> {
     private int id;
     private final String title;
-    private final String description;
+    private String description;
+    private transient Supplier<String> descriptionLoader;
     private Status status;
     private final TaskType type = TaskType.TASK;
     private final LocalDateTime startTime;
@@ -29,6 +31,19 @@ public class Task implements Comparable<Task> {
         this.duration = duration;
     }
 
+    /**
+     * Копия задачи со всеми полями. Описание с диска не читается: копия получает ту же ссылку на него.
+     */
+    protected Task(Task source) {
+        this.id = source.id;
+        this.title = source.title;
+        this.description = source.description;
+        this.descriptionLoader = source.descriptionLoader;
+        this.status = source.status;
+        this.startTime = source.startTime;
+        this.duration = source.duration;
+    }
+
     public int getId() {
         return id;
     }
@@ -38,7 +53,23 @@ public class Task implements Comparable<Task> {
     }
 
     public String getDescription() {
-        return description;
+        return descriptionLoader != null ? descriptionLoader.get() : description;
+    }
+
+    /**
+     * Переносит описание из памяти во внешнее хранилище: дальше getDescription() читает его через loader.
+     */
+    public void deferDescription(Supplier<String> loader) {
+        this.description = null;
+        this.descriptionLoader = loader;
+    }
+
+    public Supplier<String> getDescriptionLoader() {
+        return descriptionLoader;
+    }
+
+    public boolean isDescriptionDeferred() {
+        return descriptionLoader != null;
     }
 
     public Status getStatus() {
@@ -55,7 +86,7 @@ public class Task implements Comparable<Task> {
 
     @Override
     public String toString() {
-        return String.format("%d,%s,%s,%s,%s,", id, type, title, status, description);
+        return String.format("%d,%s,%s,%s,%s,", id, type, title, status, getDescription());
     }
 
     public TaskType getType() {
@@ -63,7 +94,7 @@ public class Task implements Comparable<Task> {
     }
 
     public Long getDuration() {
-        return duration.toMinutes();
+        return duration == null ? null : duration.toMinutes();
     }
 
     public LocalDateTime getStartTime() {
@@ -0,0 +1,52 @@
+package util;
+
+import annotations.ClassInformation;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+@ClassInformation("Реализация IntObjectMap поверх HashMap (ключи упаковываются в Integer)")
+public class HashIntObjectMap<V> implements IntObjectMap<V> {
+    private final Map<Integer, V> map = new HashMap<>();
+
+    @Override
+    public V get(int key) {
+        return map.get(key);
+    }
+
+    @Override
+    public V put(int key, V value) {
+        return map.put(key, value);
+    }
+
+    @Override
+    public V remove(int key) {
+        return map.remove(key);
+    }
+
+    @Override
+    public boolean containsKey(int key) {
+        return map.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return map.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return map.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        map.clear();
+    }
+
+    @Override
+    public Collection<V> values() {
+        return map.values();
+    }
+}
@@ -0,0 +1,36 @@
+package util;
+
+import annotations.ClassInformation;
+import enums.StorageType;
+
+import java.util.Collection;
+
+/**
+ * Отображение int-ключа на объект. Позволяет менеджеру обращаться к хранилищу задач по примитивному id
+ * без упаковки ключа в Integer.
+ */
+@ClassInformation("Хранилище объектов по int-ключу")
+public interface IntObjectMap<V> {
+    V get(int key);
+
+    V put(int key, V value);
+
+    V remove(int key);
+
+    boolean containsKey(int key);
+
+    int size();
+
+    boolean isEmpty();
+
+    void clear();
+
+    Collection<V> values();
+
+    static <V> IntObjectMap<V> create(StorageType type) {
+        return switch (type) {
+            case HASH_MAP -> new HashIntObjectMap<>();
+            case OPEN_ADDRESSING -> new OpenIntObjectMap<>();
+        };
+    }
+}
@@ -0,0 +1,88 @@
+package util;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Множество int, хранящееся в отсортированном массиве без упаковки в Integer. Поиск и удаление выполняются
+ * двоичным поиском, а добавление возрастающих значений (id выдаются последовательно) - дописыванием в конец.
+ */
+@ClassInformation("Компактное отсортированное множество int")
+public class IntSortedSet {
+    private static final int[] EMPTY = new int[0];
+    private static final int MIN_CAPACITY = 4;
+
+    private int[] elements = EMPTY;
+    private int size;
+
+    public boolean add(int value) {
+        if (size == 0 || value > elements[size - 1]) {
+            ensureCapacity(size + 1);
+            elements[size++] = value;
+            return true;
+        }
+
+        int index = Arrays.binarySearch(elements, 0, size, value);
+        if (index >= 0) {
+            return false;
+        }
+        int insertionPoint = -index - 1;
+        ensureCapacity(size + 1);
+        System.arraycopy(elements, insertionPoint, elements, insertionPoint + 1, size - insertionPoint);
+        elements[insertionPoint] = value;
+        size++;
+        return true;
+    }
+
+    public boolean remove(int value) {
+        int index = Arrays.binarySearch(elements, 0, size, value);
+        if (index < 0) {
+            return false;
+        }
+        System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+        size--;
+        return true;
+    }
+
+    public boolean contains(int value) {
+        return Arrays.binarySearch(elements, 0, size, value) >= 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        elements = EMPTY;
+        size = 0;
+    }
+
+    @MethodInformation("Обход элементов по возрастанию без создания итератора и упаковки")
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < size; i++) {
+            action.accept(elements[i]);
+        }
+    }
+
+    public void copyFrom(IntSortedSet other) {
+        elements = Arrays.copyOf(other.elements, other.size);
+        size = other.size;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(elements, size);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > elements.length) {
+            elements = Arrays.copyOf(elements, Math.max(capacity, Math.max(MIN_CAPACITY, elements.length * 2)));
+        }
+    }
+}
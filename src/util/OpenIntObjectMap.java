@@ -0,0 +1,250 @@
+package util;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Хеш-таблица с открытой адресацией и линейным пробированием. Ключи хранятся в int[], значения в Object[],
+ * поэтому запись стоит два элемента массива вместо HashMap.Node и Integer. Удаление выполняется сдвигом
+ * следующих элементов назад, без "надгробий".
+ */
+@ClassInformation("Реализация IntObjectMap с открытой адресацией на примитивных массивах")
+public class OpenIntObjectMap<V> implements IntObjectMap<V> {
+    private static final int FREE_KEY = 0;
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] keys;
+    private Object[] values;
+    private int mask;
+    private int threshold;
+    private int size;
+    private boolean hasFreeKey;
+    private V freeKeyValue;
+
+    public OpenIntObjectMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public OpenIntObjectMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    @Override
+    public V get(int key) {
+        if (key == FREE_KEY) {
+            return hasFreeKey ? freeKeyValue : null;
+        }
+        int index = indexOf(key);
+        return index < 0 ? null : valueAt(index);
+    }
+
+    @Override
+    public V put(int key, V value) {
+        if (key == FREE_KEY) {
+            V old = freeKeyValue;
+            if (!hasFreeKey) {
+                hasFreeKey = true;
+                size++;
+            }
+            freeKeyValue = value;
+            return old;
+        }
+
+        int index = hash(key) & mask;
+        while (keys[index] != FREE_KEY) {
+            if (keys[index] == key) {
+                V old = valueAt(index);
+                values[index] = value;
+                return old;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        if (++size > threshold) {
+            rehash(keys.length * 2);
+        }
+        return null;
+    }
+
+    @Override
+    public V remove(int key) {
+        if (key == FREE_KEY) {
+            if (!hasFreeKey) {
+                return null;
+            }
+            V old = freeKeyValue;
+            hasFreeKey = false;
+            freeKeyValue = null;
+            size--;
+            return old;
+        }
+
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        V old = valueAt(index);
+        shiftKeys(index);
+        size--;
+        return old;
+    }
+
+    @Override
+    public boolean containsKey(int key) {
+        return key == FREE_KEY ? hasFreeKey : indexOf(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, FREE_KEY);
+        Arrays.fill(values, null);
+        hasFreeKey = false;
+        freeKeyValue = null;
+        size = 0;
+    }
+
+    @Override
+    public Collection<V> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new ValueIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private int indexOf(int key) {
+        int index = hash(key) & mask;
+        while (keys[index] != FREE_KEY) {
+            if (keys[index] == key) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    @MethodInformation("Сдвигает назад элементы цепочки пробирования, следующие за освобожденной ячейкой")
+    private void shiftKeys(int position) {
+        while (true) {
+            int last = position;
+            position = (position + 1) & mask;
+            int key;
+            while (true) {
+                key = keys[position];
+                if (key == FREE_KEY) {
+                    keys[last] = FREE_KEY;
+                    values[last] = null;
+                    return;
+                }
+                int slot = hash(key) & mask;
+                if (last <= position ? last >= slot || slot > position : last >= slot && slot > position) {
+                    break;
+                }
+                position = (position + 1) & mask;
+            }
+            keys[last] = key;
+            values[last] = values[position];
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            int key = oldKeys[i];
+            if (key != FREE_KEY) {
+                int index = hash(key) & mask;
+                while (keys[index] != FREE_KEY) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V valueAt(int index) {
+        return (V) values[index];
+    }
+
+    private static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity * LOAD_FACTOR < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int hash(int key) { /*Перемешиваю биты, чтобы id с одинаковым шагом не собирались в кластеры*/
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private class ValueIterator implements Iterator<V> {
+        private int index = -1;
+        private boolean freeKeyPending = hasFreeKey;
+
+        ValueIterator() {
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return freeKeyPending || index < keys.length;
+        }
+
+        @Override
+        public V next() {
+            if (freeKeyPending) {
+                freeKeyPending = false;
+                return freeKeyValue;
+            }
+            if (index >= keys.length) {
+                throw new NoSuchElementException();
+            }
+            V value = valueAt(index);
+            advance();
+            return value;
+        }
+
+        private void advance() {
+            index++;
+            while (index < keys.length && keys[index] == FREE_KEY) {
+                index++;
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package util;
+
+import annotations.ClassInformation;
+import annotations.MethodInformation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Неизменяемое отображение int-ключа на объект - префиксное дерево по 5 бит ключа на уровень.
+ * with() и without() возвращают новое отображение и копируют только узлы на пути к ключу
+ * (не больше 7 массивов по 32 ссылки), остальные узлы общие со старой версией. Поэтому старую версию
+ * можно читать из других потоков, пока писатель строит следующую.
+ * Обход идет по возрастанию ключа как беззнакового числа.
+ */
+@ClassInformation("Неизменяемое отображение int-ключа на объект с общими узлами версий")
+public final class PersistentIntMap<V> {
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final int MAX_SHIFT = 30;
+    private static final PersistentIntMap<?> EMPTY = new PersistentIntMap<>(null, 0, 0);
+
+    private final Object[] root;
+    private final int shift;
+    private final int size;
+
+    private PersistentIntMap(Object[] root, int shift, int size) {
+        this.root = root;
+        this.shift = shift;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <V> PersistentIntMap<V> empty() {
+        return (PersistentIntMap<V>) EMPTY;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        if (root == null || !covers(shift, key)) {
+            return null;
+        }
+        Object[] node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Object[]) node[(key >>> level) & MASK];
+            if (node == null) {
+                return null;
+            }
+        }
+        return (V) node[key & MASK];
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @MethodInformation("Новая версия с value по ключу key. null не допускается - для удаления есть without()")
+    public PersistentIntMap<V> with(int key, V value) {
+        Objects.requireNonNull(value, "value");
+        if (get(key) == value) {
+            return this;
+        }
+        int newSize = containsKey(key) ? size : size + 1;
+        Object[] newRoot = root;
+        int newShift = shift;
+        if (newRoot == null) {
+            newShift = 0;
+            while (!covers(newShift, key)) {
+                newShift += BITS;
+            }
+        } else {
+            while (!covers(newShift, key)) { /*Ключ не помещается в дерево - добавляю уровни сверху*/
+                Object[] grown = new Object[WIDTH];
+                grown[0] = newRoot;
+                newRoot = grown;
+                newShift += BITS;
+            }
+        }
+        return new PersistentIntMap<>(put(newRoot, newShift, key, value), newShift, newSize);
+    }
+
+    @MethodInformation("Новая версия без ключа key. Если ключа нет, возвращается это же отображение")
+    public PersistentIntMap<V> without(int key) {
+        if (!containsKey(key)) {
+            return this;
+        }
+        if (size == 1) {
+            return empty();
+        }
+        return new PersistentIntMap<>(remove(root, shift, key), shift, size - 1);
+    }
+
+    @MethodInformation("Передает в action значения по возрастанию ключа")
+    public void forEach(Consumer<? super V> action) {
+        if (root != null) {
+            forEach(root, shift, action);
+        }
+    }
+
+    @MethodInformation("Неизменяемый список значений по возрастанию ключа")
+    public List<V> values() {
+        List<V> values = new ArrayList<>(size);
+        forEach(values::add);
+        return Collections.unmodifiableList(values);
+    }
+
+    private static boolean covers(int shift, int key) {
+        return shift >= MAX_SHIFT || (key >>> (shift + BITS)) == 0;
+    }
+
+    private static Object[] put(Object[] node, int level, int key, Object value) {
+        Object[] copy = node == null ? new Object[WIDTH] : node.clone();
+        if (level == 0) {
+            copy[key & MASK] = value;
+        } else {
+            int index = (key >>> level) & MASK;
+            copy[index] = put((Object[]) copy[index], level - BITS, key, value);
+        }
+        return copy;
+    }
+
+    @MethodInformation("Копирует путь без ключа. Опустевший узел заменяется null, чтобы не держать пустые ветви")
+    private static Object[] remove(Object[] node, int level, int key) {
+        Object[] copy = node.clone();
+        if (level == 0) {
+            copy[key & MASK] = null;
+        } else {
+            int index = (key >>> level) & MASK;
+            copy[index] = remove((Object[]) copy[index], level - BITS, key);
+        }
+        for (Object child : copy) {
+            if (child != null) {
+                return copy;
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> void forEach(Object[] node, int level, Consumer<? super V> action) {
+        for (Object child : node) {
+            if (child == null) {
+                continue;
+            }
+            if (level == 0) {
+                action.accept((V) child);
+            } else {
+                forEach((Object[]) child, level - BITS, action);
+            }
+        }
+    }
+}
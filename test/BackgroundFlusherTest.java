@@ -0,0 +1,53 @@
+import org.junit.jupiter.api.Test;
+import storage.BackgroundFlusher;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BackgroundFlusherTest {
+
+    @Test
+    void shouldFailFlushFuturesAndCloseWithWriteErrorInsteadOfRetryingOnTimer() throws InterruptedException {
+        AtomicInteger attempts = new AtomicInteger();
+        IllegalStateException error = new IllegalStateException("disk full");
+        BackgroundFlusher flusher = new BackgroundFlusher("test-flusher", Duration.ofMillis(5), 1000, () -> {
+            attempts.incrementAndGet();
+            throw error;
+        });
+
+        flusher.markDirty();
+        CompletionException failed = assertThrows(CompletionException.class, () -> flusher.requestFlush().join());
+        assertSame(error, failed.getCause());
+
+        Thread.sleep(100);
+        assertEquals(1, attempts.get(), "После ошибки запись не должна повторяться по таймеру");
+
+        assertThrows(CompletionException.class, () -> flusher.requestFlush().join());
+        assertEquals(2, attempts.get());
+
+        assertSame(error, assertThrows(IllegalStateException.class, flusher::close));
+        assertThrows(CompletionException.class, () -> flusher.requestFlush().join());
+        assertEquals(0, flusher.getFlushCount());
+    }
+
+    @Test
+    void shouldClearErrorAfterSuccessfulRetry() {
+        AtomicInteger attempts = new AtomicInteger();
+        BackgroundFlusher flusher = new BackgroundFlusher("test-flusher", Duration.ofMillis(5), 1000, () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("disk full");
+            }
+        });
+
+        flusher.markDirty();
+        assertThrows(CompletionException.class, () -> flusher.requestFlush().join());
+        assertDoesNotThrow(() -> flusher.requestFlush().join());
+        assertEquals(1, flusher.getFlushCount());
+
+        assertDoesNotThrow(flusher::close);
+        assertDoesNotThrow(() -> flusher.requestFlush().join());
+    }
+}
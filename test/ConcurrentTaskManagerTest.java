@@ -0,0 +1,214 @@
+import enums.Status;
+import managers.ConcurrentTaskManager;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import tasks.Epic;
+import tasks.EpicProgress;
+import tasks.Subtask;
+import tasks.Task;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+class ConcurrentTaskManagerTest {
+    private static final int THREADS = 16;
+    private static final int OPERATIONS_PER_THREAD = 2_000;
+
+    private ConcurrentTaskManager taskManager;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        taskManager = new ConcurrentTaskManager();
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @Test
+    void shouldKeepEpicCountersConsistentUnderConcurrentSubtaskWrites() throws Exception {
+        List<Epic> epics = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            epics.add(taskManager.createEpic(new Epic("Epic " + i, "Desc", Status.NEW, null, null)));
+        }
+
+        runConcurrently(thread -> {
+            Random random = new Random(thread);
+            List<Subtask> created = new ArrayList<>();
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                Epic epic = epics.get(random.nextInt(epics.size()));
+                int action = random.nextInt(4);
+                if (action == 0 && !created.isEmpty()) {
+                    taskManager.removeSubtask(created.remove(random.nextInt(created.size())).getId());
+                } else if (action == 1 && !created.isEmpty()) {
+                    Subtask old = created.get(random.nextInt(created.size()));
+                    Subtask updated = new Subtask(old.getTitle(), "Updated", randomStatus(random), epic.getId(),
+                            old.getStartTime(), Duration.ofMinutes(10));
+                    updated.setId(old.getId());
+                    taskManager.updateSubtask(updated);
+                    created.set(created.indexOf(old), updated);
+                } else {
+                    created.add(taskManager.createSubtask(new Subtask("Sub", "Desc", randomStatus(random),
+                            epic.getId(), LocalDateTime.of(2024, 1, 1, 0, 0).plusMinutes(i), Duration.ofMinutes(10))));
+                }
+            }
+        });
+
+        int totalSubtasks = 0;
+        for (Epic epic : epics) {
+            List<Subtask> subtasks = taskManager.getSubtasksByEpicId(epic.getId());
+            EpicProgress progress = taskManager.getEpicProgress(epic.getId());
+            totalSubtasks += subtasks.size();
+
+            Assertions.assertEquals(subtasks.size(), progress.getTotal(), "Счетчики должны совпадать с подзадачами");
+            for (Status status : Status.values()) {
+                long expected = subtasks.stream().filter(subtask -> subtask.getStatus() == status).count();
+                Assertions.assertEquals(expected, progress.getCount(status), "Неверный счетчик статуса " + status);
+            }
+            Assertions.assertEquals(progress.getStatus(), epic.getStatus(), "Статус эпика должен следовать счетчикам");
+            for (Subtask subtask : subtasks) {
+                Assertions.assertEquals(epic.getId(), subtask.getEpicId(), "Подзадача привязана не к тому эпику");
+            }
+        }
+        Assertions.assertEquals(taskManager.getAllSubtasks().size(), totalSubtasks);
+    }
+
+    @Test
+    void shouldGenerateUniqueIdsAndIndexTasksUnderConcurrentWrites() throws Exception {
+        runConcurrently(thread -> {
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                Task task = taskManager.createTask(new Task("Task", "Desc", Status.NEW,
+                        LocalDateTime.of(2024, 1, 1, 0, 0).plusMinutes(i), Duration.ofMinutes(1)));
+                taskManager.getTaskById(task.getId());
+                if (i % 2 == 0) {
+                    taskManager.removeTask(task.getId());
+                }
+            }
+        });
+
+        List<Task> tasks = taskManager.getAllTasks();
+        Set<Integer> ids = new HashSet<>();
+        tasks.forEach(task -> ids.add(task.getId()));
+
+        Assertions.assertEquals(THREADS * OPERATIONS_PER_THREAD / 2, tasks.size());
+        Assertions.assertEquals(tasks.size(), ids.size(), "id задач должны быть уникальны");
+        Assertions.assertEquals(tasks.size(), taskManager.getPrioritizedTasks().size(),
+                "Индекс приоритетов должен совпадать с хранилищем");
+        Assertions.assertEquals(tasks.size(), taskManager.getHistory().size(),
+                "В истории должны остаться только неудаленные задачи");
+    }
+
+    @Test
+    void shouldNotReturnRemovedTasksToHistoryWhenViewsRaceRemovals() throws Exception {
+        for (int round = 0; round < 10; round++) { /*Гонка просмотра с удалением редкая, поэтому несколько раундов*/
+            taskManager = new ConcurrentTaskManager();
+            executor = Executors.newFixedThreadPool(THREADS);
+            List<Integer> ids = new ArrayList<>();
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                Epic epic = taskManager.createEpic(new Epic("Epic", "Desc", Status.NEW, null, null));
+                ids.add(taskManager.createTask(new Task("Task", "Desc", Status.NEW, null, null)).getId());
+                ids.add(epic.getId());
+                ids.add(taskManager.createSubtask(new Subtask("Sub", "Desc", Status.NEW, epic.getId(), null, null))
+                        .getId());
+            }
+
+            runConcurrently(thread -> {
+                for (int id : ids) {
+                    if (thread % 2 == 0) {
+                        taskManager.getTaskById(id);
+                        taskManager.getEpicById(id);
+                        taskManager.getSubtaskById(id);
+                    } else {
+                        taskManager.removeTask(id);
+                        taskManager.removeSubtask(id);
+                        taskManager.removeEpic(id);
+                    }
+                }
+            });
+
+            Assertions.assertTrue(taskManager.getAllTasks().isEmpty(), "Все задачи должны быть удалены");
+            Assertions.assertTrue(taskManager.getAllSubtasks().isEmpty(), "Все подзадачи должны быть удалены");
+            Assertions.assertEquals(List.of(), taskManager.getHistory(),
+                    "Удаленные задачи не должны вернуться в историю");
+        }
+    }
+
+    @Test
+    void shouldReturnConsistentEpicsWhileSubtasksChurn() throws Exception {
+        Epic epic = taskManager.createEpic(new Epic("Epic", "Desc", Status.NEW, null, null));
+        taskManager.getEpicById(epic.getId());
+
+        runConcurrently(thread -> {
+            Random random = new Random(thread);
+            List<Integer> created = new ArrayList<>();
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                if (thread % 2 == 0) {
+                    if (!created.isEmpty() && random.nextBoolean()) {
+                        taskManager.removeSubtask(created.remove(created.size() - 1));
+                    } else {
+                        created.add(taskManager.createSubtask(new Subtask("Sub", "Desc", randomStatus(random),
+                                epic.getId(), LocalDateTime.of(2024, 1, 1, 0, 0).plusMinutes(i),
+                                Duration.ofMinutes(1))).getId());
+                    }
+                    if (i % 500 == 0) {
+                        taskManager.deleteSubtasks(); /*clear() сбрасывает массив подзадач эпика*/
+                        created.clear();
+                    }
+                } else {
+                    assertConsistent(taskManager.getEpicById(epic.getId()));
+                    taskManager.getAllEpics().forEach(ConcurrentTaskManagerTest::assertConsistent);
+                    assertConsistent((Epic) taskManager.getHistory().get(0));
+                }
+            }
+        });
+    }
+
+    private static void assertConsistent(Epic epic) {
+        List<Integer> ids = epic.getSubtaskId();
+        for (int i = 1; i < ids.size(); i++) {
+            Assertions.assertTrue(ids.get(i - 1) < ids.get(i), "id подзадач сдвинуты или повторяются: " + ids);
+        }
+        int total = 0;
+        for (Status status : Status.values()) {
+            total += epic.getSubtaskStatusCount(status);
+        }
+        Assertions.assertEquals(ids.size(), total, "Счетчики статусов не совпадают со списком подзадач");
+        Assertions.assertEquals(EpicProgress.statusOf(epic.getSubtaskStatusCount(Status.NEW),
+                epic.getSubtaskStatusCount(Status.IN_PROGRESS), epic.getSubtaskStatusCount(Status.DONE)),
+                epic.getStatus(), "Статус эпика не следует счетчикам");
+    }
+
+    private void runConcurrently(ThreadBody body) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            int threadNumber = thread;
+            futures.add(executor.submit(() -> {
+                start.await();
+                body.run(threadNumber);
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+    }
+
+    private static Status randomStatus(Random random) {
+        return Status.values()[random.nextInt(Status.values().length)];
+    }
+
+    private interface ThreadBody {
+        void run(int thread) throws Exception;
+    }
+}
+
+class ConcurrentTaskManagerContractTest extends TaskManagerTest<ConcurrentTaskManager> {
+    @Override
+    protected ConcurrentTaskManager createTaskManager() {
+        return new ConcurrentTaskManager();
+    }
+}
@@ -0,0 +1,53 @@
+import enums.Status;
+import org.junit.jupiter.api.Test;
+import storage.CsvReader;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvReaderTest {
+
+    @Test
+    void shouldSplitRecordsAndFields() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("1,NEW,title\r\n-42,DONE,\n\n"));
+
+        assertTrue(reader.next());
+        assertEquals(3, reader.size());
+        assertEquals(1, reader.getInt(0));
+        assertEquals(Status.NEW, reader.getEnum(1, Status.values()));
+        assertEquals("title", reader.getString(2));
+
+        assertTrue(reader.next());
+        assertEquals(-42L, reader.getLong(0));
+        assertTrue(reader.isEmpty(2));
+
+        assertTrue(reader.next());
+        assertTrue(reader.isBlankRecord());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    void shouldReadQuotedFields() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("\"a, b\",\"say \"\"hi\"\"\",\"line\nbreak\"\nnext"));
+
+        assertTrue(reader.next());
+        assertEquals("a, b", reader.getString(0));
+        assertEquals("say \"hi\"", reader.getString(1));
+        assertEquals("line\nbreak", reader.getString(2));
+
+        assertTrue(reader.next());
+        assertEquals("next", reader.getString(0));
+        assertFalse(reader.next());
+    }
+
+    @Test
+    void shouldRejectMalformedNumbers() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("12a,99999999999"));
+        assertTrue(reader.next());
+
+        assertThrows(NumberFormatException.class, () -> reader.getInt(0));
+        assertThrows(NumberFormatException.class, () -> reader.getInt(1));
+    }
+}
@@ -1,23 +1,70 @@
+import enums.Compression;
+import enums.DescriptionStorage;
+import enums.FsyncPolicy;
+import enums.PersistenceMode;
+import enums.SnapshotFormat;
+import exception.ManagerSaveException;
 import managers.FileBackedTaskManager;
+import managers.Managers;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import storage.AtomicFiles;
+import storage.CheckpointStore;
+import storage.ShardedSnapshotStore;
+import storage.SnapshotCodec;
+import storage.StorageSettings;
 import enums.Status;
+import tasks.Epic;
+import tasks.Subtask;
 import tasks.Task;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
 
 class FileBackedTaskManagerTest {
     private File tempFile;
+    private File journalFile;
+    private File historyFile;
 
     @BeforeEach
     void setUp() throws IOException {
         tempFile = File.createTempFile("tasks", ".csv");
         tempFile.deleteOnExit();
+        journalFile = new File(tempFile.getPath() + ".journal");
+        journalFile.deleteOnExit();
+        historyFile = new File(tempFile.getPath() + ".history");
+        historyFile.deleteOnExit();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (Path segment : CheckpointStore.segments(tempFile.toPath())) {
+            Files.deleteIfExists(segment);
+        }
+        for (Path segment : CheckpointStore.previousSegments(tempFile.toPath())) {
+            Files.deleteIfExists(segment);
+        }
+        for (Path shard : ShardedSnapshotStore.shards(tempFile.toPath())) {
+            Files.deleteIfExists(shard);
+        }
+        Files.deleteIfExists(previousFile());
+        Files.deleteIfExists(AtomicFiles.previous(journalFile.toPath()));
+    }
+
+    private Path previousFile() {
+        return AtomicFiles.previous(tempFile.toPath());
     }
 
     @Test
@@ -60,4 +107,824 @@ class FileBackedTaskManagerTest {
             Assertions.assertTrue(manager.getAllTasks().isEmpty());
         });
     }
-}
\ No newline at end of file
+
+    @Test
+    void shouldRestoreEpicSubtasksAndStatusAfterReload() {
+        FileBackedTaskManager manager = new FileBackedTaskManager(tempFile);
+        LocalDateTime startTime = LocalDateTime.of(2023, 1, 1, 10, 0);
+        Epic epic = manager.createEpic(new Epic("Epic", "Desc", Status.NEW, null, null));
+        Subtask done = manager.createSubtask(new Subtask("Done", "Desc", Status.DONE, epic.getId(),
+                startTime, Duration.ofMinutes(30)));
+        Subtask inProgress = manager.createSubtask(new Subtask("In progress", "Desc", Status.IN_PROGRESS,
+                epic.getId(), startTime.plusHours(1), Duration.ofMinutes(30)));
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile);
+        Epic loadedEpic = loaded.getEpicById(epic.getId());
+
+        Assertions.assertEquals(2, loaded.getSubtasksByEpicId(epic.getId()).size());
+        Assertions.assertEquals(Status.IN_PROGRESS, loadedEpic.getStatus());
+        Assertions.assertEquals(startTime, loadedEpic.getStartTime());
+        Assertions.assertEquals(startTime.plusHours(1).plusMinutes(30), loadedEpic.getEndTime());
+        Assertions.assertEquals(done.getTitle(), loaded.getSubtaskById(done.getId()).getTitle());
+        Assertions.assertEquals(inProgress.getStatus(), loaded.getSubtaskById(inProgress.getId()).getStatus());
+    }
+
+    @Test
+    void shouldRestoreStateFromJournal() {
+        StorageSettings settings = StorageSettings.defaults().withPersistenceMode(PersistenceMode.JOURNAL);
+        LocalDateTime startTime = LocalDateTime.of(2023, 1, 1, 10, 0);
+        Epic epic;
+        Task task;
+        Subtask subtask;
+        try (FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings)) {
+            task = manager.createTask(new Task("Task", "Desc", Status.NEW, startTime, Duration.ofMinutes(30)));
+            Task removed = manager.createTask(new Task("Removed", "Desc", Status.NEW, null, null));
+            epic = manager.createEpic(new Epic("Epic", "Desc", Status.NEW, null, null));
+            subtask = manager.createSubtask(new Subtask("Sub", "Desc", Status.NEW, epic.getId(),
+                    startTime.plusHours(1), Duration.ofMinutes(15)));
+            subtask.setStatus(Status.DONE);
+            manager.updateSubtask(subtask);
+            manager.removeTask(removed.getId());
+            manager.getTaskById(task.getId());
+        }
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile, settings);
+
+        Assertions.assertEquals(1, loaded.getAllTasks().size());
+        Assertions.assertEquals(Status.DONE, loaded.getEpicById(epic.getId()).getStatus());
+        Assertions.assertEquals(startTime.plusHours(1), loaded.getEpicById(epic.getId()).getStartTime());
+        Assertions.assertEquals(task.getId(), loaded.getHistory().get(0).getId());
+        loaded.close();
+    }
+
+    @Test
+    void shouldNotResurrectPreviousBoardWhenNewJournalManagerStartsOverExistingFile() {
+        assertNewManagerReplacesPreviousBoard(StorageSettings.defaults().withPersistenceMode(PersistenceMode.JOURNAL));
+        Assertions.assertFalse(Files.exists(previousFile()), "Прежняя версия снимка относится к старой доске");
+        Assertions.assertFalse(Files.exists(AtomicFiles.previous(journalFile.toPath())));
+    }
+
+    @Test
+    void shouldNotResurrectPreviousBoardWhenNewSnapshotManagerStartsOverExistingFile() {
+        assertNewManagerReplacesPreviousBoard(StorageSettings.defaults());
+    }
+
+    @Test
+    void shouldNotResurrectPreviousBoardWhenNewIncrementalManagerStartsOverExistingFile() {
+        assertNewManagerReplacesPreviousBoard(StorageSettings.defaults()
+                .withPersistenceMode(PersistenceMode.INCREMENTAL)
+                .withSegmentMergeThreshold(1_000));
+        Assertions.assertFalse(Files.exists(previousFile()), "Прежняя версия снимка относится к старой доске");
+    }
+
+    private void assertNewManagerReplacesPreviousBoard(StorageSettings settings) {
+        try (FileBackedTaskManager previous = new FileBackedTaskManager(tempFile, settings)) {
+            for (int i = 0; i < 4; i++) {
+                previous.createTask(new Task("Old " + i, "Desc", Status.NEW, null, null));
+            }
+            previous.compact(); /*Старые задачи в базовом снимке, его прежняя версия в .prev*/
+            previous.createTask(new Task("Old 4", "Desc", Status.NEW, null, null));
+            previous.compact();
+        }
+
+        Task task;
+        try (FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings)) {
+            task = manager.createTask(new Task("New", "Desc", Status.NEW, null, null));
+        }
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile, settings);
+        Assertions.assertEquals(1, loaded.getAllTasks().size(), "Задачи прежней доски не должны вернуться");
+        Assertions.assertEquals("New", loaded.getTaskById(task.getId()).getTitle());
+        loaded.close();
+    }
+
+    @Test
+    void shouldBeUsedWithoutSynchronizedWrapper() {
+        try (FileBackedTaskManager manager = new FileBackedTaskManager(tempFile)) {
+            Assertions.assertSame(manager, Managers.threadSafe(manager));
+            Epic epic = manager.createEpic(new Epic("Epic", "Desc", Status.NEW, null, null));
+            Epic viewed = manager.getEpicById(epic.getId());
+            manager.createSubtask(new Subtask("Sub", "Desc", Status.DONE, epic.getId(), null, null));
+            Assertions.assertEquals(Status.NEW, viewed.getStatus(), "Эпики отдаются копиями, снятыми под блокировкой");
+            Assertions.assertEquals(Status.DONE, manager.getAllEpics().get(0).getStatus());
+        }
+    }
+
+    @Test
+    void shouldNotRewriteSnapshotBeforeCompaction() {
+        StorageSettings settings = StorageSettings.defaults().withPersistenceMode(PersistenceMode.JOURNAL);
+        try (FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings)) {
+            manager.createTask(new Task("Task", "Desc", Status.NEW, null, null));
+            manager.createTask(new Task("Task 2", "Desc", Status.NEW, null, null));
+        }
+
+        Assertions.assertEquals(0, tempFile.length(), "Снимок не должен перезаписываться до уплотнения");
+        Assertions.assertTrue(journalFile.length() > 0, "Изменения должны попасть в журнал");
+    }
+
+    @Test
+    void shouldCompactJournalIntoSnapshotWhenThresholdReached() {
+        StorageSettings settings = StorageSettings.defaults()
+                .withPersistenceMode(PersistenceMode.JOURNAL)
+                .withJournalCompactionThreshold(3);
+        try (FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings)) {
+            for (int i = 0; i < 4; i++) {
+                manager.createTask(new Task("Task " + i, "Desc", Status.NEW, null, null));
+            }
+        }
+
+        Assertions.assertTrue(tempFile.length() > 0, "После уплотнения должен появиться снимок");
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile, settings);
+        Assertions.assertEquals(4, loaded.getAllTasks().size());
+        loaded.close();
+    }
+
+    @Test
+    void shouldCoalesceSnapshotWritesWithIntervalPolicy() {
+        StorageSettings settings = StorageSettings.defaults()
+                .withFsyncPolicy(FsyncPolicy.INTERVAL)
+                .withFlushInterval(Duration.ofMinutes(1))
+                .withFlushBatchSize(10_000);
+        try (FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings)) {
+            for (int i = 0; i < 100; i++) {
+                manager.createTask(new Task("Task " + i, "Desc", Status.NEW, null, null));
+            }
+            Assertions.assertEquals(0, tempFile.length(), "До истечения интервала файл не должен записываться");
+
+            manager.flush().join();
+            Assertions.assertTrue(tempFile.length() > 0, "После flush() изменения должны быть на диске");
+        }
+
+        Assertions.assertEquals(100, FileBackedTaskManager.loadFromFile(tempFile).getAllTasks().size());
+    }
+
+    @Test
+    void shouldGroupJournalRecordsIntoBatches() {
+        StorageSettings settings = StorageSettings.defaults()
+                .withPersistenceMode(PersistenceMode.JOURNAL)
+                .withFsyncPolicy(FsyncPolicy.INTERVAL)
+                .withFlushInterval(Duration.ofMinutes(1))
+                .withFlushBatchSize(100)
+                .withJournalCompactionThreshold(10_000);
+        try (FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings)) {
+            for (int i = 0; i < 1_000; i++) {
+                manager.createTask(new Task("Task " + i, "Desc", Status.NEW, null, null));
+            }
+            manager.flush().join();
+            Assertions.assertTrue(manager.getBackgroundFlushCount() <= 20,
+                    "1000 изменений должны уложиться в несколько групповых записей");
+        }
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile, settings);
+        Assertions.assertEquals(1_000, loaded.getAllTasks().size());
+        loaded.close();
+    }
+
+    @Test
+    void shouldWriteSynchronouslyWithEveryWritePolicy() {
+        StorageSettings settings = StorageSettings.defaults().withFsyncPolicy(FsyncPolicy.EVERY_WRITE);
+        try (FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings)) {
+            manager.createTask(new Task("Task", "Desc", Status.NEW, null, null));
+
+            Assertions.assertTrue(tempFile.length() > 0);
+            Assertions.assertTrue(manager.flush().isDone(), "При записи на каждое изменение ждать нечего");
+        }
+    }
+
+    @Test
+    void shouldNotRewriteSnapshotOnRead() throws IOException {
+        FileBackedTaskManager manager = new FileBackedTaskManager(tempFile);
+        Task first = manager.createTask(new Task("First", "Desc", Status.NEW, null, null));
+        Task second = manager.createTask(new Task("Second", "Desc", Status.NEW, null, null));
+        String snapshot = Files.readString(tempFile.toPath());
+
+        manager.getTaskById(second.getId());
+        manager.getTaskById(first.getId());
+
+        Assertions.assertEquals(snapshot, Files.readString(tempFile.toPath()), "Просмотр не должен переписывать снимок");
+        List<Task> history = FileBackedTaskManager.loadFromFile(tempFile).getHistory();
+        Assertions.assertEquals(List.of(second.getId(), first.getId()),
+                history.stream().map(Task::getId).toList());
+    }
+
+    @Test
+    void shouldCompactHistoryLog() throws IOException {
+        StorageSettings settings = StorageSettings.defaults().withHistoryCompactionThreshold(5);
+        FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings);
+        Task first = manager.createTask(new Task("First", "Desc", Status.NEW, null, null));
+        Task second = manager.createTask(new Task("Second", "Desc", Status.NEW, null, null));
+        for (int i = 0; i < 20; i++) {
+            manager.getTaskById(i % 2 == 0 ? first.getId() : second.getId());
+        }
+
+        Assertions.assertTrue(Files.readAllLines(historyFile.toPath()).size() < 5,
+                "Журнал просмотров должен уплотняться до текущей истории");
+        List<Task> history = FileBackedTaskManager.loadFromFile(tempFile, settings).getHistory();
+        Assertions.assertEquals(List.of(first.getId(), second.getId()),
+                history.stream().map(Task::getId).toList());
+    }
+
+    @Test
+    void shouldRoundTripBinarySnapshot() {
+        StorageSettings settings = StorageSettings.defaults().withSnapshotFormat(SnapshotFormat.BINARY);
+        LocalDateTime startTime = LocalDateTime.of(2023, 1, 1, 10, 0, 15, 500);
+        FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings);
+        Task task = manager.createTask(new Task("Title, with comma", "Desc", Status.NEW,
+                startTime, Duration.ofMinutes(30)));
+        Epic epic = manager.createEpic(new Epic("Epic", "Desc", Status.NEW, null, null));
+        manager.createSubtask(new Subtask("Sub", null, Status.DONE, epic.getId(),
+                startTime.plusHours(1), Duration.ofMinutes(15)));
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile, settings);
+        Task loadedTask = loaded.getTaskById(task.getId());
+
+        Assertions.assertEquals("Title, with comma", loadedTask.getTitle());
+        Assertions.assertEquals(startTime, loadedTask.getStartTime());
+        Assertions.assertEquals(30L, loadedTask.getDuration());
+        Assertions.assertEquals(Status.DONE, loaded.getEpicById(epic.getId()).getStatus());
+        Assertions.assertNull(loaded.getSubtasksByEpicId(epic.getId()).get(0).getDescription());
+    }
+
+    @Test
+    void shouldRejectBinarySnapshotWithBrokenChecksum() throws IOException {
+        StorageSettings settings = StorageSettings.defaults().withSnapshotFormat(SnapshotFormat.BINARY);
+        FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings);
+        manager.createTask(new Task("Task", "Desc", Status.NEW, null, null));
+        manager.createTask(new Task("Second", "Desc", Status.NEW, null, null));
+        byte[] content = Files.readAllBytes(tempFile.toPath());
+        content[content.length / 2] ^= 1;
+        Files.write(tempFile.toPath(), content);
+
+        Assertions.assertEquals(List.of("Task"), FileBackedTaskManager.loadFromFile(tempFile).getAllTasks().stream()
+                .map(Task::getTitle).toList(), "Загрузка откатывается к предыдущей контрольной точке");
+        Files.delete(previousFile());
+        Assertions.assertThrows(ManagerSaveException.class, () -> FileBackedTaskManager.loadFromFile(tempFile));
+    }
+
+    @Test
+    void shouldImportCsvAndExportBinary() throws IOException {
+        Files.writeString(tempFile.toPath(), """
+            id,type,name,status,description,startTime,duration,epic
+            1,TASK,Task 1,NEW,Description,2023-01-01T10:00,30,
+            """);
+        StorageSettings settings = StorageSettings.defaults().withSnapshotFormat(SnapshotFormat.BINARY);
+        FileBackedTaskManager manager = FileBackedTaskManager.loadFromFile(tempFile, settings);
+        File exported = File.createTempFile("tasks", ".bin");
+        exported.deleteOnExit();
+
+        manager.exportSnapshot(exported, SnapshotFormat.BINARY);
+
+        Task task = FileBackedTaskManager.loadFromFile(exported).getTaskById(1);
+        Assertions.assertEquals("Task 1", task.getTitle());
+        Assertions.assertEquals(LocalDateTime.of(2023, 1, 1, 10, 0), task.getStartTime());
+    }
+
+    @Test
+    void shouldFallBackToPreviousCheckpointWhenCsvSnapshotIsTruncated() throws IOException {
+        FileBackedTaskManager manager = new FileBackedTaskManager(tempFile);
+        manager.createTask(new Task("First", "Desc", Status.NEW, null, null));
+        manager.createTask(new Task("Second", "Desc", Status.NEW, null, null));
+        byte[] content = Files.readAllBytes(tempFile.toPath());
+        Files.write(tempFile.toPath(), Arrays.copyOf(content, content.length - 1)); /*Без пустой строки в конце*/
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile);
+        Assertions.assertEquals(List.of("First"), loaded.getAllTasks().stream().map(Task::getTitle).toList());
+    }
+
+    @Test
+    void shouldReplayJournalOfPreviousCheckpointWhenSnapshotIsCorruptedAfterCompaction() throws IOException {
+        StorageSettings settings = StorageSettings.defaults().withPersistenceMode(PersistenceMode.JOURNAL);
+        assertFallbackKeepsChangesAfterPreviousCheckpoint(settings);
+        Files.delete(AtomicFiles.previous(journalFile.toPath()));
+
+        Assertions.assertThrows(ManagerSaveException.class,
+                () -> FileBackedTaskManager.loadFromFile(tempFile, settings),
+                "Без журнала после прежнего снимка откат к нему молча потерял бы изменения");
+    }
+
+    @Test
+    void shouldReplayMergedSegmentsWhenSnapshotIsCorruptedAfterMerge() throws IOException {
+        StorageSettings settings = StorageSettings.defaults()
+                .withPersistenceMode(PersistenceMode.INCREMENTAL)
+                .withSegmentMergeThreshold(1_000);
+        assertFallbackKeepsChangesAfterPreviousCheckpoint(settings);
+        for (Path segment : CheckpointStore.previousSegments(tempFile.toPath())) {
+            Files.delete(segment);
+        }
+
+        Assertions.assertThrows(ManagerSaveException.class,
+                () -> FileBackedTaskManager.loadFromFile(tempFile, settings));
+    }
+
+    private void assertFallbackKeepsChangesAfterPreviousCheckpoint(StorageSettings settings) throws IOException {
+        try (FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings)) {
+            Task first = manager.createTask(new Task("First", "Desc", Status.NEW, null, null));
+            manager.compact();
+            manager.createTask(new Task("Second", "Desc", Status.NEW, null, null));
+            first.setStatus(Status.DONE);
+            manager.updateTask(first);
+            manager.compact(); /*Прежний снимок - только с First в статусе NEW*/
+        }
+        byte[] content = Files.readAllBytes(tempFile.toPath());
+        Files.write(tempFile.toPath(), Arrays.copyOf(content, content.length - 1));
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile, settings);
+        Assertions.assertEquals(List.of("First", "Second"), loaded.getAllTasks().stream()
+                .map(Task::getTitle).toList());
+        Assertions.assertEquals(Status.DONE, loaded.getAllTasks().get(0).getStatus());
+        loaded.close();
+    }
+
+    @Test
+    void shouldRejectCsvRecordWithWrongChecksum() throws IOException {
+        FileBackedTaskManager manager = new FileBackedTaskManager(tempFile);
+        manager.createTask(new Task("Title", "Desc", Status.NEW, null, null));
+        Files.writeString(tempFile.toPath(), Files.readString(tempFile.toPath()).replace("Title", "Titel"));
+        Files.delete(previousFile());
+
+        Assertions.assertThrows(ManagerSaveException.class, () -> FileBackedTaskManager.loadFromFile(tempFile),
+                "Испорченная запись не должна пропускаться молча");
+    }
+
+    @Test
+    void shouldKeepCommasQuotesAndLineBreaksInCsv() {
+        String title = "Buy milk, eggs";
+        String description = "Say \"hello\"\nthen leave";
+        FileBackedTaskManager manager = new FileBackedTaskManager(tempFile);
+        Task task = manager.createTask(new Task(title, description, Status.NEW, null, null));
+
+        Task loaded = FileBackedTaskManager.loadFromFile(tempFile).getTaskById(task.getId());
+
+        Assertions.assertEquals(title, loaded.getTitle());
+        Assertions.assertEquals(description, loaded.getDescription());
+    }
+
+    @Test
+    void shouldReplayJournalRecordsWithQuotedLineBreaks() {
+        StorageSettings settings = StorageSettings.defaults().withPersistenceMode(PersistenceMode.JOURNAL);
+        Task task;
+        try (FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings)) {
+            task = manager.createTask(new Task("First\nline", "a,b", Status.NEW, null, null));
+            manager.createTask(new Task("Second", "Desc", Status.NEW, null, null));
+        }
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile, settings);
+        Assertions.assertEquals(2, loaded.getAllTasks().size());
+        Assertions.assertEquals("First\nline", loaded.getTaskById(task.getId()).getTitle());
+        loaded.close();
+    }
+
+    @Test
+    void shouldDropTornLastJournalRecordAndKeepAppendingAfterIt() throws IOException {
+        StorageSettings settings = StorageSettings.defaults().withPersistenceMode(PersistenceMode.JOURNAL);
+        try (FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings)) {
+            manager.createTask(new Task("First", "Desc", Status.NEW, null, null));
+            manager.createTask(new Task("Second", "Desc", Status.NEW, null, null));
+        }
+        Files.writeString(journalFile.toPath(), "U,3,TASK,Thi\n", StandardOpenOption.APPEND); /*Сбой посреди записи*/
+
+        try (FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile, settings)) {
+            Assertions.assertEquals(2, loaded.getAllTasks().size());
+            loaded.createTask(new Task("Third", "Desc", Status.NEW, null, null));
+        }
+
+        FileBackedTaskManager reloaded = FileBackedTaskManager.loadFromFile(tempFile, settings);
+        Assertions.assertEquals(List.of("First", "Second", "Third"), reloaded.getAllTasks().stream()
+                .map(Task::getTitle).toList(), "Недописанная запись должна уйти из журнала до новых записей");
+        reloaded.close();
+    }
+
+    @Test
+    void shouldRejectJournalRecordWithWrongChecksumBeforeLastOne() throws IOException {
+        StorageSettings settings = StorageSettings.defaults().withPersistenceMode(PersistenceMode.JOURNAL);
+        try (FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings)) {
+            manager.createTask(new Task("Title", "Desc", Status.NEW, null, null));
+            manager.createTask(new Task("Second", "Desc", Status.NEW, null, null));
+        }
+        Files.writeString(journalFile.toPath(), Files.readString(journalFile.toPath()).replace("Title", "Titel"));
+
+        Assertions.assertThrows(ManagerSaveException.class,
+                () -> FileBackedTaskManager.loadFromFile(tempFile, settings),
+                "Испорченная запись в середине журнала не должна пропускаться молча");
+    }
+
+    @Test
+    void shouldRejectJournalRecordThatCannotBeApplied() throws IOException {
+        StorageSettings settings = StorageSettings.defaults().withPersistenceMode(PersistenceMode.JOURNAL);
+        try (FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings)) {
+            manager.createTask(new Task("Task", "Desc", Status.NEW, null, null));
+        }
+        String journal = Files.readString(journalFile.toPath());
+
+        for (String record : List.of("X,TASK,1", "R,TASK,one", "D,BUG", "U,1,TASK")) {
+            Files.writeString(journalFile.toPath(), journal + sealed(record) + "\n");
+            Assertions.assertThrows(ManagerSaveException.class,
+                    () -> FileBackedTaskManager.loadFromFile(tempFile, settings),
+                    "Целая запись, которую не удалось применить, не должна пропускаться: " + record);
+        }
+    }
+
+    private static String sealed(String record) {
+        CRC32 crc = new CRC32();
+        crc.update(record.getBytes(StandardCharsets.UTF_8));
+        return record + "," + Long.toHexString(crc.getValue());
+    }
+
+    @Test
+    void shouldRejectCheckpointSegmentWithWrongChecksum() throws IOException {
+        StorageSettings settings = StorageSettings.defaults()
+                .withPersistenceMode(PersistenceMode.INCREMENTAL)
+                .withSegmentMergeThreshold(1_000);
+        try (FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings)) {
+            manager.createTask(new Task("Title", "Desc", Status.NEW, null, null));
+        }
+        Path segment = CheckpointStore.segments(tempFile.toPath()).get(0);
+        Files.writeString(segment, Files.readString(segment).replace("Title", "Titel"));
+
+        Assertions.assertThrows(ManagerSaveException.class,
+                () -> FileBackedTaskManager.loadFromFile(tempFile, settings),
+                "Сегмент пишется целиком, запись с неверной контрольной суммой в нем - повреждение");
+    }
+
+    @Test
+    void shouldLoadSameStateWithParallelParsing() throws IOException {
+        List<Task> records = new ArrayList<>();
+        LocalDateTime startTime = LocalDateTime.of(2024, 1, 1, 0, 0);
+        for (int i = 1; i <= 30_000; i++) {
+            Task task = i % 1000 == 1
+                    ? new Epic("Epic " + i, "Desc", Status.NEW, null, null)
+                    : new Subtask("Sub, \"" + i + "\"", "Line\nbreak", Status.DONE, (i - 1) / 1000 * 1000 + 1,
+                            startTime.plusMinutes(i * 10L), Duration.ofMinutes(5));
+            task.setId(i);
+            records.add(task);
+        }
+
+        for (SnapshotFormat format : SnapshotFormat.values()) {
+            Files.write(tempFile.toPath(), SnapshotCodec.of(format).encode(records));
+            FileBackedTaskManager sequential = FileBackedTaskManager.loadFromFile(tempFile);
+            FileBackedTaskManager parallel = FileBackedTaskManager.loadFromFile(tempFile,
+                    StorageSettings.defaults().withLoadParallelism(4));
+
+            Assertions.assertEquals(30, parallel.getAllEpics().size(), format.name());
+            Assertions.assertEquals(sequential.getAllSubtasks().size(), parallel.getAllSubtasks().size());
+            Assertions.assertEquals(999, parallel.getSubtasksByEpicId(29_001).size());
+            Assertions.assertEquals("Sub, \"29999\"", parallel.getSubtaskById(29_999).getTitle());
+            Assertions.assertEquals(Status.DONE, parallel.getEpicById(1).getStatus());
+            Assertions.assertEquals(30_001, parallel.createTask(
+                    new Task("Next", "Desc", Status.NEW, null, null)).getId());
+            sequential.close();
+            parallel.close();
+        }
+    }
+
+    @Test
+    void shouldWriteOnlyChangedRecordsToCheckpointSegments() throws IOException {
+        StorageSettings settings = StorageSettings.defaults()
+                .withPersistenceMode(PersistenceMode.INCREMENTAL)
+                .withSegmentMergeThreshold(1_000);
+        try (FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings)) {
+            for (int i = 0; i < 50; i++) {
+                manager.createTask(new Task("Task " + i, "Desc", Status.NEW, null, null));
+            }
+            Task changed = manager.getTaskById(25);
+            changed.setStatus(Status.DONE);
+            manager.updateTask(changed);
+
+            List<Path> segments = CheckpointStore.segments(tempFile.toPath());
+            Assertions.assertEquals(51, segments.size());
+            Assertions.assertEquals(1, Files.readAllLines(segments.get(50)).size(),
+                    "Сегмент должен содержать только измененную задачу");
+        }
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile, settings);
+        Assertions.assertEquals(50, loaded.getAllTasks().size());
+        Assertions.assertEquals(Status.DONE, loaded.getTaskById(25).getStatus());
+        loaded.close();
+    }
+
+    @Test
+    void shouldMergeCheckpointSegmentsIntoBaseSnapshot() {
+        StorageSettings settings = StorageSettings.defaults()
+                .withPersistenceMode(PersistenceMode.INCREMENTAL)
+                .withSegmentMergeThreshold(1_000);
+        Epic removedEpic;
+        try (FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings)) {
+            Epic epic = manager.createEpic(new Epic("Epic", "Desc", Status.NEW, null, null));
+            manager.createSubtask(new Subtask("Sub", "Desc", Status.DONE, epic.getId(), null, null));
+            removedEpic = manager.createEpic(new Epic("Removed", "Desc", Status.NEW, null, null));
+            manager.createSubtask(new Subtask("Removed sub", "Desc", Status.NEW, removedEpic.getId(), null, null));
+            manager.createTask(new Task("Task", "Desc", Status.NEW, null, null));
+            manager.removeEpic(removedEpic.getId());
+
+            manager.compact();
+
+            Assertions.assertTrue(CheckpointStore.segments(tempFile.toPath()).isEmpty());
+            Assertions.assertTrue(tempFile.length() > 0);
+        }
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile, settings);
+        Assertions.assertEquals(1, loaded.getAllEpics().size());
+        Assertions.assertEquals(1, loaded.getAllSubtasks().size());
+        Assertions.assertEquals(1, loaded.getAllTasks().size());
+        Assertions.assertEquals(Status.DONE, loaded.getAllEpics().get(0).getStatus());
+        loaded.close();
+    }
+
+    @Test
+    void shouldKeepSegmentsWhenMergeMeetsUnknownRecord() throws IOException {
+        StorageSettings settings = StorageSettings.defaults()
+                .withPersistenceMode(PersistenceMode.INCREMENTAL)
+                .withSegmentMergeThreshold(1_000);
+        try (FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings)) {
+            manager.createTask(new Task("Task", "Desc", Status.NEW, null, null));
+            Path broken = tempFile.toPath().resolveSibling(tempFile.getName() + ".seg.2");
+            Files.writeString(broken, "BOGUS,TASK,1\n");
+
+            Assertions.assertThrows(ManagerSaveException.class, manager::compact);
+            Assertions.assertEquals(2, CheckpointStore.segments(tempFile.toPath()).size(),
+                    "Сегменты не должны удаляться после неудачного слияния");
+            Files.delete(broken);
+        }
+    }
+
+    @Test
+    void shouldRethrowBackgroundMergeFailureOnClose() throws IOException {
+        StorageSettings settings = StorageSettings.defaults()
+                .withPersistenceMode(PersistenceMode.INCREMENTAL)
+                .withSegmentMergeThreshold(2);
+        FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings);
+        Files.writeString(tempFile.toPath().resolveSibling(tempFile.getName() + ".seg.5"), "BOGUS,TASK,1\n");
+        manager.createTask(new Task("Task", "Desc", Status.NEW, null, null)); /*Второй сегмент запускает слияние*/
+
+        Assertions.assertThrows(ManagerSaveException.class, manager::close);
+        Assertions.assertEquals(2, CheckpointStore.segments(tempFile.toPath()).size());
+    }
+
+    @Test
+    void shouldLoadCompressedSnapshotInBlocks() throws IOException {
+        List<Task> records = new ArrayList<>();
+        LocalDateTime startTime = LocalDateTime.of(2024, 1, 1, 0, 0);
+        for (int i = 1; i <= 10_000; i++) {
+            Task task = new Task("Task, \"" + i + "\"", "Line\nbreak", Status.NEW, startTime.plusMinutes(i * 10L),
+                    Duration.ofMinutes(5));
+            task.setId(i);
+            records.add(task);
+        }
+
+        for (SnapshotFormat format : SnapshotFormat.values()) {
+            StorageSettings settings = StorageSettings.defaults()
+                    .withSnapshotFormat(format)
+                    .withCompression(Compression.DEFLATE);
+            byte[] plain = SnapshotCodec.of(format).encode(records);
+            Files.write(tempFile.toPath(), SnapshotCodec.of(settings).encode(records));
+            Assertions.assertTrue(tempFile.length() * 2 < plain.length, "Сжатый снимок должен быть меньше");
+
+            FileBackedTaskManager sequential = FileBackedTaskManager.loadFromFile(tempFile);
+            FileBackedTaskManager parallel = FileBackedTaskManager.loadFromFile(tempFile,
+                    StorageSettings.defaults().withLoadParallelism(4));
+            for (FileBackedTaskManager loaded : List.of(sequential, parallel)) {
+                Assertions.assertEquals(10_000, loaded.getAllTasks().size(), format.name());
+                Assertions.assertEquals("Task, \"9999\"", loaded.getTaskById(9_999).getTitle());
+                Assertions.assertEquals("Line\nbreak", loaded.getTaskById(5_000).getDescription());
+                Assertions.assertEquals(10_001, loaded.createTask(
+                        new Task("Next", "Desc", Status.NEW, null, null)).getId());
+                loaded.close();
+            }
+        }
+    }
+
+    @Test
+    void shouldRejectCompressedSnapshotWithBrokenBlock() throws IOException {
+        StorageSettings settings = StorageSettings.defaults().withCompression(Compression.DEFLATE);
+        FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings);
+        manager.createTask(new Task("Task", "Desc", Status.NEW, null, null));
+        byte[] content = Files.readAllBytes(tempFile.toPath());
+        content[content.length - 2] ^= 1;
+        Files.write(tempFile.toPath(), content);
+        Files.delete(previousFile());
+
+        Assertions.assertThrows(ManagerSaveException.class, () -> FileBackedTaskManager.loadFromFile(tempFile));
+    }
+
+    @Test
+    void shouldCompressCheckpointSegments() throws IOException {
+        StorageSettings settings = StorageSettings.defaults()
+                .withPersistenceMode(PersistenceMode.INCREMENTAL)
+                .withSnapshotFormat(SnapshotFormat.BINARY)
+                .withCompression(Compression.DEFLATE)
+                .withSegmentMergeThreshold(1_000);
+        try (FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings)) {
+            Epic epic = manager.createEpic(new Epic("Epic", "Desc", Status.NEW, null, null));
+            manager.createSubtask(new Subtask("Sub,\n1", "Desc", Status.DONE, epic.getId(), null, null));
+            manager.createTask(new Task("Task", "Desc", Status.NEW, null, null));
+
+            List<Path> segments = CheckpointStore.segments(tempFile.toPath());
+            Assertions.assertEquals(3, segments.size());
+            Assertions.assertEquals('T', Files.readAllBytes(segments.get(0))[0], "Сегмент должен быть сжат");
+        }
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile, settings);
+        Assertions.assertEquals("Sub,\n1", loaded.getAllSubtasks().get(0).getTitle());
+        Assertions.assertEquals(Status.DONE, loaded.getAllEpics().get(0).getStatus());
+        loaded.compact();
+        Assertions.assertTrue(CheckpointStore.segments(tempFile.toPath()).isEmpty());
+        loaded.close();
+
+        FileBackedTaskManager merged = FileBackedTaskManager.loadFromFile(tempFile);
+        Assertions.assertEquals(1, merged.getAllTasks().size(), "Слитый снимок тоже сжат и читается без настроек");
+        Assertions.assertEquals(1, merged.getAllSubtasks().size());
+    }
+
+    @Test
+    void shouldRewriteOnlyDirtyShards() throws IOException {
+        StorageSettings settings = StorageSettings.defaults()
+                .withPersistenceMode(PersistenceMode.SHARDED)
+                .withShardCount(4);
+        try (FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings)) {
+            Epic epic = manager.createEpic(new Epic("Epic", "Desc", Status.NEW, null, null));
+            for (int i = 0; i < 7; i++) {
+                manager.createSubtask(new Subtask("Sub " + i, "Desc", Status.DONE, epic.getId(), null, null));
+            }
+            List<Path> shards = ShardedSnapshotStore.shards(tempFile.toPath());
+            Assertions.assertEquals(4, shards.size());
+            List<byte[]> before = new ArrayList<>();
+            for (Path shard : shards) {
+                before.add(Files.readAllBytes(shard));
+            }
+
+            Subtask changed = new Subtask("Changed, title", "Desc", Status.NEW, epic.getId(), null, null);
+            changed.setId(6);
+            manager.updateSubtask(changed);
+
+            for (int i = 0; i < shards.size(); i++) {
+                boolean rewritten = !Arrays.equals(before.get(i), Files.readAllBytes(shards.get(i)));
+                Assertions.assertEquals(i == 6 % 4, rewritten, "Переписывается только шард измененной задачи");
+            }
+            manager.removeSubtask(3);
+        }
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile, settings);
+        Assertions.assertEquals(6, loaded.getAllSubtasks().size());
+        Assertions.assertEquals(6, loaded.getSubtasksByEpicId(1).size(), "Подзадачи из других шардов находят эпик");
+        Assertions.assertEquals(Status.IN_PROGRESS, loaded.getEpicById(1).getStatus());
+        Assertions.assertEquals("Changed, title", loaded.getSubtaskById(6).getTitle());
+        Assertions.assertEquals(9, loaded.createTask(new Task("Next", "Desc", Status.NEW, null, null)).getId());
+        loaded.close();
+    }
+
+    @Test
+    void shouldKeepWholeShardWhenLoadedManagerChangesOneTask() {
+        StorageSettings settings = StorageSettings.defaults()
+                .withPersistenceMode(PersistenceMode.SHARDED)
+                .withShardCount(2);
+        try (FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings)) {
+            for (int i = 0; i < 6; i++) {
+                manager.createTask(new Task("Task " + i, "Desc", Status.NEW, null, null));
+            }
+        }
+
+        try (FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile, settings)) {
+            Task changed = new Task("Changed", "Desc", Status.DONE, null, null);
+            changed.setId(2);
+            loaded.updateTask(changed);
+            loaded.removeTask(4);
+        }
+
+        FileBackedTaskManager reloaded = FileBackedTaskManager.loadFromFile(tempFile, settings);
+        Assertions.assertEquals(5, reloaded.getAllTasks().size(), "Шард содержит и задачи, загруженные с диска");
+        Assertions.assertEquals("Changed", reloaded.getTaskById(2).getTitle());
+        Assertions.assertNull(reloaded.getTaskById(4));
+        reloaded.close();
+    }
+
+    @Test
+    void shouldSplitSingleSnapshotIntoShardsAndReshard() {
+        FileBackedTaskManager single = new FileBackedTaskManager(tempFile);
+        for (int i = 0; i < 10; i++) {
+            single.createTask(new Task("Task " + i, "Desc", Status.NEW, null, null));
+        }
+
+        StorageSettings threeShards = StorageSettings.defaults()
+                .withPersistenceMode(PersistenceMode.SHARDED)
+                .withShardCount(3);
+        FileBackedTaskManager.loadFromFile(tempFile, threeShards).close();
+        Assertions.assertEquals(3, ShardedSnapshotStore.shards(tempFile.toPath()).size());
+
+        StorageSettings twoShards = StorageSettings.defaults()
+                .withPersistenceMode(PersistenceMode.SHARDED)
+                .withShardCount(2);
+        FileBackedTaskManager resharded = FileBackedTaskManager.loadFromFile(tempFile, twoShards);
+        Assertions.assertEquals(10, resharded.getAllTasks().size());
+        Assertions.assertEquals(2, ShardedSnapshotStore.shards(tempFile.toPath()).size(),
+                "Шарды прежнего разбиения удаляются");
+        resharded.close();
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile, twoShards);
+        Assertions.assertEquals(10, loaded.getAllTasks().size());
+        loaded.close();
+    }
+
+    @Test
+    void shouldCoalesceCheckpointsWithIntervalPolicy() {
+        StorageSettings settings = StorageSettings.defaults()
+                .withPersistenceMode(PersistenceMode.INCREMENTAL)
+                .withFsyncPolicy(FsyncPolicy.INTERVAL)
+                .withFlushInterval(Duration.ofMinutes(1))
+                .withFlushBatchSize(10_000);
+        try (FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings)) {
+            Task task = manager.createTask(new Task("Task", "Desc", Status.NEW, null, null));
+            for (int i = 0; i < 100; i++) {
+                task.setStatus(i % 2 == 0 ? Status.IN_PROGRESS : Status.DONE);
+                manager.updateTask(task);
+            }
+            manager.deleteTasks();
+            manager.createTask(new Task("Survivor", "Desc", Status.NEW, null, null));
+            manager.flush().join();
+
+            Assertions.assertEquals(1, CheckpointStore.segments(tempFile.toPath()).size());
+        }
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile, settings);
+        Assertions.assertEquals(List.of("Survivor"), loaded.getAllTasks().stream().map(Task::getTitle).toList());
+        loaded.close();
+    }
+
+    @Test
+    void shouldKeepDescriptionsOnDiskAndLoadThemOnDemand() {
+        StorageSettings settings = StorageSettings.defaults()
+                .withPersistenceMode(PersistenceMode.JOURNAL)
+                .withDescriptionStorage(DescriptionStorage.ON_DISK)
+                .withDescriptionCacheSize(1);
+        Path descriptions = tempFile.toPath().resolveSibling(tempFile.getName() + ".descriptions");
+        try (FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings)) {
+            Task first = manager.createTask(new Task("First", "Первое, длинное\nописание", Status.NEW, null, null));
+            Epic epic = manager.createEpic(new Epic("Epic", "Описание эпика", Status.NEW, null, null));
+
+            Assertions.assertTrue(first.isDescriptionDeferred(), "Описание должно уйти из памяти в файл");
+            Assertions.assertTrue(epic.isDescriptionDeferred());
+            Assertions.assertTrue(Files.exists(descriptions));
+            Assertions.assertEquals("Первое, длинное\nописание", first.getDescription());
+            Assertions.assertEquals("Описание эпика", epic.getDescription(), "Чтение мимо кэша на одну запись");
+
+            Task updated = new Task("First", "Новое описание", Status.DONE, null, null);
+            updated.setId(first.getId());
+            manager.updateTask(updated);
+            Assertions.assertEquals("Новое описание", manager.getTaskById(first.getId()).getDescription());
+        }
+        Assertions.assertFalse(Files.exists(descriptions), "Файл описаний строится заново при каждом открытии");
+
+        FileBackedTaskManager loaded = FileBackedTaskManager.loadFromFile(tempFile, settings);
+        Task task = loaded.getAllTasks().get(0);
+        Assertions.assertTrue(task.isDescriptionDeferred());
+        Assertions.assertEquals("Новое описание", task.getDescription());
+        Assertions.assertTrue(task.toString().contains("Новое описание"), "toString() читает описание с диска");
+        Assertions.assertEquals("Описание эпика", loaded.getAllEpics().get(0).getDescription());
+        loaded.close();
+    }
+
+    @Test
+    void shouldKeepDescriptionOfReplacedTaskInHistoryReadableAfterCompaction() {
+        StorageSettings settings = StorageSettings.defaults()
+                .withPersistenceMode(PersistenceMode.JOURNAL)
+                .withDescriptionStorage(DescriptionStorage.ON_DISK);
+        try (FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings)) {
+            Task task = manager.createTask(new Task("Task", "A".repeat(1000), Status.NEW, null, null));
+            manager.getTaskById(task.getId());
+            for (int i = 0; i < 3000; i++) {
+                Task updated = new Task("Task", String.valueOf((char) ('b' + i % 25)).repeat(1000), Status.NEW,
+                        null, null);
+                updated.setId(task.getId());
+                manager.updateTask(updated);
+            }
+
+            Task viewed = manager.getHistory().get(0);
+            Assertions.assertFalse(manager.getAllTasks().get(0) == viewed, "В истории осталась замененная задача");
+            Assertions.assertEquals("A".repeat(1000), viewed.getDescription(),
+                    "Уплотнение не должно отдавать замененной задаче чужие байты");
+        }
+    }
+
+    @Test
+    void shouldCompactDescriptionFileWhenItDoubles() throws IOException {
+        StorageSettings settings = StorageSettings.defaults()
+                .withPersistenceMode(PersistenceMode.JOURNAL)
+                .withDescriptionStorage(DescriptionStorage.ON_DISK);
+        Path descriptions = tempFile.toPath().resolveSibling(tempFile.getName() + ".descriptions");
+        try (FileBackedTaskManager manager = new FileBackedTaskManager(tempFile, settings)) {
+            Task kept = manager.createTask(new Task("Kept", "Неизменное описание", Status.NEW, null, null));
+            Task task = manager.createTask(new Task("Task", "x", Status.NEW, null, null));
+            String description = "";
+            for (int i = 0; i < 40; i++) {
+                description = String.valueOf((char) ('a' + i % 26)).repeat(64 * 1024);
+                Task updated = new Task("Task", description, Status.NEW, null, null);
+                updated.setId(task.getId());
+                manager.updateTask(updated);
+            }
+
+            Assertions.assertTrue(Files.size(descriptions) < 40 * 64 * 1024,
+                    "Замененные описания должны вычищаться уплотнением");
+            Assertions.assertEquals(description, manager.getTaskById(task.getId()).getDescription());
+            Assertions.assertEquals("Неизменное описание", kept.getDescription());
+        }
+    }
+}
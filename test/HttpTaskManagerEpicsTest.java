@@ -1,3 +1,4 @@
+import com.google.gson.JsonParser;
 import http.HttpTaskServer;
 import org.junit.jupiter.api.*;
 import java.io.IOException;
@@ -6,6 +7,9 @@ import java.net.http.*;
 import static org.junit.jupiter.api.Assertions.*;
 import managers.InMemoryTaskManager;
 import managers.TaskManager;
+import enums.Status;
+import tasks.Epic;
+import tasks.Subtask;
 
 class HttpTaskManagerEpicsTest {
     private TaskManager manager;
@@ -78,4 +82,21 @@ class HttpTaskManagerEpicsTest {
 
         assertEquals(400, response.statusCode(), "Ожидалась ошибка 400 при неполных данных");
     }
+
+    @Test
+    void testGetEpicProgress() throws IOException, InterruptedException {
+        Epic epic = manager.createEpic(new Epic("Epic", "Description", Status.NEW, null, null));
+        manager.createSubtask(new Subtask("Subtask", "Description", Status.DONE, epic.getId(), null, null));
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/epics/progress?id=" + epic.getId()))
+                .GET()
+                .build();
+
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode(), "Неверный статус код");
+        assertEquals(100.0, JsonParser.parseString(response.body()).getAsJsonObject().get("percentDone").getAsDouble(),
+                "Прогресс эпика должен быть 100%");
+    }
 }
\ No newline at end of file
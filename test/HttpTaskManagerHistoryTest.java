@@ -71,4 +71,27 @@ class HttpTaskManagerHistoryTest {
         assertEquals(200, response.statusCode(), "Неверный статус код");
         assertEquals(0, manager.getHistory().size(), "История должна быть пустой");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testHistoryEtagChangesWhenTaskIsViewed() throws IOException, InterruptedException {
+        Task task = manager.createTask(new Task("Test Task", "Description", Status.NEW, null, null));
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/history"))
+                .GET()
+                .build();
+        String etag = client.send(request, HttpResponse.BodyHandlers.ofString()).headers()
+                .firstValue("ETag").orElseThrow();
+
+        HttpRequest conditional = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/history"))
+                .header("If-None-Match", etag)
+                .GET()
+                .build();
+        assertEquals(304, client.send(conditional, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        manager.getTaskById(task.getId());
+        HttpResponse<String> response = client.send(conditional, HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode(), "Просмотр задачи меняет историю");
+        assertTrue(response.body().contains("Test Task"));
+    }
+}
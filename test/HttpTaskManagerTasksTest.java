@@ -1,11 +1,17 @@
 import enums.Status;
 import http.HttpTaskServer;
+import http.ServerSettings;
 import org.junit.jupiter.api.*;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.*;
 import java.time.Duration;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 import static org.junit.jupiter.api.Assertions.*;
 import managers.InMemoryTaskManager;
 import managers.TaskManager;
@@ -72,4 +78,167 @@ class HttpTaskManagerTasksTest {
 
         assertEquals(404, response.statusCode(), "Для несуществующей задачи должен быть 404");
     }
-}
\ No newline at end of file
+
+    @Test
+    void testGetTaskWithDeferredDescription() throws IOException, InterruptedException {
+        Task task = new Task("Lazy", null, Status.NEW, null, null);
+        task.deferDescription(() -> "Описание с диска");
+        Task createdTask = manager.createTask(task);
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/tasks?id=" + createdTask.getId()))
+                .GET()
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode(), "Неверный статус код ответа");
+        assertTrue(response.body().contains("Описание с диска"),
+                "Описание, вынесенное на диск, должно попадать в ответ");
+    }
+
+    @Test
+    void testGetAllTasksIsStreamedInChunks() throws IOException, InterruptedException {
+        taskServer.stop();
+        taskServer = new HttpTaskServer(manager, ServerSettings.defaults().withResponseCacheLimit(16 * 1024));
+        taskServer.start();
+        int count = 2_000;
+        for (int i = 0; i < count; i++) {
+            manager.createTask(new Task("Task " + i, "Описание " + i, Status.NEW, null, null));
+        }
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/tasks"))
+                .GET()
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode(), "Неверный статус код ответа");
+        assertTrue(response.headers().firstValue("Content-Length").isEmpty(),
+                "Список больше лимита кэша не собирается в память целиком, поэтому длина заранее неизвестна");
+        Task[] tasks = taskServer.getGson().fromJson(response.body(), Task[].class);
+        assertEquals(count, tasks.length, "В ответе должны быть все задачи");
+        assertEquals("Описание 1999", tasks[count - 1].getDescription());
+    }
+
+    @Test
+    void testLargeResponseIsCompressedWhenClientAcceptsIt() throws IOException, InterruptedException {
+        for (int i = 0; i < 2_000; i++) {
+            manager.createTask(new Task("Task " + i, "Описание " + i, Status.NEW, null, null));
+        }
+        HttpResponse<String> plain = client.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/tasks"))
+                .GET()
+                .build(), HttpResponse.BodyHandlers.ofString());
+
+        HttpResponse<byte[]> gzip = client.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/tasks"))
+                .header("Accept-Encoding", "gzip, deflate")
+                .GET()
+                .build(), HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals(200, gzip.statusCode(), "Неверный статус код ответа");
+        assertEquals("gzip", gzip.headers().firstValue("Content-Encoding").orElse(null));
+        assertEquals(plain.body(), inflate(new GZIPInputStream(new ByteArrayInputStream(gzip.body()))),
+                "После распаковки ответ должен совпадать с несжатым");
+        assertTrue(gzip.body().length * 4 < plain.body().getBytes(StandardCharsets.UTF_8).length,
+                "Список задач должен сжиматься в несколько раз");
+
+        HttpResponse<byte[]> deflate = client.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/tasks"))
+                .header("Accept-Encoding", "gzip;q=0, deflate")
+                .GET()
+                .build(), HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals("deflate", deflate.headers().firstValue("Content-Encoding").orElse(null),
+                "gzip с q=0 не должен выбираться");
+        assertEquals(plain.body(), inflate(new InflaterInputStream(new ByteArrayInputStream(deflate.body()))));
+    }
+
+    @Test
+    void testSmallResponseIsNotCompressed() throws IOException, InterruptedException {
+        Task createdTask = manager.createTask(new Task("Task", "Description", Status.NEW, null, null));
+
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/tasks?id=" + createdTask.getId()))
+                .header("Accept-Encoding", "gzip")
+                .GET()
+                .build(), HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(200, response.statusCode(), "Неверный статус код ответа");
+        assertTrue(response.headers().firstValue("Content-Encoding").isEmpty(),
+                "Ответ меньше порога не сжимается");
+        assertEquals(String.valueOf(response.body().getBytes(StandardCharsets.UTF_8).length),
+                response.headers().firstValue("Content-Length").orElse(null));
+        assertEquals("Task", taskServer.getGson().fromJson(response.body(), Task.class).getTitle());
+    }
+
+    @Test
+    void testConditionalGetAnswersNotModifiedUntilTasksChange() throws IOException, InterruptedException {
+        manager.createTask(new Task("Task", "Description", Status.NEW, null, null));
+        HttpResponse<String> first = client.send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/tasks"))
+                .GET()
+                .build(), HttpResponse.BodyHandlers.ofString());
+        String etag = first.headers().firstValue("ETag").orElse(null);
+        assertNotNull(etag, "Список задач должен отдаваться с ETag");
+
+        HttpRequest conditional = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/tasks"))
+                .header("If-None-Match", etag)
+                .GET()
+                .build();
+        HttpResponse<String> notModified = client.send(conditional, HttpResponse.BodyHandlers.ofString());
+        assertEquals(304, notModified.statusCode(), "Без изменений должен быть 304");
+        assertEquals("", notModified.body());
+        assertEquals(etag, notModified.headers().firstValue("ETag").orElse(null));
+
+        manager.getTaskById(1);
+        assertEquals(304, client.send(conditional, HttpResponse.BodyHandlers.ofString()).statusCode(),
+                "Просмотр задачи не меняет список задач");
+
+        manager.createTask(new Task("Another", "Description", Status.NEW, null, null));
+        HttpResponse<String> modified = client.send(conditional, HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, modified.statusCode(), "После изменения список отдается заново");
+        assertNotEquals(etag, modified.headers().firstValue("ETag").orElse(null));
+        assertEquals(2, taskServer.getGson().fromJson(modified.body(), Task[].class).length);
+    }
+
+    private static String inflate(InputStream in) throws IOException {
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void testRepeatedListRequestsAreServedFromResponseCache() throws IOException, InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            manager.createTask(new Task("Task " + i, "Описание " + i, Status.NEW, null, null));
+        }
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/tasks"))
+                .GET()
+                .build();
+        HttpRequest gzipRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/tasks"))
+                .header("Accept-Encoding", "gzip")
+                .GET()
+                .build();
+
+        String first = client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+        assertEquals(0, taskServer.getResponseCacheHits());
+        assertEquals(1, taskServer.getResponseCacheMisses());
+
+        HttpResponse<String> cached = client.send(request, HttpResponse.BodyHandlers.ofString());
+        assertEquals(first, cached.body(), "Из кэша должен отдаваться тот же ответ");
+        assertEquals(String.valueOf(cached.body().getBytes(StandardCharsets.UTF_8).length),
+                cached.headers().firstValue("Content-Length").orElse(null));
+        HttpResponse<byte[]> gzip = client.send(gzipRequest, HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals("gzip", gzip.headers().firstValue("Content-Encoding").orElse(null));
+        assertEquals(first, inflate(new GZIPInputStream(new ByteArrayInputStream(gzip.body()))));
+        assertEquals(2, taskServer.getResponseCacheHits());
+
+        manager.createTask(new Task("New", "Описание", Status.NEW, null, null));
+        HttpResponse<String> changed = client.send(request, HttpResponse.BodyHandlers.ofString());
+        assertEquals(101, taskServer.getGson().fromJson(changed.body(), Task[].class).length,
+                "Изменение задач должно сбрасывать кэш");
+        assertEquals(2, taskServer.getResponseCacheMisses());
+    }
+}
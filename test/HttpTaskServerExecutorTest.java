@@ -0,0 +1,122 @@
+import enums.ExecutorMode;
+import enums.Status;
+import http.HttpTaskServer;
+import http.ServerSettings;
+import managers.InMemoryTaskManager;
+import managers.Managers;
+import managers.SynchronizedTaskManager;
+import managers.TaskManager;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import tasks.Epic;
+import tasks.Subtask;
+import tasks.Task;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class HttpTaskServerExecutorTest {
+    private static final int CLIENTS = 8;
+    private static final int REQUESTS_PER_CLIENT = 25;
+
+    @Test
+    void shouldServeConcurrentClientsInEveryExecutorMode() throws Exception {
+        for (ExecutorMode mode : List.of(ExecutorMode.VIRTUAL_THREADS, ExecutorMode.BOUNDED_POOL)) {
+            TaskManager manager = new InMemoryTaskManager();
+            HttpTaskServer server = new HttpTaskServer(manager, ServerSettings.defaults()
+                    .withExecutorMode(mode)
+                    .withPoolSize(2)
+                    .withQueueCapacity(4)
+                    .withBacklog(64));
+            Assertions.assertTrue(server.getTaskManager() instanceof SynchronizedTaskManager,
+                    "Непотокобезопасный менеджер должен оборачиваться");
+            server.start();
+            try {
+                postConcurrently();
+            } finally {
+                server.stop();
+            }
+
+            List<Task> tasks = manager.getAllTasks();
+            Assertions.assertEquals(CLIENTS * REQUESTS_PER_CLIENT, tasks.size(), mode.name());
+            Set<Integer> ids = new HashSet<>();
+            tasks.forEach(task -> ids.add(task.getId()));
+            Assertions.assertEquals(tasks.size(), ids.size(), "id задач не должны повторяться");
+        }
+    }
+
+    @Test
+    void shouldHandOutEpicCopiesThatLaterRequestsDoNotChange() {
+        TaskManager manager = Managers.threadSafe(new InMemoryTaskManager());
+        Epic epic = manager.createEpic(new Epic("Epic", "Desc", Status.NEW, null, null));
+        Epic viewed = manager.getEpicById(epic.getId());
+        List<Epic> listed = manager.getAllEpics();
+        Epic inHistory = (Epic) manager.getHistory().get(0);
+
+        manager.createSubtask(new Subtask("Sub", "Desc", Status.DONE, epic.getId(), null, null));
+
+        for (Epic copy : List.of(epic, viewed, listed.get(0), inHistory)) {
+            Assertions.assertEquals(Status.NEW, copy.getStatus(), "Обработчик сериализует эпик без блокировки");
+            Assertions.assertEquals(List.of(), copy.getSubtaskId());
+        }
+        Assertions.assertEquals(Status.DONE, manager.getEpicById(epic.getId()).getStatus());
+    }
+
+    @Test
+    void shouldKeepThreadSafeManagerAndDispatcherModeAsIs() throws IOException {
+        TaskManager concurrent = Managers.getConcurrent();
+        HttpTaskServer server = new HttpTaskServer(concurrent, ServerSettings.defaults().withPort(0));
+        TaskManager inMemory = new InMemoryTaskManager();
+        HttpTaskServer dispatcher = new HttpTaskServer(inMemory, ServerSettings.defaults()
+                .withExecutorMode(ExecutorMode.DISPATCHER)
+                .withPort(0));
+        server.start(); /*Порт освобождается только остановкой запущенного сервера*/
+        dispatcher.start();
+        server.stop();
+        dispatcher.stop();
+
+        Assertions.assertSame(concurrent, server.getTaskManager());
+        Assertions.assertSame(inMemory, dispatcher.getTaskManager());
+    }
+
+    private static void postConcurrently() throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+        try {
+            List<Future<List<Integer>>> results = new ArrayList<>();
+            for (int c = 0; c < CLIENTS; c++) {
+                int clientId = c;
+                results.add(clients.submit(() -> {
+                    List<Integer> statuses = new ArrayList<>();
+                    for (int i = 0; i < REQUESTS_PER_CLIENT; i++) {
+                        String body = "{\"title\":\"Task " + clientId + "-" + i
+                                + "\",\"description\":\"Desc\",\"status\":\"NEW\"}";
+                        HttpRequest request = HttpRequest.newBuilder()
+                                .uri(URI.create("http://localhost:8080/tasks"))
+                                .POST(HttpRequest.BodyPublishers.ofString(body))
+                                .build();
+                        statuses.add(client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+                    }
+                    return statuses;
+                }));
+            }
+            for (Future<List<Integer>> result : results) {
+                for (int status : result.get()) {
+                    Assertions.assertEquals(201, status);
+                }
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+import org.junit.jupiter.api.Test;
+import util.IntSortedSet;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntSortedSetTest {
+
+    @Test
+    void shouldKeepElementsSortedAndUnique() {
+        IntSortedSet set = new IntSortedSet();
+        set.add(5);
+        set.add(1);
+        set.add(9);
+        set.add(3);
+
+        assertFalse(set.add(5), "Повторное добавление не должно менять множество");
+        assertArrayEquals(new int[]{1, 3, 5, 9}, set.toArray());
+        assertTrue(set.contains(3));
+        assertFalse(set.contains(4));
+    }
+
+    @Test
+    void shouldRemoveElements() {
+        IntSortedSet set = new IntSortedSet();
+        for (int i = 1; i <= 10; i++) {
+            set.add(i);
+        }
+
+        assertTrue(set.remove(1));
+        assertTrue(set.remove(5));
+        assertTrue(set.remove(10));
+        assertFalse(set.remove(42), "Удаление отсутствующего элемента должно возвращать false");
+
+        assertEquals(7, set.size());
+        assertArrayEquals(new int[]{2, 3, 4, 6, 7, 8, 9}, set.toArray());
+    }
+
+    @Test
+    void shouldIterateInAscendingOrder() {
+        IntSortedSet set = new IntSortedSet();
+        set.add(30);
+        set.add(10);
+        set.add(20);
+
+        List<Integer> visited = new ArrayList<>();
+        set.forEach(visited::add);
+
+        assertEquals(List.of(10, 20, 30), visited);
+    }
+}
@@ -1,3 +1,4 @@
+import enums.StorageType;
 import managers.*;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -15,4 +16,16 @@ class ManagersTest {
         HistoryManager manager = Managers.getDefaultHistory();
         Assertions.assertTrue(manager instanceof InMemoryHistoryManager);
     }
+
+    @Test
+    void returnInMemoryTaskManagerWithSelectedStorage() {
+        TaskManager manager = Managers.getInMemory(StorageType.OPEN_ADDRESSING);
+        Assertions.assertTrue(manager instanceof InMemoryTaskManager);
+    }
+
+    @Test
+    void returnConcurrentTaskManagerClass() {
+        TaskManager manager = Managers.getConcurrent();
+        Assertions.assertTrue(manager instanceof ConcurrentTaskManager);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,73 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import util.OpenIntObjectMap;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OpenIntObjectMapTest {
+    private OpenIntObjectMap<String> map;
+
+    @BeforeEach
+    void setUp() {
+        map = new OpenIntObjectMap<>();
+    }
+
+    @Test
+    void shouldPutGetAndReplaceValues() {
+        assertNull(map.put(1, "one"));
+        assertEquals("one", map.put(1, "uno"), "put должен возвращать предыдущее значение");
+        assertEquals("uno", map.get(1));
+        assertNull(map.get(2));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void shouldSupportZeroKey() {
+        map.put(0, "zero");
+        assertTrue(map.containsKey(0));
+        assertEquals("zero", map.get(0));
+        assertEquals(1, map.values().size());
+        assertEquals("zero", map.remove(0));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    void shouldMatchHashMapUnderRandomOperations() {
+        Map<Integer, String> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100_000; i++) {
+            int key = random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key), "Удаление должно совпадать с HashMap");
+            } else {
+                String value = "v" + i;
+                assertEquals(expected.put(key, value), map.put(key, value), "Вставка должна совпадать с HashMap");
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Integer, String> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+        assertEquals(new HashSet<>(expected.values()), new HashSet<>(map.values()),
+                "Обход значений должен возвращать все элементы");
+    }
+
+    @Test
+    void shouldClearAllEntries() {
+        for (int i = 0; i < 100; i++) {
+            map.put(i, "v" + i);
+        }
+        map.clear();
+
+        assertTrue(map.isEmpty());
+        assertNull(map.get(50));
+        assertFalse(map.values().iterator().hasNext());
+    }
+}
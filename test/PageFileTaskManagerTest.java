@@ -0,0 +1,168 @@
+import enums.Status;
+import exception.ManagerSaveException;
+import managers.PageFileTaskManager;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import storage.BufferPool;
+import tasks.Epic;
+import tasks.Subtask;
+import tasks.Task;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+class PageFileTaskManagerTest {
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    private File tempFile;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        tempFile = File.createTempFile("tasks", ".pages");
+        tempFile.deleteOnExit();
+    }
+
+    @Test
+    void shouldKeepRecordsAndIndexesAfterReopen() {
+        PageFileTaskManager manager = new PageFileTaskManager(tempFile);
+        Task task = manager.createTask(new Task("Task, с запятой", "Desc\nмногострочное", Status.NEW,
+                START.plusSeconds(1).plusNanos(500), Duration.ofMinutes(30)));
+        Epic epic = manager.createEpic(new Epic("Epic", "Desc", Status.NEW, null, null));
+        Subtask subtask = manager.createSubtask(new Subtask("Subtask", "Desc", Status.DONE, epic.getId(),
+                START.plusHours(1), Duration.ofMinutes(15)));
+        manager.close();
+
+        PageFileTaskManager reopened = new PageFileTaskManager(tempFile);
+        Task loadedTask = reopened.getTaskById(task.getId());
+        Assertions.assertEquals("Task, с запятой", loadedTask.getTitle());
+        Assertions.assertEquals("Desc\nмногострочное", loadedTask.getDescription());
+        Assertions.assertEquals(task.getStartTime(), loadedTask.getStartTime());
+        Assertions.assertEquals(30L, loadedTask.getDuration());
+
+        Epic loadedEpic = reopened.getEpicById(epic.getId());
+        Assertions.assertEquals(Status.DONE, loadedEpic.getStatus(), "Статус эпика считается по подзадачам");
+        Assertions.assertEquals(List.of(subtask.getId()), loadedEpic.getSubtaskId());
+        Assertions.assertEquals(START.plusHours(1), loadedEpic.getStartTime());
+        Assertions.assertEquals(List.of(loadedTask), new ArrayList<>(reopened.getPrioritizedTasks()));
+
+        Task next = reopened.createTask(new Task("Next", "Desc", Status.NEW, null, null));
+        Assertions.assertEquals(subtask.getId() + 1, next.getId(), "Счетчик id должен сохраняться");
+        reopened.close();
+    }
+
+    @Test
+    void shouldServeBoardLargerThanBufferPool() {
+        int count = 5_000;
+        PageFileTaskManager manager = new PageFileTaskManager(tempFile, BufferPool.MIN_CAPACITY);
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Task task = manager.createTask(new Task("Task " + i, "Description " + i, Status.NEW,
+                    START.plusMinutes((long) (count - i) * 60), Duration.ofMinutes(30)));
+            ids.add(task.getId());
+        }
+
+        BufferPool pool = manager.getBufferPool();
+        Assertions.assertTrue(pool.getEvictions() > 0, "Доска не помещается в пул - страницы должны вытесняться");
+        Assertions.assertTrue(pool.getResidentPages() <= BufferPool.MIN_CAPACITY);
+
+        manager.removeTask(ids.get(10));
+        List<Task> prioritized = new ArrayList<>(manager.getPrioritizedTasks());
+        Assertions.assertEquals(count - 1, prioritized.size());
+        for (int i = 1; i < prioritized.size(); i++) {
+            Assertions.assertTrue(prioritized.get(i - 1).getStartTime().isBefore(prioritized.get(i).getStartTime()));
+        }
+        Assertions.assertEquals("Task 4999", prioritized.get(0).getTitle());
+        Assertions.assertEquals("Task 2500", manager.getTaskById(ids.get(2500)).getTitle());
+        Assertions.assertNull(manager.getTaskById(ids.get(10)));
+        Assertions.assertFalse(manager.lookingForTemporaryIntersectionsInTasks());
+
+        List<Task> overlapping = manager.findOverlapping(START.plusMinutes(60 * 100 + 10),
+                START.plusMinutes(60 * 102 + 10));
+        Assertions.assertEquals(List.of("Task 4900", "Task 4899", "Task 4898"),
+                overlapping.stream().map(Task::getTitle).toList());
+        manager.close();
+    }
+
+    @Test
+    void shouldRewriteShorterRecordsInPlaceAndMoveLongerOnes() {
+        PageFileTaskManager manager = new PageFileTaskManager(tempFile);
+        Task task = manager.createTask(new Task("Task", "Description", Status.NEW, START, Duration.ofMinutes(30)));
+
+        Task shorter = new Task("T", "D", Status.DONE, START.plusHours(1), Duration.ofMinutes(10));
+        shorter.setId(task.getId());
+        manager.updateTask(shorter);
+        String description = "x".repeat(10_000);
+        Task longer = new Task("Task", description, Status.IN_PROGRESS, START.plusHours(2), Duration.ofMinutes(10));
+        longer.setId(task.getId());
+        manager.updateTask(longer);
+        manager.close();
+
+        PageFileTaskManager reopened = new PageFileTaskManager(tempFile);
+        Task loaded = reopened.getTaskById(task.getId());
+        Assertions.assertEquals(description, loaded.getDescription(), "Запись длиннее страницы не должна теряться");
+        Assertions.assertEquals(Status.IN_PROGRESS, loaded.getStatus());
+        Assertions.assertEquals(List.of(loaded), new ArrayList<>(reopened.getPrioritizedTasks()),
+                "Прежние ключи времени начала должны удаляться из индекса");
+        reopened.close();
+    }
+
+    @Test
+    void shouldCascadeEpicRemovalAndFreeClearedPages() {
+        PageFileTaskManager manager = new PageFileTaskManager(tempFile, BufferPool.MIN_CAPACITY);
+        Epic epic = manager.createEpic(new Epic("Epic", "Desc", Status.NEW, null, null));
+        Epic other = manager.createEpic(new Epic("Other", "Desc", Status.NEW, null, null));
+        for (int i = 0; i < 1_000; i++) {
+            manager.createSubtask(new Subtask("Sub " + i, "Desc", Status.NEW, i % 2 == 0 ? epic.getId() : other.getId(),
+                    START.plusHours(i), Duration.ofMinutes(30)));
+        }
+        Assertions.assertEquals(500, manager.getSubtasksByEpicId(epic.getId()).size());
+
+        manager.removeEpic(epic.getId());
+        Assertions.assertEquals(500, manager.getAllSubtasks().size(), "Подзадачи эпика удаляются вместе с ним");
+        Assertions.assertEquals(500, manager.getEpicProgress(other.getId()).getTotal());
+
+        int pagesBefore = manager.getBufferPool().getPageCount();
+        manager.deleteSubtasks();
+        Assertions.assertEquals(0, manager.getEpicProgress(other.getId()).getTotal());
+        for (int i = 0; i < 100; i++) {
+            manager.createSubtask(new Subtask("Again " + i, "Desc", Status.NEW, other.getId(), START.plusHours(i),
+                    Duration.ofMinutes(30)));
+        }
+        Assertions.assertEquals(pagesBefore, manager.getBufferPool().getPageCount(),
+                "Страницы очищенных индексов должны переиспользоваться");
+        manager.close();
+    }
+
+    @Test
+    void shouldRejectFileNotClosedAfterChanges() {
+        PageFileTaskManager manager = new PageFileTaskManager(tempFile);
+        manager.createTask(new Task("Task", "Desc", Status.NEW, null, null));
+
+        Assertions.assertThrows(ManagerSaveException.class, () -> new PageFileTaskManager(tempFile));
+
+        manager.flush();
+        PageFileTaskManager reader = new PageFileTaskManager(tempFile);
+        Assertions.assertEquals(1, reader.getAllTasks().size(), "После flush файл снова читается целиком");
+        reader.close();
+        manager.close();
+    }
+}
+
+class PageFileTaskManagerContractTest extends TaskManagerTest<PageFileTaskManager> {
+    @Override
+    protected PageFileTaskManager createTaskManager() {
+        try {
+            File file = File.createTempFile("tasks", ".pages");
+            file.deleteOnExit();
+            return new PageFileTaskManager(file, BufferPool.MIN_CAPACITY);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
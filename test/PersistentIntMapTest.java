@@ -0,0 +1,62 @@
+import org.junit.jupiter.api.Test;
+import util.PersistentIntMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentIntMapTest {
+
+    @Test
+    void shouldKeepPreviousVersionUnchanged() {
+        PersistentIntMap<String> first = PersistentIntMap.<String>empty().with(1, "a").with(2, "b");
+        PersistentIntMap<String> second = first.with(2, "c").with(3, "d").without(1);
+
+        assertEquals(List.of("a", "b"), first.values(), "Старая версия не должна видеть новые изменения");
+        assertEquals(List.of("c", "d"), second.values());
+        assertEquals(2, first.size());
+        assertEquals(2, second.size());
+        assertNull(second.get(1));
+    }
+
+    @Test
+    void shouldStoreSparseAndLargeKeysInAscendingOrder() {
+        PersistentIntMap<Integer> map = PersistentIntMap.empty();
+        int[] keys = {1 << 30, 70_000, 5, 0, 33, Integer.MAX_VALUE, 1024};
+        for (int key : keys) {
+            map = map.with(key, key);
+        }
+
+        List<Integer> visited = new ArrayList<>();
+        map.forEach(visited::add);
+
+        assertEquals(List.of(0, 5, 33, 1024, 70_000, 1 << 30, Integer.MAX_VALUE), visited);
+        for (int key : keys) {
+            assertEquals(key, map.get(key));
+        }
+        assertNull(map.get(34));
+    }
+
+    @Test
+    void shouldRemoveKeysAndBecomeEmpty() {
+        PersistentIntMap<Integer> map = PersistentIntMap.empty();
+        for (int i = 1; i <= 1_000; i++) {
+            map = map.with(i, i);
+        }
+        for (int i = 1; i <= 1_000; i += 2) {
+            map = map.without(i);
+        }
+
+        assertEquals(500, map.size());
+        assertFalse(map.containsKey(1));
+        assertTrue(map.containsKey(2));
+        assertSame(map, map.without(1), "Удаление отсутствующего ключа не должно создавать новую версию");
+
+        for (int i = 2; i <= 1_000; i += 2) {
+            map = map.without(i);
+        }
+        assertTrue(map.isEmpty());
+        assertEquals(List.of(), map.values());
+    }
+}
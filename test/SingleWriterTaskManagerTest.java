@@ -0,0 +1,157 @@
+import enums.Status;
+import managers.SingleWriterTaskManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import tasks.Epic;
+import tasks.Subtask;
+import tasks.Task;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+class SingleWriterTaskManagerTest {
+    private SingleWriterTaskManager taskManager;
+
+    @BeforeEach
+    void setUp() {
+        taskManager = new SingleWriterTaskManager(64, 16);
+    }
+
+    @AfterEach
+    void tearDown() {
+        taskManager.close();
+    }
+
+    @Test
+    void shouldPublishSnapshotBeforeWriteReturns() {
+        Task task = taskManager.createTask(new Task("Task", "Desc", Status.NEW,
+                LocalDateTime.of(2024, 1, 1, 10, 0), Duration.ofMinutes(30)));
+
+        Assertions.assertEquals(List.of(task), taskManager.getAllTasks(), "Запись должна быть видна сразу после возврата");
+        Assertions.assertEquals(task, taskManager.getPrioritizedTasks().first());
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> taskManager.getAllTasks().clear(),
+                "Снимок должен быть неизменяемым");
+    }
+
+    @Test
+    void shouldPropagateWriterExceptionsToCaller() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> taskManager.createSubtask(
+                new Subtask("Subtask", "Desc", Status.NEW, 999, null, null)));
+    }
+
+    @Test
+    void shouldApplyConcurrentWritesThroughSingleWriter() throws Exception {
+        Epic epic = taskManager.createEpic(new Epic("Epic", "Desc", Status.NEW, null, null));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < 8; thread++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    taskManager.createSubtask(new Subtask("Sub", "Desc", Status.DONE, epic.getId(), null, null));
+                    taskManager.getAllSubtasks();
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        Assertions.assertEquals(4_000, taskManager.getAllSubtasks().size());
+        Assertions.assertEquals(4_000, taskManager.getSubtasksByEpicId(epic.getId()).size());
+        Assertions.assertEquals(100.0, taskManager.getEpicProgress(epic.getId()).getPercentDone(), 0.001);
+        Assertions.assertEquals(Status.DONE, taskManager.getEpicById(epic.getId()).getStatus());
+    }
+
+    @Test
+    void shouldShowViewInHistoryAfterNextWriteFromSameThread() {
+        Task task = taskManager.createTask(new Task("Task", "Desc", Status.NEW, null, null));
+
+        taskManager.getTaskById(task.getId());
+        taskManager.createTask(new Task("Other", "Desc", Status.NEW, null, null));
+
+        Assertions.assertEquals(List.of(task), taskManager.getHistory());
+    }
+
+    @Test
+    void shouldKeepUntouchedTasksAndEpicListsAcrossWrites() {
+        Epic first = taskManager.createEpic(new Epic("First", "Desc", Status.NEW, null, null));
+        Epic second = taskManager.createEpic(new Epic("Second", "Desc", Status.NEW, null, null));
+        Subtask subtask = taskManager.createSubtask(new Subtask("Sub", "Desc", Status.DONE, first.getId(), null, null));
+        Task task = taskManager.createTask(new Task("Task", "Desc", Status.NEW,
+                LocalDateTime.of(2024, 1, 1, 10, 0), Duration.ofMinutes(30)));
+
+        Subtask moved = new Subtask("Sub", "Desc", Status.IN_PROGRESS, second.getId(), null, null);
+        moved.setId(subtask.getId());
+        taskManager.updateSubtask(moved);
+
+        Assertions.assertEquals(List.of(), taskManager.getSubtasksByEpicId(first.getId()));
+        Assertions.assertEquals(List.of(moved), taskManager.getSubtasksByEpicId(second.getId()));
+        Assertions.assertEquals(0, taskManager.getEpicProgress(first.getId()).getTotal());
+        Assertions.assertEquals(Status.IN_PROGRESS, taskManager.getEpicProgress(second.getId()).getStatus());
+        Assertions.assertEquals(List.of(task), taskManager.getAllTasks());
+        Assertions.assertEquals(task, taskManager.getPrioritizedTasks().first());
+
+        taskManager.removeEpic(second.getId());
+        Assertions.assertEquals(1, taskManager.getAllEpics().size());
+        Assertions.assertEquals(first.getId(), taskManager.getAllEpics().get(0).getId());
+        Assertions.assertEquals(List.of(), taskManager.getAllSubtasks());
+        Assertions.assertNull(taskManager.getEpicProgress(second.getId()));
+
+        taskManager.deleteTasks();
+        Assertions.assertEquals(List.of(), taskManager.getAllTasks());
+        Assertions.assertTrue(taskManager.getPrioritizedTasks().isEmpty());
+    }
+
+    @Test
+    void shouldPublishEpicCopiesThatLaterWritesDoNotChange() {
+        Epic epic = taskManager.createEpic(new Epic("Epic", "Desc", Status.NEW, null, null));
+        Epic published = taskManager.getEpicById(epic.getId());
+        Assertions.assertFalse(published == epic, "Читатель не должен получать эпик, который меняет писатель");
+
+        taskManager.createSubtask(new Subtask("Sub", "Desc", Status.DONE, epic.getId(),
+                LocalDateTime.of(2024, 1, 1, 10, 0), Duration.ofMinutes(30)));
+
+        Assertions.assertEquals(Status.NEW, published.getStatus(), "Опубликованная копия не меняется");
+        Assertions.assertEquals(List.of(), published.getSubtaskId());
+        Assertions.assertNull(published.getStartTime());
+        Epic current = taskManager.getEpicById(epic.getId());
+        Assertions.assertEquals(Status.DONE, current.getStatus());
+        Assertions.assertEquals(1, current.getSubtaskId().size());
+        Assertions.assertEquals(Status.DONE, taskManager.getHistory().get(0).getStatus(),
+                "История показывает копию эпика из того же снимка");
+    }
+
+    @Test
+    void shouldFailPendingCallsInsteadOfHangingWhenWriterDies() {
+        Task poisoned = new Task("Task", "Desc", Status.NEW, null, null) {
+            @Override
+            public void setId(int id) {
+                throw new StackOverflowError("writer failure");
+            }
+        };
+
+        Assertions.assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            Assertions.assertThrows(CompletionException.class, () -> taskManager.createTask(poisoned));
+            Assertions.assertThrows(IllegalStateException.class,
+                    () -> taskManager.createTask(new Task("Next", "Desc", Status.NEW, null, null)));
+        });
+    }
+}
+
+class SingleWriterTaskManagerContractTest extends TaskManagerTest<SingleWriterTaskManager> {
+    @Override
+    protected SingleWriterTaskManager createTaskManager() {
+        return new SingleWriterTaskManager();
+    }
+
+    @AfterEach
+    void tearDown() {
+        taskManager.close();
+    }
+}
@@ -71,6 +71,40 @@ public abstract class TaskManagerTest<T extends TaskManager> {
         Assertions.assertTrue(taskManager.lookingForTemporaryIntersectionsInTasks());
     }
 
+    @Test
+    void shouldForgetTimeIntersectionAfterRemoval() {
+        Task task1 = taskManager.createTask(
+                new Task("Task1", "Desc", Status.NEW,
+                        testTime, Duration.ofMinutes(30)));
+        Task task2 = taskManager.createTask(
+                new Task("Task2", "Desc", Status.NEW,
+                        testTime.plusMinutes(15), Duration.ofMinutes(30)));
+
+        taskManager.removeTask(task2.getId());
+
+        Assertions.assertFalse(taskManager.lookingForTemporaryIntersectionsInTasks());
+    }
+
+    @Test
+    void shouldFindOverlappingTasksAndSubtasks() {
+        Epic epic = taskManager.createEpic(new Epic("Epic", "Desc", Status.NEW, null, null));
+        Task task = taskManager.createTask(
+                new Task("Task", "Desc", Status.NEW, testTime, Duration.ofMinutes(30)));
+        Subtask subtask = taskManager.createSubtask(
+                new Subtask("Subtask", "Desc", Status.NEW, epic.getId(),
+                        testTime.plusMinutes(20), Duration.ofMinutes(30)));
+        taskManager.createTask(
+                new Task("Later", "Desc", Status.NEW, testTime.plusHours(2), Duration.ofMinutes(30)));
+
+        List<Task> overlapping = taskManager.findOverlapping(testTime.plusMinutes(25), testTime.plusMinutes(40));
+
+        Assertions.assertEquals(List.of(task, subtask), overlapping,
+                "Должны находиться только пересекающиеся задачи в порядке времени начала");
+        Assertions.assertEquals(List.of(subtask),
+                taskManager.findOverlapping(testTime.plusMinutes(30), testTime.plusMinutes(40)),
+                "Задача, заканчивающаяся в начале интервала, с ним не пересекается");
+    }
+
     @Test
     void shouldPrioritizeTasksCorrectly() {
         LocalDateTime earlierTime = LocalDateTime.of(2023, 1, 1, 10, 0);
@@ -97,6 +131,113 @@ public abstract class TaskManagerTest<T extends TaskManager> {
         Assertions.assertEquals(laterTask.getId(), prioritizedList.get(1).getId(),
                 "Второй должна быть задача с более поздним временем начала");
     }
+
+    @Test
+    void shouldKeepTasksWithEqualStartTimeInPrioritizedIndex() {
+        LocalDateTime startTime = LocalDateTime.of(2023, 1, 1, 10, 0);
+        Task first = taskManager.createTask(
+                new Task("First", "Desc", Status.NEW, startTime, Duration.ofMinutes(30)));
+        Task second = taskManager.createTask(
+                new Task("Second", "Desc", Status.NEW, startTime, Duration.ofMinutes(15)));
+        taskManager.createTask(new Task("Without time", "Desc", Status.NEW, null, null));
+
+        Assertions.assertEquals(List.of(first, second), new ArrayList<>(taskManager.getPrioritizedTasks()),
+                "Задачи с одинаковым временем начала не должны теряться");
+
+        taskManager.removeTask(first.getId());
+        Assertions.assertEquals(List.of(second), new ArrayList<>(taskManager.getPrioritizedTasks()),
+                "Индекс приоритетов должен обновляться при удалении");
+        Assertions.assertThrows(UnsupportedOperationException.class,
+                () -> taskManager.getPrioritizedTasks().clear());
+    }
+
+    @Test
+    void shouldTrackEpicProgressBySubtaskStatuses() {
+        Epic epic = taskManager.createEpic(new Epic("Epic", "Desc", Status.NEW, null, null));
+        Subtask sub1 = taskManager.createSubtask(
+                new Subtask("Sub1", "Desc", Status.NEW, epic.getId(), testTime, Duration.ofMinutes(30)));
+        Subtask sub2 = taskManager.createSubtask(
+                new Subtask("Sub2", "Desc", Status.DONE, epic.getId(), testTime.plusHours(1), Duration.ofMinutes(30)));
+
+        EpicProgress progress = taskManager.getEpicProgress(epic.getId());
+        Assertions.assertEquals(1, progress.getNewCount());
+        Assertions.assertEquals(1, progress.getDoneCount());
+        Assertions.assertEquals(50.0, progress.getPercentDone(), 0.001);
+
+        Subtask updated = new Subtask("Sub1", "Desc", Status.DONE, epic.getId(), testTime, Duration.ofMinutes(30));
+        updated.setId(sub1.getId());
+        taskManager.updateSubtask(updated);
+
+        Assertions.assertEquals(Status.DONE, epic.getStatus(), "Все подзадачи выполнены - эпик выполнен");
+        Assertions.assertEquals(100.0, taskManager.getEpicProgress(epic.getId()).getPercentDone(), 0.001);
+
+        taskManager.removeSubtask(sub2.getId());
+        sub1 = taskManager.getSubtaskById(sub1.getId());
+        sub1.setStatus(Status.IN_PROGRESS);
+        taskManager.updateSubtask(sub1);
+
+        progress = taskManager.getEpicProgress(epic.getId());
+        Assertions.assertEquals(1, progress.getTotal(), "Счетчики должны учитывать удаление подзадачи");
+        Assertions.assertEquals(1, progress.getInProgressCount(), "Счетчики должны учитывать изменение на месте");
+        Assertions.assertEquals(Status.IN_PROGRESS, epic.getStatus());
+    }
+
+    @Test
+    void shouldMaintainEpicTimeBoundsFromSubtasks() {
+        Epic epic = taskManager.createEpic(new Epic("Epic", "Desc", Status.NEW, null, null));
+        Subtask first = taskManager.createSubtask(
+                new Subtask("First", "Desc", Status.NEW, epic.getId(), testTime, Duration.ofMinutes(30)));
+        Subtask last = taskManager.createSubtask(
+                new Subtask("Last", "Desc", Status.NEW, epic.getId(), testTime.plusHours(2), Duration.ofMinutes(45)));
+        taskManager.createSubtask(
+                new Subtask("Middle", "Desc", Status.NEW, epic.getId(), testTime.plusHours(1), Duration.ofMinutes(15)));
+
+        Assertions.assertEquals(testTime, epic.getStartTime());
+        Assertions.assertEquals(testTime.plusHours(2).plusMinutes(45), epic.getEndTime());
+        Assertions.assertEquals(90L, epic.getDuration());
+
+        taskManager.removeSubtask(first.getId());
+        taskManager.removeSubtask(last.getId());
+
+        Assertions.assertEquals(testTime.plusHours(1), epic.getStartTime(),
+                "После удаления крайней подзадачи границы эпика должны пересчитаться");
+        Assertions.assertEquals(testTime.plusHours(1).plusMinutes(15), epic.getEndTime());
+        Assertions.assertEquals(15L, epic.getDuration());
+    }
+
+    @Test
+    void shouldBumpVersionOnlyOfChangedCollections() {
+        long tasks = taskManager.getVersion(TaskCollection.TASKS);
+        long epics = taskManager.getVersion(TaskCollection.EPICS);
+        long subtasks = taskManager.getVersion(TaskCollection.SUBTASKS);
+
+        Task task = taskManager.createTask(new Task("Task", "Desc", Status.NEW, testTime, Duration.ofMinutes(30)));
+        Assertions.assertTrue(taskManager.getVersion(TaskCollection.TASKS) > tasks);
+        Assertions.assertEquals(epics, taskManager.getVersion(TaskCollection.EPICS),
+                "Изменение Task не должно менять версию эпиков");
+        Assertions.assertEquals(subtasks, taskManager.getVersion(TaskCollection.SUBTASKS));
+
+        tasks = taskManager.getVersion(TaskCollection.TASKS);
+        taskManager.getAllTasks();
+        taskManager.getPrioritizedTasks();
+        Assertions.assertEquals(tasks, taskManager.getVersion(TaskCollection.TASKS), "Чтение не меняет версию");
+
+        Epic epic = taskManager.createEpic(new Epic("Epic", "Desc", Status.NEW, null, null));
+        epics = taskManager.getVersion(TaskCollection.EPICS);
+        Subtask subtask = taskManager.createSubtask(
+                new Subtask("Sub", "Desc", Status.NEW, epic.getId(), testTime.plusHours(1), Duration.ofMinutes(30)));
+        Assertions.assertTrue(taskManager.getVersion(TaskCollection.SUBTASKS) > subtasks);
+        Assertions.assertTrue(taskManager.getVersion(TaskCollection.EPICS) > epics,
+                "Подзадача меняет статус и время эпика - версия эпиков тоже растет");
+
+        subtasks = taskManager.getVersion(TaskCollection.SUBTASKS);
+        taskManager.removeSubtask(subtask.getId());
+        Assertions.assertTrue(taskManager.getVersion(TaskCollection.SUBTASKS) > subtasks);
+        Assertions.assertEquals(tasks, taskManager.getVersion(TaskCollection.TASKS));
+
+        taskManager.removeTask(task.getId());
+        Assertions.assertTrue(taskManager.getVersion(TaskCollection.TASKS) > tasks);
+    }
 }
 
 class InMemoryTaskManagerTestTwo extends TaskManagerTest<InMemoryTaskManager> {
@@ -106,6 +247,13 @@ class InMemoryTaskManagerTestTwo extends TaskManagerTest<InMemoryTaskManager> {
     }
 }
 
+class OpenAddressingTaskManagerTest extends TaskManagerTest<InMemoryTaskManager> {
+    @Override
+    protected InMemoryTaskManager createTaskManager() {
+        return new InMemoryTaskManager(StorageType.OPEN_ADDRESSING);
+    }
+}
+
 class HistoryManagerTest {
     private HistoryManager historyManager;
 